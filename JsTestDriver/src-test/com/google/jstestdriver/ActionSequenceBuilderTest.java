@@ -19,6 +19,7 @@ import com.google.gson.JsonArray;
 import com.google.jstestdriver.action.ConfigureGatewayAction;
 import com.google.jstestdriver.action.ConfigureGatewayAction.Factory;
 import com.google.jstestdriver.action.UploadAction;
+import com.google.jstestdriver.action.WatchAction;
 import com.google.jstestdriver.browser.BrowserActionExecutorAction;
 import com.google.jstestdriver.browser.BrowserIdStrategy;
 import com.google.jstestdriver.hooks.TestsPreProcessor;
@@ -33,13 +34,13 @@ import java.util.List;
 public class ActionSequenceBuilderTest extends TestCase {
 
   ActionFactory actionFactory =
-      new ActionFactory(null, Collections.<TestsPreProcessor>emptySet(), false,
+      new ActionFactory(null, Collections.<TestsPreProcessor>emptySet(), false, false,
           null, null, new NullStopWatch());
 
   public void testAddTestsWithRemoteServerAddress() throws Exception {
     List<String> tests = tests();
     ActionSequenceBuilder builder =
-        new ActionSequenceBuilder(actionFactory, new BrowserActionExecutorAction(null, null, null, null, null, 0, null, null, null), new FailureCheckerAction(null, null),
+        new ActionSequenceBuilder(actionFactory, new BrowserActionExecutorAction(null, null, null, null, null, 0, null, null, null, null, null, false), new FailureCheckerAction(null, null),
             new UploadAction(null),
             new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0))),
             null,
@@ -72,10 +73,11 @@ public class ActionSequenceBuilderTest extends TestCase {
             null,
             Collections.<TestsPreProcessor> emptySet(),
             false,
+            false,
             null,
             null,
             new NullStopWatch()),
-            new BrowserActionExecutorAction(null, null, null, null, null, 0, null, null, null), new FailureCheckerAction(null, null), new UploadAction(null),
+            new BrowserActionExecutorAction(null, null, null, null, null, 0, null, null, null, null, null, false), new FailureCheckerAction(null, null), new UploadAction(null),
         new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0))),
         null,
         newConfigureGatewayActionFactory(),
@@ -101,10 +103,11 @@ public class ActionSequenceBuilderTest extends TestCase {
             null,
             Collections.<TestsPreProcessor> emptySet(),
             false,
+            false,
             null,
             null,
             new NullStopWatch()),
-            new BrowserActionExecutorAction(null, null, null, null, null, 0, null, null, null), new FailureCheckerAction(null, null), new UploadAction(null),
+            new BrowserActionExecutorAction(null, null, null, null, null, 0, null, null, null, null, null, false), new FailureCheckerAction(null, null), new UploadAction(null),
             new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0))),
             null,
             newConfigureGatewayActionFactory(),
@@ -125,6 +128,30 @@ public class ActionSequenceBuilderTest extends TestCase {
     assertSequence(expectedActions, sequence);
   }
 
+  public void testWatchRunsBeforeServerShutdown() throws Exception {
+    List<String> tests = tests();
+    ActionSequenceBuilder builder = new ActionSequenceBuilder(
+        actionFactory,
+        new BrowserActionExecutorAction(null, null, null, null, null, 0, null, null, null, null, null, false), new FailureCheckerAction(null, null), new UploadAction(null),
+        new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0))),
+        null,
+        newConfigureGatewayActionFactory(),
+        null, null);
+
+    List<Class<? extends Action>> expectedActions = new ArrayList<Class<? extends Action>>();
+    expectedActions.add(ServerStartupAction.class);
+    expectedActions.add(ConfigureGatewayAction.class);
+    expectedActions.add(UploadAction.class);
+    expectedActions.add(BrowserActionExecutorAction.class);
+    expectedActions.add(WatchAction.class);
+    expectedActions.add(ServerShutdownAction.class);
+    builder.withLocalServerPort(1001).watchingWith(new WatchAction(null, null, null, null));
+
+    List<Action> sequence = builder.addTests(tests).build();
+
+    assertSequence(expectedActions, sequence);
+  }
+
   public void testNoBrowsers() throws Exception {
     List<String> tests = tests();
     ActionSequenceBuilder builder =
@@ -133,11 +160,12 @@ public class ActionSequenceBuilderTest extends TestCase {
                 null,
                 Collections.<TestsPreProcessor>emptySet(),
                 false,
+                false,
                 null,
                 null,
                 new NullStopWatch()),
             new BrowserActionExecutorAction(
-                null, null, null, null, null, 0, null, null, null), new FailureCheckerAction(null, null), new UploadAction(null),
+                null, null, null, null, null, 0, null, null, null, null, null, false), new FailureCheckerAction(null, null), new UploadAction(null),
             new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0))),
             null,
             newConfigureGatewayActionFactory(),
@@ -27,6 +27,7 @@ import com.google.common.collect.Sets;
 import com.google.inject.internal.Lists;
 import com.google.jstestdriver.browser.BrowserControl;
 import com.google.jstestdriver.browser.BrowserControl.BrowserControlFactory;
+import com.google.jstestdriver.browser.BrowserIdStrategy;
 import com.google.jstestdriver.browser.BrowserRunner;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.RunData;
@@ -153,7 +154,8 @@ public class BrowserStartupActionTest extends TestCase {
     final FakeJsTestDriverClient client = new FakeJsTestDriverClient(capturedBrowsers, nextId);
     BrowserStartupAction action =
         new BrowserStartupAction(browsers, client, serverAddress,
-            Executors.newSingleThreadExecutor(), new BrowserControlFactoryFake(client));
+            Executors.newSingleThreadExecutor(), new BrowserControlFactoryFake(client),
+            new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0))), 0);
 
     action.run(new RunData(Collections.<ResponseStream>emptyList(), Collections
         .<JstdTestCase>emptyList(), null));
@@ -34,6 +34,7 @@ import com.google.jstestdriver.browser.BrowserFileSet;
 import com.google.jstestdriver.hooks.FileInfoScheme;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.NullPathPrefix;
+import com.google.jstestdriver.model.SessionManifest;
 import com.google.jstestdriver.util.NullStopWatch;
 
 /**
@@ -52,7 +53,7 @@ public class CommandTaskTest extends TestCase {
     server.expect(
         baseUrl
             + "fileSet?POST?{id=1, data="
-            + gson.toJson(new JstdTestCase(Collections.<FileInfo>emptyList(), Collections
+            + reference(new JstdTestCase(Collections.<FileInfo>emptyList(), Collections
                 .<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), null))
             + ", action=browserFileCheck}", gson.toJson(new BrowserFileSet()));
     server.expect(baseUrl + "cmd?POST?{data={mooh}, id=1}", "");
@@ -60,7 +61,7 @@ public class CommandTaskTest extends TestCase {
     browserInfo.setId(Long.parseLong(id));
     browserInfo.setUploadSize(10);
     server.expect(baseUrl + "cmd?listBrowsers", gson.toJson(Lists.newArrayList(browserInfo)));
-    server.expect(baseUrl + "cmd?id=1", "{\"response\":{\"response\":\"response\","
+    server.expect(baseUrl + "cmd?id=1&batch", "{\"response\":{\"response\":\"response\","
         + "\"browser\":{\"name\":\"browser\"},\"error\":\"error\",\"executionTime\":123},"
         + "\"last\":true}");
 
@@ -81,6 +82,47 @@ public class CommandTaskTest extends TestCase {
     assertEquals(123L, response.getExecutionTime());
   }
 
+  public void testBatchedResponses() throws Exception {
+    MockServer server = new MockServer();
+    String id = "1";
+
+    server.expect(baseUrl + "heartbeat?id=1", "OK");
+    server.expect(baseUrl + "fileSet?POST?{data=[], action=serverFileCheck}", "[]");
+    server.expect(
+        baseUrl
+            + "fileSet?POST?{id=1, data="
+            + reference(new JstdTestCase(Collections.<FileInfo>emptyList(), Collections
+                .<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), null))
+            + ", action=browserFileCheck}", gson.toJson(new BrowserFileSet()));
+    server.expect(baseUrl + "cmd?POST?{data={mooh}, id=1}", "");
+    BrowserInfo browserInfo = new BrowserInfo();
+    browserInfo.setId(Long.parseLong(id));
+    browserInfo.setUploadSize(10);
+    server.expect(baseUrl + "cmd?listBrowsers", gson.toJson(Lists.newArrayList(browserInfo)));
+    // an empty batch when the browser takes longer than the server holds the request.
+    server.expect(baseUrl + "cmd?id=1&batch", "[]");
+    server.expect(baseUrl + "cmd?id=1&batch", "[{\"response\":{\"response\":\"log\","
+        + "\"browser\":{\"name\":\"browser\"},\"error\":\"\",\"executionTime\":1},"
+        + "\"last\":false},"
+        + "{\"response\":{\"response\":\"response\","
+        + "\"browser\":{\"name\":\"browser\"},\"error\":\"error\",\"executionTime\":123},"
+        + "\"last\":true}]");
+
+    Map<String, String> params = new LinkedHashMap<String, String>();
+
+    params.put("data", "{mooh}");
+    params.put("id", id);
+    FakeResponseStream stream = new FakeResponseStream();
+    CommandTask task =
+        createCommandTask(server, params, stream, new MockFileLoader(), true);
+
+    task.run(new JstdTestCase(Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), java.util.Collections.<FileInfo> emptyList(), null));
+    Response response = stream.getResponse();
+
+    assertEquals("response", response.getResponse());
+    assertEquals(123L, response.getExecutionTime());
+  }
+
   public void testUploadFiles() throws Exception {
     String id = "1";
     MockServer server = new MockServer();
@@ -91,10 +133,12 @@ public class CommandTaskTest extends TestCase {
     server.expect(baseUrl + "heartbeat?id=1", "OK");
     server.expect(baseUrl + "fileSet?POST?{data=" + gson.toJson(testCase)
         + ", action=serverFileCheck}", "[]");
+    server.expect(baseUrl + "fileSet?POST?{id=1, data=" + reference(testCase)
+      + ", action=browserFileCheck}", gson.toJson(BrowserFileSet.unknownTestCase()));
     server.expect(baseUrl + "fileSet?POST?{id=1, data=" + gson.toJson(testCase)
       + ", action=browserFileCheck}", gson.toJson(new BrowserFileSet()));
     server.expect(baseUrl + "cmd?POST?{data={mooh}, id=1}", "");
-    server.expect(baseUrl + "cmd?id=1", "{\"response\":{\"response\":\"response\","
+    server.expect(baseUrl + "cmd?id=1&batch", "{\"response\":{\"response\":\"response\","
         + "\"browser\":{\"name\":\"browser\"},\"error\":\"error\",\"executionTime\":123},"
         + "\"last\":true}");
     BrowserInfo browserInfo = new BrowserInfo();
@@ -145,7 +189,7 @@ public class CommandTaskTest extends TestCase {
 
     // server expects
     server.expect(baseUrl + "heartbeat?id=1", "OK");
-    server.expect(baseUrl + "fileSet?POST?{id=1, data=" + gson.toJson(jstdTestCase) + ", action=browserFileCheck}",
+    server.expect(baseUrl + "fileSet?POST?{id=1, data=" + reference(jstdTestCase) + ", action=browserFileCheck}",
         gson.toJson(browserFileSet));
     server.expect(baseUrl + "fileSet?POST?{data=" + gson.toJson(fileSet) + ", action=serverFileCheck}",
       "[]");
@@ -159,7 +203,7 @@ public class CommandTaskTest extends TestCase {
     resetParams.put("id", "1");
     resetParams.put("data", gson.toJson(cmd));
 
-    server.expect(baseUrl + "cmd?id=1", "{\"response\":{\"response\":\"response\","
+    server.expect(baseUrl + "cmd?id=1&batch", "{\"response\":{\"response\":\"response\","
         + "\"browser\":{\"name\":\"browser\"},\"error\":\"error\",\"executionTime\":123},"
         + "\"last\":true}");
     server.expect(
@@ -175,10 +219,10 @@ public class CommandTaskTest extends TestCase {
     server.expect(url, "{\"response\":{\"response\":\"response\","
         + "\"browser\":{\"name\":\"browser\"},\"error\":\"error\",\"executionTime\":123},"
         + "\"last\":true}");
-    server.expect(baseUrl + "cmd?id=1",
+    server.expect(baseUrl + "cmd?id=1&batch",
         "{\"response\":" + createLoadedFilesResponseString() + ", \"last\":true}");
     server.expect(baseUrl + "cmd?POST?{data={mooh}, id=1}", "");
-    server.expect(baseUrl + "cmd?id=1", "{\"response\":{\"response\":\"response\","
+    server.expect(baseUrl + "cmd?id=1&batch", "{\"response\":{\"response\":\"response\","
         + "\"browser\":{\"name\":\"browser\"},\"error\":\"error\",\"executionTime\":123},"
         + "\"last\":true}");
     Map<String, String> params = new LinkedHashMap<String, String>();
@@ -239,11 +283,17 @@ public class CommandTaskTest extends TestCase {
             fileLoader,
             filter,
             schemes,
-            prefix));
+            prefix,
+            FileUploader.UPLOAD_WINDOW));
     return task;
   }
 
   private FileSource fileInfoToFileSource(FileInfo info) {
     return info.toFileSource(new NullPathPrefix(), Sets.<FileInfoScheme>newHashSet());
   }
+
+  private String reference(JstdTestCase testCase) {
+    return gson.toJson(
+        new SessionManifest.Reference(testCase.getId(), SessionManifest.digest(gson, testCase)));
+  }
 }
@@ -71,7 +71,7 @@ public class DefaultActionListProviderTest extends TestCase {
                                                    String testOutput,
                                                    XmlPrinter xmlPrinter) {
     ActionFactory actionFactory =
-        new ActionFactory(null, Collections.<TestsPreProcessor>emptySet(), false,
+        new ActionFactory(null, Collections.<TestsPreProcessor>emptySet(), false, false,
             null, null, new NullStopWatch());
     return new DefaultActionListProvider(
         tests,
@@ -93,14 +93,16 @@ public class DefaultActionListProviderTest extends TestCase {
                 null,
                 -1,
                 null,
-                null, null),
+                null, null, null, null, false),
             new FailureCheckerAction(null, null),
             new UploadAction(null),
             new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0))),
             null,
             newConfigureGatewayActionFactory(),
-            new BrowserStartupAction(null, null, null, null, null), null),
-        true);
+            new BrowserStartupAction(null, null, null, null, null, null, 0), null),
+        true,
+        false,
+        null);
   }
 
   private Factory newConfigureGatewayActionFactory() {
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver;
+
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.jstestdriver.SlaveBrowser.BrowserState;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.runner.RunnerType;
+import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.handlers.CaptureHandler;
+import com.google.jstestdriver.servlet.fileset.BrowserFileCheck;
+
+import org.joda.time.Instant;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares the indexed file set diffing of {@link BrowserFileCheck} and
+ * {@link FileSetCacheStrategy} against the nested loops they replaced, for a
+ * browser that has loaded every file and a run where every tenth file changed.
+ *
+ * Run with: ant benchmark -Dbenchmark=com.google.jstestdriver.FileSetDiffBenchmark
+ */
+public class FileSetDiffBenchmark {
+  private static final int FILES = 10000;
+  private static final int ITERATIONS = 5;
+
+  public static void main(String[] args) throws Exception {
+    List<FileInfo> loaded = Lists.newArrayList();
+    List<FileInfo> current = Lists.newArrayList();
+    for (int i = 0; i < FILES; i++) {
+      String path = "/src/dir" + (i % 100) + "/file" + i + ".js";
+      loaded.add(new FileInfo(path, 1, 100, false, false, null, path));
+      current.add(new FileInfo(path, i % 10 == 0 ? 2 : 1, 100, false, false, null, path));
+    }
+    BrowserInfo browserInfo = new BrowserInfo();
+    browserInfo.setName("firefox");
+    SlaveBrowser browser = new SlaveBrowser(new TimeImpl(), "1", browserInfo, 100, null,
+        CaptureHandler.QUIRKS, RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+    browser.addFiles(loaded, new LoadedFiles());
+    Gson gson = new Gson();
+    String testCase = gson.toJson(new JstdTestCase(current, Collections.<FileInfo>emptyList(),
+        Collections.<FileInfo>emptyList(), "benchmark"));
+    BrowserFileCheck check = new BrowserFileCheck(gson, new JstdTestCaseStore());
+    FileSetCacheStrategy strategy = new FileSetCacheStrategy();
+    Set<FileInfo> loadedSet = new LinkedHashSet<FileInfo>(loaded);
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      long start = System.nanoTime();
+      int checked = nestedBrowserFileCheck(browser.getFileSet(), current);
+      long nestedCheck = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int indexedChecked = check.handle(browser, testCase).getFilesToUpload().size();
+      long indexedCheck = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int expired = nestedExpiredFileSet(current, loadedSet).size();
+      long nestedExpired = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int indexedExpired = strategy.createExpiredFileSet(current, loadedSet).size();
+      long indexedStrategy = System.nanoTime() - start;
+
+      System.out.println(String.format(
+          "%d files: browserFileCheck nested %dms (%d) indexed %dms (%d, includes parsing);"
+          + " expiredFileSet nested %dms (%d) indexed %dms (%d)",
+          FILES, nestedCheck / 1000000, checked, indexedCheck / 1000000, indexedChecked,
+          nestedExpired / 1000000, expired, indexedStrategy / 1000000, indexedExpired));
+    }
+  }
+
+  /** The loop BrowserFileCheck.handle used before the browser indexed its files. */
+  private static int nestedBrowserFileCheck(Set<FileInfo> fileSet, List<FileInfo> servable) {
+    List<FileInfo> filesToUpdate = Lists.newLinkedList();
+    for (FileInfo newFile : servable) {
+      if (fileSet.contains(newFile)) {
+        for (FileInfo oldFile : fileSet) {
+          if (oldFile.shouldReplaceWith(newFile)) {
+            filesToUpdate.add(newFile);
+          }
+        }
+      } else {
+        filesToUpdate.add(newFile);
+      }
+    }
+    return filesToUpdate.size();
+  }
+
+  /** The loop FileSetCacheStrategy.createExpiredFileSet used before indexing. */
+  private static Set<FileInfo> nestedExpiredFileSet(List<FileInfo> newFileSet,
+      Set<FileInfo> currentFileSet) {
+    Set<FileInfo> expiredFileSet = new LinkedHashSet<FileInfo>(newFileSet);
+    expiredFileSet.removeAll(currentFileSet);
+    for (FileInfo browserFileInfo : currentFileSet) {
+      for (FileInfo clientFileInfo : newFileSet) {
+        if (clientFileInfo.equals(browserFileInfo)) {
+          if (clientFileInfo.getTimestamp() != browserFileInfo.getTimestamp()
+              || clientFileInfo.getLength() != browserFileInfo.getLength()) {
+            expiredFileSet.add(clientFileInfo);
+          }
+          break;
+        }
+      }
+    }
+    return expiredFileSet;
+  }
+}
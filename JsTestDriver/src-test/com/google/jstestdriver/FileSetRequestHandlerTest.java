@@ -22,16 +22,20 @@ import com.google.jstestdriver.SlaveBrowser.BrowserState;
 import com.google.jstestdriver.browser.BrowserFileSet;
 import com.google.jstestdriver.browser.BrowserIdStrategy;
 import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.JstdTestCaseDelta;
+import com.google.jstestdriver.model.SessionManifest;
 import com.google.jstestdriver.runner.RunnerType;
 import com.google.jstestdriver.server.JstdTestCaseStore;
 import com.google.jstestdriver.server.handlers.CaptureHandler;
 import com.google.jstestdriver.servlet.fileset.BrowserFileCheck;
+import com.google.jstestdriver.servlet.fileset.ManifestUpload;
 import com.google.jstestdriver.servlet.fileset.TestCaseUpload;
 
 import junit.framework.TestCase;
 
 import org.joda.time.Instant;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 
@@ -65,7 +69,7 @@ public class FileSetRequestHandlerTest extends TestCase {
         createFile(fileThree, 1)), new LoadedFiles());
     browsers.addSlave(browser);
     Gson gson = new Gson();
-    final BrowserFileCheck browserFileCheck = new BrowserFileCheck(gson);
+    final BrowserFileCheck browserFileCheck = new BrowserFileCheck(gson, new JstdTestCaseStore());
 
     JstdTestCase testCaseToRun =
         new JstdTestCase(Lists.newArrayList(createFile(fileOne, 3), createFile(fileTwo, 1)),
@@ -77,6 +81,34 @@ public class FileSetRequestHandlerTest extends TestCase {
             browserFileCheck.handle(browser, gson.toJson(testCaseToRun)));
   }
 
+  public void testBrowserCheckComparesStoredDigests() throws Exception {
+    final String fileOne = "one.js";
+    final String fileTwo = "two.js";
+
+    final BrowserInfo browserInfo = new BrowserInfo();
+    browserInfo.setName("firefox");
+    final SlaveBrowser browser =
+        new SlaveBrowser(new MockTime(0), "1", browserInfo, 100, null, CaptureHandler.QUIRKS,
+            RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+    browser.addFiles(Lists.newArrayList(createFile(fileOne, 1).withDigest("one"),
+        createFile(fileTwo, 1).withDigest("two")), new LoadedFiles());
+    Gson gson = new Gson();
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    store.applyDelta(new JstdTestCaseDelta(
+        Lists.newArrayList(createFile(fileOne, 3).load("one", 3).withDigest("one"),
+            createFile(fileTwo, 3).load("two", 3).withDigest("changed")),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList()));
+    final BrowserFileCheck browserFileCheck = new BrowserFileCheck(gson, store);
+
+    JstdTestCase testCaseToRun =
+        new JstdTestCase(Lists.newArrayList(createFile(fileOne, 3), createFile(fileTwo, 3)),
+            Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "one");
+
+    BrowserFileSet fileSet = browserFileCheck.handle(browser, gson.toJson(testCaseToRun));
+    assertEquals(Lists.newArrayList(createFile(fileTwo, 3)), fileSet.getFilesToUpload());
+    assertEquals("changed", fileSet.getFilesToUpload().get(0).getDigest());
+  }
+
   public void testUploadFilesToServer() throws Exception {
     final String fileOne = "one.js";
     final String fileTwo = "two.js";
@@ -92,4 +124,32 @@ public class FileSetRequestHandlerTest extends TestCase {
 
     assertEquals(jstdTestCase, store.getCase(jstdTestCase.getId()));
   }
+
+  public void testBrowserCheckOfManifestTestCase() throws Exception {
+    final BrowserInfo browserInfo = new BrowserInfo();
+    browserInfo.setName("firefox");
+    final SlaveBrowser browser =
+        new SlaveBrowser(new MockTime(0), "1", browserInfo, 100, null, CaptureHandler.QUIRKS,
+            RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+    browser.addFiles(Lists.newArrayList(createFile("one.js", 1)), new LoadedFiles());
+    Gson gson = new Gson();
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    JstdTestCase testCase =
+        new JstdTestCase(Lists.newArrayList(createFile("one.js", 1), createFile("two.js", 1)),
+            Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "one");
+    SessionManifest.Reference reference =
+        new SessionManifest.Reference("one", SessionManifest.digest(gson, testCase));
+    final BrowserFileCheck browserFileCheck = new BrowserFileCheck(gson, store);
+
+    assertTrue(browserFileCheck.handle(browser, gson.toJson(reference)).isUnknownTestCase());
+
+    Collection<JstdTestCaseDelta> deltas = new ManifestUpload(store, gson).handle(null,
+        gson.toJson(new SessionManifest(Lists.newArrayList(testCase, testCase))));
+    assertEquals(1, deltas.size());
+    assertEquals(2, deltas.iterator().next().getDependencies().size());
+
+    BrowserFileSet fileSet = browserFileCheck.handle(browser, gson.toJson(reference));
+    assertFalse(fileSet.isUnknownTestCase());
+    assertEquals(Lists.newArrayList(createFile("two.js", 1)), fileSet.getFilesToUpload());
+  }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.jstestdriver.Response.ResponseType;
+import com.google.jstestdriver.hooks.FileInfoScheme;
+import com.google.jstestdriver.model.NullPathPrefix;
+import com.google.jstestdriver.util.NullStopWatch;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class FileUploaderTest extends TestCase {
+
+  private final Gson gson = new Gson();
+
+  public void testKeepsTheWindowOfChunksQueued() throws Exception {
+    BrowserServer server = new BrowserServer(ResponseType.FILE_LOAD_RESULT);
+    List<Response> responses = Lists.newArrayList();
+
+    uploader(server, 2).uploadToTheBrowser("1", new RecordingStream(responses),
+        files("a.js", "b.js", "c.js", "d.js", "e.js"), 2);
+
+    assertEquals(Arrays.asList(2, 2, 1), server.loaded);
+    assertEquals(2, server.maxQueued);
+    assertEquals(3, responses.size());
+  }
+
+  public void testWindowOfOneWaitsForEachChunk() throws Exception {
+    BrowserServer server = new BrowserServer(ResponseType.FILE_LOAD_RESULT);
+
+    uploader(server, 1).uploadToTheBrowser("1", new RecordingStream(Lists.<Response>newArrayList()),
+        files("a.js", "b.js", "c.js"), 1);
+
+    assertEquals(Arrays.asList(1, 1, 1), server.loaded);
+    assertEquals(1, server.maxQueued);
+  }
+
+  public void testStopsSendingChunksWhenTheBrowserPanics() throws Exception {
+    BrowserServer server = new BrowserServer(ResponseType.BROWSER_PANIC);
+
+    uploader(server, 2).uploadToTheBrowser("1", new RecordingStream(Lists.<Response>newArrayList()),
+        files("a.js", "b.js", "c.js", "d.js"), 1);
+
+    assertEquals(2, server.posted);
+  }
+
+  private FileUploader uploader(Server server, int uploadWindow) {
+    return new FileUploader(new NullStopWatch(), server, "http://localhost", null,
+        new DefaultFileFilter(), Sets.<FileInfoScheme>newHashSet(), new NullPathPrefix(),
+        uploadWindow);
+  }
+
+  private List<FileInfo> files(String... paths) {
+    List<FileInfo> files = Lists.newArrayList();
+    for (String path : paths) {
+      files.add(new FileInfo(path, 0, -1, false, false, null, path));
+    }
+    return files;
+  }
+
+  /** Runs the queued LOADTEST commands one at a time, in order, as a browser does. */
+  private class BrowserServer implements Server {
+    private final ResponseType lastResponse;
+    private final LinkedList<JsonCommand> queued = new LinkedList<JsonCommand>();
+    final List<Integer> loaded = Lists.newArrayList();
+    int maxQueued;
+    int posted;
+
+    BrowserServer(ResponseType lastResponse) {
+      this.lastResponse = lastResponse;
+    }
+
+    @Override
+    public String post(String url, Map<String, String> params) {
+      assertEquals("http://localhost/cmd", url);
+      posted++;
+      queued.add(gson.fromJson(params.get("data"), JsonCommand.class));
+      maxQueued = Math.max(maxQueued, queued.size());
+      return "";
+    }
+
+    @Override
+    public String fetch(String url) {
+      assertEquals("http://localhost/cmd?id=1&batch", url);
+      JsonCommand command = queued.removeFirst();
+      loaded.add(gson.fromJson(command.getParameters().get(0), FileSource[].class).length);
+      Response response = new Response();
+      response.setType(lastResponse.name());
+      response.setResponse("{}");
+      return gson.toJson(Arrays.asList(new StreamMessage(true, response)));
+    }
+
+    @Override
+    public String postJson(String url, JsonElement json) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String startSession(String baseUrl, String id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void stopSession(String baseUrl, String id, String sessionId) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class RecordingStream implements ResponseStream {
+    private final List<Response> responses;
+
+    RecordingStream(List<Response> responses) {
+      this.responses = responses;
+    }
+
+    @Override
+    public void stream(Response response) {
+      responses.add(response);
+    }
+
+    @Override
+    public void finish() {
+    }
+  }
+}
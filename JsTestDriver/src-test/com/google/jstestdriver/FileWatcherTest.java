@@ -16,9 +16,14 @@
 package com.google.jstestdriver;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -86,4 +91,44 @@ public class FileWatcherTest extends TestCase {
 
     assertTrue(modifiedFile.startsWith("file1") && modifiedFile.endsWith("watcher"));
   }
+
+  public void testPicksUpChangesWithinTheTimestampResolution() throws Exception {
+    File file = File.createTempFile("file", "watcher");
+    file.deleteOnExit();
+    writeFile(file, "one");
+    long lastModified = file.lastModified();
+    Set<String> defaultFiles = new LinkedHashSet<String>();
+    defaultFiles.add(file.getAbsolutePath());
+    FileWatcher watcher = new FileWatcher(null, defaultFiles);
+
+    writeFile(file, "two");
+    file.setLastModified(lastModified);
+
+    assertEquals(1, watcher.getAllFiles().size());
+    assertEquals(0, watcher.getAllFiles().size());
+  }
+
+  public void testPicksUpChangesSinceTheSeededTimestamps() throws Exception {
+    File changed = File.createTempFile("changed", "watcher");
+    changed.deleteOnExit();
+    File unchanged = File.createTempFile("unchanged", "watcher");
+    unchanged.deleteOnExit();
+    unchanged.setLastModified(unchanged.lastModified() - 10000);
+    Map<String, Long> timestamps = new LinkedHashMap<String, Long>();
+    timestamps.put(changed.getAbsolutePath(), changed.lastModified() - 10000);
+    timestamps.put(unchanged.getAbsolutePath(), unchanged.lastModified());
+    FileWatcher watcher = new FileWatcher(null, timestamps);
+
+    assertEquals(Collections.singletonList(changed.getAbsolutePath()), watcher.getAllFiles());
+    assertEquals(0, watcher.getAllFiles().size());
+  }
+
+  private void writeFile(File file, String contents) throws IOException {
+    FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(contents);
+    } finally {
+      writer.close();
+    }
+  }
 }
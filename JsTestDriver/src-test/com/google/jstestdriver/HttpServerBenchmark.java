@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver;
+
+import com.google.jstestdriver.util.NullStopWatch;
+import com.google.jstestdriver.util.TracingStopWatch;
+
+import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.ServletHolder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Compares {@link HttpServer} against {@link PooledHttpServer} by polling a
+ * local Jetty server the way the client polls /cmd.
+ *
+ * Run with: ant benchmark -Dbenchmark=com.google.jstestdriver.HttpServerBenchmark
+ */
+public class HttpServerBenchmark {
+  private static final int PORT = 4227;
+  private static final int WARMUP = 500;
+  private static final int ITERATIONS = 5000;
+  private static final String URL = "http://localhost:" + PORT + "/cmd";
+
+  public static void main(String[] args) throws Exception {
+    org.mortbay.jetty.Server jetty = new org.mortbay.jetty.Server(PORT);
+    Context context = new Context(jetty, "/");
+    context.addServlet(new ServletHolder(new ResponseServlet()), "/*");
+    jetty.start();
+    try {
+      run("HttpServer", new HttpServer(new NullStopWatch()));
+      TracingStopWatch stopWatch = new TracingStopWatch(null);
+      run("PooledHttpServer",
+          new PooledHttpServer(stopWatch, PooledHttpServer.SPARE_CONNECTIONS));
+      stopWatch.print(new PrintWriter(System.out));
+    } finally {
+      jetty.stop();
+    }
+  }
+
+  private static void run(String name, Server server) {
+    Map<String, String> params = new LinkedHashMap<String, String>();
+    params.put("id", "1");
+    params.put("data", "{\"command\":\"runAllTests\",\"parameters\":[\"false\",\"\"]}");
+    for (int i = 0; i < WARMUP; i++) {
+      server.fetch(URL + "?id=1");
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      server.fetch(URL + "?id=1");
+      server.post(URL, params);
+    }
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format("%-16s %d fetch+post pairs in %dms (%.1fus per call)",
+        name, ITERATIONS, elapsed / 1000000, elapsed / (ITERATIONS * 2 * 1000.0)));
+  }
+
+  /** Answers with a payload the size of a typical StreamMessage. */
+  private static class ResponseServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final String RESPONSE;
+    static {
+      StringBuilder sb = new StringBuilder("{\"response\":{\"response\":\"");
+      for (int i = 0; i < 2000; i++) {
+        sb.append('x');
+      }
+      RESPONSE = sb.append("\"},\"last\":true}").toString();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      resp.getWriter().write(RESPONSE);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      req.getParameter("data");
+      resp.getWriter().write("OK");
+    }
+  }
+}
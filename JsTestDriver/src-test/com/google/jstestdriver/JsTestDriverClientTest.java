@@ -30,6 +30,7 @@ import com.google.jstestdriver.browser.BrowserFileSet;
 import com.google.jstestdriver.hooks.FileInfoScheme;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.NullPathPrefix;
+import com.google.jstestdriver.model.SessionManifest;
 import com.google.jstestdriver.util.NullStopWatch;
 
 /**
@@ -101,7 +102,7 @@ public class JsTestDriverClientTest extends TestCase {
     server.expect("http://localhost/fileSet?POST?{data=[], action=serverFileCheck}", "[]");
     server.expect("http://localhost/cmd?POST?{data={\"command\":\"execute\","
         + "\"parameters\":[\"cmd\"]}, id=1}", "");
-    server.expect("http://localhost/cmd?id=1", "{\"response\":"
+    server.expect("http://localhost/cmd?id=1&batch", "{\"response\":"
         + "{\"response\":\"1\",\"browser\":{\"name\":\"browser1\"},"
         + "\"error\":\"error1\",\"executionTime\":3},\"last\":true}");
 
@@ -109,7 +110,7 @@ public class JsTestDriverClientTest extends TestCase {
     server.expect("http://localhost/fileSet?POST?{id=2, fileSet=[]}", "");
     server.expect("http://localhost/cmd?POST?{data={\"command\":\"execute\","
         + "\"parameters\":[\"cmd\"]}, id=2}", "");
-    server.expect("http://localhost/cmd?id=2", "{\"response\":"
+    server.expect("http://localhost/cmd?id=2&batch", "{\"response\":"
         + "{\"response\":\"2\",\"browser\":{\"name\":\"browser2\"},"
         + "\"error\":\"error2\",\"executionTime\":6},\"last\":true}");
 
@@ -121,7 +122,8 @@ public class JsTestDriverClientTest extends TestCase {
             null,
             stopWatch,
             ImmutableSet.<FileInfoScheme>of(new HttpFileInfoScheme()),
-            new NullPathPrefix());
+            new NullPathPrefix(),
+            FileUploader.UPLOAD_WINDOW);
     JsTestDriverClient client = new JsTestDriverClientImpl(commandTaskFactory, "http://localhost",
         server, false, null, new NullStopWatch());
     FakeResponseStream stream = new FakeResponseStream();
@@ -161,7 +163,8 @@ public class JsTestDriverClientTest extends TestCase {
         },
         stopWatch,
         ImmutableSet.<FileInfoScheme>of(new HttpFileInfoScheme()),
-        new NullPathPrefix());
+        new NullPathPrefix(),
+        FileUploader.UPLOAD_WINDOW);
     JsTestDriverClient client = new JsTestDriverClientImpl(commandTaskFactory, "http://localhost",
         server, false, null, new NullStopWatch());
     Collection<BrowserInfo> browsersCollection = client.listBrowsers();
@@ -192,7 +195,7 @@ public class JsTestDriverClientTest extends TestCase {
 
     server.expect("http://localhost/heartbeat?id=" + id, "OK");
     server.expect(
-        "http://localhost/fileSet?POST?{id=" + id + ", data=" + gson.toJson(testCase) + ", action=browserFileCheck}",
+        "http://localhost/fileSet?POST?{id=" + id + ", data=" + reference(testCase) + ", action=browserFileCheck}",
         gson.toJson(new BrowserFileSet()));
 
     server.expect("http://localhost/fileSet?POST?{data=[], action=serverFileCheck}", "[]");
@@ -204,7 +207,7 @@ public class JsTestDriverClientTest extends TestCase {
 
     server.expect("http://localhost/cmd?POST?{data={\"command\":\"runTests\","
         + "\"parameters\":[\"[\\\"all\\\"]\",\"false\",\"\"]}, id=" + id + "}", "");
-    server.expect("http://localhost/cmd?id=1", "{\"response\":{\"response\":\"PASSED\","
+    server.expect("http://localhost/cmd?id=1&batch", "{\"response\":{\"response\":\"PASSED\","
         + "\"browser\":{\"name\":\"browser\"},\"error\":\"error2\",\"executionTime\":123},"
         + "\"last\":true}");
     final NullStopWatch stopWatch = new NullStopWatch();
@@ -214,7 +217,8 @@ public class JsTestDriverClientTest extends TestCase {
           public HeartBeatManager get() {
             return new HeartBeatManagerStub();
           }
-        }, stopWatch, ImmutableSet.<FileInfoScheme>of(new HttpFileInfoScheme()), new NullPathPrefix());
+        }, stopWatch, ImmutableSet.<FileInfoScheme>of(new HttpFileInfoScheme()), new NullPathPrefix(),
+        FileUploader.UPLOAD_WINDOW);
     JsTestDriverClient client = new JsTestDriverClientImpl(commandTaskFactory, "http://localhost",
         server, false, null, new NullStopWatch());
     FakeResponseStream stream = new FakeResponseStream();
@@ -231,7 +235,7 @@ public class JsTestDriverClientTest extends TestCase {
     MockServer server = new MockServer();
 
     server.expect("http://localhost/heartbeat?id=1", "OK");
-    server.expect("http://localhost/fileSet?POST?{id=1, data=" + gson.toJson(testCase) + ", action=browserFileCheck}",
+    server.expect("http://localhost/fileSet?POST?{id=1, data=" + reference(testCase) + ", action=browserFileCheck}",
         gson.toJson(new BrowserFileSet()));
     server.expect("http://localhost/fileSet?POST?{data=[], action=serverFileCheck}", "[]");
     server.expect(
@@ -241,7 +245,7 @@ public class JsTestDriverClientTest extends TestCase {
     browserInfo.setId(Long.parseLong(id));
     browserInfo.setUploadSize(10);
     server.expect("http://localhost/cmd?listBrowsers", gson.toJson(Lists.newArrayList(browserInfo)));
-    server.expect("http://localhost/cmd?id=1", "{\"response\":{\"response\":\"PASSED\","
+    server.expect("http://localhost/cmd?id=1&batch", "{\"response\":{\"response\":\"PASSED\","
         + "\"browser\":{\"name\":\"browser\"},\"error\":\"error2\",\"executionTime\":123},"
         + "\"last\":true}");
     final NullStopWatch stopWatch = new NullStopWatch();
@@ -258,7 +262,8 @@ public class JsTestDriverClientTest extends TestCase {
         },
         stopWatch,
         schemes,
-        new NullPathPrefix());
+        new NullPathPrefix(),
+        FileUploader.UPLOAD_WINDOW);
     JsTestDriverClient client = new JsTestDriverClientImpl(commandTaskFactory, "http://localhost",
         server, false, null, new NullStopWatch());
     FakeResponseStream stream = new FakeResponseStream();
@@ -272,4 +277,9 @@ public class JsTestDriverClientTest extends TestCase {
 
     assertEquals("PASSED", stream.getResponse().getResponse());
   }
+
+  private String reference(JstdTestCase testCase) {
+    return gson.toJson(
+        new SessionManifest.Reference(testCase.getId(), SessionManifest.digest(gson, testCase)));
+  }
 }
@@ -65,6 +65,8 @@ public class JsTestDriverServerTest extends TestCase {
         Sets.newHashSet(listener),
         Collections.<FileInfoScheme>emptySet(),
         ExecutionType.INTERACTIVE,
+        false,
+        false,
         false);
     return server;
   }
@@ -134,7 +136,8 @@ public class JsTestDriverServerTest extends TestCase {
             null,
             stopWatch,
            ImmutableSet.<FileInfoScheme>of(new HttpFileInfoScheme()),
-           new NullPathPrefix()),
+           new NullPathPrefix(),
+           FileUploader.UPLOAD_WINDOW),
         "http://localhost:4224",
         new HttpServer(new NullStopWatch()),
         false,
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver;
+
+import com.google.gson.JsonPrimitive;
+import com.google.jstestdriver.util.NullStopWatch;
+import com.google.jstestdriver.util.TracingStopWatch;
+
+import junit.framework.TestCase;
+
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.ServletHolder;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class PooledHttpServerTest extends TestCase {
+
+  private Server jetty;
+
+  @Override
+  protected void setUp() throws Exception {
+    jetty = new Server(4226);
+    Context context = new Context(jetty, "/");
+    context.addServlet(new ServletHolder(new EchoServlet()), "/*");
+    jetty.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    jetty.stop();
+  }
+
+  public void testFetch() throws Exception {
+    TracingStopWatch stopWatch = new TracingStopWatch(null);
+    PooledHttpServer server = new PooledHttpServer(stopWatch, 2);
+    assertEquals("GET id=1", server.fetch("http://localhost:4226/cmd?id=1"));
+    assertEquals("GET id=2", server.fetch("http://localhost:4226/cmd?id=2"));
+    StringWriter timings = new StringWriter();
+    stopWatch.print(timings);
+    assertTrue(timings.toString(), timings.toString().contains("2 calls"));
+  }
+
+  public void testMaxConnections() throws Exception {
+    assertEquals(PooledHttpServer.SPARE_CONNECTIONS,
+        PooledHttpServer.getMaxConnections(0, 0, 0));
+    assertEquals(6 + PooledHttpServer.SPARE_CONNECTIONS,
+        PooledHttpServer.getMaxConnections(2, 3, 0));
+    assertEquals(5, PooledHttpServer.getMaxConnections(2, 3, 5));
+  }
+
+  public void testPost() throws Exception {
+    PooledHttpServer server = new PooledHttpServer(new NullStopWatch(), 2);
+    Map<String, String> params = new LinkedHashMap<String, String>();
+    params.put("data", "1+3");
+    assertEquals("POST data=1+3", server.post("http://localhost:4226/cmd", params));
+    assertEquals("POST \"json\"",
+        server.postJson("http://localhost:4226/cmd", new JsonPrimitive("json")));
+  }
+
+  public void testErrorResponse() throws Exception {
+    PooledHttpServer server = new PooledHttpServer(new NullStopWatch(), 2);
+    try {
+      server.fetch("http://localhost:4226/missing");
+      fail("expected an exception");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    // the connection is returned to the pool after an error.
+    assertEquals("GET id=3", server.fetch("http://localhost:4226/cmd?id=3"));
+  }
+
+  private static class EchoServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      if (req.getRequestURI().equals("/missing")) {
+        resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+        return;
+      }
+      resp.getWriter().write("GET " + req.getQueryString());
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      String data = req.getParameter("data");
+      if (data == null) {
+        data = req.getReader().readLine();
+        resp.getWriter().write("POST " + data);
+      } else {
+        resp.getWriter().write("POST data=" + data);
+      }
+    }
+  }
+}
@@ -17,6 +17,8 @@
 package com.google.jstestdriver;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -24,6 +26,7 @@ import java.util.List;
 import junit.framework.TestCase;
 
 import com.google.jstestdriver.hooks.FileLoadPostProcessor;
+import com.google.jstestdriver.hooks.OrderedFileLoadPostProcessor;
 
 public class ProcessingFileLoaderTest extends TestCase {
 
@@ -136,6 +139,105 @@ public class ProcessingFileLoaderTest extends TestCase {
     assertEquals(info.isServeOnly(), actual.get(0).isServeOnly());
   }
 
+  public void testLoadFilesComputesDigestOfContents() throws Exception {
+    FileInfo one = new FileInfo("one.js", 1, -1, false, false, null, "one.js");
+    FileInfo two = new FileInfo("two.js", 2, -1, false, false, null, "two.js");
+    FileInfo three = new FileInfo("three.js", 3, -1, false, false, null, "three.js");
+    MockFileReader reader = new MockFileReader()
+        .expected("one.js", "var a = 1;")
+        .expected("two.js", "var a = 1;")
+        .expected("three.js", "var a = 2;");
+    List<FileInfo> actual = new ProcessingFileLoader(reader,
+        Collections.<FileLoadPostProcessor>emptySet(),
+        new com.google.jstestdriver.util.NullStopWatch()).loadFiles(
+            Arrays.asList(one, two, three), false);
+
+    assertEquals(40, actual.get(0).getDigest().length());
+    assertEquals(actual.get(0).getDigest(), actual.get(1).getDigest());
+    assertFalse(actual.get(0).getDigest().equals(actual.get(2).getDigest()));
+  }
+
+  public void testParallelLoadPreservesOrder() throws Exception {
+    List<FileInfo> files = new ArrayList<FileInfo>();
+    MockFileReader reader = new MockFileReader();
+    for (int i = 0; i < 50; i++) {
+      files.add(new FileInfo(i + ".js", i, -1, false, false, null, i + ".js"));
+      reader.expected(i + ".js", "var a = " + i + ";");
+    }
+    FileLoadPostProcessor processor = new FileLoadPostProcessor() {
+      public FileInfo process(FileInfo file) {
+        // earlier files take longer, so they finish out of order.
+        try {
+          Thread.sleep(50 - file.getTimestamp());
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return file.load(file.getData() + "//processed", file.getTimestamp());
+      }
+    };
+    List<FileInfo> actual = new ProcessingFileLoader(reader,
+        Collections.singleton(processor),
+        new com.google.jstestdriver.util.NullStopWatch(), 4).loadFiles(files, false);
+
+    assertEquals(files.size(), actual.size());
+    for (int i = 0; i < files.size(); i++) {
+      assertEquals(i + ".js", actual.get(i).getFilePath());
+      assertEquals("var a = " + i + ";//processed", actual.get(i).getData());
+    }
+  }
+
+  public void testOrderedPostProcessorIsPreparedInFileOrder() throws Exception {
+    List<FileInfo> files = new ArrayList<FileInfo>();
+    MockFileReader reader = new MockFileReader();
+    for (int i = 0; i < 20; i++) {
+      files.add(new FileInfo(i + ".js", i, -1, false, false, null, i + ".js"));
+      reader.expected(i + ".js", "var a = " + i + ";");
+    }
+    final List<String> prepared = Collections.synchronizedList(new ArrayList<String>());
+    OrderedFileLoadPostProcessor processor = new OrderedFileLoadPostProcessor() {
+      public void prepare(FileInfo file) {
+        prepared.add(file.getFilePath());
+      }
+
+      public FileInfo process(FileInfo file) {
+        assertEquals(20, prepared.size());
+        return file;
+      }
+    };
+    new ProcessingFileLoader(reader,
+        Collections.<FileLoadPostProcessor>singleton(processor),
+        new com.google.jstestdriver.util.NullStopWatch(), 4).loadFiles(files, false);
+
+    for (int i = 0; i < files.size(); i++) {
+      assertEquals(i + ".js", prepared.get(i));
+    }
+  }
+
+  public void testParallelLoadPropagatesFailures() throws Exception {
+    final RuntimeException failure = new RuntimeException("bad file");
+    FileLoadPostProcessor processor = new FileLoadPostProcessor() {
+      public FileInfo process(FileInfo file) {
+        if (file.getFilePath().equals("two.js")) {
+          throw failure;
+        }
+        return file;
+      }
+    };
+    MockFileReader reader = new MockFileReader()
+        .expected("one.js", "1")
+        .expected("two.js", "2");
+    try {
+      new ProcessingFileLoader(reader,
+          Collections.singleton(processor),
+          new com.google.jstestdriver.util.NullStopWatch(), 2).loadFiles(Arrays.asList(
+              new FileInfo("one.js", 1, -1, false, false, null, "one.js"),
+              new FileInfo("two.js", 2, -1, false, false, null, "two.js")), false);
+      fail("expected the post processing failure");
+    } catch (RuntimeException e) {
+      assertSame(failure, e);
+    }
+  }
+
   public void testRemoteLoadFiles() throws Exception {
     final FileInfo info = new FileInfo("http://local/foo.js", -1, -1, false, false, "", "http://local/foo.js");
     final boolean shouldReset = false;
@@ -144,6 +246,7 @@ public class ProcessingFileLoaderTest extends TestCase {
         new com.google.jstestdriver.util.NullStopWatch())
             .loadFiles(Collections.singleton(info), shouldReset);
 
+    assertNull(actual.get(0).getDigest());
     assertEquals("", actual.get(0).getData());
     assertEquals(info.getFilePath(), actual.get(0).getFilePath());
     assertEquals(info.getTimestamp(), actual.get(0).getTimestamp());
@@ -19,6 +19,10 @@ import junit.framework.TestCase;
 
 import org.joda.time.Instant;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import com.google.common.collect.Lists;
 import com.google.jstestdriver.SlaveBrowser.BrowserState;
 import com.google.jstestdriver.model.NullPathPrefix;
@@ -57,6 +61,81 @@ public class SlaveBrowserTest extends TestCase {
     assertEquals(5.0, browser.getSecondsSinceLastHeartbeat());
   }
 
+  public void testGetResponsesStopsAtLastResponse() throws Exception {
+    BrowserInfo browserInfo = new BrowserInfo();
+    SlaveBrowser browser = new SlaveBrowser(new MockTime(0),
+        "1",
+        browserInfo,
+        SlaveBrowser.TIMEOUT,
+        null,
+        CaptureHandler.QUIRKS,
+        RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+
+    browser.addResponse(new Response("LOG", "first", browserInfo, "", 0), false);
+    browser.addResponse(new Response("TEST_RESULT", "second", browserInfo, "", 0), true);
+    browser.addResponse(new Response("TEST_RESULT", "next command", browserInfo, "", 0), true);
+
+    List<StreamMessage> messages = browser.getResponses(0, TimeUnit.SECONDS);
+    assertEquals(2, messages.size());
+    assertEquals("first", messages.get(0).getResponse().getResponse());
+    assertTrue(messages.get(1).isLast());
+    assertEquals("next command",
+        browser.getResponses(0, TimeUnit.SECONDS).get(0).getResponse().getResponse());
+    assertTrue(browser.getResponses(0, TimeUnit.SECONDS).isEmpty());
+  }
+
+  public void testCommandListenerRunsOnceWhenACommandIsCreated() throws Exception {
+    SlaveBrowser browser = new SlaveBrowser(new MockTime(0),
+        "1",
+        new BrowserInfo(),
+        SlaveBrowser.TIMEOUT,
+        null,
+        CaptureHandler.QUIRKS,
+        RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+    CountingListener listener = new CountingListener();
+
+    assertNull(browser.dequeueCommandOrListen(listener));
+    browser.createCommand("first");
+    browser.createCommand("second");
+    assertEquals(1, listener.count);
+
+    assertEquals("first", browser.dequeueCommandOrListen(listener).getCommand());
+    assertTrue(browser.isCommandRunning());
+    assertEquals("second", browser.dequeueCommandOrListen(listener).getCommand());
+    assertEquals(1, listener.count);
+  }
+
+  public void testRemovedResponseListenerIsNotRun() throws Exception {
+    BrowserInfo browserInfo = new BrowserInfo();
+    SlaveBrowser browser = new SlaveBrowser(new MockTime(0),
+        "1",
+        browserInfo,
+        SlaveBrowser.TIMEOUT,
+        null,
+        CaptureHandler.QUIRKS,
+        RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+    CountingListener removed = new CountingListener();
+    CountingListener listener = new CountingListener();
+
+    assertTrue(browser.getResponsesOrListen(removed).isEmpty());
+    browser.removeResponseListener(removed);
+    assertTrue(browser.getResponsesOrListen(listener).isEmpty());
+    browser.addResponse(new Response("LOG", "first", browserInfo, "", 0), false);
+    browser.addResponse(new Response("TEST_RESULT", "second", browserInfo, "", 0), true);
+
+    assertEquals(0, removed.count);
+    assertEquals(1, listener.count);
+    assertEquals(2, browser.getResponsesOrListen(listener).size());
+  }
+
+  private static class CountingListener implements Runnable {
+    int count;
+
+    public void run() {
+      count++;
+    }
+  }
+
   public void testRedirectQuirksUrl() throws Exception {
     SlaveBrowser browser = new SlaveBrowser(null,
         "1",
@@ -161,4 +240,24 @@ public class SlaveBrowserTest extends TestCase {
     assertTrue(browser.getFileSet().contains(fileSource.toFileInfo(null)));
     assertTrue(browser.hasFileLoadErrors());
   }
+
+  public void testAddFilesReplacesLoadedVersion() throws Exception {
+    SlaveBrowser browser = new SlaveBrowser(new MockTime(0),
+        "1",
+        new BrowserInfo(),
+        SlaveBrowser.TIMEOUT,
+        null,
+        CaptureHandler.QUIRKS,
+        RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+    FileInfo one = new FileInfo("/one.js", 1, -1, false, false, null, "one.js");
+    FileInfo two = new FileInfo("/two.js", 1, -1, false, false, null, "two.js");
+    FileInfo newOne = new FileInfo("/one.js", 2, -1, false, false, null, "one.js");
+    browser.addFiles(Lists.newArrayList(one, two), new LoadedFiles());
+    browser.addFiles(Lists.newArrayList(newOne), new LoadedFiles());
+
+    Map<String, FileInfo> loadedFiles = browser.getLoadedFiles();
+    assertEquals(Lists.newArrayList("/two.js", "/one.js"),
+        Lists.newArrayList(loadedFiles.keySet()));
+    assertEquals(2, loadedFiles.get("/one.js").getTimestamp());
+  }
 }
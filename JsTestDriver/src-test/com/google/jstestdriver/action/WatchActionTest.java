@@ -0,0 +1,127 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.action;
+
+import com.google.common.collect.Lists;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.ResponseStream;
+import com.google.jstestdriver.browser.BrowserActionExecutorAction;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.RunData;
+import com.google.jstestdriver.util.Sleeper;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+public class WatchActionTest extends TestCase {
+
+  private final List<RunData> uploads = Lists.newArrayList();
+  private final List<RunData> runs = Lists.newArrayList();
+
+  public void testRerunsTestCasesAffectedByChanges() throws Exception {
+    final File source = createFile("source");
+    File other = createFile("other");
+    FileInfo sourceInfo = fileInfo(source);
+    JstdTestCase affected = new JstdTestCase(Lists.newArrayList(sourceInfo),
+        Lists.newArrayList(fileInfo(createFile("sourceTest"))),
+        Collections.<FileInfo>emptyList(), "affected");
+    JstdTestCase unaffected = new JstdTestCase(Lists.newArrayList(fileInfo(other)),
+        Lists.newArrayList(fileInfo(createFile("otherTest"))),
+        Collections.<FileInfo>emptyList(), "unaffected");
+    final long modified = source.lastModified() + 2000;
+    Sleeper sleeper = new Sleeper() {
+      int sleeps = 0;
+
+      @Override
+      public void sleep(long milliseconds) throws InterruptedException {
+        sleeps++;
+        if (sleeps == 1) {
+          source.setLastModified(modified);
+        } else if (sleeps == 4) {
+          throw new InterruptedException();
+        }
+      }
+    };
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RecordingBrowserActionExecutorAction browserActionsRunner =
+        new RecordingBrowserActionExecutorAction();
+    WatchAction action = new WatchAction(new RecordingUploadAction(),
+        browserActionsRunner, sleeper, new PrintStream(out));
+
+    RunData result = action.run(new RunData(Collections.<ResponseStream>emptyList(),
+        Lists.newArrayList(affected, unaffected), null));
+
+    assertEquals(1, runs.size());
+    assertEquals(1, uploads.size());
+    List<JstdTestCase> rerun = runs.get(0).getTestCases();
+    assertEquals(1, rerun.size());
+    assertEquals("affected", rerun.get(0).getId());
+    FileInfo updated = rerun.get(0).getDependencies().get(0);
+    assertEquals(sourceInfo.getFilePath(), updated.getFilePath());
+    assertTrue(updated.getTimestamp() > sourceInfo.getTimestamp());
+    assertEquals(updated.getTimestamp(),
+        result.getTestCases().get(0).getDependencies().get(0).getTimestamp());
+    assertTrue(out.toString(), out.toString().contains("running 1 of 2 test cases"));
+    assertTrue(browserActionsRunner.stopped);
+  }
+
+  private File createFile(String prefix) throws Exception {
+    File file = File.createTempFile(prefix, ".js");
+    file.deleteOnExit();
+    return file;
+  }
+
+  private FileInfo fileInfo(File file) {
+    return new FileInfo(file.getAbsolutePath(), file.lastModified(), file.length(), false, false,
+        null, file.getName());
+  }
+
+  private class RecordingUploadAction extends UploadAction {
+    RecordingUploadAction() {
+      super(null);
+    }
+
+    @Override
+    public RunData run(RunData runData) {
+      uploads.add(runData);
+      return runData;
+    }
+  }
+
+  private class RecordingBrowserActionExecutorAction extends BrowserActionExecutorAction {
+    boolean stopped;
+
+    RecordingBrowserActionExecutorAction() {
+      super(null, null, null, null, null, 0, null, null, null, null, null, true);
+    }
+
+    @Override
+    public RunData run(RunData runData) {
+      runs.add(runData);
+      return runData;
+    }
+
+    @Override
+    public void stopBrowsers() {
+      stopped = true;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
+import com.google.jstestdriver.HeartBeatManager;
+import com.google.jstestdriver.Server;
+import com.google.jstestdriver.util.Sleeper;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class BaseBrowserSessionManagerTest extends TestCase {
+
+  private final SessionServer server = new SessionServer();
+  private final List<Long> sleeps = Lists.newArrayList();
+  private final BaseBrowserSessionManager manager = new BaseBrowserSessionManager(server,
+      "http://localhost", EasyMock.createNiceMock(HeartBeatManager.class), new Sleeper() {
+        @Override
+        public void sleep(long milliseconds) {
+          sleeps.add(milliseconds);
+        }
+      });
+
+  public void testLeasesFirstFreeBrowser() throws Exception {
+    server.respond("1", "FAILED");
+    server.respond("2", "session");
+
+    BrowserSessionManager.Lease lease = manager.leaseSession(Lists.newArrayList("1", "2"));
+
+    assertEquals("2", lease.getBrowserId());
+    assertEquals("session", lease.getSessionId());
+    assertTrue(sleeps.isEmpty());
+  }
+
+  public void testWaitsWhileAllBrowsersAreInUse() throws Exception {
+    server.respond("1", "FAILED");
+    server.respond("2", "FAILED");
+    server.respond("1", "session");
+
+    BrowserSessionManager.Lease lease = manager.leaseSession(Lists.newArrayList("1", "2"));
+
+    assertEquals("1", lease.getBrowserId());
+    assertEquals(1, sleeps.size());
+  }
+
+  public void testSkipsBrowsersThatAreGone() throws Exception {
+    server.respond("2", "session");
+
+    assertEquals("2", manager.leaseSession(Lists.newArrayList("1", "2")).getBrowserId());
+    try {
+      manager.leaseSession(Lists.newArrayList("1"));
+      fail("Expected the lease to fail");
+    } catch (RuntimeException e) {
+      assertTrue(sleeps.isEmpty());
+    }
+  }
+
+  /** Answers session starts in order, failing for browsers without an answer. */
+  private static class SessionServer implements Server {
+    private final List<String[]> responses = new LinkedList<String[]>();
+
+    void respond(String browserId, String sessionId) {
+      responses.add(new String[] {browserId, sessionId});
+    }
+
+    @Override
+    public String startSession(String baseUrl, String id) {
+      for (String[] response : responses) {
+        if (response[0].equals(id)) {
+          responses.remove(response);
+          return response[1];
+        }
+      }
+      throw new RuntimeException("No browser " + id);
+    }
+
+    @Override
+    public void stopSession(String baseUrl, String id, String sessionId) {
+    }
+
+    @Override
+    public String fetch(String url) {
+      return null;
+    }
+
+    @Override
+    public String post(String url, Map<String, String> params) {
+      return null;
+    }
+
+    @Override
+    public String postJson(String url, JsonElement json) {
+      return null;
+    }
+  }
+}
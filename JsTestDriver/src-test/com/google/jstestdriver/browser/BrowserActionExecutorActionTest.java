@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import static org.easymock.EasyMock.expect;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.jstestdriver.BrowserAction;
+import com.google.jstestdriver.BrowserInfo;
+import com.google.jstestdriver.JsTestDriverClient;
+import com.google.jstestdriver.ProcessFactory;
+import com.google.jstestdriver.ResponseStream;
+import com.google.jstestdriver.browser.BrowserControl.BrowserControlFactory;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.RunData;
+import com.google.jstestdriver.util.NullStopWatch;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BrowserActionExecutorActionTest extends TestCase {
+
+  private final List<String> captured = Collections.synchronizedList(Lists.<String>newArrayList());
+  private final List<String> started = Lists.newArrayList();
+  private final List<String> stopped = Lists.newArrayList();
+  private int nextId = 1;
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  public void testWatchModeKeepsRunnerBrowsersBetweenRuns() throws Exception {
+    BrowserActionExecutorAction action = createAction(true);
+
+    action.run(runData());
+    action.run(runData());
+
+    assertEquals(Lists.newArrayList("1"), started);
+    assertTrue(stopped.isEmpty());
+
+    action.stopBrowsers();
+    assertEquals(Lists.newArrayList("1"), stopped);
+  }
+
+  public void testWatchModeRestartsKeptBrowsersThatWentAway() throws Exception {
+    BrowserActionExecutorAction action = createAction(true);
+    action.run(runData());
+    captured.clear();
+
+    action.run(runData());
+
+    assertEquals(Lists.newArrayList("1", "2"), started);
+    assertEquals(Lists.newArrayList("1"), stopped);
+  }
+
+  public void testStopsRunnerBrowsersAfterEachRun() throws Exception {
+    BrowserActionExecutorAction action = createAction(false);
+
+    action.run(runData());
+
+    assertEquals(Lists.newArrayList("1"), started);
+    assertEquals(Lists.newArrayList("1"), stopped);
+  }
+
+  private RunData runData() {
+    return new RunData(Collections.<ResponseStream>emptyList(),
+        Collections.<JstdTestCase>emptyList(), null);
+  }
+
+  private BrowserActionExecutorAction createAction(boolean watch) {
+    JsTestDriverClient client = EasyMock.createNiceMock(JsTestDriverClient.class);
+    expect(client.listBrowsers()).andStubAnswer(new IAnswer<Collection<BrowserInfo>>() {
+      public Collection<BrowserInfo> answer() {
+        List<BrowserInfo> browsers = Lists.newArrayList();
+        for (String id : captured) {
+          BrowserInfo info = new BrowserInfo();
+          info.setId(Long.parseLong(id));
+          browsers.add(info);
+        }
+        return browsers;
+      }
+    });
+    expect(client.getNextBrowserId()).andStubAnswer(new IAnswer<String>() {
+      public String answer() {
+        return String.valueOf(nextId++);
+      }
+    });
+    EasyMock.replay(client);
+    CommandLineBrowserRunner runner =
+        new CommandLineBrowserRunner("browser", "", new ProcessFactory() {
+          @Override
+          public Process start(String... args) throws IOException {
+            return null;
+          }
+        }, "linux");
+    return new BrowserActionExecutorAction(client,
+        Collections.<BrowserAction>emptyList(),
+        executor,
+        Sets.<BrowserRunner>newHashSet(runner),
+        "http://localhost",
+        10,
+        new NullStopWatch(),
+        new BrowserSessionManager() {
+          public String startSession(String browserId) {
+            return "session";
+          }
+
+          public void stopSession(String sessionId, String browserId) {
+          }
+
+          public Lease leaseSession(List<String> browserIds) {
+            throw new UnsupportedOperationException();
+          }
+        },
+        new BrowserControlFactory() {
+          @Override
+          public BrowserControl create(BrowserRunner runner, String serverAddress,
+              List<JstdTestCase> testCases) {
+            return new BrowserControl(runner, serverAddress, null, null, testCases, 0) {
+              private String browserId;
+
+              @Override
+              public String captureBrowser(String browserId) {
+                this.browserId = browserId;
+                started.add(browserId);
+                captured.add(browserId);
+                return browserId;
+              }
+
+              @Override
+              public void stopBrowser() {
+                stopped.add(browserId);
+                captured.remove(browserId);
+              }
+            };
+          }
+        },
+        new TestCaseSharder(false, new TestCaseTimings((File) null)),
+        new TestCaseTimings((File) null),
+        watch);
+  }
+}
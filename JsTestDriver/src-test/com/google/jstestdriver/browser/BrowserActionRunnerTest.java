@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+
+import com.google.common.collect.Lists;
+import com.google.jstestdriver.BrowserAction;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.JsTestDriverClient;
+import com.google.jstestdriver.ResponseStream;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.RunData;
+import com.google.jstestdriver.util.NullStopWatch;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.IMocksControl;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+public class BrowserActionRunnerTest extends TestCase {
+
+  public void testLeasedBrowserIsResetAndReleasedWhenAnActionFails() throws Exception {
+    IMocksControl control = EasyMock.createControl();
+    JsTestDriverClient client = control.createMock(JsTestDriverClient.class);
+    BrowserSessionManager sessionManager = control.createMock(BrowserSessionManager.class);
+    final RuntimeException failure = new RuntimeException("browser panicked");
+    BrowserAction action = new BrowserAction() {
+      @Override
+      public ResponseStream run(String id, JsTestDriverClient client, RunData runData,
+          JstdTestCase testCase) {
+        throw failure;
+      }
+    };
+    JstdTestCase testCase = new JstdTestCase(Collections.<FileInfo>emptyList(),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "1");
+    List<String> pooledIds = Lists.newArrayList("1", "2");
+
+    expect(sessionManager.leaseSession(pooledIds))
+        .andReturn(new BrowserSessionManager.Lease("2", "session"));
+    client.reset(eq("2"), (ResponseStream) anyObject(), eq(testCase));
+    expectLastCall().andThrow(new RuntimeException("reset failed"));
+    sessionManager.stopSession("session", "2");
+    control.replay();
+
+    BrowserActionRunner runner = BrowserActionRunner.leasing(pooledIds, client,
+        Collections.singletonList(action), new NullStopWatch(), Collections.singletonList(testCase),
+        sessionManager, new TestCaseTimings(new File("unused")));
+    try {
+      runner.call();
+      fail("expected the action's failure");
+    } catch (RuntimeException e) {
+      assertSame(failure, e);
+    }
+    control.verify();
+  }
+}
@@ -77,7 +77,7 @@ public class BrowserManagedRunnerTest extends TestCase {
 
   private static final class FakeBrowserActionRunner extends BrowserActionRunner {
     public FakeBrowserActionRunner() {
-      super(null, null, null, new NullStopWatch(), null, null);
+      super(null, null, null, new NullStopWatch(), null, null, null);
     }
     
     @Override
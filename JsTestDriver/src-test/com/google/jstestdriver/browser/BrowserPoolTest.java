@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.jstestdriver.BrowserInfo;
+import com.google.jstestdriver.CapturedBrowsers;
+import com.google.jstestdriver.MockTime;
+import com.google.jstestdriver.ProcessFactory;
+import com.google.jstestdriver.SlaveBrowser;
+import com.google.jstestdriver.SlaveBrowser.BrowserState;
+import com.google.jstestdriver.browser.BrowserControl.BrowserControlFactory;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.runner.RunnerType;
+import com.google.jstestdriver.server.handlers.CaptureHandler;
+
+import junit.framework.TestCase;
+
+import org.joda.time.Instant;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+public class BrowserPoolTest extends TestCase {
+
+  private final CapturedBrowsers capturedBrowsers =
+      new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0)));
+  private final List<String> started = Lists.newArrayList();
+  private final List<String> stopped = Lists.newArrayList();
+
+  public void testCapturesPooledBrowsersOfEachRunner() throws Exception {
+    BrowserPool pool = createPool(2);
+
+    assertTrue(pool.fill().isEmpty());
+
+    assertEquals(2, pool.getBrowserIds().size());
+    assertEquals(pool.getBrowserIds(), started);
+    for (BrowserInfo browser : capturedBrowsers.getBrowsers()) {
+      assertTrue(browser.isPooled());
+    }
+  }
+
+  public void testRefillsBrowsersThatWentAway() throws Exception {
+    BrowserPool pool = createPool(2);
+    pool.fill();
+    String crashed = pool.getBrowserIds().get(0);
+    String survivor = pool.getBrowserIds().get(1);
+    capturedBrowsers.removeSlave(crashed);
+
+    assertTrue(pool.fill().isEmpty());
+
+    assertEquals(Lists.newArrayList(crashed), stopped);
+    assertEquals(3, started.size());
+    assertFalse(pool.getBrowserIds().contains(crashed));
+    assertTrue(pool.getBrowserIds().contains(survivor));
+    assertEquals(2, capturedBrowsers.getSlaveBrowsers().size());
+  }
+
+  public void testStopStopsEveryBrowserAndNoLongerRefills() throws Exception {
+    BrowserPool pool = createPool(2);
+    pool.fill();
+    List<String> ids = pool.getBrowserIds();
+
+    pool.stop();
+    capturedBrowsers.removeSlave(ids.get(0));
+
+    assertTrue(pool.fill().isEmpty());
+    assertEquals(ids, stopped);
+    assertEquals(2, started.size());
+  }
+
+  public void testRecapturedBrowserStaysPooled() throws Exception {
+    BrowserPool pool = createPool(1);
+    pool.fill();
+    String id = pool.getBrowserIds().get(0);
+
+    capture(id);
+
+    assertTrue(capturedBrowsers.getBrowser(id).getBrowserInfo().isPooled());
+  }
+
+  private BrowserPool createPool(int size) {
+    CommandLineBrowserRunner runner =
+        new CommandLineBrowserRunner("browser", "", new ProcessFactory() {
+          @Override
+          public Process start(String... args) throws IOException {
+            return null;
+          }
+        }, "linux");
+    return new BrowserPool(Sets.<BrowserRunner>newHashSet(runner), size, "http://localhost",
+        capturedBrowsers, new BrowserControlFactory() {
+          @Override
+          public BrowserControl create(BrowserRunner runner, String serverAddress,
+              List<JstdTestCase> testCases) {
+            return new BrowserControl(runner, serverAddress, null, null, testCases, 0) {
+              private String browserId;
+
+              @Override
+              public String captureBrowser(String browserId) {
+                this.browserId = browserId;
+                started.add(browserId);
+                capture(browserId);
+                return browserId;
+              }
+
+              @Override
+              public void stopBrowser() {
+                stopped.add(browserId);
+              }
+            };
+          }
+        }, Executors.newSingleThreadExecutor());
+  }
+
+  private void capture(String id) {
+    BrowserInfo info = new BrowserInfo();
+    info.setId(Long.parseLong(id));
+    capturedBrowsers.addSlave(new SlaveBrowser(new MockTime(0), id, info, 1000, null,
+        CaptureHandler.QUIRKS, RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0)));
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import com.google.common.collect.Lists;
+import com.google.jstestdriver.BrowserInfo;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.model.JstdTestCase;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class TestCaseSharderTest extends TestCase {
+
+  static final List<FileInfo> DEPS = Lists.newArrayList(getFileInfo("dep"));
+  static final List<FileInfo> PLUGINS = Lists.newArrayList(getFileInfo("plugin"));
+
+  private final TestCaseTimings timings = new TestCaseTimings(new File("does-not-exist"));
+
+  public void testWithoutShardingEveryBrowserRunsEverything() throws Exception {
+    List<JstdTestCase> testCases =
+        Lists.<JstdTestCase>newArrayList(testCase("a", "test1", "test2"));
+    BrowserInfo chrome1 = browser(1L, "Chrome", "10");
+    BrowserInfo chrome2 = browser(2L, "Chrome", "10");
+
+    Map<BrowserInfo, Iterable<JstdTestCase>> assignments =
+        new TestCaseSharder(false, timings).assign(
+            Lists.newArrayList(chrome1, chrome2), testCases);
+
+    assertEquals(testCases, assignments.get(chrome1));
+    assertEquals(testCases, assignments.get(chrome2));
+  }
+
+  public void testBrowsersOfTheSameTypeShareTheTestCases() throws Exception {
+    JstdTestCase a = testCase("a", "test1");
+    JstdTestCase b = testCase("b", "test2");
+    JstdTestCase c = testCase("c", "test3");
+    BrowserInfo chrome1 = browser(1L, "Chrome", "10");
+    BrowserInfo chrome2 = browser(2L, "Chrome", "10");
+    BrowserInfo firefox = browser(3L, "Firefox", "4");
+
+    Map<BrowserInfo, Iterable<JstdTestCase>> assignments =
+        new TestCaseSharder(true, timings).assign(
+            Lists.newArrayList(chrome1, firefox, chrome2), Lists.newArrayList(a, b, c));
+
+    Iterator<JstdTestCase> chrome1Cases = assignments.get(chrome1).iterator();
+    Iterator<JstdTestCase> chrome2Cases = assignments.get(chrome2).iterator();
+    assertEquals(a, chrome1Cases.next());
+    assertEquals(b, chrome2Cases.next());
+    assertEquals(c, chrome2Cases.next());
+    assertFalse(chrome1Cases.hasNext());
+    assertEquals(Lists.newArrayList(a, b, c),
+        Lists.newArrayList(assignments.get(firefox)));
+  }
+
+  public void testScheduleLongestTestCasesFirst() throws Exception {
+    JstdTestCase fast = testCase("fast", "test1");
+    JstdTestCase slow = testCase("slow", "test2");
+    JstdTestCase unknown = testCase("unknown", "test3");
+    timings.record("fast", 10);
+    timings.record("slow", 1000);
+
+    List<JstdTestCase> scheduled =
+        new TestCaseSharder(true, timings).schedule(Lists.newArrayList(fast, slow, unknown));
+
+    assertEquals(Lists.newArrayList(unknown, slow, fast), scheduled);
+  }
+
+  public void testSplitTestFilesWhenThereAreFewerTestCasesThanBrowsers() throws Exception {
+    JstdTestCase testCase = testCase("default", "test1", "test2", "test3");
+
+    List<JstdTestCase> slices =
+        new TestCaseSharder(true, timings).split(Lists.<JstdTestCase>newArrayList(testCase), 2);
+
+    assertEquals(Lists.newArrayList(
+        new JstdTestCase(DEPS, Lists.newArrayList(getFileInfo("test1")), PLUGINS,
+            "default-shard0"),
+        new JstdTestCase(DEPS,
+            Lists.newArrayList(getFileInfo("test2"), getFileInfo("test3")), PLUGINS,
+            "default-shard1")),
+        slices);
+  }
+
+  public void testSplitSkipsEmptySlices() throws Exception {
+    JstdTestCase testCase = testCase("default", "test1");
+
+    List<JstdTestCase> slices =
+        new TestCaseSharder(true, timings).split(Lists.<JstdTestCase>newArrayList(testCase), 2);
+
+    assertEquals(1, slices.size());
+    assertEquals("default-shard1", slices.get(0).getId());
+  }
+
+  private JstdTestCase testCase(String id, String... tests) {
+    List<FileInfo> testFiles = Lists.newArrayList();
+    for (String test : tests) {
+      testFiles.add(getFileInfo(test));
+    }
+    return new JstdTestCase(DEPS, testFiles, PLUGINS, id);
+  }
+
+  private BrowserInfo browser(Long id, String name, String version) {
+    BrowserInfo browser = new BrowserInfo();
+    browser.setId(id);
+    browser.setName(name);
+    browser.setVersion(version);
+    return browser;
+  }
+
+  private static FileInfo getFileInfo(String name) {
+    return new FileInfo(name, 0, 0, false, false, "", name);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+
+public class TestCaseTimingsTest extends TestCase {
+
+  private File store;
+
+  @Override
+  protected void setUp() throws Exception {
+    store = File.createTempFile("timings", ".json");
+    store.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.delete();
+  }
+
+  public void testUnknownDuration() throws Exception {
+    TestCaseTimings timings = new TestCaseTimings(store);
+    timings.load();
+    assertEquals(TestCaseTimings.UNKNOWN, timings.getDuration("foo"));
+  }
+
+  public void testTimingsSurviveBetweenRuns() throws Exception {
+    TestCaseTimings timings = new TestCaseTimings(store);
+    timings.record("foo", 1200);
+    timings.record("bar", 30);
+    timings.save();
+
+    TestCaseTimings nextRun = new TestCaseTimings(store);
+    nextRun.load();
+    assertEquals(1200, nextRun.getDuration("foo"));
+    assertEquals(30, nextRun.getDuration("bar"));
+  }
+
+  public void testCorruptStoreIsIgnored() throws Exception {
+    FileWriter writer = new FileWriter(store);
+    writer.write("{not json");
+    writer.close();
+
+    TestCaseTimings timings = new TestCaseTimings(store);
+    timings.load();
+    assertEquals(TestCaseTimings.UNKNOWN, timings.getDuration("foo"));
+  }
+}
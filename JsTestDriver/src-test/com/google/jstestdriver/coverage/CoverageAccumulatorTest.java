@@ -24,6 +24,7 @@ import java.util.List;
 import junit.framework.TestCase;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * @author corysmith@google.com (Cory Smith)
@@ -74,6 +75,37 @@ public class CoverageAccumulatorTest extends TestCase {
     coverageWriter.assertLines(expected);
   }
 
+  public void testWriteBrowser() throws Exception {
+    final Integer a = 0;
+    final Integer b = 3;
+    final CoverageAccumulator accumulator = new CoverageAccumulator();
+    accumulator.addExecutableLines(a, Arrays.asList(1, 2, 5));
+    accumulator.addExecutableLines(b, Arrays.asList(1));
+    accumulator.add("ff", Arrays.asList(
+        new FileCoverage(a, Lists.newArrayList(new CoveredLine(1, 4),
+                                               new CoveredLine(2, 1)))));
+    accumulator.add("ie", 0, 5, 2);
+    accumulator.add("ie", 0, 1, 1);
+
+    assertEquals(Sets.newHashSet("ff", "ie"), accumulator.getBrowserIds());
+
+    CoverageWriterFake firefox = new CoverageWriterFake();
+    accumulator.write("ff", firefox);
+    firefox.assertLines(Arrays.asList(
+        new FileCoverage(a, Lists.newArrayList(new CoveredLine(1, 4),
+                                               new CoveredLine(2, 1),
+                                               new CoveredLine(5, 0))),
+        new FileCoverage(b, Lists.newArrayList(new CoveredLine(1, 0)))));
+
+    CoverageWriterFake all = new CoverageWriterFake();
+    accumulator.write(all);
+    all.assertLines(Arrays.asList(
+        new FileCoverage(a, Lists.newArrayList(new CoveredLine(1, 5),
+                                               new CoveredLine(2, 1),
+                                               new CoveredLine(5, 2))),
+        new FileCoverage(b, Lists.newArrayList(new CoveredLine(1, 0)))));
+  }
+
   private final class CoverageWriterFake implements CoverageWriter {
     List<CoveredLine> lines = new LinkedList<CoveredLine>();
     List<FileCoverage> coveredLines = new ArrayList<FileCoverage>();
@@ -28,7 +28,7 @@ import com.google.jstestdriver.ServerStartupAction;
  */
 public class CoverageActionDecoratorTest extends TestCase {
   public void testDecorate() throws Exception {
-    CoverageReporterAction reporter = new CoverageReporterAction(null, null, null);
+    CoverageReporterAction reporter = new CoverageReporterAction(null, null, null, null);
     List<Action> actions =
         Lists.<Action>newArrayList(new ServerStartupAction(0, 0, null, false,
             null, null));
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.coverage;
+
+import com.google.common.collect.Sets;
+
+import junit.framework.TestCase;
+
+import java.util.Set;
+
+public class CoverageDeltaDecoderTest extends TestCase {
+
+  public void testDecode() throws Exception {
+    CoverageAccumulator expected = new CoverageAccumulator();
+    expected.add("ff", 1, 1, 1);
+    expected.add("ff", 1, 5, 2);
+    expected.add("ff", 1, 6, 2);
+    expected.add("ff", 1, 7, 2);
+    expected.add("ff", 1, 40, 37);
+    expected.add("ff", 36, 2, 1);
+    expected.add("ff", 36, 3, 1);
+
+    CoverageAccumulator accumulator = new CoverageAccumulator();
+    Set<Integer> fileIds =
+        new CoverageDeltaDecoder().decode("ff", "!1:1,4*2+2,x*11;10:2+1", accumulator);
+
+    assertEquals(expected, accumulator);
+    assertEquals(Sets.newHashSet(1, 36), fileIds);
+  }
+
+  public void testDecodeNothingCovered() throws Exception {
+    CoverageAccumulator accumulator = new CoverageAccumulator();
+    CoverageDeltaDecoder decoder = new CoverageDeltaDecoder();
+    assertTrue(decoder.canDecode("!"));
+    decoder.decode("ff", "!", accumulator);
+
+    assertEquals(new CoverageAccumulator(), accumulator);
+  }
+
+  public void testCanDecode() throws Exception {
+    CoverageDeltaDecoder decoder = new CoverageDeltaDecoder();
+    assertTrue(decoder.canDecode("!1:1"));
+    assertFalse(decoder.canDecode("[[1,[[1,1]]]]"));
+    assertFalse(decoder.canDecode(""));
+  }
+
+  public void testDecodeRejectsMalformedData() throws Exception {
+    try {
+      new CoverageDeltaDecoder().decode("ff", "!1:1,", new CoverageAccumulator());
+      fail("expected an unrecognized format");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("unrecognized format"));
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.google.jstestdriver.coverage;
 
+import java.io.File;
 import java.util.Collections;
 
 import org.joda.time.Instant;
@@ -30,6 +31,25 @@ import com.google.jstestdriver.Time;
  */
 public class CoverageInstrumentingProcessorTest extends TestCase {
 
+  private File cacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("instrumented", "");
+    cacheDir.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
   public void testInstrument() throws Exception {
     FileInfo fileInfo = new FileInfo("foo.js", 0, -1, true, false, "var a = 1;", "foo.js");
     String expected = "decorated";
@@ -42,7 +62,8 @@ public class CoverageInstrumentingProcessorTest extends TestCase {
               public Instant now() {
                 return instant;
               }
-            }).process(fileInfo);
+            }, cache(), disabledIndex(),
+            new CoverageNameMapper()).process(fileInfo);
     assertEquals(expected, decorated.getData());
     assertEquals(fileInfo.getFilePath(), decorated.getFilePath());
     assertEquals(instant.getMillis(), decorated.getTimestamp());
@@ -58,7 +79,7 @@ public class CoverageInstrumentingProcessorTest extends TestCase {
     CoverageInstrumentingProcessor processor =
         new CoverageInstrumentingProcessor(null,
             Sets.<String>newHashSet(excluded.getFilePath()),
-            null, null);
+            null, null, null, disabledIndex(), new CoverageNameMapper());
     assertSame(lcov, processor.process(lcov));
     assertSame(serveOnly, processor.process(serveOnly));
     assertSame(remote, processor.process(remote));
@@ -66,6 +87,52 @@ public class CoverageInstrumentingProcessorTest extends TestCase {
     assertSame(empty, processor.process(empty));
   }
 
+  public void testInstrumentReusesCachedInstrumentation() throws Exception {
+    FileInfo fileInfo = new FileInfo("foo.js", 0, -1, true, false, "var a = 1;", "foo.js");
+    Code code = new Code(fileInfo.getFilePath(), fileInfo.getData());
+    Time time = new Time() {
+      public Instant now() {
+        return new Instant(0);
+      }
+    };
+    new CoverageInstrumentingProcessor(new DecoratorStub("decorated", code),
+        Collections.<String>emptySet(), new CoverageAccumulator(), time, cache(), disabledIndex(),
+        new CoverageNameMapper()).process(fileInfo);
+
+    FileInfo decorated = new CoverageInstrumentingProcessor(new CodeInstrumentor(null) {
+          @Override
+          public InstrumentedCode instrument(Code code) {
+            fail("expected the cached instrumentation");
+            return null;
+          }
+        }, Collections.<String>emptySet(), new CoverageAccumulator(), time, cache(),
+        disabledIndex(), new CoverageNameMapper()).process(fileInfo);
+    assertEquals("decorated", decorated.getData());
+  }
+
+  public void testPrepareMapsIdsOfInstrumentedFilesInOrder() throws Exception {
+    CoverageNameMapper mapper = new CoverageNameMapper();
+    CoverageInstrumentingProcessor processor =
+        new CoverageInstrumentingProcessor(null, Sets.newHashSet("excluded.js"),
+            null, null, null, disabledIndex(), mapper);
+    processor.prepare(new FileInfo("b.js", 0, -1, false, false, null, "b.js"));
+    processor.prepare(new FileInfo("excluded.js", 0, -1, false, false, null, "excluded.js"));
+    processor.prepare(new FileInfo("data.json", 0, -1, false, true, null, "data.json"));
+    processor.prepare(new FileInfo("a.js", 0, -1, false, false, null, "a.js"));
+
+    assertEquals(Integer.valueOf(0), mapper.map("b.js"));
+    assertEquals(Integer.valueOf(1), mapper.map("a.js"));
+  }
+
+  private InstrumentedCodeCache cache() {
+    return new InstrumentedCodeCache(cacheDir, InstrumentedCodeCache.DEFAULT_MAX_BYTES,
+        new CoverageNameMapper());
+  }
+
+  private TestImpactIndex disabledIndex() {
+    return new TestImpactIndex((File) null, false, null);
+  }
+
   static class DecoratorStub extends CodeInstrumentor {
     private final String decorated;
     private final Code expectedCode;
@@ -58,14 +58,14 @@ public class CoverageResponseStreamFactoryTest extends TestCase {
   final TestListener listener = new TestResultListenerStub();
 
   public void testGetRunTestsActionResponseStream() throws Exception {
-    CoverageResponseStreamFactory factory = new CoverageResponseStreamFactory(null, new TestResultGenerator());
+    CoverageResponseStreamFactory factory = new CoverageResponseStreamFactory(null, new TestResultGenerator(), null);
 
     ResponseStream responseStream = factory.getRunTestsActionResponseStream("browserId");
     assertNotNull(responseStream);
   }
 
   public void testGetResetActionResponseStream() throws Exception {
-    CoverageResponseStreamFactory factory = new CoverageResponseStreamFactory(null, new TestResultGenerator());
+    CoverageResponseStreamFactory factory = new CoverageResponseStreamFactory(null, new TestResultGenerator(), null);
     
     ResponseStream responseStream = factory.getResetActionResponseStream();
     assertEquals(CoverageResponseStreamFactory.NULL_RESPONSE_STREAM, responseStream);
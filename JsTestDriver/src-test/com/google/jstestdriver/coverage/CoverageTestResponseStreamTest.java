@@ -15,12 +15,15 @@
  */
 package com.google.jstestdriver.coverage;
 
+import java.io.File;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import junit.framework.TestCase;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.jstestdriver.BrowserInfo;
 import com.google.jstestdriver.Response;
@@ -38,7 +41,7 @@ public class CoverageTestResponseStreamTest extends TestCase {
     CoverageAccumulator accumulator = new CoverageAccumulator();
     String browserId = "firefox";
     CoverageTestResponseStream stream = new CoverageTestResponseStream(
-      browserId, accumulator, new TestResultGenerator());
+      browserId, accumulator, new TestResultGenerator(), disabledIndex());
 
     Response response = new Response();
     response.setType(ResponseType.TEST_RESULT.name());
@@ -49,11 +52,11 @@ public class CoverageTestResponseStreamTest extends TestCase {
         "test.Foo", "Foo", 1f);
     
     List<FileCoverage> expectedFileCoverage =
-        Arrays.asList(new FileCoverage(-1, Lists.newArrayList(new CoveredLine(1, 1))));
+        Arrays.asList(new FileCoverage(1, Lists.newArrayList(new CoveredLine(1, 1))));
     CoverageAccumulator expected = new CoverageAccumulator();
     expected.add(browserId, expectedFileCoverage);
     testResult.getData().put(CoverageTestResponseStream.COVERAGE_DATA_KEY,
-        "[[-1,[[1,1]]]]");
+        "[[1,[[1,1]]]]");
     response.setResponse(gson.toJson(Arrays.asList(testResult)));
 
     stream.stream(response);
@@ -61,11 +64,57 @@ public class CoverageTestResponseStreamTest extends TestCase {
     stream.finish();
   }
   
+  public void testStreamDeltaEncodedCoverage() throws Exception {
+    CoverageAccumulator accumulator = new CoverageAccumulator();
+    String browserId = "firefox";
+    CoverageTestResponseStream stream = new CoverageTestResponseStream(
+      browserId, accumulator, new TestResultGenerator(), disabledIndex());
+
+    Response response = new Response();
+    response.setType(ResponseType.TEST_RESULT.name());
+    BrowserInfo browser = new BrowserInfo();
+    browser.setName(browserId);
+    TestResult testResult = new TestResult(browser, "passed", "passed", "log",
+        "test.Foo", "Foo", 1f);
+    testResult.getData().put(CoverageTestResponseStream.COVERAGE_DATA_KEY, "!1:1*2+1");
+    response.setResponse(new Gson().toJson(Arrays.asList(testResult)));
+
+    CoverageAccumulator expected = new CoverageAccumulator();
+    expected.add(browserId, Arrays.asList(new FileCoverage(1,
+        Lists.newArrayList(new CoveredLine(1, 2), new CoveredLine(2, 2)))));
+
+    stream.stream(response);
+    assertEquals(expected, accumulator);
+  }
+
+  public void testRecordsTheFilesCoveredByTheTestCase() throws Exception {
+    final List<Object> recorded = Lists.newArrayList();
+    TestImpactIndex index = new TestImpactIndex((File) null, true, null) {
+      @Override
+      public void record(String testCaseName, Collection<Integer> fileIds) {
+        recorded.add(testCaseName);
+        recorded.add(fileIds);
+      }
+    };
+    CoverageTestResponseStream stream = new CoverageTestResponseStream(
+      "firefox", new CoverageAccumulator(), new TestResultGenerator(), index);
+
+    Response response = new Response();
+    response.setType(ResponseType.TEST_RESULT.name());
+    TestResult testResult = new TestResult(new BrowserInfo(), "passed", "passed", "log",
+        "test.Foo", "Foo", 1f);
+    testResult.getData().put(CoverageTestResponseStream.COVERAGE_DATA_KEY, "!1:1;3:2");
+    response.setResponse(new Gson().toJson(Arrays.asList(testResult)));
+
+    stream.stream(response);
+    assertEquals(Arrays.<Object>asList("test.Foo", Sets.newHashSet(1, 3)), recorded);
+  }
+
   public void testStreamNoLinesReturned() throws Exception {
     CoverageAccumulator coverageReporter = new CoverageAccumulator();
     String browserId = "firefox";
     CoverageTestResponseStream stream = new CoverageTestResponseStream(
-      browserId, null, new TestResultGenerator());
+      browserId, null, new TestResultGenerator(), disabledIndex());
     
     Response response = new Response();
     response.setType(ResponseType.TEST_RESULT.name());
@@ -83,6 +132,10 @@ public class CoverageTestResponseStreamTest extends TestCase {
     stream.finish();
   }
 
+  private TestImpactIndex disabledIndex() {
+    return new TestImpactIndex((File) null, false, null);
+  }
+
   public final static class ResponseStreamStub implements ResponseStream {
     public boolean finished = false;
     public Response response;
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.coverage;
+
+import com.google.common.collect.Sets;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+public class ImpactedTestsPreProcessorTest extends TestCase {
+
+  public void testExcludesUnaffectedTestCases() throws Exception {
+    ImpactedTestsPreProcessor processor =
+        new ImpactedTestsPreProcessor(new IndexStub(Sets.newTreeSet(Arrays.asList("B", "C"))));
+
+    assertEquals(Arrays.asList("all", "-^(?:B|C)#"),
+        processor.process("1", Arrays.asList("all").iterator()));
+  }
+
+  public void testRunsEverythingWhenNoTestCaseIsUnaffected() throws Exception {
+    ImpactedTestsPreProcessor processor =
+        new ImpactedTestsPreProcessor(new IndexStub(Collections.<String>emptySet()));
+
+    assertEquals(Arrays.asList("all"), processor.process("1", Arrays.asList("all").iterator()));
+  }
+
+  public void testKeepsAnEmptyTestList() throws Exception {
+    ImpactedTestsPreProcessor processor =
+        new ImpactedTestsPreProcessor(new IndexStub(Sets.newHashSet("B")));
+
+    assertEquals(Collections.<String>emptyList(),
+        processor.process("1", Collections.<String>emptyList().iterator()));
+  }
+
+  public void testEscapesTestCaseNames() throws Exception {
+    assertEquals("-^(?:a\\.b|c\\(d\\))#",
+        ImpactedTestsPreProcessor.exclude(Sets.newTreeSet(Arrays.asList("a.b", "c(d)"))));
+  }
+
+  private static class IndexStub extends TestImpactIndex {
+    private final Set<String> unaffected;
+
+    IndexStub(Set<String> unaffected) {
+      super((File) null, true, null);
+      this.unaffected = unaffected;
+    }
+
+    @Override
+    public Set<String> getUnaffectedTestCases() {
+      return unaffected;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.coverage;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+
+public class InstrumentedCodeCacheTest extends TestCase {
+
+  private File directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("instrumented", "");
+    directory.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  public void testMissingEntry() throws Exception {
+    InstrumentedCodeCache cache =
+        new InstrumentedCodeCache(directory, 1024, new CoverageNameMapper());
+    assertNull(cache.get(new Code("foo.js", "var a = 1;")));
+  }
+
+  public void testCachedCodeIsRemappedToTheFileIdOfTheRun() throws Exception {
+    Code code = new Code("foo.js", "var a = 1;\nvar b = 2;");
+    CoverageNameMapper firstRun = new CoverageNameMapper();
+    new InstrumentedCodeCache(directory, 1024 * 1024, firstRun)
+        .put(code, new CodeInstrumentor(firstRun).instrument(code));
+
+    CoverageNameMapper secondRun = new CoverageNameMapper();
+    secondRun.map("other.js");
+    InstrumentedCode cached =
+        new InstrumentedCodeCache(directory, 1024 * 1024, secondRun).get(code);
+
+    InstrumentedCode expected = new CodeInstrumentor(secondRun).instrument(code);
+    assertEquals(expected.getFileId(), cached.getFileId());
+    assertEquals("foo.js", cached.getPath());
+    assertEquals(expected.getExecutableLines(), cached.getExecutableLines());
+    assertEquals(expected.getInstrumentedCode(), cached.getInstrumentedCode());
+  }
+
+  public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+    CoverageNameMapper mapper = new CoverageNameMapper();
+    Code first = new Code("first.js", "var first;");
+    Code second = new Code("second.js", "var second;");
+    Code third = new Code("third.js", "var third;");
+    InstrumentedCodeCache unbounded = new InstrumentedCodeCache(directory, Long.MAX_VALUE, mapper);
+    unbounded.put(first, instrumented(first, mapper));
+    unbounded.put(second, instrumented(second, mapper));
+    setLastModified(-3000);
+
+    // room for two entries, but not for three.
+    long twoEntries = 0;
+    for (File file : directory.listFiles()) {
+      twoEntries += file.length();
+    }
+    InstrumentedCodeCache cache =
+        new InstrumentedCodeCache(directory, twoEntries * 7 / 5, mapper);
+    assertNotNull(cache.get(first));
+    cache.put(third, instrumented(third, mapper));
+
+    assertNotNull(cache.get(first));
+    assertNull(cache.get(second));
+    assertNotNull(cache.get(third));
+  }
+
+  public void testCorruptEntryIsIgnored() throws Exception {
+    CoverageNameMapper mapper = new CoverageNameMapper();
+    InstrumentedCodeCache cache = new InstrumentedCodeCache(directory, 1024, mapper);
+    Code code = new Code("foo.js", "var a = 1;");
+    cache.put(code, instrumented(code, mapper));
+    for (File file : directory.listFiles()) {
+      FileWriter writer = new FileWriter(file);
+      writer.write("{not json");
+      writer.close();
+    }
+    assertNull(cache.get(code));
+  }
+
+  private InstrumentedCode instrumented(Code code, CoverageNameMapper mapper) {
+    return new InstrumentedCode(mapper.map(code.getFilePath()), code.getFilePath(),
+        Arrays.asList(1), "LCOV_x[1]++; " + code.getSourceCode());
+  }
+
+  private void setLastModified(long offset) {
+    for (File file : directory.listFiles()) {
+      file.setLastModified(System.currentTimeMillis() + offset);
+    }
+  }
+}
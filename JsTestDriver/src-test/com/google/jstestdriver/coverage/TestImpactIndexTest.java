@@ -0,0 +1,151 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.coverage;
+
+import com.google.common.collect.Sets;
+import com.google.jstestdriver.FileInfo;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestImpactIndexTest extends TestCase {
+
+  private File store;
+  private CoverageNameMapper mapper;
+
+  @Override
+  protected void setUp() throws Exception {
+    store = File.createTempFile("impact", ".json");
+    store.delete();
+    mapper = new CoverageNameMapper();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.delete();
+  }
+
+  public void testRunsEverythingBeforeAnythingIsRecorded() throws Exception {
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("a.js", "var a;"));
+
+    assertEquals(Collections.<String>emptySet(), index.getUnaffectedTestCases());
+  }
+
+  public void testLeavesOutTestCasesThatCoverNoChangedFile() throws Exception {
+    recordRun();
+
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("a.js", "var a = 2;"));
+    index.observe(file("b.js", "var b;"));
+
+    assertEquals(Sets.newHashSet("B"), index.getUnaffectedTestCases());
+  }
+
+  public void testUnchangedFilesAffectNothing() throws Exception {
+    recordRun();
+
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("a.js", "var a;"));
+    index.observe(file("lib.js", "var lib;"));
+
+    assertEquals(Sets.newHashSet("A", "B"), index.getUnaffectedTestCases());
+  }
+
+  public void testChangedFileThatNoTestCaseCoversRunsEverything() throws Exception {
+    recordRun();
+
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("lib.js", "var lib = 2;"));
+
+    assertEquals(Collections.<String>emptySet(), index.getUnaffectedTestCases());
+  }
+
+  public void testChangedFileThatNoTestCaseCoversAffectsTheTestCasesItDeclares()
+      throws Exception {
+    recordRun();
+
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("lib.js", "TestCase('B', {testLib: function() {}});"));
+
+    assertEquals(Sets.newHashSet("A"), index.getUnaffectedTestCases());
+  }
+
+  public void testNewFileRunsEverything() throws Exception {
+    recordRun();
+
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("c.js", "var c;"));
+
+    assertEquals(Collections.<String>emptySet(), index.getUnaffectedTestCases());
+  }
+
+  public void testChangeIsKeptUntilTheAffectedTestCasesRun() throws Exception {
+    recordRun();
+    TestImpactIndex skipped = new TestImpactIndex(store, true, mapper);
+    skipped.observe(file("a.js", "var a = 2;"));
+    skipped.record("B", Arrays.asList(mapper.map("b.js")));
+    skipped.save();
+
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("a.js", "var a = 2;"));
+    assertEquals(Sets.newHashSet("B"), index.getUnaffectedTestCases());
+    index.record("A", Arrays.asList(mapper.map("b.js")));
+    index.save();
+
+    TestImpactIndex rerun = new TestImpactIndex(store, true, mapper);
+    rerun.observe(file("a.js", "var a = 2;"));
+    rerun.observe(file("b.js", "var b = 2;"));
+    assertEquals(Collections.<String>emptySet(), rerun.getUnaffectedTestCases());
+  }
+
+  public void testDisabledIndexRecordsNothing() throws Exception {
+    TestImpactIndex index = new TestImpactIndex(store, false, mapper);
+    index.observe(file("a.js", "var a;"));
+    index.record("A", Arrays.asList(mapper.map("a.js")));
+    index.save();
+
+    assertFalse(store.exists());
+  }
+
+  public void testIgnoresCorruptStore() throws Exception {
+    FileWriter writer = new FileWriter(store);
+    writer.write("{not json");
+    writer.close();
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("a.js", "var a;"));
+
+    assertEquals(Collections.<String>emptySet(), index.getUnaffectedTestCases());
+  }
+
+  private void recordRun() {
+    TestImpactIndex index = new TestImpactIndex(store, true, mapper);
+    index.observe(file("a.js", "var a;"));
+    index.observe(file("b.js", "var b;"));
+    index.observe(file("lib.js", "var lib;"));
+    index.record("A", Arrays.asList(mapper.map("a.js")));
+    index.record("B", Arrays.asList(mapper.map("b.js")));
+    index.save();
+  }
+
+  private FileInfo file(String path, String data) {
+    return new FileInfo(path, 0, -1, false, false, data, path);
+  }
+}
@@ -100,3 +100,30 @@ CoverageTest.prototype.testCoveredLinesToProtoBuffer = function() {
   assertEquals("[[1,[[1,1],[3,0],[5,1]]],[2,[[2,1],[3,1],[4,1]]]]",
                uncompressedSummary);
 };
+
+CoverageTest.prototype.testEncodeCoverage = function() {
+  var reporter = new coverage.Reporter();
+  var fileOne = reporter.initNoop(1, 50, [1,3,5,6,7,8,40]);
+  fileOne[1] = 1;
+  fileOne[5] = 2;
+  fileOne[6] = 2;
+  fileOne[7] = 2;
+  fileOne[40] = 37;
+  reporter.initNoop(2, 5, [2,3,4]);
+  var fileThree = reporter.initNoop(36, 5, [2,3,4]);
+  fileThree[2]++;
+  fileThree[3]++;
+
+  assertEquals("!1:1,4*2+2,x*11;10:2+1", reporter.encodeCoverage());
+  assertEquals(0, fileOne[5]);
+  assertEquals(0, fileThree[2]);
+};
+
+CoverageTest.prototype.testEncodeCoverageSendsOnlyChangedLines = function() {
+  var reporter = new coverage.Reporter();
+  var file = reporter.init(1, 10, [1,3,5]);
+  assertEquals("!1:1", reporter.encodeCoverage());
+  assertEquals(coverage.DELTA_PREFIX, reporter.encodeCoverage());
+  file[3]++;
+  assertEquals("!1:3", reporter.encodeCoverage());
+};
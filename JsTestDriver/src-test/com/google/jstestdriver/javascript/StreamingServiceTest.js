@@ -77,6 +77,7 @@ StreamingServiceTest.prototype.testStreamOutOfOrderAndClose = function() {
   this.streamingService.stream(responseTwo, callback);
   var streamTwoPost = this.posts.pop();
 
+  this.streamingService.streamAcknowledged([]);
   this.streamingService.stream(responseOne, callback);
   var streamOnePost = this.posts.pop();
 
@@ -106,6 +107,55 @@ StreamingServiceTest.prototype.testStreamOutOfOrderAndClose = function() {
 };
 
 
+StreamingServiceTest.prototype.testStreamBatchesUntilAcknowledged = function() {
+  function callback() {}
+  var responseOne = new jstestdriver.Response('test', '1', {}, null);
+  var responseTwo = new jstestdriver.Response('test', '2', {}, null);
+  var responseThree = new jstestdriver.Response('test', '3', {}, null);
+
+  this.streamingService.stream(responseOne, callback);
+  this.streamingService.stream(responseTwo, callback);
+  this.streamingService.stream(responseThree, callback);
+  assertEquals("Should wait for the first post to be acknowledged", 1, this.posts.length);
+  var firstPost = this.posts.pop();
+  assertEquals(responseOne, firstPost.data.response);
+  assertUndefined(firstPost.data.responses);
+
+  this.streamingService.streamAcknowledged([firstPost.data.responseId]);
+  assertEquals(1, this.posts.length);
+  var batchPost = this.posts.pop();
+  assertFalse(batchPost.data.done);
+  assertEquals([responseTwo], batchPost.data.responses);
+  assertEquals(responseThree, batchPost.data.response);
+  assertNotNull(batchPost.data.responseId);
+
+  this.streamingService.streamAcknowledged([batchPost.data.responseId]);
+  assertEquals("Nothing left to send", 0, this.posts.length);
+};
+
+
+StreamingServiceTest.prototype.testCloseSendsPendingResponses = function() {
+  function callback() {}
+  var responseOne = new jstestdriver.Response('test', '1', {}, null);
+  var responseTwo = new jstestdriver.Response('test', '2', {}, null);
+  var finalResponse = new jstestdriver.Response('test', '3', {}, null);
+
+  this.streamingService.stream(responseOne, callback);
+  var firstPost = this.posts.pop();
+  this.streamingService.stream(responseTwo, callback);
+
+  this.streamingService.close(finalResponse, callback);
+  var query = this.posts.pop();
+  assertEquals("Should be a query", null, query.data.response);
+
+  this.streamingService.streamAcknowledged([firstPost.data.responseId]);
+  var finalPost = this.posts.pop();
+  assertTrue(finalPost.data.done);
+  assertEquals([responseTwo], finalPost.data.responses);
+  assertEquals(finalResponse, finalPost.data.response);
+};
+
+
 StreamingServiceTest.prototype.testClose = function() {
   function callback() {}
   var finalResponse = new jstestdriver.Response('test', '3', {}, null);
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.model;
+
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.jstestdriver.FileInfo;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class SessionManifestTest extends TestCase {
+
+  private final Gson gson = new Gson();
+
+  public void testRoundTrip() throws Exception {
+    FileInfo dep = file("dep.js", 1);
+    JstdTestCase one = new JstdTestCase(Lists.newArrayList(dep),
+        Lists.newArrayList(file("one.js", 1)), Collections.<FileInfo>emptyList(), "one");
+    JstdTestCase two = new JstdTestCase(Lists.newArrayList(dep),
+        Lists.newArrayList(file("two.js", 2)), Collections.<FileInfo>emptyList(), "two");
+
+    SessionManifest manifest = gson.fromJson(
+        gson.toJson(new SessionManifest(Lists.newArrayList(one, two))), SessionManifest.class);
+    Map<String, JstdTestCase> testCases = manifest.getTestCases();
+
+    assertEquals(Lists.newArrayList(SessionManifest.digest(gson, one),
+        SessionManifest.digest(gson, two)), Lists.newArrayList(testCases.keySet()));
+    for (JstdTestCase testCase : Lists.newArrayList(one, two)) {
+      assertEquals(gson.toJson(testCase),
+          gson.toJson(testCases.get(SessionManifest.digest(gson, testCase))));
+    }
+  }
+
+  public void testFilesWithTheSamePathAndDifferentVersionsAreKept() throws Exception {
+    JstdTestCase one = new JstdTestCase(Lists.newArrayList(file("dep.js", 1)),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "one");
+    JstdTestCase two = new JstdTestCase(Lists.newArrayList(file("dep.js", 2)),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "two");
+
+    Map<String, JstdTestCase> testCases =
+        new SessionManifest(Lists.newArrayList(one, two)).getTestCases();
+
+    assertEquals(2, testCases.get(SessionManifest.digest(gson, two))
+        .getDependencies().get(0).getTimestamp());
+  }
+
+  public void testSharedFilesAreSentOnce() throws Exception {
+    List<FileInfo> dependencies = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      dependencies.add(file("src/dep" + i + ".js", i));
+    }
+    List<JstdTestCase> isolated = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      isolated.add(new JstdTestCase(dependencies, Lists.newArrayList(file("test" + i + ".js", i)),
+          Collections.<FileInfo>emptyList(), "test" + i));
+    }
+
+    int manifest = gson.toJson(new SessionManifest(isolated)).length();
+    int testCases = gson.toJson(isolated).length();
+    assertTrue(manifest + " vs " + testCases, manifest * 10 < testCases);
+  }
+
+  private FileInfo file(String path, long timestamp) {
+    return new FileInfo(path, timestamp, -1, false, false, null, path);
+  }
+}
@@ -22,6 +22,7 @@ import static org.easymock.EasyMock.expect;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.util.Providers;
+import com.google.jstestdriver.server.ServerMetrics;
 
 import junit.framework.TestCase;
 
@@ -51,6 +52,8 @@ public class RequestDispatcherTest extends TestCase {
 
   private UnsupportedMethodErrorSender sender;
   
+  private ServerMetrics metrics;
+
   private RequestDispatcher dispatcher;
 
   @Override
@@ -69,6 +72,8 @@ public class RequestDispatcherTest extends TestCase {
     gatewayConfiguration = control.createMock(GatewayConfiguration.class);
 
     sender = control.createMock(UnsupportedMethodErrorSender.class);
+
+    metrics = new ServerMetrics();
     
     dispatcher = new RequestDispatcher(
         request,
@@ -78,7 +83,8 @@ public class RequestDispatcherTest extends TestCase {
             one, Providers.of(handlerOne),
             two, Providers.of(handlerTwo)),
         gatewayConfiguration,
-        sender);
+        sender,
+        metrics);
   }
 
   public void testDispatch_GET() throws Exception {
@@ -86,11 +92,29 @@ public class RequestDispatcherTest extends TestCase {
     expect(request.getRequestURI()).andReturn("/one/two").anyTimes();
     /*expect*/ handlerOne.handleIt();
 
+    expectFirstDispatch();
     control.replay();
 
     dispatcher.dispatch();
 
     control.verify();
+    assertEquals(1, metrics.getRequests().get("GET /one/two").getCount());
+  }
+
+  public void testDispatch_resumedRequestIsMeasuredFromTheFirstDispatch() throws Exception {
+    long secondsAgo = 5;
+    expect(request.getAttribute(RequestDispatcher.DISPATCHED_AT))
+        .andReturn(System.nanoTime() - secondsAgo * 1000000000L);
+    expect(request.getMethod()).andReturn("GET");
+    expect(request.getRequestURI()).andReturn("/one/two").anyTimes();
+    /*expect*/ handlerOne.handleIt();
+
+    control.replay();
+
+    dispatcher.dispatch();
+
+    control.verify();
+    assertTrue(metrics.getRequests().get("GET /one/two").getTotalSeconds() >= secondsAgo);
   }
 
   public void testDispatch_POST() throws Exception {
@@ -98,6 +122,7 @@ public class RequestDispatcherTest extends TestCase {
     expect(request.getRequestURI()).andReturn("/a/b").anyTimes();
     /*expect*/ handlerTwo.handleIt();
 
+    expectFirstDispatch();
     control.replay();
 
     dispatcher.dispatch();
@@ -112,6 +137,7 @@ public class RequestDispatcherTest extends TestCase {
         .andReturn(ImmutableList.<RequestMatcher>of());
     /*expect*/ sender.methodNotAllowed();
 
+    expectFirstDispatch();
     control.replay();
 
     dispatcher.dispatch();
@@ -126,6 +152,7 @@ public class RequestDispatcherTest extends TestCase {
         .andReturn(ImmutableList.<RequestMatcher>of());
     /*expect*/ sender.methodNotAllowed();
 
+    expectFirstDispatch();
     control.replay();
 
     dispatcher.dispatch();
@@ -137,6 +164,7 @@ public class RequestDispatcherTest extends TestCase {
     expect(request.getMethod()).andReturn("YOUR_MOM");
     /*expect*/ sender.methodNotAllowed();
 
+    expectFirstDispatch();
     control.replay();
 
     dispatcher.dispatch();
@@ -151,10 +179,16 @@ public class RequestDispatcherTest extends TestCase {
         .andReturn(ImmutableList.<RequestMatcher>of());
     /*expect*/ response.sendError(eq(HttpServletResponse.SC_NOT_FOUND), (String) anyObject());
 
+    expectFirstDispatch();
     control.replay();
 
     dispatcher.dispatch();
 
     control.verify();
   }
+
+  private void expectFirstDispatch() {
+    expect(request.getAttribute(RequestDispatcher.DISPATCHED_AT)).andReturn(null);
+    request.setAttribute(eq(RequestDispatcher.DISPATCHED_AT), anyObject());
+  }
 }
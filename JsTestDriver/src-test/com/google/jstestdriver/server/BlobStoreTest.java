@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.jstestdriver.model.Blob;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+public class BlobStoreTest extends TestCase {
+
+  private File directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("blobs", "JsTestDriver");
+    directory.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] blobs = directory.listFiles();
+    if (blobs != null) {
+      for (File blob : blobs) {
+        blob.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  public void testPutMapsContents() throws Exception {
+    BlobStore store = new BlobStore(directory);
+    Blob blob = store.put("var caf\u00e9 = 1;");
+
+    ByteBuffer contents = blob.getContents();
+    assertTrue(contents.isDirect());
+    assertEquals(14, blob.getLength());
+    assertEquals("var caf\u00e9 = 1;", blob.decode());
+    assertTrue(new File(directory, blob.getDigest()).isFile());
+    assertSame(blob, store.get(blob.getDigest()));
+  }
+
+  public void testDecodeReusesTheDecodedContents() throws Exception {
+    Blob blob = new BlobStore(directory).put("var a = 1;");
+
+    assertSame(blob.decode(), blob.decode());
+  }
+
+  public void testSameContentsAreStoredOnce() throws Exception {
+    BlobStore store = new BlobStore(directory);
+    Blob one = store.put("same");
+    Blob two = store.put("same");
+    Blob other = store.put("other");
+
+    assertSame(one, two);
+    assertFalse(one.getDigest().equals(other.getDigest()));
+    assertEquals(2, directory.listFiles().length);
+  }
+
+  public void testReadersHaveTheirOwnPosition() throws Exception {
+    Blob blob = new BlobStore(directory).put("abc");
+    ByteBuffer first = blob.getContents();
+    first.get();
+    assertEquals(3, blob.getContents().remaining());
+    assertEquals("abc", blob.decode());
+  }
+
+  public void testReusesBlobsLeftInTheDirectory() throws Exception {
+    Blob blob = new BlobStore(directory).put("kept");
+    long modified = new File(directory, blob.getDigest()).lastModified();
+
+    Blob reopened = new BlobStore(directory).put("kept");
+
+    assertEquals(blob.getDigest(), reopened.getDigest());
+    assertEquals("kept", reopened.decode());
+    assertEquals(modified, new File(directory, blob.getDigest()).lastModified());
+    assertEquals(1, directory.listFiles().length);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.FilesCache;
+import com.google.jstestdriver.model.JstdTestCaseDelta;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates browsers loading every file from the server file store while a
+ * client keeps uploading new versions of the files. Compares the
+ * {@link JstdTestCaseStore} with a {@link FilesCache} that holds its monitor
+ * for the whole upload, as the store did before reads stopped locking.
+ *
+ * Run with: ant benchmark -Dbenchmark=com.google.jstestdriver.server.FileStoreContentionBenchmark
+ */
+public class FileStoreContentionBenchmark {
+  private static final int FILES = 2000;
+  private static final long DURATION_MILLIS = 2000;
+  private static final int[] BROWSERS = {1, 4, 10};
+
+  public static void main(String[] args) throws Exception {
+    final List<FileInfo> versionOne = files(1);
+    final List<FileInfo> versionTwo = files(2);
+    for (int browsers : BROWSERS) {
+      final JstdTestCaseStore store = new JstdTestCaseStore();
+      store.applyDelta(delta(versionOne));
+      run("JstdTestCaseStore", browsers, new Store() {
+        public String read(String path) {
+          return store.getFileContent(path);
+        }
+
+        public void upload(int iteration) {
+          store.applyDelta(delta(iteration % 2 == 0 ? versionOne : versionTwo));
+        }
+      });
+
+      final FilesCache cache = new FilesCache(Maps.<String, FileInfo>newHashMap());
+      for (FileInfo file : versionOne) {
+        cache.addFile(file);
+      }
+      run("locked FilesCache", browsers, new Store() {
+        public String read(String path) {
+          return cache.getFileContent(path);
+        }
+
+        public void upload(int iteration) {
+          synchronized (cache) {
+            for (FileInfo file : iteration % 2 == 0 ? versionOne : versionTwo) {
+              FileInfo old = cache.getFile(file.getDisplayPath());
+              if (old == null || old.shouldReplaceWith(file) || file.isLoaded()) {
+                cache.addFile(file);
+              }
+            }
+          }
+        }
+      });
+    }
+  }
+
+  private static void run(String name, int browsers, final Store store)
+      throws InterruptedException {
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicLong reads = new AtomicLong();
+    final AtomicLong uploads = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(browsers + 1);
+    for (int i = 0; i < browsers; i++) {
+      new Thread(new Runnable() {
+        public void run() {
+          long count = 0;
+          while (running.get()) {
+            for (int file = 0; file < FILES; file++) {
+              store.read(path(file));
+            }
+            count += FILES;
+          }
+          reads.addAndGet(count);
+          done.countDown();
+        }
+      }).start();
+    }
+    new Thread(new Runnable() {
+      public void run() {
+        int iteration = 0;
+        while (running.get()) {
+          store.upload(iteration++);
+        }
+        uploads.set(iteration);
+        done.countDown();
+      }
+    }).start();
+    Thread.sleep(DURATION_MILLIS);
+    running.set(false);
+    done.await();
+    System.out.println(String.format("%-18s %2d browsers: %6.1fk reads/s, %5d uploads of %d files",
+        name, browsers, reads.get() / (double) DURATION_MILLIS, uploads.get(), FILES));
+  }
+
+  private static List<FileInfo> files(int version) {
+    List<FileInfo> files = Lists.newArrayListWithCapacity(FILES);
+    for (int i = 0; i < FILES; i++) {
+      files.add(new FileInfo(path(i), version, 100, false, false, "var v = " + version + ";",
+          path(i)));
+    }
+    return files;
+  }
+
+  private static JstdTestCaseDelta delta(List<FileInfo> files) {
+    return new JstdTestCaseDelta(files, Collections.<FileInfo>emptyList(),
+        Collections.<FileInfo>emptyList());
+  }
+
+  private static String path(int file) {
+    return "/test/src/file" + file + ".js";
+  }
+
+  private interface Store {
+    String read(String path);
+
+    void upload(int iteration);
+  }
+}
@@ -18,11 +18,22 @@ package com.google.jstestdriver.server;
 
 import com.google.common.collect.Lists;
 import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.FileReader;
+import com.google.jstestdriver.FilesCache;
+import com.google.jstestdriver.MockTime;
+import com.google.jstestdriver.ProcessingFileLoader;
+import com.google.jstestdriver.hooks.FileLoadPostProcessor;
+import com.google.jstestdriver.model.Blob;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.JstdTestCaseDelta;
+import com.google.jstestdriver.util.NullStopWatch;
 
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author corysmith@google.com (Cory Smith)
  *
@@ -93,4 +104,284 @@ public class JstdTestCaseStoreTest extends TestCase {
     assertEquals("The data will be updated for test case two", contents,
         store.getCase(testCaseIdTwo).getTests().get(0).getData());
   }
+
+  public void testCheckDigestsKeepsUnchangedContents() throws Exception {
+    FileInfo one = new FileInfo("foo.js", 1, -1, false, false, null, "foo.js");
+    FileInfo two = new FileInfo("bar.js", 1, -1, false, false, null, "bar.js");
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.<FileInfo>newArrayList(one, two), Lists.<FileInfo>newArrayList(), "1"));
+    store.applyDelta(new JstdTestCaseDelta(
+        Lists.<FileInfo>newArrayList(),
+        Lists.<FileInfo>newArrayList(
+            one.load("foo", 1).withDigest("digest-foo"),
+            two.load("bar", 1).withDigest("digest-bar")),
+        Lists.<FileInfo>newArrayList()));
+
+    // a fresh checkout changes every timestamp.
+    FileInfo touchedOne = one.load(null, 2);
+    FileInfo touchedTwo = two.load(null, 2);
+    JstdTestCaseDelta delta = store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.<FileInfo>newArrayList(touchedOne, touchedTwo), Lists.<FileInfo>newArrayList(),
+        "2"));
+    assertEquals(2, delta.getTests().size());
+    assertEquals("foo", store.getFileContent("foo.js"));
+
+    List<FileInfo> missing = store.checkDigests(Lists.newArrayList(
+        touchedOne.withDigest("digest-foo"), touchedTwo.withDigest("changed")));
+
+    assertEquals(Lists.newArrayList(touchedTwo), missing);
+    FileInfo current = store.getCase("2").getTests().get(0);
+    assertEquals("foo", current.getData());
+    assertEquals(2, current.getTimestamp());
+    assertFalse(store.getCase("2").getTests().get(1).isLoaded());
+  }
+
+  public void testCheckDigestsReplacesContentsPostProcessedDifferently() throws Exception {
+    FileInfo file = new FileInfo("foo.js", 1, -1, false, false, null, "foo.js");
+    FileReader reader = new FileReader() {
+      public String readFile(String path) {
+        return "var foo;";
+      }
+    };
+    FileLoadPostProcessor instrument = new FileLoadPostProcessor() {
+      public FileInfo process(FileInfo loaded) {
+        return loaded.load("LCOV_1(1);" + loaded.getData(), loaded.getTimestamp());
+      }
+    };
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.<FileInfo>newArrayList(file), Lists.<FileInfo>newArrayList(), "1"));
+
+    FileInfo plain = new ProcessingFileLoader(reader,
+        Collections.<FileLoadPostProcessor>emptySet(), new NullStopWatch())
+        .loadFiles(Collections.singleton(file), false).get(0);
+    store.applyDelta(new JstdTestCaseDelta(Lists.<FileInfo>newArrayList(),
+        Lists.newArrayList(plain), Lists.<FileInfo>newArrayList()));
+
+    FileInfo instrumented = new ProcessingFileLoader(reader,
+        Collections.singleton(instrument), new NullStopWatch())
+        .loadFiles(Collections.singleton(file), false).get(0);
+    List<FileInfo> missing = store.checkDigests(
+        Lists.newArrayList(instrumented.withoutData()));
+
+    assertEquals(Lists.newArrayList(file), missing);
+    assertEquals("var foo;", store.getFileContent("foo.js"));
+  }
+
+  public void testKeepsFileWithoutDisplayPath() throws Exception {
+    FileInfo file = new FileInfo("foo.js", 1, -1, false, false, "var foo;", null);
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.<FileInfo>newArrayList(file), Lists.<FileInfo>newArrayList(), "1"));
+
+    assertSame(file, store.getFile(null));
+    assertEquals("var foo;", store.getFileContent(null));
+    assertNull(store.getEncodedFile(null));
+  }
+
+  public void testAddManifestCaseReplacesEarlierVersions() throws Exception {
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    JstdTestCase first = new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.<FileInfo>newArrayList(new FileInfo("foo.js", 1, -1, false, false, null, "foo.js")),
+        Lists.<FileInfo>newArrayList(), "1");
+    JstdTestCase second = new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.<FileInfo>newArrayList(new FileInfo("foo.js", 2, -1, false, false, null, "foo.js")),
+        Lists.<FileInfo>newArrayList(), "1");
+
+    store.addManifestCase("first", first);
+    store.addManifestCase("second", second);
+
+    assertNull(store.getManifestCase("first"));
+    assertSame(second, store.getManifestCase("second"));
+    assertTrue(store.removeCase("1"));
+    assertNull(store.getManifestCase("second"));
+  }
+
+  public void testGetFileContentOfMissingFile() throws Exception {
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    try {
+      store.getFileContent("missing.js");
+      fail("expected a MissingFileException");
+    } catch (FilesCache.MissingFileException e) {
+      // expected
+    }
+  }
+
+  public void testReadsDuringUpdatesSeeWholeVersions() throws Exception {
+    final JstdTestCaseStore store = new JstdTestCaseStore();
+    final FileInfo one = new FileInfo("foo.js", 1, -1, false, false, "one", "foo.js");
+    final FileInfo two = new FileInfo("foo.js", 2, -1, false, false, "two", "foo.js");
+    store.applyDelta(delta(one));
+    Thread updater = new Thread(new Runnable() {
+      public void run() {
+        for (int i = 0; i < 1000; i++) {
+          store.applyDelta(delta(i % 2 == 0 ? two : one));
+        }
+      }
+    });
+    updater.start();
+    while (updater.isAlive()) {
+      String content = store.getFileContent("foo.js");
+      assertTrue(content, "one".equals(content) || "two".equals(content));
+    }
+    updater.join();
+    assertEquals("one", store.getFileContent("foo.js"));
+  }
+
+  private JstdTestCaseDelta delta(FileInfo file) {
+    return new JstdTestCaseDelta(Lists.<FileInfo>newArrayList(),
+        Lists.<FileInfo>newArrayList(file), Lists.<FileInfo>newArrayList());
+  }
+
+  public void testBlobStoreHoldsLoadedContents() throws Exception {
+    File directory = File.createTempFile("blobs", "JsTestDriver");
+    directory.delete();
+    try {
+      JstdTestCaseStore store = new JstdTestCaseStore(new BlobStore(directory));
+      FileInfo one = new FileInfo("foo.js", 1, -1, false, false, null, "foo.js");
+      store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+          Lists.<FileInfo>newArrayList(one), Lists.<FileInfo>newArrayList(), "1"));
+      store.applyDelta(new JstdTestCaseDelta(
+          Lists.<FileInfo>newArrayList(),
+          Lists.<FileInfo>newArrayList(one.load("foo", 1).withDigest("digest-foo")),
+          Lists.<FileInfo>newArrayList()));
+
+      Blob blob = store.getFile("foo.js").getBlob();
+      assertNotNull(blob);
+      assertEquals("foo", store.getFileContent("foo.js"));
+      FileInfo inCase = store.getCase("1").getTests().get(0);
+      assertSame(blob, inCase.getBlob());
+      assertTrue(inCase.isLoaded());
+      assertTrue(store.getEncodedFile("foo.js").getContents(false).isDirect());
+
+      // a test case sent with its contents keeps only the handle.
+      store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+          Lists.<FileInfo>newArrayList(one.load("foo2", 2).withDigest("digest-foo2")),
+          Lists.<FileInfo>newArrayList(),
+          "2"));
+      assertNotNull(store.getCase("2").getTests().get(0).getBlob());
+      assertEquals("foo2", store.getCase("2").getTests().get(0).getData());
+
+      List<FileInfo> missing = store.checkDigests(Lists.newArrayList(
+          one.load(null, 3).withDigest("digest-foo2")));
+      assertTrue(missing.isEmpty());
+      assertNotNull(store.getFile("foo.js").getBlob());
+      assertEquals(3, store.getFile("foo.js").getTimestamp());
+    } finally {
+      for (File blob : directory.listFiles()) {
+        blob.delete();
+      }
+      directory.delete();
+    }
+  }
+
+  public void testSharesEqualContentsAcrossPaths() throws Exception {
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    String jquery = new String("jquery");
+    store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(
+        new FileInfo("a/jquery.js", 1, -1, false, false, jquery, "a/jquery.js")),
+        Lists.<FileInfo>newArrayList(), Lists.<FileInfo>newArrayList(), "a"));
+    store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(
+        new FileInfo("b/jquery.js", 1, -1, false, false, new String("jquery"), "b/jquery.js")),
+        Lists.<FileInfo>newArrayList(), Lists.<FileInfo>newArrayList(), "b"));
+
+    assertSame(jquery, store.getFile("b/jquery.js").getData());
+    assertSame(jquery, store.getCase("b").getDependencies().get(0).getData());
+    assertEquals(12, store.getContentBytes());
+    assertEquals(12, store.getDeduplicatedBytes());
+    assertEquals(store.getEncodedFile("a/jquery.js").getETag(false),
+        store.getEncodedFile("b/jquery.js").getETag(false));
+  }
+
+  public void testRemoveCaseEvictsUnreferencedFiles() throws Exception {
+    File directory = File.createTempFile("blobs", "JsTestDriver");
+    directory.delete();
+    try {
+      JstdTestCaseStore store = new JstdTestCaseStore(new BlobStore(directory));
+      FileInfo shared = new FileInfo("shared.js", 1, -1, false, false, "shared", "shared.js");
+      FileInfo own = new FileInfo("own.js", 1, -1, false, false, "own", "own.js");
+      store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(shared),
+          Lists.<FileInfo>newArrayList(own), Lists.<FileInfo>newArrayList(), "1"));
+      store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(shared),
+          Lists.<FileInfo>newArrayList(), Lists.<FileInfo>newArrayList(), "2"));
+      String ownDigest = store.getFile("own.js").getBlob().getDigest();
+      assertEquals(2, directory.listFiles().length);
+
+      assertTrue(store.removeCase("1"));
+
+      assertNull(store.getCase("1"));
+      assertNull(store.getFile("own.js"));
+      assertNull(store.getEncodedFile("own.js"));
+      assertFalse(new File(directory, ownDigest).exists());
+      assertEquals("shared", store.getFileContent("shared.js"));
+      assertEquals(6, store.getContentBytes());
+      assertFalse(store.removeCase("1"));
+
+      assertTrue(store.removeCase("2"));
+      assertNull(store.getFile("shared.js"));
+      assertEquals(0, store.getContentBytes());
+      assertEquals(0, directory.listFiles().length);
+    } finally {
+      for (File blob : directory.listFiles()) {
+        blob.delete();
+      }
+      directory.delete();
+    }
+  }
+
+  public void testEndSessionEvictsExpiredTestCases() throws Exception {
+    MockTime time = new MockTime(1000);
+    JstdTestCaseStore store = new JstdTestCaseStore(null, new StoreRetention(-1, 100), time);
+    store.addCase(testCase("old", "old.js", "old"));
+    store.useCase("old", "browser");
+    time.add(60);
+    store.addCase(testCase("new", "new.js", "new"));
+
+    assertTrue(store.endSession("other").isEmpty());
+    time.add(60);
+    // the ttl applies to test cases in a session, as the session may never end.
+    assertEquals(Lists.newArrayList("old"), store.endSession("browser"));
+
+    assertNull(store.getCase("old"));
+    assertNull(store.getFile("old.js"));
+    assertNotNull(store.getCase("new"));
+  }
+
+  public void testEndSessionEvictsLeastRecentlyUsedOverBudget() throws Exception {
+    MockTime time = new MockTime(1000);
+    // each file takes 2 bytes a char on the heap.
+    JstdTestCaseStore store = new JstdTestCaseStore(null, new StoreRetention(10, -1), time);
+    store.addCase(testCase("1", "one.js", "one"));
+    time.add(1);
+    store.addCase(testCase("2", "two.js", "two"));
+    time.add(1);
+    store.addCase(testCase("3", "three.js", "333"));
+    time.add(1);
+    store.useCase("1", "browser");
+    store.useCase("2", "other");
+
+    assertEquals(Lists.newArrayList("3", "1"), store.endSession("browser"));
+    assertEquals(6, store.getContentBytes());
+    assertNotNull(store.getCase("2"));
+    assertTrue(store.isInSession("2"));
+
+    assertTrue(store.endSession("other").isEmpty());
+    assertFalse(store.isInSession("2"));
+  }
+
+  public void testUnboundedStoreKeepsEverything() throws Exception {
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    store.addCase(testCase("1", "one.js", "one"));
+    store.useCase("1", "browser");
+
+    assertTrue(store.endSession("browser").isEmpty());
+    assertNotNull(store.getCase("1"));
+  }
+
+  private JstdTestCase testCase(String id, String path, String data) {
+    return new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.newArrayList(new FileInfo(path, 1, -1, false, false, data, path)),
+        Lists.<FileInfo>newArrayList(), id);
+  }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.FileResult;
+import com.google.jstestdriver.FileSource;
+import com.google.jstestdriver.LoadedFiles;
+import com.google.jstestdriver.Response;
+import com.google.jstestdriver.Response.ResponseType;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.NullPathPrefix;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class ScriptBundlerTest extends TestCase {
+
+  private final JstdTestCaseStore store = new JstdTestCaseStore();
+
+  @Override
+  protected void setUp() throws Exception {
+    store.addCase(new JstdTestCase(Lists.newArrayList(
+        file("a.js", "var a = 1;\nvar b = 2;"),
+        file("b.js", "fail();\n"),
+        file("c.js", "var c;"),
+        file("strict.js", "  'use strict';\nvar s;"),
+        file("style.css", "body {}")),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "case"));
+  }
+
+  private FileInfo file(String path, String data) {
+    return new FileInfo("/" + path, 1, data.length(), false, false, data, path);
+  }
+
+  private FileSource source(String path) {
+    return new FileSource("/test/" + path, "/" + path, 1, 1);
+  }
+
+  public void testBundlesContiguousScripts() throws Exception {
+    ScriptBundler bundler = new ScriptBundler(store, new NullPathPrefix(), true);
+    List<FileSource> bundled = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js"),
+        new FileSource("http://host/lib.js", "http://host/lib.js", 1, 1),
+        source("c.js"), source("style.css"), source("missing.js"), source("strict.js")));
+
+    assertEquals(6, bundled.size());
+    String fileSrc = bundled.get(0).getFileSrc();
+    assertTrue(fileSrc, fileSrc.matches("/bundle/[0-9a-f]{40}\\.js"));
+    ScriptBundle bundle = bundler.getBundle(bundled.get(0).getDigest());
+    assertEquals(Lists.newArrayList(source("a.js"), source("b.js")), bundle.getMembers());
+    assertEquals("http://host/lib.js", bundled.get(1).getFileSrc());
+    assertEquals("/test/c.js", bundled.get(2).getFileSrc());
+    assertEquals("/test/style.css", bundled.get(3).getFileSrc());
+    assertEquals("/test/missing.js", bundled.get(4).getFileSrc());
+    assertEquals("/test/strict.js", bundled.get(5).getFileSrc());
+  }
+
+  public void testDisabledLeavesSources() throws Exception {
+    List<FileSource> sources = Lists.newArrayList(source("a.js"), source("b.js"));
+    assertSame(sources, new ScriptBundler(store, new NullPathPrefix(), false).bundle(sources));
+  }
+
+  public void testReusesBundleUntilAFileChanges() throws Exception {
+    ScriptBundler bundler = new ScriptBundler(store, new NullPathPrefix(), true);
+    String first = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js")))
+        .get(0).getFileSrc();
+    String again = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js")))
+        .get(0).getFileSrc();
+    assertEquals(first, again);
+
+    store.addCase(new JstdTestCase(Lists.newArrayList(file("b.js", "pass();\n")),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "changed"));
+    String changed = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js")))
+        .get(0).getFileSrc();
+    assertFalse(first.equals(changed));
+  }
+
+  public void testKeysBundlesOnStoredDigests() throws Exception {
+    ScriptBundler bundler = new ScriptBundler(store, new NullPathPrefix(), true);
+    store.addCase(new JstdTestCase(Lists.newArrayList(
+        file("a.js", "var a;").withDigest("one"), file("b.js", "var b;").withDigest("two")),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "digested"));
+    String first = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js")))
+        .get(0).getFileSrc();
+
+    store.addCase(new JstdTestCase(Lists.newArrayList(file("b.js", "var b;").withDigest("three")),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), "changed"));
+    String changed = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js")))
+        .get(0).getFileSrc();
+
+    assertFalse(first.equals(changed));
+  }
+
+  public void testFindsStrictDirectiveAfterComments() throws Exception {
+    assertTrue(ScriptBundler.isStrict("\"use strict\";"));
+    assertTrue(ScriptBundler.isStrict("// Copyright\n/* license\n */\n  'use strict';"));
+    assertFalse(ScriptBundler.isStrict("/* 'use strict' */ var a;"));
+    assertFalse(ScriptBundler.isStrict("// only a comment"));
+  }
+
+  public void testLoadsFilesOfAFailedBundleOnTheirOwn() throws Exception {
+    ScriptBundler bundler = new ScriptBundler(store, new NullPathPrefix(), true);
+    FileSource bundleSource = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js")))
+        .get(0);
+    bundler.unbundle(new Response(ResponseType.FILE_LOAD_RESULT.toString(),
+        new Gson().toJson(new LoadedFiles(Lists.newArrayList(
+            new FileResult(bundleSource, false, "SyntaxError")))), null, "", 0));
+
+    assertEquals(Lists.newArrayList(source("a.js"), source("b.js")),
+        bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js"))));
+  }
+
+  public void testMapsBundleLinesToMembers() throws Exception {
+    ScriptBundle bundle = new ScriptBundle("key",
+        Lists.newArrayList(source("a.js"), source("b.js")),
+        Lists.newArrayList("var a = 1;\nvar b = 2;", "fail();\n"));
+
+    String[] lines = bundle.getContents().split("\n");
+    assertEquals("var a = 1;", lines[1]);
+    assertEquals("var b = 2;", lines[2]);
+    assertEquals("fail();", lines[5]);
+    assertEquals("//# sourceMappingURL=key.js.map", lines[7]);
+    assertEquals(-1, bundle.getMemberAt(1));
+    assertEquals(0, bundle.getMemberAt(3));
+    assertEquals(2, bundle.getOriginalLine(3));
+    assertEquals(-1, bundle.getMemberAt(4));
+    assertEquals(1, bundle.getMemberAt(6));
+    assertEquals(1, bundle.getOriginalLine(6));
+
+    JsonObject map = new JsonParser().parse(bundle.getSourceMap()).getAsJsonObject();
+    assertEquals(3, map.get("version").getAsInt());
+    assertEquals("key.js", map.get("file").getAsString());
+    assertEquals("/test/b.js", map.getAsJsonArray("sources").get(1).getAsString());
+    assertEquals(";AAAA;AACA;;;ACDA", map.get("mappings").getAsString());
+  }
+
+  public void testCountsLinesAsTheBrowser() throws Exception {
+    assertEquals(0, ScriptBundle.countLines(""));
+    assertEquals(1, ScriptBundle.countLines("a"));
+    assertEquals(1, ScriptBundle.countLines("a\r\n"));
+    assertEquals(3, ScriptBundle.countLines("a\rb\u2028c"));
+  }
+
+  public void testEncodesVlqs() throws Exception {
+    StringBuilder vlqs = new StringBuilder();
+    ScriptBundle.appendVlq(vlqs, 0);
+    ScriptBundle.appendVlq(vlqs, 1);
+    ScriptBundle.appendVlq(vlqs, -1);
+    ScriptBundle.appendVlq(vlqs, 16);
+    assertEquals("ACDgB", vlqs.toString());
+  }
+
+  public void testUnbundlesStackTraces() throws Exception {
+    ScriptBundler bundler = new ScriptBundler(store, new NullPathPrefix(), true);
+    String fileSrc = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js")))
+        .get(0).getFileSrc();
+    Response response = new Response(ResponseType.TEST_RESULT.toString(),
+        "{\"stack\":\"Error\\n at http://localhost:9876" + fileSrc + ":6:3\\n at http://"
+            + "localhost:9876" + fileSrc + ":4:1\"}", null, "", 0);
+
+    bundler.unbundle(response);
+
+    assertEquals("{\"stack\":\"Error\\n at http://localhost:9876/test/b.js:1:3\\n at http://"
+        + "localhost:9876" + fileSrc + ":4:1\"}", response.getResponse());
+  }
+
+  public void testUnbundlesLoadedFiles() throws Exception {
+    ScriptBundler bundler = new ScriptBundler(store, new NullPathPrefix(), true);
+    FileSource bundleSource = bundler.bundle(Lists.newArrayList(source("a.js"), source("b.js")))
+        .get(0);
+    Gson gson = new Gson();
+    Response response = new Response(ResponseType.FILE_LOAD_RESULT.toString(),
+        gson.toJson(new LoadedFiles(Lists.newArrayList(
+            new FileResult(bundleSource, false,
+                "error loading file: " + bundleSource.getFileSrc() + ":6: fail"),
+            new FileResult(source("c.js"), true, "")))), null, "", 0);
+
+    bundler.unbundle(response);
+
+    LoadedFiles loadedFiles = gson.fromJson(response.getResponse(), LoadedFiles.class);
+    Iterator<FileResult> results = loadedFiles.getLoadedFiles().iterator();
+    FileResult a = results.next();
+    assertEquals(source("a.js"), a.getFileSource());
+    assertFalse(a.isSuccess());
+    assertEquals("error loading file: /test/b.js:1: fail", a.getMessage());
+    assertEquals(source("b.js"), results.next().getFileSource());
+    assertEquals(source("c.js"), results.next().getFileSource());
+    assertFalse(results.hasNext());
+  }
+}
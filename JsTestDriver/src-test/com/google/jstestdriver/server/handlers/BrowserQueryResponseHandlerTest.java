@@ -44,12 +44,15 @@ import com.google.jstestdriver.MockTime;
 import com.google.jstestdriver.Response;
 import com.google.jstestdriver.SlaveBrowser;
 import com.google.jstestdriver.SlaveBrowser.BrowserState;
+import com.google.jstestdriver.StreamMessage;
 import com.google.jstestdriver.TimeImpl;
 import com.google.jstestdriver.JsonCommand.CommandType;
 import com.google.jstestdriver.Response.ResponseType;
 import com.google.jstestdriver.browser.BrowserIdStrategy;
+import com.google.jstestdriver.model.NullPathPrefix;
 import com.google.jstestdriver.protocol.BrowserStreamAcknowledged;
 import com.google.jstestdriver.runner.RunnerType;
+import com.google.jstestdriver.server.ScriptBundler;
 
 /**
  * @author jeremiele@google.com (Jeremie Lenfant-Engelmann)
@@ -74,7 +77,8 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
     slave.createCommand(data);
     browsers.addSlave(slave);
     BrowserQueryResponseHandler handler =
-        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses);
+        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
 
     handler.service(id, null, "true", null, writer);
     assertEquals(data, out.toString());
@@ -89,7 +93,8 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
 
     browsers.addSlave(slave);
     BrowserQueryResponseHandler handler =
-        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses);
+        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
     slave.createCommand("awaitingResponse");
     slave.dequeueCommand();
     slave.createCommand("BrowserCommand");
@@ -109,6 +114,40 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
     assertEquals(response, slave.getResponse().getResponse());
   }
 
+  public void testBatchedResponsesAreQueuedBeforeTheResponse() throws Exception {
+    CapturedBrowsers browsers = new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0)));
+    String id = "1";
+    BrowserInfo browserInfo = new BrowserInfo();
+    browserInfo.setId(1L);
+    SlaveBrowser slave =
+        new SlaveBrowser(new TimeImpl(), id, browserInfo, 20, null, CaptureHandler.QUIRKS,
+            RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+
+    browsers.addSlave(slave);
+    BrowserQueryResponseHandler handler =
+        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
+    slave.createCommand("awaitingResponse");
+    slave.dequeueCommand();
+    slave.createCommand("BrowserCommand");
+
+    List<Response> batch = Lists.newArrayList(
+        new Response(ResponseType.TEST_RESULT.name(), "one", browserInfo, "", 1),
+        new Response(ResponseType.TEST_RESULT.name(), "two", browserInfo, "", 1));
+    Response last = new Response(ResponseType.TEST_RESULT.name(), "three", browserInfo, "", 1);
+    handler.service(id, gson.toJson(batch), gson.toJson(last), "true", null, writer);
+
+    assertEquals("BrowserCommand", out.toString());
+    List<StreamMessage> messages = slave.getResponses(0, TimeUnit.SECONDS);
+    assertEquals(3, messages.size());
+    assertEquals("one", messages.get(0).getResponse().getResponse());
+    assertFalse(messages.get(0).isLast());
+    assertEquals("two", messages.get(1).getResponse().getResponse());
+    assertFalse(messages.get(1).isLast());
+    assertEquals("three", messages.get(2).getResponse().getResponse());
+    assertTrue(messages.get(2).isLast());
+  }
+
   public void testSimulatePollTimeoutDequeueNullCommand() throws Exception {
     CapturedBrowsers browsers = new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0)));
     String id = "1";
@@ -120,7 +159,8 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
     slave.setDequeueTimeout(0L, TimeUnit.NANOSECONDS);
     browsers.addSlave(slave);
     BrowserQueryResponseHandler handler =
-        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses);
+        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
 
     handler.service(id, null, "true", null, writer);
     assertEquals("{\"command\":\"noop\"}", out.toString());
@@ -138,7 +178,8 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
     slave.createCommand(data);
     browsers.addSlave(slave);
     BrowserQueryResponseHandler handler =
-        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses);
+        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
 
     handler.service(id, null, null, null, writer);
     assertEquals(42L, slave.getLastHeartbeat().getMillis());
@@ -148,7 +189,8 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
     CapturedBrowsers capturedBrowsers = new CapturedBrowsers(
         new BrowserIdStrategy(new MockTime(0)));
     BrowserQueryResponseHandler handler =
-        new BrowserQueryResponseHandler(null, null, capturedBrowsers, streamedResponses);
+        new BrowserQueryResponseHandler(null, null, capturedBrowsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
 
     handler.service("1", "response", "true", null, writer);
     assertEquals(new Gson().toJson(
@@ -164,7 +206,8 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
 
     browsers.addSlave(slave);
     BrowserQueryResponseHandler handler =
-        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses);
+        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
     slave.createCommand("awaitingResponse");
     slave.dequeueCommand();
     slave.createCommand("BrowserCommand");
@@ -193,7 +236,8 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
 
     browsers.addSlave(slave);
     BrowserQueryResponseHandler handler =
-        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses);
+        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
     List<FileResult> fileResults = new LinkedList<FileResult>();
 
     fileResults.add(new FileResult(new FileSource("/test/filename1.js", "filename1.js", 123, -1), true, ""));
@@ -238,7 +282,8 @@ public class BrowserQueryResponseHandlerTest extends TestCase {
 
     browsers.addSlave(slave);
     BrowserQueryResponseHandler handler =
-        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses);
+        new BrowserQueryResponseHandler(null, null, browsers, streamedResponses,
+            new ScriptBundler(null, new NullPathPrefix(), false), new LongPoll(null, false));
 
     slave.addFiles(Lists.newArrayList(new FileInfo()), new LoadedFiles());
     Response response = new Response();
@@ -19,6 +19,7 @@ import static org.easymock.EasyMock.expect;
 
 import java.io.CharArrayWriter;
 import java.io.PrintWriter;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -59,7 +60,8 @@ public class CommandGetHandlerTest extends TestCase {
             RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
 
     capturedBrowsers.addSlave(slave);
-    CommandGetHandler handler = new CommandGetHandler(null, null, new Gson(), capturedBrowsers);
+    CommandGetHandler handler = new CommandGetHandler(null, null, new Gson(), capturedBrowsers,
+        new LongPoll(null, false));
 
     assertEquals(new Gson().toJson(Lists.newArrayList(slave.getBrowserInfo())),
       handler.listBrowsers());
@@ -80,6 +82,7 @@ public class CommandGetHandlerTest extends TestCase {
     HttpServletRequest request = control.createMock(HttpServletRequest.class);
     expect(request.getParameter("listBrowsers")).andReturn(null);
     expect(request.getParameter("nextBrowserId")).andReturn(null);
+    expect(request.getParameter("batch")).andReturn(null);
     expect(request.getParameter("id")).andReturn(browserInfo.getId().toString());
     control.replay();
 
@@ -94,9 +97,48 @@ public class CommandGetHandlerTest extends TestCase {
     slave.addResponse(new Response(ResponseType.LOG.name(), "", browserInfo, "", -1), true);
     capturedBrowsers.addSlave(slave);
     Gson gson = new Gson();
-    CommandGetHandler handler = new CommandGetHandler(request, response, gson, capturedBrowsers);
+    CommandGetHandler handler = new CommandGetHandler(request, response, gson, capturedBrowsers,
+        new LongPoll(request, false));
     handler.handleIt();
     assertEquals(ResponseType.BROWSER_PANIC, gson.fromJson(out.toString(), StreamMessage.class)
         .getResponse().getResponseType());
   }
+
+  public void testBatchedResponses() throws Exception {
+    CapturedBrowsers capturedBrowsers = new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0)));
+    BrowserInfo browserInfo = new BrowserInfo();
+    browserInfo.setId(1L);
+
+    CharArrayWriter out = new CharArrayWriter();
+    PrintWriter writer = new PrintWriter(out);
+
+    IMocksControl control = EasyMock.createControl();
+
+    HttpServletResponse response = control.createMock(HttpServletResponse.class);
+    expect(response.getWriter()).andReturn(writer).anyTimes();
+    HttpServletRequest request = control.createMock(HttpServletRequest.class);
+    expect(request.getParameter("listBrowsers")).andReturn(null);
+    expect(request.getParameter("nextBrowserId")).andReturn(null);
+    expect(request.getParameter("batch")).andReturn("");
+    expect(request.getParameter("id")).andReturn(browserInfo.getId().toString());
+    control.replay();
+
+    SlaveBrowser slave = new SlaveBrowser(new MockTime(0), "1", browserInfo,
+        SlaveBrowser.TIMEOUT, null, CaptureHandler.QUIRKS, RunnerType.CLIENT,
+        BrowserState.CAPTURED, new Instant(0));
+    slave.addResponse(new Response(ResponseType.LOG.name(), "", browserInfo, "", -1), false);
+    slave.addResponse(new Response(ResponseType.TEST_RESULT.name(), "", browserInfo, "", -1), true);
+    capturedBrowsers.addSlave(slave);
+    Gson gson = new Gson();
+    CommandGetHandler handler = new CommandGetHandler(request, response, gson, capturedBrowsers,
+        new LongPoll(request, false));
+    handler.handleIt();
+
+    List<StreamMessage> messages = StreamMessage.fromJson(gson, out.toString());
+    assertEquals(2, messages.size());
+    assertEquals(ResponseType.LOG, messages.get(0).getResponse().getResponseType());
+    assertFalse(messages.get(0).isLast());
+    assertTrue(messages.get(1).isLast());
+    control.verify();
+  }
 }
@@ -25,6 +25,7 @@ import com.google.jstestdriver.Time;
 import com.google.jstestdriver.browser.BrowserIdStrategy;
 import com.google.jstestdriver.model.NullPathPrefix;
 import com.google.jstestdriver.runner.RunnerType;
+import com.google.jstestdriver.server.JstdTestCaseStore;
 
 import junit.framework.TestCase;
 
@@ -106,8 +107,8 @@ public class FileSetGetHandlerTest extends TestCase {
     request.setParameter("sessionId", sessionId);
 
     StringWriter stringWriter = new StringWriter();
-    new FileSetGetHandler(request, new PrintWriter(stringWriter), capturedBrowsers, time)
-        .handleIt();
+    new FileSetGetHandler(request, new PrintWriter(stringWriter), capturedBrowsers, time,
+        new JstdTestCaseStore()).handleIt();
     return stringWriter.toString();
   }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server.handlers;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isA;
+
+import com.google.common.collect.Maps;
+import com.google.jstestdriver.BrowserInfo;
+import com.google.jstestdriver.Command;
+import com.google.jstestdriver.SlaveBrowser;
+import com.google.jstestdriver.SlaveBrowser.BrowserState;
+import com.google.jstestdriver.TimeImpl;
+import com.google.jstestdriver.runner.RunnerType;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.joda.time.Instant;
+import org.mortbay.jetty.RetryRequest;
+import org.mortbay.util.ajax.Continuation;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+public class LongPollTest extends TestCase {
+
+  private SlaveBrowser browser;
+  private RetryContinuation continuation;
+  private LongPoll longPoll;
+
+  @Override
+  protected void setUp() throws Exception {
+    browser = new SlaveBrowser(new TimeImpl(), "1", new BrowserInfo(), SlaveBrowser.TIMEOUT,
+        null, CaptureHandler.QUIRKS, RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+    continuation = new RetryContinuation();
+    longPoll = new LongPoll(createRequest(continuation), true);
+  }
+
+  public void testReturnsAWaitingResultWithoutSuspending() throws Exception {
+    browser.createCommand("{}");
+
+    assertNotNull(longPoll.await(new CommandPoll(browser), 1000));
+    assertFalse(continuation.isPending());
+    assertEquals(0, longPoll.getSuspensions());
+  }
+
+  public void testResumesWhenAResultArrives() throws Exception {
+    try {
+      longPoll.await(new CommandPoll(browser), 1000);
+      fail("Expected the request to be suspended.");
+    } catch (RetryRequest e) {
+      // Jetty dispatches the request again once it is resumed.
+    }
+    assertTrue(longPoll.isSuspended());
+
+    browser.createCommand("{}");
+    assertTrue(continuation.isResumed());
+
+    Command command = longPoll.await(new CommandPoll(browser), 1000);
+    assertEquals("{}", command.getCommand());
+    assertEquals(1, longPoll.getSuspensions());
+    assertFalse(longPoll.isSuspended());
+  }
+
+  public void testTimeoutRemovesTheListener() throws Exception {
+    CommandPoll poll = new CommandPoll(browser);
+    try {
+      longPoll.await(poll, 1000);
+      fail("Expected the request to be suspended.");
+    } catch (RetryRequest e) {
+      // Timed out, below.
+    }
+
+    assertNull(longPoll.await(poll, 1000));
+    assertEquals(1, longPoll.getSuspensions());
+    assertNotNull(poll.removed);
+    assertNull(continuation.getObject());
+  }
+
+  public void testDisabledIsNeverSuspended() throws Exception {
+    continuation.suspendOnce();
+    assertFalse(new LongPoll(createRequest(continuation), false).isSuspended());
+  }
+
+  private HttpServletRequest createRequest(Continuation continuation) {
+    final Map<String, Object> attributes = Maps.newHashMap();
+    attributes.put("org.mortbay.jetty.ajax.Continuation", continuation);
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    expect(request.getAttribute(isA(String.class))).andStubAnswer(new IAnswer<Object>() {
+      public Object answer() {
+        return attributes.get(EasyMock.getCurrentArguments()[0]);
+      }
+    });
+    request.setAttribute(isA(String.class), anyObject());
+    expectLastCall().andStubAnswer(new IAnswer<Object>() {
+      public Object answer() {
+        Object[] arguments = EasyMock.getCurrentArguments();
+        attributes.put((String) arguments[0], arguments[1]);
+        return null;
+      }
+    });
+    EasyMock.replay(request);
+    return request;
+  }
+
+  private static class CommandPoll implements LongPoll.Poll<Command> {
+    private final SlaveBrowser browser;
+    private Runnable removed;
+
+    CommandPoll(SlaveBrowser browser) {
+      this.browser = browser;
+    }
+
+    public Command pollOrListen(Runnable listener) {
+      return browser.dequeueCommandOrListen(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+      removed = listener;
+      browser.removeCommandListener(listener);
+    }
+  }
+
+  /** Suspends the way Jetty's RetryContinuation does, by throwing a RetryRequest. */
+  private static class RetryContinuation implements Continuation {
+    private boolean pending;
+    private boolean resumed;
+    private Object object;
+
+    void suspendOnce() {
+      try {
+        suspend(0);
+      } catch (RetryRequest e) {
+        // Left pending.
+      }
+    }
+
+    public synchronized boolean suspend(long timeout) {
+      if (!pending && !resumed) {
+        pending = true;
+        throw new RetryRequest();
+      }
+      boolean wasResumed = resumed;
+      pending = false;
+      resumed = false;
+      return wasResumed;
+    }
+
+    public synchronized void resume() {
+      if (pending) {
+        resumed = true;
+      }
+    }
+
+    public synchronized void reset() {
+      pending = false;
+      resumed = false;
+    }
+
+    public boolean isNew() {
+      return false;
+    }
+
+    public synchronized boolean isPending() {
+      return pending;
+    }
+
+    public synchronized boolean isResumed() {
+      return resumed;
+    }
+
+    public Object getObject() {
+      return object;
+    }
+
+    public void setObject(Object object) {
+      this.object = object;
+    }
+  }
+}
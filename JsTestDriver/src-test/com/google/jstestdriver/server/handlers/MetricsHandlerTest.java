@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.common.collect.Lists;
+import com.google.jstestdriver.BrowserInfo;
+import com.google.jstestdriver.CapturedBrowsers;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.MockTime;
+import com.google.jstestdriver.SlaveBrowser;
+import com.google.jstestdriver.SlaveBrowser.BrowserState;
+import com.google.jstestdriver.TimeImpl;
+import com.google.jstestdriver.browser.BrowserIdStrategy;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.runner.RunnerType;
+import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ServerMetrics;
+
+import junit.framework.TestCase;
+
+import org.joda.time.Instant;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+
+public class MetricsHandlerTest extends TestCase {
+
+  private ServerMetrics metrics;
+  private CapturedBrowsers capturedBrowsers;
+  private JstdTestCaseStore store;
+  private MetricsHandler handler;
+
+  @Override
+  protected void setUp() throws Exception {
+    metrics = new ServerMetrics();
+    capturedBrowsers = new CapturedBrowsers(new BrowserIdStrategy(new MockTime(0)));
+    BrowserInfo browserInfo = new BrowserInfo();
+    browserInfo.setId(1L);
+    browserInfo.setName("Fire\"fox");
+    SlaveBrowser slave = new SlaveBrowser(new TimeImpl(), "1", browserInfo, 20, null,
+        CaptureHandler.QUIRKS, RunnerType.CLIENT, BrowserState.CAPTURED, new Instant(0));
+    slave.createCommand("first");
+    slave.createCommand("second");
+    slave.dequeueCommand();
+    capturedBrowsers.addSlave(slave);
+    store = new JstdTestCaseStore();
+    handler = new MetricsHandler(metrics, capturedBrowsers, store,
+        Collections.<String, String[]>emptyMap(), null);
+  }
+
+  public void testWritePrometheus() throws Exception {
+    metrics.recordRequest("GET /hello", 3000000);
+    metrics.recordRequest("GET /hello", 20000000);
+    metrics.addTestResource(6);
+
+    StringWriter out = new StringWriter();
+    handler.writePrometheus(new PrintWriter(out));
+    String text = out.toString();
+
+    assertTrue(text, text.contains("jstd_request_seconds_bucket{route=\"GET /hello\",le=\"0.001\"} 0\n"));
+    assertTrue(text, text.contains("jstd_request_seconds_bucket{route=\"GET /hello\",le=\"0.005\"} 1\n"));
+    assertTrue(text, text.contains("jstd_request_seconds_bucket{route=\"GET /hello\",le=\"+Inf\"} 2\n"));
+    assertTrue(text, text.contains("jstd_request_seconds_count{route=\"GET /hello\"} 2\n"));
+    assertTrue(text, text.contains("jstd_test_resource_bytes_total 6\n"));
+    assertTrue(text, text.contains("jstd_captured_browsers 1\n"));
+    assertTrue(text, text.contains("jstd_store_content_bytes 0\n"));
+    assertTrue(text, text.contains(
+        "jstd_command_queue_depth{browser=\"1\",name=\"Fire\\\"fox\"} 1\n"));
+    assertTrue(text, text.contains(
+        "jstd_command_wait_seconds_count{browser=\"1\",name=\"Fire\\\"fox\"} 1\n"));
+  }
+
+  public void testWriteJson() throws Exception {
+    metrics.recordRequest("POST /cmd", 3000000);
+    store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.newArrayList(new FileInfo("a/lib.js", 1, -1, false, false, "lib", "a/lib.js"),
+            new FileInfo("b/lib.js", 1, -1, false, false, "lib", "b/lib.js")),
+        Lists.<FileInfo>newArrayList(), "1"));
+
+    StringWriter out = new StringWriter();
+    handler.writeJson(new PrintWriter(out));
+    JsonObject json = new JsonParser().parse(out.toString()).getAsJsonObject();
+
+    JsonObject request = json.getAsJsonObject("requests").getAsJsonObject("POST /cmd");
+    assertEquals(1, request.get("count").getAsInt());
+    assertEquals(1, request.getAsJsonObject("buckets").get("0.005").getAsInt());
+    assertEquals(6, json.get("storeContentBytes").getAsLong());
+    assertEquals(6, json.get("storeDeduplicatedBytes").getAsLong());
+    JsonObject browser = json.getAsJsonArray("browsers").get(0).getAsJsonObject();
+    assertEquals("1", browser.get("id").getAsString());
+    assertEquals(1, browser.get("commandQueueDepth").getAsInt());
+    assertEquals(1, browser.getAsJsonObject("commandWait").get("count").getAsInt());
+  }
+}
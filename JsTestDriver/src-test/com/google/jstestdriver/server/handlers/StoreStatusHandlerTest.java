@@ -0,0 +1,66 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server.handlers;
+
+import com.google.common.collect.Lists;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.MockTime;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.StoreRetention;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.http.HttpServletResponse;
+
+public class StoreStatusHandlerTest extends TestCase {
+
+  public void testShowsStoreSize() throws Exception {
+    MockTime time = new MockTime(1000);
+    JstdTestCaseStore store =
+        new JstdTestCaseStore(null, new StoreRetention(4096, -1), time);
+    store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.newArrayList(new FileInfo("a.js", 1, -1, false, false, "lib", "a.js"),
+            new FileInfo("b.js", 1, -1, false, false, "lib", "b.js")),
+        Lists.<FileInfo>newArrayList(), "<first>"));
+    time.add(1000);
+    store.addCase(new JstdTestCase(Lists.<FileInfo>newArrayList(),
+        Lists.newArrayList(new FileInfo("a.js", 1, -1, false, false, "lib", "a.js")),
+        Lists.<FileInfo>newArrayList(), "second"));
+    store.useCase("second", "1");
+
+    HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+    EasyMock.replay(response);
+    StringWriter out = new StringWriter();
+    new StoreStatusHandler(store, response, new PrintWriter(out)).handleIt();
+    String page = out.toString();
+
+    assertTrue(page, page.contains("Test Cases: (2)"));
+    assertTrue(page, page.contains("Files: 2<br/>"));
+    assertTrue(page, page.contains("Contents: 6 bytes"));
+    assertTrue(page, page.contains("Saved by sharing equal contents: 6 bytes"));
+    assertTrue(page, page.contains("Maximum contents: 4096 bytes"));
+    assertTrue(page, page.contains("Kept after last use: until the server stops"));
+    assertTrue(page, page.indexOf("<td>second</td><td>1</td>")
+        < page.indexOf("<td>&lt;first&gt;</td><td>2</td>"));
+    assertTrue(page, page.contains("<td>yes</td>"));
+  }
+}
@@ -19,19 +19,22 @@ import com.google.common.collect.Lists;
 import com.google.jstestdriver.FileInfo;
 import com.google.jstestdriver.config.ExecutionType;
 import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.JstdTestCaseDelta;
 import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ServerMetrics;
 
 import junit.framework.TestCase;
 
 import org.easymock.EasyMock;
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatterBuilder;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.PrintWriter;
-import java.text.DateFormat;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.zip.GZIPInputStream;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -40,7 +43,12 @@ import javax.servlet.http.HttpServletResponse;
 public class TestResourceHandlerTest extends TestCase {
 
   private ByteArrayOutputStream out = new ByteArrayOutputStream();
-  private PrintWriter writer = new PrintWriter(out);
+  private ServletOutputStream outputStream = new ServletOutputStream() {
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+    }
+  };
 
   public void testEmptyReturnWhenFileNotPresent() throws Exception {
     HttpServletResponse response = EasyMock.createMock(HttpServletResponse.class);
@@ -48,17 +56,21 @@ public class TestResourceHandlerTest extends TestCase {
     EasyMock.expectLastCall().anyTimes();
     EasyMock.replay(response);
     TestResourceHandler handler =
-        new TestResourceHandler(null, response, new JstdTestCaseStore());
+        new TestResourceHandler(null, response, new JstdTestCaseStore(), new ServerMetrics());
 
-    handler.service("nothing", writer);
+    handler.service("nothing");
   }
 
   public void testServeFile() throws Exception {
-    HttpServletResponse response = EasyMock.createMock(HttpServletResponse.class);
+    HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
     response.setContentType(StaticResourceHandler.MIME_TYPE_MAP.get("js"));
     EasyMock.expectLastCall().anyTimes();
+    response.setCharacterEncoding("UTF-8");
+    EasyMock.expectLastCall().anyTimes();
+    EasyMock.expect(response.getOutputStream()).andReturn(outputStream).anyTimes();
     EasyMock.replay(response);
-
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.replay(request);
 
     JstdTestCaseStore store = new JstdTestCaseStore();
     store.addCase(new JstdTestCase(
@@ -68,13 +80,122 @@ public class TestResourceHandlerTest extends TestCase {
         Collections.<FileInfo>emptyList(),
         Collections.<FileInfo>emptyList(),
             "id"));
-    TestResourceHandler handler =
-        new TestResourceHandler(null, response, store);
+    ServerMetrics metrics = new ServerMetrics();
+    TestResourceHandler handler = new TestResourceHandler(request, response, store, metrics);
 
-    handler.service("dummy.js", writer);
-    assertEquals("data", out.toString());
+    handler.service("dummy.js");
+    assertEquals("data", out.toString("UTF-8"));
     out.reset();
-    handler.service("dummytoo.js", writer);
-    assertEquals("more data", out.toString());
+    handler.service("dummytoo.js");
+    assertEquals("more data", out.toString("UTF-8"));
+    assertEquals(13, metrics.getTestResourceBytes());
+  }
+
+  public void testServeEncodesUtf8() throws Exception {
+    HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+    EasyMock.expect(response.getOutputStream()).andReturn(outputStream).anyTimes();
+    EasyMock.replay(response);
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.replay(request);
+
+    TestResourceHandler handler = new TestResourceHandler(request, response,
+        store(new FileInfo("a.js", 1, -1, false, false, "var \u00e9;", "a.js")),
+        new ServerMetrics());
+
+    handler.service("a.js");
+    assertEquals("var \u00e9;", out.toString("UTF-8"));
+  }
+
+  public void testNotModifiedWhenETagMatches() throws Exception {
+    JstdTestCaseStore store = store(new FileInfo("a.js", 1, -1, false, false, "data", "a.js"));
+    String eTag = store.getEncodedFile("a.js").getETag(false);
+
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.expect(request.getHeader("If-None-Match")).andReturn("\"other\", " + eTag);
+    EasyMock.replay(request);
+    HttpServletResponse response = EasyMock.createMock(HttpServletResponse.class);
+    response.setHeader("ETag", eTag);
+    response.setDateHeader("Last-Modified", 1);
+    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    EasyMock.replay(response);
+
+    new TestResourceHandler(request, response, store, new ServerMetrics()).service("a.js");
+    EasyMock.verify(response);
+  }
+
+  public void testNotModifiedSince() throws Exception {
+    JstdTestCaseStore store =
+        store(new FileInfo("a.js", 10500, -1, false, false, "data", "a.js"));
+
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.expect(request.getDateHeader("If-Modified-Since")).andReturn(10000L);
+    EasyMock.replay(request);
+    HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    EasyMock.replay(response);
+
+    new TestResourceHandler(request, response, store, new ServerMetrics()).service("a.js");
+    EasyMock.verify(response);
+  }
+
+  public void testServeGzipped() throws Exception {
+    StringBuilder data = new StringBuilder();
+    while (data.length() < 2048) {
+      data.append("var a = 1;\n");
+    }
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.expect(request.getHeader("Accept-Encoding")).andReturn("gzip, deflate");
+    EasyMock.replay(request);
+    HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+    response.setHeader("Content-Encoding", "gzip");
+    EasyMock.expect(response.getOutputStream()).andReturn(outputStream).anyTimes();
+    EasyMock.replay(response);
+
+    new TestResourceHandler(request, response,
+        store(new FileInfo("a.js", 1, -1, false, false, data.toString(), "a.js")),
+        new ServerMetrics()).service("a.js");
+
+    EasyMock.verify(response);
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+    ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+      unzipped.write(buffer, 0, read);
+    }
+    assertEquals(data.toString(), unzipped.toString("UTF-8"));
+  }
+
+  public void testGzippedContentsHaveTheirOwnETag() throws Exception {
+    StringBuilder data = new StringBuilder();
+    while (data.length() < 2048) {
+      data.append("var a = 1;\n");
+    }
+    JstdTestCaseStore store =
+        store(new FileInfo("a.js", 1, -1, false, false, data.toString(), "a.js"));
+    String eTag = store.getEncodedFile("a.js").getETag(false);
+    String gzippedETag = store.getEncodedFile("a.js").getETag(true);
+    assertFalse(eTag.equals(gzippedETag));
+
+    // a browser that has the identity contents gets the gzipped ones in full.
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.expect(request.getHeader("Accept-Encoding")).andReturn("gzip").anyTimes();
+    EasyMock.expect(request.getHeader("If-None-Match")).andReturn(eTag).anyTimes();
+    EasyMock.replay(request);
+    HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+    response.setHeader("ETag", gzippedETag);
+    response.setHeader("Content-Encoding", "gzip");
+    EasyMock.expect(response.getOutputStream()).andReturn(outputStream).anyTimes();
+    EasyMock.replay(response);
+
+    new TestResourceHandler(request, response, store, new ServerMetrics()).service("a.js");
+    EasyMock.verify(response);
+    assertTrue(out.size() > 0);
+  }
+
+  private JstdTestCaseStore store(FileInfo file) {
+    JstdTestCaseStore store = new JstdTestCaseStore();
+    store.applyDelta(new JstdTestCaseDelta(Lists.newArrayList(file),
+        Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList()));
+    return store;
   }
 }
@@ -19,6 +19,7 @@ import com.google.gson.Gson;
 import com.google.jstestdriver.hooks.FileInfoScheme;
 import com.google.jstestdriver.model.NullPathPrefix;
 import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ScriptBundler;
 
 import junit.framework.TestCase;
 
@@ -31,6 +32,7 @@ public class BrowserControlledRunnerPageTest extends TestCase {
   public void testRenderWithPrefix() throws Exception {
     new PrefixTester().testPrefixes(new BrowserControlledRunnerPage(new TestFileUtil(new JstdTestCaseStore(),
       new NullPathPrefix(),
-      Collections.<FileInfoScheme>emptySet(), new Gson())));
+      Collections.<FileInfoScheme>emptySet(), new Gson(),
+      new ScriptBundler(null, new NullPathPrefix(), false))));
   }
 }
@@ -23,6 +23,7 @@ import com.google.jstestdriver.hooks.FileInfoScheme;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.NullPathPrefix;
 import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ScriptBundler;
 import com.google.jstestdriver.util.HtmlWriter;
 
 import junit.framework.TestCase;
@@ -39,7 +40,8 @@ import java.util.Set;
 public class RunnerPageTest extends TestCase {
   public void testRenderWithPrefix() throws Exception {
     new PrefixTester().testPrefixes(new RunnerPage(new TestFileUtil(new JstdTestCaseStore(),
-        new NullPathPrefix(), Collections.<FileInfoScheme>emptySet(), new Gson()), false));
+        new NullPathPrefix(), Collections.<FileInfoScheme>emptySet(), new Gson(),
+        new ScriptBundler(null, new NullPathPrefix(), false)), false));
   }
 
   public void testWriteResources() throws IOException {
@@ -51,7 +53,8 @@ public class RunnerPageTest extends TestCase {
     String id = "foo";
     store.addCase(new JstdTestCase(Collections.<FileInfo>emptyList(), Lists.newArrayList(fileInfo),
         Collections.<FileInfo>emptyList(), id));
-    RunnerPage page = new RunnerPage(new TestFileUtil(store, prefix, schemes, new Gson()), false);
+    RunnerPage page = new RunnerPage(new TestFileUtil(store, prefix, schemes, new Gson(),
+        new ScriptBundler(store, prefix, false)), false);
     
     Map<String, String> properties = Maps.newHashMap();
     properties.put(SlavePageRequest.TESTCASE_ID, id);
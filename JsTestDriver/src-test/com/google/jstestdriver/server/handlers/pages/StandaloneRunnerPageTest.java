@@ -23,6 +23,7 @@ import com.google.jstestdriver.FilesCache;
 import com.google.jstestdriver.hooks.FileInfoScheme;
 import com.google.jstestdriver.model.NullPathPrefix;
 import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ScriptBundler;
 
 import junit.framework.TestCase;
 
@@ -34,6 +35,7 @@ public class StandaloneRunnerPageTest extends TestCase {
     new PrefixTester().testPrefixes(new BrowserControlledRunnerPage(
         new TestFileUtil(new JstdTestCaseStore(),
             new NullPathPrefix(),
-            Collections.<FileInfoScheme>emptySet(), new Gson())));
+            Collections.<FileInfoScheme>emptySet(), new Gson(),
+            new ScriptBundler(null, new NullPathPrefix(), false))));
   }
 }
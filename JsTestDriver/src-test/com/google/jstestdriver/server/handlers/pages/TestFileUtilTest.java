@@ -24,6 +24,7 @@ import com.google.jstestdriver.hooks.FileInfoScheme;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.NullPathPrefix;
 import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ScriptBundler;
 import com.google.jstestdriver.util.HtmlWriter;
 
 import junit.framework.TestCase;
@@ -49,7 +50,8 @@ public class TestFileUtilTest extends TestCase {
       new FileInfo("/bar.js", 0, 0, false, false, null, "bar.js"),
       new FileInfo("http://somehost/bar.js", 0, 0, false, false, null, "http://somehost/bar.js")
       ),
-      new NullPathPrefix(), defaultSchemes, new Gson());
+      new NullPathPrefix(), defaultSchemes, new Gson(),
+      new ScriptBundler(null, new NullPathPrefix(), false));
 
     final List<String> paths = Lists.newArrayList();
 
@@ -63,13 +65,39 @@ public class TestFileUtilTest extends TestCase {
     assertEquals(Lists.newArrayList("/test/foo.js","/test/bar.js", "http://somehost/bar.js"), paths);
   }
   
+  public void testWriteBundledFileInfos() throws Exception {
+    Set<FileInfoScheme> defaultSchemes = Sets.<FileInfoScheme>newHashSet(new HttpFileInfoScheme());
+    JstdTestCaseStore store = createFileCache(
+      new FileInfo("/foo.js", 0, 0, false, false, "var foo;", "foo.js"),
+      new FileInfo("/bar.js", 0, 0, false, false, "var bar;", "bar.js"),
+      new FileInfo("http://somehost/bar.js", 0, 0, false, false, null, "http://somehost/bar.js"));
+
+    TestFileUtil testFileUtil = new TestFileUtil(store,
+      new NullPathPrefix(), defaultSchemes, new Gson(),
+      new ScriptBundler(store, new NullPathPrefix(), true));
+
+    final List<String> paths = Lists.newArrayList();
+
+    testFileUtil.writeTestFiles(new HtmlWriter(new StringWriter(), new NullPathPrefix()) {
+      @Override
+      public HtmlWriter writeExternalScript(String path) {
+        paths.add(path);
+        return this;
+      }
+    }, TESTCASE_ID);
+    assertEquals(2, paths.size());
+    assertTrue(paths.get(0), paths.get(0).matches("/bundle/[0-9a-f]{40}\\.js"));
+    assertEquals("http://somehost/bar.js", paths.get(1));
+  }
+
   public void testWriteFileInfosWindowsPath() throws Exception {
     Set<FileInfoScheme> defaultSchemes = Sets.<FileInfoScheme>newHashSet(new HttpFileInfoScheme());
 
     TestFileUtil testFileUtil = new TestFileUtil(createFileCache(
       new FileInfo("C:\\Sagitta\\Main\\Source\\Web\\Sagitta.Web.JavaScriptTests\\lib\\jasmine\\jasmine.js",
         0, 0, false, false, null, "/test/lib/jasmine/jasmine.js")),
-      new NullPathPrefix(), defaultSchemes, new Gson());
+      new NullPathPrefix(), defaultSchemes, new Gson(),
+      new ScriptBundler(null, new NullPathPrefix(), false));
 
     StringWriter writer = new StringWriter();
     HtmlWriter htmlWriter = new HtmlWriter(writer, new NullPathPrefix());
@@ -102,7 +130,8 @@ public class TestFileUtilTest extends TestCase {
       new FileInfo(unhandledPath, 0, 0, false, false, null, unhandledPath),
       new FileInfo("http://somehost/bar.js", 0, 0, false, false, null, "http://somehost/bar.js")
       ),
-      new NullPathPrefix(), schemes, new Gson());
+      new NullPathPrefix(), schemes, new Gson(),
+      new ScriptBundler(null, new NullPathPrefix(), false));
 
     final List<String> paths = Lists.newArrayList();
 
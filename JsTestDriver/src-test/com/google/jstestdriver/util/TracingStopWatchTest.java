@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringWriter;
+import java.util.List;
+
+public class TracingStopWatchTest extends TestCase {
+
+  public void testRecordsNestedOperations() throws Exception {
+    TracingStopWatch stopWatch = new TracingStopWatch(null);
+    stopWatch.start("browser %s", "1");
+    stopWatch.start("fetch %s", "/cmd");
+    stopWatch.stop("fetch %s", "/cmd");
+    stopWatch.start("fetch %s", "/cmd");
+    stopWatch.stop("fetch %s", "/cmd");
+    stopWatch.stop("browser %s", "1");
+
+    List<TracingStopWatch.Event> events = stopWatch.getEvents();
+    assertEquals(3, events.size());
+    assertEquals("fetch /cmd", events.get(0).frame.getName());
+    assertEquals(1, events.get(0).depth);
+    assertEquals("browser 1", events.get(0).root.getName());
+    assertEquals("browser 1", events.get(2).frame.getName());
+    assertEquals(0, events.get(2).depth);
+
+    StringWriter summary = new StringWriter();
+    stopWatch.print(summary);
+    assertTrue(summary.toString(), summary.toString().contains("2 calls"));
+    assertTrue(summary.toString(), summary.toString().contains("browser 1 > fetch %s"));
+  }
+
+  public void testStopDiscardsUnfinishedInnerOperations() throws Exception {
+    TracingStopWatch stopWatch = new TracingStopWatch(null);
+    stopWatch.start("outer");
+    stopWatch.start("never stopped");
+    stopWatch.stop("outer");
+    stopWatch.stop("never started");
+
+    List<TracingStopWatch.Event> events = stopWatch.getEvents();
+    assertEquals(1, events.size());
+    assertEquals("outer", events.get(0).frame.getName());
+  }
+
+  public void testThreadsAreRecordedSeparately() throws Exception {
+    final TracingStopWatch stopWatch = new TracingStopWatch(null);
+    stopWatch.start("main");
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        stopWatch.start("other");
+        stopWatch.stop("other");
+      }
+    });
+    thread.start();
+    thread.join();
+    stopWatch.stop("main");
+
+    List<TracingStopWatch.Event> events = stopWatch.getEvents();
+    assertEquals(2, events.size());
+    assertEquals(0, events.get(0).depth);
+    assertEquals(thread.getId(), events.get(0).threadId);
+  }
+
+  public void testWritesChromeTrace() throws Exception {
+    File trace = File.createTempFile("trace", ".json");
+    try {
+      TracingStopWatch stopWatch = new TracingStopWatch(trace);
+      stopWatch.start("upload %s", "1");
+      stopWatch.stop("upload %s", "1");
+      stopWatch.print(new StringWriter());
+
+      JsonObject json = new JsonParser().parse(new FileReader(trace)).getAsJsonObject();
+      JsonArray events = json.getAsJsonArray("traceEvents");
+      JsonObject event = events.get(0).getAsJsonObject();
+      assertEquals("upload 1", event.get("name").getAsString());
+      assertEquals("X", event.get("ph").getAsString());
+      assertEquals(Thread.currentThread().getId(), event.get("tid").getAsLong());
+      JsonObject threadName = events.get(1).getAsJsonObject();
+      assertEquals("M", threadName.get("ph").getAsString());
+      assertEquals(Thread.currentThread().getName(),
+          threadName.getAsJsonObject("args").get("name").getAsString());
+    } finally {
+      trace.delete();
+    }
+  }
+}
@@ -23,6 +23,9 @@ import com.google.jstestdriver.hooks.TestsPreProcessor;
 import com.google.jstestdriver.server.JstdTestCaseStore;
 import com.google.jstestdriver.util.StopWatch;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,10 +41,12 @@ import java.util.Set;
  */
 @Singleton
 public class ActionFactory {
+  private static final Logger logger = LoggerFactory.getLogger(ActionFactory.class);
 
   Map<Class<?>, List<Observer>> observers = new HashMap<Class<?>, List<Observer>>();
   private final Provider<JsTestDriverClient> clientProvider;
   private final Set<TestsPreProcessor> testPreProcessors;
+  private final boolean impacted;
   private final boolean preloadFiles;
   private final FileLoader fileLoader;
   private final JsTestDriverServer.Factory factory;
@@ -50,12 +55,14 @@ public class ActionFactory {
   @Inject
   public ActionFactory(Provider<JsTestDriverClient> clientProvider,
                        Set<TestsPreProcessor> testPreProcessors,
+                       @Named("impacted") boolean impacted,
                        @Named("preloadFiles") boolean preloadFiles,
                        FileLoader fileLoader,
                        JsTestDriverServer.Factory factory,
                        StopWatch stopWatch) {
     this.clientProvider = clientProvider;
     this.testPreProcessors = testPreProcessors;
+    this.impacted = impacted;
     this.preloadFiles = preloadFiles;
     this.fileLoader = fileLoader;
     this.factory = factory;
@@ -102,6 +109,10 @@ public class ActionFactory {
 
   public RunTestsAction createRunTestsAction(ResponseStreamFactory responseStreamFactory,
       List<String> tests, boolean captureConsole) {
+    if (impacted && testPreProcessors.isEmpty()) {
+      logger.warn("--impacted needs the coverage plugin to tell which tests the changed files"
+          + " affect; running every test.");
+    }
     return new RunTestsAction(responseStreamFactory, tests, captureConsole, testPreProcessors, stopWatch);
   }
 
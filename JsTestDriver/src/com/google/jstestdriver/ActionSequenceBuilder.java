@@ -20,6 +20,7 @@ import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.google.jstestdriver.action.ConfigureGatewayAction;
 import com.google.jstestdriver.action.UploadAction;
+import com.google.jstestdriver.action.WatchAction;
 import com.google.jstestdriver.browser.BrowserActionExecutorAction;
 import com.google.jstestdriver.output.PrintXmlTestResultsAction;
 import com.google.jstestdriver.output.XmlPrinter;
@@ -58,6 +59,7 @@ public class ActionSequenceBuilder {
   private boolean raiseOnFailure = false;
   private JsonArray gatewayConfig;
   private final BrowserStartupAction browserStartup;
+  private WatchAction watchAction;
 
   private final JstdTestCaseStore testCaseStore;
 
@@ -131,6 +133,9 @@ public class ActionSequenceBuilder {
     if (xmlPrinter != null) {
       actions.add(new PrintXmlTestResultsAction(xmlPrinter));
     }
+    if (watchAction != null && !leaveServerRunning()) {
+      actions.add(watchAction);
+    }
 
     // wrap the actions with the setup/teardown actions.
     if (needToStartServer()) {
@@ -189,6 +194,14 @@ public class ActionSequenceBuilder {
     return this;
   }
 
+  /**
+   * Keeps re-running the affected tests as files change, after the first run.
+   */
+  public ActionSequenceBuilder watchingWith(WatchAction watchAction) {
+    this.watchAction = watchAction;
+    return this;
+  }
+
   /**
    * Throw an {@link FailureException} when there are no tests, a test fails, or
    * there are errors while loading a test.
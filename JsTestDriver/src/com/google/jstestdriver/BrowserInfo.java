@@ -27,6 +27,7 @@ public class BrowserInfo {
   private Integer uploadSize = FileUploader.CHUNK_SIZE;
   private boolean serverReceivedHeartbeat;
   private boolean ready = false;
+  private boolean pooled;
 
   public void setId(Long id) {
     this.id = id;
@@ -117,4 +118,13 @@ public class BrowserInfo {
   public boolean browserReady() {
     return ready;
   }
+
+  /** Whether the browser is kept warm by the server's browser pool. */
+  public boolean isPooled() {
+    return pooled;
+  }
+
+  public void setPooled(boolean pooled) {
+    this.pooled = pooled;
+  }
 }
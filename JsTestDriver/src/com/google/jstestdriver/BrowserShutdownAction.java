@@ -15,6 +15,7 @@
  */
 package com.google.jstestdriver;
 
+import com.google.jstestdriver.browser.BrowserPool;
 import com.google.jstestdriver.browser.BrowserRunner;
 import com.google.jstestdriver.model.RunData;
 
@@ -31,13 +32,30 @@ public class BrowserShutdownAction implements Action {
       LoggerFactory.getLogger(BrowserShutdownAction.class);
 
   private final Set<BrowserRunner> browsers;
+  private final BrowserStartupAction browserStartupAction;
 
   public BrowserShutdownAction(Set<BrowserRunner> browsers) {
     this.browsers = browsers;
+    this.browserStartupAction = null;
+  }
+
+  /**
+   * Stops the browsers started by the startup action, including every browser
+   * of its pool.
+   */
+  public BrowserShutdownAction(BrowserStartupAction browserStartupAction) {
+    this.browsers = browserStartupAction.getBrowsers();
+    this.browserStartupAction = browserStartupAction;
   }
 
   @Override
   public RunData run(RunData runData) {
+    BrowserPool pool = browserStartupAction == null ? null : browserStartupAction.getPool();
+    if (pool != null) {
+      logger.debug("Stopping the browser pool");
+      pool.stop();
+      return runData;
+    }
     for (BrowserRunner browser : browsers) {
       logger.debug("Stopping {}", browser);
       browser.stopBrowser();
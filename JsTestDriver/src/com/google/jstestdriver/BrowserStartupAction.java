@@ -20,6 +20,7 @@ import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.google.jstestdriver.browser.BrowserControl;
 import com.google.jstestdriver.browser.BrowserControl.BrowserControlFactory;
+import com.google.jstestdriver.browser.BrowserPool;
 import com.google.jstestdriver.browser.BrowserRunner;
 import com.google.jstestdriver.model.RunData;
 
@@ -31,7 +32,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 /**
- * Starts a list of browsers when run.
+ * Starts a list of browsers when run. With a browser pool, it starts the
+ * pool's browsers instead and leaves the pool to keep them captured.
  * @author jeremiele@google.com (Jeremie Lenfant-Engelmann)
  */
 public class BrowserStartupAction implements Action {
@@ -41,22 +43,43 @@ public class BrowserStartupAction implements Action {
   private final JsTestDriverClient client;
   private final ExecutorService executor;
   private final BrowserControlFactory browserControlFactory;
+  private final CapturedBrowsers capturedBrowsers;
+  private final int poolSize;
+  private BrowserPool pool;
 
   @Inject
   public BrowserStartupAction(Set<BrowserRunner> browsers,
                               JsTestDriverClient client,
                               @Named("captureAddress") String captureAddress,
                               ExecutorService executor,
-                              BrowserControlFactory browserControlFactory) {
+                              BrowserControlFactory browserControlFactory,
+                              CapturedBrowsers capturedBrowsers,
+                              @Named("browserPool") int poolSize) {
       this.browsers = browsers;
       this.client = client;
       this.captureAddress = captureAddress;
       this.executor = executor;
       this.browserControlFactory = browserControlFactory;
+      this.capturedBrowsers = capturedBrowsers;
+      this.poolSize = poolSize;
   }
 
   @Override
   public RunData run(final RunData runData) {
+    if (poolSize > 0) {
+      pool = new BrowserPool(browsers, poolSize, captureAddress, capturedBrowsers,
+          browserControlFactory, executor);
+      // the pooled browsers outlive the run, so they are stopped with the server.
+      final BrowserShutdownAction shutdown = new BrowserShutdownAction(this);
+      Runtime.getRuntime().addShutdownHook(new Thread("browser pool shutdown") {
+        @Override
+        public void run() {
+          shutdown.run(runData);
+        }
+      });
+      pool.start();
+      return runData;
+    }
     List<Future<String>> browserIds = Lists.newArrayListWithCapacity(browsers.size());
     for (final BrowserRunner browser : browsers) {
       browserIds.add(executor.submit(new Callable<String>() {
@@ -82,6 +105,11 @@ public class BrowserStartupAction implements Action {
     return runData;
   }
 
+  /** The pool of browsers started by the run, or null without a pool. */
+  public BrowserPool getPool() {
+    return pool;
+  }
+
   public Set<BrowserRunner> getBrowsers() {
     return browsers;
   }
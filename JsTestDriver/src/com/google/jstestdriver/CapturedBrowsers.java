@@ -26,9 +26,11 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -39,6 +41,8 @@ public class CapturedBrowsers extends Observable {
   private static final Logger logger = LoggerFactory.getLogger(CapturedBrowsers.class);
 
   private final Map<String, SlaveBrowser> slaves = new ConcurrentHashMap<String, SlaveBrowser>();
+  private final Set<String> pooledIds =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
   private final BrowserIdStrategy idStrategy;
   
   @Inject
@@ -55,6 +59,9 @@ public class CapturedBrowsers extends Observable {
   }
 
   public void addSlave(SlaveBrowser slave) {
+    if (slave.getBrowserInfo() != null) {
+      slave.getBrowserInfo().setPooled(pooledIds.contains(slave.getId()));
+    }
     slaves.put(slave.getId(), slave);
     setChanged();
     notifyObservers(new BrowserCaptureEvent(Event.CONNECTED, slave));
@@ -81,6 +88,22 @@ public class CapturedBrowsers extends Observable {
     notifyObservers(new BrowserCaptureEvent(Event.DISCONNECTED, slave));
   }
   
+  /**
+   * Marks the browser that is captured with the id as part of the browser
+   * pool, including when it is captured again after a reload.
+   */
+  public void addPooledId(String id) {
+    pooledIds.add(id);
+    SlaveBrowser slave = slaves.get(id);
+    if (slave != null && slave.getBrowserInfo() != null) {
+      slave.getBrowserInfo().setPooled(true);
+    }
+  }
+
+  public void removePooledId(String id) {
+    pooledIds.remove(id);
+  }
+
   @Override
   public String toString() {
     return String.format("CapturedBrowsers(%s)", slaves);
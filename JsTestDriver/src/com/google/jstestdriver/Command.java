@@ -22,6 +22,7 @@ package com.google.jstestdriver;
 public class Command {
 
   private final String command;
+  private final transient long created = System.nanoTime();
 
   public Command(String command) {
     this.command = command;
@@ -31,6 +32,11 @@ public class Command {
     return command;
   }
 
+  /** @return the {@link System#nanoTime()} at which the command was created. */
+  public long getCreated() {
+    return created;
+  }
+
   @Override
   public String toString() {
     return String.format("command= %s", command);
@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -125,18 +126,23 @@ public class CommandTask {
       stopWatch.start("execution %s", params.get("data"));
       StreamMessage streamMessage = null;
       do {
-        String response = server.fetch(baseUrl + "/cmd?id=" + browserId);
+        // the server holds the request until the browser responds.
+        String response = server.fetch(baseUrl + "/cmd?id=" + browserId + "&batch");
+        List<StreamMessage> streamMessages;
         try {
-          streamMessage = gson.fromJson(response, StreamMessage.class);
+          streamMessages = StreamMessage.fromJson(gson, response);
         } catch (Exception e) {
           throw new RuntimeException("Error deserializing: " + response, e);
         }
-        Response resObj = streamMessage.getResponse();
-        if (ResponseType.BROWSER_PANIC.equals(resObj.getResponseType())) {
-          throw new BrowserPanicException(resObj.getBrowser(), resObj.getResponse());
+        for (StreamMessage message : streamMessages) {
+          streamMessage = message;
+          Response resObj = streamMessage.getResponse();
+          if (ResponseType.BROWSER_PANIC.equals(resObj.getResponseType())) {
+            throw new BrowserPanicException(resObj.getBrowser(), resObj.getResponse());
+          }
+          stream.stream(resObj);
         }
-        stream.stream(resObj);
-      } while (!streamMessage.isLast());
+      } while (streamMessage == null || !streamMessage.isLast());
       logger.debug("finished {} for {} with {}", new Object[] {params.get("data"), browserId, streamMessage.getResponse().getResponseType()});
     } finally {
       stopWatch.stop("execution %s", params.get("data"));
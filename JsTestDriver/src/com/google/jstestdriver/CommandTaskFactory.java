@@ -35,6 +35,7 @@ public class CommandTaskFactory {
   private final StopWatch stopWatch;
   private final Set<FileInfoScheme> schemes;
   private final HandlerPathPrefix pathPrefix;
+  private final int uploadWindow;
 
   @Inject
   public CommandTaskFactory(JsTestDriverFileFilter filter,
@@ -42,18 +43,20 @@ public class CommandTaskFactory {
                             Provider<HeartBeatManager> heartBeatProvider,
                             StopWatch stopWatch,
                             Set<FileInfoScheme> schemes,
-                            @Named("serverHandlerPrefix") HandlerPathPrefix pathPrefix
-                            ) {
+                            @Named("serverHandlerPrefix") HandlerPathPrefix pathPrefix,
+                            @Named("uploadWindow") int uploadWindow) {
     this.filter = filter;
     this.fileLoader = fileLoader;
     this.stopWatch = stopWatch;
     this.schemes = schemes;
     this.pathPrefix = pathPrefix;
+    this.uploadWindow = uploadWindow;
   }
 
   public CommandTask getCommandTask(ResponseStream stream, String baseUrl, Server server,
       Map<String, String> params, boolean upload) {
     return new CommandTask(stream, baseUrl, server, params, upload, stopWatch,
-        new FileUploader(stopWatch, server, baseUrl, fileLoader, filter, schemes, pathPrefix));
+        new FileUploader(stopWatch, server, baseUrl, fileLoader, filter, schemes, pathPrefix,
+            uploadWindow));
   }
 }
@@ -16,9 +16,11 @@
 package com.google.jstestdriver;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import com.google.jstestdriver.action.WatchAction;
 import com.google.jstestdriver.hooks.ActionListProcessor;
 import com.google.jstestdriver.output.XmlPrinter;
 
@@ -45,6 +47,8 @@ public class DefaultActionListProvider implements ActionListProvider {
   private final XmlPrinter xmlPrinter;
   private final ActionSequenceBuilder builder;
   private final boolean raiseOnFailure;
+  private final boolean watch;
+  private final Provider<WatchAction> watchAction;
 
   // TODO(corysmith): Refactor this. Currently in a temporary,
   //  make dependencies visible to aid refactoring state.
@@ -60,7 +64,9 @@ public class DefaultActionListProvider implements ActionListProvider {
       Set<ActionListProcessor> processors,
       XmlPrinter xmlPrinter,
       ActionSequenceBuilder builder,
-      @Named("raiseOnFailure") boolean raiseOnFailure) {
+      @Named("raiseOnFailure") boolean raiseOnFailure,
+      @Named("watch") boolean watch,
+      Provider<WatchAction> watchAction) {
     this.tests = tests;
     this.arguments = arguments;
     this.reset = reset;
@@ -72,6 +78,8 @@ public class DefaultActionListProvider implements ActionListProvider {
     this.xmlPrinter = xmlPrinter;
     this.builder = builder;
     this.raiseOnFailure = raiseOnFailure;
+    this.watch = watch;
+    this.watchAction = watchAction;
   }
 
   @Override
@@ -89,6 +97,9 @@ public class DefaultActionListProvider implements ActionListProvider {
     if (testOutput.length() > 0) {
       builder.printingResultsWhenFinished(xmlPrinter);
     }
+    if (watch) {
+      builder.watchingWith(watchAction.get());
+    }
     List<Action> actions = builder.build();
     for (ActionListProcessor processor : processors) {
       actions = processor.process(actions);
@@ -16,6 +16,7 @@
 package com.google.jstestdriver;
 
 import com.google.jstestdriver.hooks.FileInfoScheme;
+import com.google.jstestdriver.model.Blob;
 import com.google.jstestdriver.model.HandlerPathPrefix;
 
 import org.slf4j.Logger;
@@ -46,6 +47,15 @@ public class FileInfo implements Cloneable {
 
   private String displayPath;
 
+  /** Hex digest of the contents, set once the file has been loaded. */
+  private String digest;
+
+  /**
+   * The contents when the server keeps them in a {@link Blob} instead of data.
+   * Transient, so the contents are never sent with the file.
+   */
+  private transient Blob blob;
+
   public FileInfo() {
   }
 
@@ -61,6 +71,9 @@ public class FileInfo implements Cloneable {
   }
 
   public String getData() {
+    if (blob != null) {
+      return blob.decode();
+    }
     return data == null ? "" : data;
   }
 
@@ -107,6 +120,39 @@ public class FileInfo implements Cloneable {
     return isPatch;
   }
 
+  /**
+   * Returns the digest of the file contents, or null if the file has not been
+   * loaded by a {@link ProcessingFileLoader}.
+   */
+  public String getDigest() {
+    return digest;
+  }
+
+  /** Returns a copy of this FileInfo identified by the digest of its contents. */
+  public FileInfo withDigest(String digest) {
+    FileInfo file = load(data, timestamp);
+    file.digest = digest;
+    file.blob = blob;
+    return file;
+  }
+
+  /** Returns the blob holding the contents, or null if they are held in data. */
+  public Blob getBlob() {
+    return blob;
+  }
+
+  /** Returns a copy of this FileInfo with its contents held by the blob. */
+  public FileInfo withBlob(Blob blob) {
+    FileInfo file = load(null, timestamp);
+    file.blob = blob;
+    return file;
+  }
+
+  /** Returns a copy without the contents, for checks that only need the digest. */
+  public FileInfo withoutData() {
+    return load(null, timestamp);
+  }
+
   public boolean isWebAddress() {
     return filePath.startsWith("http://") || filePath.startsWith("https://");
   }
@@ -116,7 +162,7 @@ public class FileInfo implements Cloneable {
   }
 
   public boolean isLoaded() {
-    return data != null;
+    return data != null || blob != null;
   }
 
   public File toFile() {
@@ -149,24 +195,37 @@ public class FileInfo implements Cloneable {
   }
 
   public FileInfo load(String data, long timestamp) {
-    return new FileInfo(filePath, timestamp, length, isPatch, serveOnly, data, displayPath);
+    FileInfo file = new FileInfo(filePath, timestamp, length, isPatch, serveOnly, data, displayPath);
+    file.digest = digest;
+    return file;
+  }
+
+  /**
+   * Returns the unloaded file, as it is after changing on disk at the
+   * timestamp.
+   */
+  public FileInfo withTimestamp(long timestamp) {
+    FileInfo file = new FileInfo(filePath, timestamp, length, isPatch, serveOnly, null, displayPath);
+    file.patches = patches;
+    return file;
   }
 
-  /** Translates the FileInfo into a lightweight FileSrc object. */
+    /** Translates the FileInfo into a lightweight FileSrc object. */
   public FileSource toFileSource(HandlerPathPrefix prefix, Set<FileInfoScheme> schemes) {
     for (FileInfoScheme scheme : schemes) {
       if (scheme.matches(filePath)) {
-        return new FileSource(displayPath, filePath, this.getTimestamp(), length);
+        return new FileSource(displayPath, filePath, this.getTimestamp(), length, digest);
       }
     }
-    return new FileSource(prefix.prefixPath("/test/" + this.getDisplayPath()), filePath, this.getTimestamp(), length);
+    return new FileSource(prefix.prefixPath("/test/" + this.getDisplayPath()), filePath,
+        this.getTimestamp(), length, digest);
   }
 
   @Override
   public String toString() {
     if (logger.isDebugEnabled() || logger.isTraceEnabled()) {
       return "\n\tFileInfo [filePath=" + filePath + ", length=" + length + ", patches=" + patches
-          + ", serveOnly=" + serveOnly + ", timestamp=" + timestamp + "]";
+          + ", serveOnly=" + serveOnly + ", timestamp=" + timestamp + ", digest=" + digest + "]";
     }
     return "\n\tFileInfo[" + this.getDisplayPath() + "]";
   }
@@ -178,8 +237,11 @@ public class FileInfo implements Cloneable {
    * @return An updated FileInfo.
    */
   public FileInfo fromResolvedPath(String resolvedPath, String displayPath, long timestamp) {
-    return new FileInfo(resolvedPath, timestamp,
+    FileInfo file = new FileInfo(resolvedPath, timestamp,
       length, isPatch, serveOnly, data, displayPath);
+    file.digest = digest;
+    file.blob = blob;
+    return file;
   }
 
   /**
@@ -212,11 +274,14 @@ public class FileInfo implements Cloneable {
 
   @Override
   protected Object clone() throws CloneNotSupportedException {
-    return new FileInfo(filePath, timestamp, length, isPatch, serveOnly, data, displayPath);
+    FileInfo file = load(data, timestamp);
+    file.blob = blob;
+    return file;
   }
 
   /**
-   * Tests to see if a file is a proper replacement: different timestamp, length.
+   * Tests to see if a file is a proper replacement: different digest or, when
+   * either digest is unknown, a different timestamp.
    * Also returns false if the paths don't match.
    */
   public boolean shouldReplaceWith(FileInfo file) {
@@ -224,6 +289,13 @@ public class FileInfo implements Cloneable {
       logger.trace("paths not equal {} {}", getDisplayPath(), file.getDisplayPath());
       return false;
     }
+    if (digest != null && file.getDigest() != null) {
+      if (!digest.equals(file.getDigest())) {
+        logger.trace("replace {} because {} != {}", new Object[]{getDisplayPath(), digest, file.getDigest()});
+        return true;
+      }
+      return false;
+    }
     if (getTimestamp() != file.getTimestamp()) {
       logger.trace("replace {} because {} != {}", new Object[]{getDisplayPath(), getTimestamp(), file.getTimestamp()});
       return true;
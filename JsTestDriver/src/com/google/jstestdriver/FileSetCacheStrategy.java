@@ -19,7 +19,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -31,7 +33,10 @@ public class FileSetCacheStrategy {
   private static final Logger logger =
       LoggerFactory.getLogger(FileSetCacheStrategy.class);
 
-  /** Creates a fileSet from out of date and absent files. */
+  /**
+   * Creates a fileSet from out of date and absent files. The client files are
+   * indexed by path, so the comparison is linear in the size of both sets.
+   */
   public Set<FileInfo> createExpiredFileSet(Collection<FileInfo> newFileSet,
                                             Set<FileInfo> currentFileSet) {
     Set<FileInfo> expiredFileSet = new LinkedHashSet<FileInfo>();
@@ -41,30 +46,32 @@ public class FileSetCacheStrategy {
         expiredFileSet.add(info);
       }
     } else {
-      Set<FileInfo> diff = new LinkedHashSet<FileInfo>(newFileSet);
-  
-      diff.removeAll(currentFileSet);
-      for (FileInfo info : diff) {
-        expiredFileSet.add(info);
+      Map<String, FileInfo> clientFiles = new HashMap<String, FileInfo>();
+      for (FileInfo info : newFileSet) {
+        if (!clientFiles.containsKey(info.getFilePath())) {
+          clientFiles.put(info.getFilePath(), info);
+        }
+        if (!currentFileSet.contains(info)) {
+          expiredFileSet.add(info);
+        }
       }
       for (FileInfo browserFileInfo : currentFileSet) {
-        for (FileInfo clientFileInfo : newFileSet) {
-          if (clientFileInfo.equals(browserFileInfo)){
-            if (clientFileInfo.getTimestamp() != browserFileInfo.getTimestamp() ||
-                clientFileInfo.getLength() != browserFileInfo.getLength()) {
-              expiredFileSet.add(clientFileInfo);
-              logger.debug("files {} not equal ({},{}) ({},{}) update", new Object[] {
-                 clientFileInfo.getFilePath(),
-                 clientFileInfo.getLength(),
-                 clientFileInfo.getTimestamp(),
-                 browserFileInfo.getLength(),
-                 browserFileInfo.getTimestamp()
-              });
-            } else {
-              logger.debug("files equal {}, {} no update", clientFileInfo, browserFileInfo);
-            }
-            break;
-          }
+        FileInfo clientFileInfo = clientFiles.get(browserFileInfo.getFilePath());
+        if (clientFileInfo == null) {
+          continue;
+        }
+        if (clientFileInfo.getTimestamp() != browserFileInfo.getTimestamp() ||
+            clientFileInfo.getLength() != browserFileInfo.getLength()) {
+          expiredFileSet.add(clientFileInfo);
+          logger.debug("files {} not equal ({},{}) ({},{}) update", new Object[] {
+             clientFileInfo.getFilePath(),
+             clientFileInfo.getLength(),
+             clientFileInfo.getTimestamp(),
+             browserFileInfo.getLength(),
+             browserFileInfo.getTimestamp()
+          });
+        } else {
+          logger.debug("files equal {}, {} no update", clientFileInfo, browserFileInfo);
         }
       }
     }
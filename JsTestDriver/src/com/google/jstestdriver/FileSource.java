@@ -24,15 +24,22 @@ public class FileSource {
   private String basePath;
   private long timestamp;
   private long length;
+  // passed through the browser untouched, to identify the loaded contents.
+  private String digest;
 
   public FileSource() {
   }
 
   public FileSource(String fileSrc, String basePath, long timestamp, long length) {
+    this(fileSrc, basePath, timestamp, length, null);
+  }
+
+  public FileSource(String fileSrc, String basePath, long timestamp, long length, String digest) {
     this.fileSrc = fileSrc;
     this.basePath = basePath;
     this.timestamp = timestamp;
     this.length = length;
+    this.digest = digest;
   }
 
   public String getFileSrc() {
@@ -68,6 +75,10 @@ public class FileSource {
     this.timestamp = timestamp;
   }
 
+  public String getDigest() {
+    return digest;
+  }
+
   public void setFileSource(String fileSrc) {
     this.fileSrc = fileSrc;
   }
@@ -83,7 +94,7 @@ public class FileSource {
   
   public FileInfo toFileInfo(String contents) {
     return new FileInfo(this.getBasePath(), this.getTimestamp(),
-      this.getLength(), false, false, contents, this.getFileSrc());
+      this.getLength(), false, false, contents, this.getFileSrc()).withDigest(digest);
   }
 
   /* (non-Javadoc)
@@ -30,9 +30,11 @@ import com.google.jstestdriver.hooks.FileInfoScheme;
 import com.google.jstestdriver.model.HandlerPathPrefix;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.JstdTestCaseDelta;
+import com.google.jstestdriver.model.SessionManifest;
 import com.google.jstestdriver.servlet.fileset.BrowserFileCheck;
 import com.google.jstestdriver.servlet.fileset.DeltaUpload;
-import com.google.jstestdriver.servlet.fileset.TestCaseUpload;
+import com.google.jstestdriver.servlet.fileset.DigestCheck;
+import com.google.jstestdriver.servlet.fileset.ManifestUpload;
 import com.google.jstestdriver.util.StopWatch;
 
 import org.slf4j.Logger;
@@ -40,6 +42,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -54,6 +58,8 @@ import java.util.Set;
  */
 public class FileUploader {
   public static final int CHUNK_SIZE = 50;
+  /** The default number of LOADTEST chunks queued for a browser at once. */
+  public static final int UPLOAD_WINDOW = 4;
 
   private final StopWatch stopWatch;
   private final Gson gson = new Gson();
@@ -67,12 +73,15 @@ public class FileUploader {
 
   private final HandlerPathPrefix prefix;
 
+  private final int uploadWindow;
+
   @Inject
   public FileUploader(StopWatch stopWatch, Server server,
       @Named("server") String baseUrl, FileLoader fileLoader,
       JsTestDriverFileFilter filter,
       Set<FileInfoScheme> schemes,
-      @Named("serverHandlerPrefix") HandlerPathPrefix prefix) {
+      @Named("serverHandlerPrefix") HandlerPathPrefix prefix,
+      @Named("uploadWindow") int uploadWindow) {
     this.stopWatch = stopWatch;
     this.server = server;
     this.baseUrl = baseUrl;
@@ -80,6 +89,7 @@ public class FileUploader {
     this.filter = filter;
     this.schemes = schemes;
     this.prefix = prefix;
+    this.uploadWindow = Math.max(1, uploadWindow);
   }
 
   /** Uploads the changed files to the server and the browser. */
@@ -106,13 +116,14 @@ public class FileUploader {
   
 
   /**
-   * Uploads the {@link JstdTestCase}s to the server, and retrieves a list
-   * of {@link JstdTestCaseDelta}s of the files that are different.
+   * Uploads the {@link JstdTestCase}s to the server as a {@link SessionManifest},
+   * and retrieves a list of {@link JstdTestCaseDelta}s of the files that are
+   * different.
    */
   public Collection<JstdTestCaseDelta> determineServerFileSet(Collection<JstdTestCase> testCases) {
     Map<String, String> fileSetParams = new LinkedHashMap<String, String>();
-    fileSetParams.put("data", gson.toJson(testCases));
-    fileSetParams.put("action", TestCaseUpload.ACTION);
+    fileSetParams.put("data", gson.toJson(new SessionManifest(testCases)));
+    fileSetParams.put("action", ManifestUpload.ACTION);
     String postResult = server.post(baseUrl + "/fileSet", fileSetParams);
     return gson.fromJson(postResult, new TypeToken<Collection<JstdTestCaseDelta>>() {}.getType());
   }
@@ -134,8 +145,19 @@ public class FileUploader {
         browserFileSet = getBrowserFileSet(browserId, testCase);
         logger.info("second fileset {}", browserFileSet);
       }
+      // the server knows the digests of the files to upload, which the
+      // browser passes back once they are loaded.
+      Map<String, FileInfo> checked = new HashMap<String, FileInfo>();
+      for (FileInfo file : browserFileSet.getFilesToUpload()) {
+        if (file.getDigest() != null) {
+          checked.put(file.getFilePath(), file);
+        }
+      }
       for (FileInfo file : browserFileSet.getFilesToUpload()) {
-        finalFilesToUpload.addAll(determineInBrowserDependencies(file, testCase.getServable()));
+        for (FileInfo dep : determineInBrowserDependencies(file, testCase.getServable())) {
+          finalFilesToUpload.add(
+              checked.containsKey(dep.getFilePath()) ? checked.get(dep.getFilePath()) : dep);
+        }
       }
       return Lists.newArrayList(finalFilesToUpload);
     } finally {
@@ -143,25 +165,49 @@ public class FileUploader {
     }
   }
 
+  /**
+   * Checks the test case against the files loaded in the browser. The test
+   * case is referred to by the digest it was uploaded with in the manifest,
+   * and only sent in full when the server does not have it.
+   */
   private BrowserFileSet getBrowserFileSet(String browserId, JstdTestCase testCase) {
     stopWatch.start("get upload set %s", browserId);
+    try {
+      SessionManifest.Reference reference =
+          new SessionManifest.Reference(testCase.getId(), SessionManifest.digest(gson, testCase));
+      BrowserFileSet browserFileSet = checkBrowserFileSet(browserId, gson.toJson(reference));
+      if (browserFileSet.isUnknownTestCase()) {
+        logger.debug("server does not have {}, sending it in full", testCase.getId());
+        browserFileSet = checkBrowserFileSet(browserId, gson.toJson(testCase));
+      }
+      return browserFileSet;
+    } finally {
+      stopWatch.stop("get upload set %s", browserId);
+    }
+  }
+
+  private BrowserFileSet checkBrowserFileSet(String browserId, String data) {
     Map<String, String> fileSetParams = new LinkedHashMap<String, String>();
 
     fileSetParams.put("id", browserId);
-    fileSetParams.put("data", gson.toJson(testCase));
+    fileSetParams.put("data", data);
     fileSetParams.put("action", BrowserFileCheck.ACTION);
-    //logger.info("FileParams: {}", fileSetParams);
     String postResult = server.post(baseUrl + "/fileSet", fileSetParams);
     if (postResult.length() < 0) {
       return new BrowserFileSet(Collections.<FileInfo>emptyList(), Collections.<FileInfo>emptyList(), false);
     }
-    BrowserFileSet browserFileSet = gson.fromJson(postResult, BrowserFileSet.class);
-    stopWatch.stop("get upload set %s", browserId);
-    return browserFileSet;
+    return gson.fromJson(postResult, BrowserFileSet.class);
   }
 
 
-  /** Uploads files to the browser. */
+  /**
+   * Uploads files to the browser, in LOADTEST commands of chunkSize files.
+   * Up to the upload window of chunks are queued on the server at once, so the
+   * browser is handed the next chunk as it reports the last one loaded,
+   * instead of idling for a round trip to the client. The browser runs its
+   * commands in the order they were queued, so each last response completes
+   * the oldest chunk in flight.
+   */
   public void uploadToTheBrowser(String browserId, ResponseStream stream,
       List<FileInfo> loadedFiles, int chunkSize) {
     List<FileSource> filesSrc = Lists.newLinkedList(filterFilesToLoad(loadedFiles));
@@ -173,42 +219,59 @@ public class FileUploader {
             return "\n" + in.getDisplayPath();
           }
         }));
-    for (int i = 0; i < numberOfFilesToLoad; i += chunkSize) {
-
-      int chunkEndIndex = Math.min(i + chunkSize, numberOfFilesToLoad);
-      List<String> loadParameters = new LinkedList<String>();
-      List<FileSource> filesToLoad = filesSrc.subList(i, chunkEndIndex);
-      loadParameters.add(gson.toJson(filesToLoad));
-      loadParameters.add("false");
-      JsonCommand cmd = new JsonCommand(CommandType.LOADTEST, loadParameters);
-      Map<String, String> loadFileParams = new LinkedHashMap<String, String>();
-
-      loadFileParams.put("id", browserId);
-      loadFileParams.put("data", gson.toJson(cmd));
-      if (logger.isDebugEnabled()) {
-        logger.debug("Sending LOADTEST to {} for {}", browserId,
-            Lists.transform(filesToLoad, new Function<FileSource, String>() {
-              @Override
-              public String apply(FileSource in) {
-                return "\n" + in.getFileSrc();
-              }
-            }));
+    LinkedList<Integer> chunksInFlight = new LinkedList<Integer>();
+    int nextFile = 0;
+    while (nextFile < numberOfFilesToLoad || !chunksInFlight.isEmpty()) {
+      while (nextFile < numberOfFilesToLoad && chunksInFlight.size() < uploadWindow) {
+        int chunkEndIndex = Math.min(nextFile + chunkSize, numberOfFilesToLoad);
+        int chunk = nextFile / chunkSize;
+        sendChunk(browserId, chunk, filesSrc.subList(nextFile, chunkEndIndex));
+        chunksInFlight.add(chunk);
+        nextFile = chunkEndIndex;
       }
-      server.post(baseUrl + "/cmd", loadFileParams);
-      while (true) {
-        String jsonResponse = server.fetch(baseUrl + "/cmd?id=" + browserId);
-        StreamMessage message = gson.fromJson(jsonResponse, StreamMessage.class);
+      String jsonResponse = server.fetch(baseUrl + "/cmd?id=" + browserId + "&batch");
+      for (StreamMessage message : StreamMessage.fromJson(gson, jsonResponse)) {
         Response response = message.getResponse();
         logger.trace("LOADTEST response for {}", response);
         stream.stream(response);
-        if (message.isLast()) {
-          logger.debug("Finished LOADTEST on {} with {}", browserId, response.getResponseType());
-          break;
+        if (!message.isLast()) {
+          continue;
+        }
+        if (response.getResponseType() == ResponseType.BROWSER_PANIC) {
+          logger.debug("Abandoning LOADTEST chunks {} on {}", chunksInFlight, browserId);
+          return;
         }
+        if (chunksInFlight.isEmpty()) {
+          logger.warn("Unexpected last response from {}: {}", browserId, response);
+          continue;
+        }
+        logger.debug("Finished LOADTEST chunk {} on {} with {}",
+            new Object[] {chunksInFlight.removeFirst(), browserId, response.getResponseType()});
       }
     }
   }
 
+  private void sendChunk(String browserId, int chunk, List<FileSource> filesToLoad) {
+    List<String> loadParameters = new LinkedList<String>();
+    loadParameters.add(gson.toJson(filesToLoad));
+    loadParameters.add("false");
+    JsonCommand cmd = new JsonCommand(CommandType.LOADTEST, loadParameters);
+    Map<String, String> loadFileParams = new LinkedHashMap<String, String>();
+
+    loadFileParams.put("id", browserId);
+    loadFileParams.put("data", gson.toJson(cmd));
+    if (logger.isDebugEnabled()) {
+      logger.debug("Sending LOADTEST chunk {} to {} for {}", new Object[] {chunk, browserId,
+          Lists.transform(filesToLoad, new Function<FileSource, String>() {
+            @Override
+            public String apply(FileSource in) {
+              return "\n" + in.getFileSrc();
+            }
+          })});
+    }
+    server.post(baseUrl + "/cmd", loadFileParams);
+  }
+
   public void uploadToServer(final Collection<JstdTestCaseDelta> deltas) {
     if (deltas.isEmpty()) {
       return;
@@ -217,7 +280,19 @@ public class FileUploader {
     for (JstdTestCaseDelta delta : deltas) {
       loadedDeltas.add(delta.loadFiles(fileLoader));
     }
-    for (List<JstdTestCaseDelta> partition : Lists.partition(loadedDeltas, 50)) {
+    Set<String> missing = findMissingFiles(deltas, loadedDeltas);
+    List<JstdTestCaseDelta> changedDeltas = Lists.newArrayListWithCapacity(deltas.size());
+    for (JstdTestCaseDelta delta : loadedDeltas) {
+      JstdTestCaseDelta changed = new JstdTestCaseDelta(
+          retainMissing(delta.getDependencies(), missing),
+          retainMissing(delta.getTests(), missing),
+          retainMissing(delta.getPlugins(), missing));
+      if (!(changed.getDependencies().isEmpty() && changed.getTests().isEmpty()
+          && changed.getPlugins().isEmpty())) {
+        changedDeltas.add(changed);
+      }
+    }
+    for (List<JstdTestCaseDelta> partition : Lists.partition(changedDeltas, 50)) {
       Map<String, String> uploadFileParams = new LinkedHashMap<String, String>();
       uploadFileParams.put("action", DeltaUpload.ACTION);
       uploadFileParams.put("data", gson.toJson(partition));
@@ -225,6 +300,57 @@ public class FileUploader {
     }
   }
 
+  /**
+   * Sends the digests of the loaded files to the server, and returns the paths
+   * of the files it does not already have the contents of. The digests are
+   * sent with the timestamps of the unloaded files, as post processors may
+   * change the timestamps.
+   */
+  private Set<String> findMissingFiles(Collection<JstdTestCaseDelta> deltas,
+      List<JstdTestCaseDelta> loadedDeltas) {
+    Map<String, Long> timestamps = new HashMap<String, Long>();
+    for (JstdTestCaseDelta delta : deltas) {
+      for (FileInfo file : delta.getFiles()) {
+        timestamps.put(file.getDisplayPath(), file.getTimestamp());
+      }
+    }
+    Map<String, FileInfo> digests = new LinkedHashMap<String, FileInfo>();
+    for (JstdTestCaseDelta delta : loadedDeltas) {
+      for (FileInfo file : delta.getFiles()) {
+        Long timestamp = timestamps.get(file.getDisplayPath());
+        if (file.getDigest() != null && timestamp != null) {
+          digests.put(file.getDisplayPath(), file.load(null, timestamp));
+        }
+      }
+    }
+    Set<String> missing = new HashSet<String>(timestamps.keySet());
+    if (digests.isEmpty()) {
+      return missing;
+    }
+    Map<String, String> digestParams = new LinkedHashMap<String, String>();
+    digestParams.put("action", DigestCheck.ACTION);
+    digestParams.put("data", gson.toJson(digests.values()));
+    Collection<FileInfo> unknown = gson.fromJson(
+        server.post(baseUrl + "/fileSet", digestParams),
+        new TypeToken<Collection<FileInfo>>() {}.getType());
+    missing.removeAll(digests.keySet());
+    for (FileInfo file : unknown) {
+      missing.add(file.getDisplayPath());
+    }
+    logger.debug("{} of {} files need to be uploaded", missing.size(), timestamps.size());
+    return missing;
+  }
+
+  private List<FileInfo> retainMissing(List<FileInfo> files, Set<String> missing) {
+    List<FileInfo> retained = Lists.newArrayListWithCapacity(files.size());
+    for (FileInfo file : files) {
+      if (missing.contains(file.getDisplayPath())) {
+        retained.add(file);
+      }
+    }
+    return retained;
+  }
+
   private void reset(String browserId, ResponseStream stream, JstdTestCase testCase) {
     stopWatch.start("reset %s", browserId);
     JsonCommand cmd = new JsonCommand(CommandType.RESET,
@@ -237,14 +363,15 @@ public class FileUploader {
     server.post(baseUrl + "/cmd", resetParams);
 
     logger.trace("starting reset for {}", browserId);
-    Response response;
-    StreamMessage message;
+    boolean reset = false;
     do {
-      String jsonResponse = server.fetch(baseUrl + "/cmd?id=" + browserId);
-      message = gson.fromJson(jsonResponse, StreamMessage.class);
-      response = message.getResponse();
-      stream.stream(response);
-    } while(!(ResponseType.RESET_RESULT.equals(response.getResponseType()) && message.isLast()));
+      String jsonResponse = server.fetch(baseUrl + "/cmd?id=" + browserId + "&batch");
+      for (StreamMessage message : StreamMessage.fromJson(gson, jsonResponse)) {
+        Response response = message.getResponse();
+        stream.stream(response);
+        reset = ResponseType.RESET_RESULT.equals(response.getResponseType()) && message.isLast();
+      }
+    } while(!reset);
     logger.trace("finished reset for {}", browserId);
     stopWatch.stop("reset %s", browserId);
   }
@@ -15,17 +15,32 @@
  */
 package com.google.jstestdriver;
 
+import com.google.jstestdriver.util.Digests;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
+ * Finds the whitelisted files that changed since the last call, by their
+ * modification time and length.
+ *
+ * Modification times may only have a resolution of a second, so a file that
+ * is written again within the same second can keep both. Files modified
+ * within that resolution of a scan are also compared by the digest of their
+ * contents on the next scan, as git does for racily clean files.
+ *
  * @author jeremiele@google.com (Jeremie Lenfant-Engelmann)
  */
 public class FileWatcher {
@@ -33,21 +48,51 @@ public class FileWatcher {
   private static final Logger logger = LoggerFactory.getLogger(FileWatcher.class.getName());
   private static final List<String> EMPTY_STRING_LIST = new ArrayList<String>();
 
-  private final Map<String, Long> filesCache = new HashMap<String, Long>();
+  /** The coarsest modification time resolution of the common file systems. */
+  static final long TIMESTAMP_RESOLUTION = 1000;
+
+  /** The length of a file whose state was seeded from its timestamp alone. */
+  private static final long UNKNOWN_LENGTH = -1;
+
+  private final Map<String, Stamp> filesCache = new HashMap<String, Stamp>();
   private final File basePath;
   private final Set<String> files;
 
+  /**
+   * @param basePath The directory the files are relative to, or null for
+   *     absolute paths.
+   */
   public FileWatcher(File basePath, Set<String> files) {
     this.basePath = basePath;
     this.files = files;
     initFilesCache();
   }
 
+  /**
+   * Watches files from the modification times they had when they were read,
+   * so that changes made since then are found by the first scan. Files
+   * without a known time are scanned now.
+   *
+   * @param basePath The directory the files are relative to, or null for
+   *     absolute paths.
+   */
+  public FileWatcher(File basePath, Map<String, Long> timestamps) {
+    this.basePath = basePath;
+    this.files = new LinkedHashSet<String>(timestamps.keySet());
+    long scanStart = System.currentTimeMillis();
+    for (Map.Entry<String, Long> file : timestamps.entrySet()) {
+      if (file.getValue() != null && file.getValue() > 0) {
+        filesCache.put(file.getKey(), new Stamp(file.getValue(), UNKNOWN_LENGTH, null));
+      } else {
+        isModified(file.getKey(), scanStart);
+      }
+    }
+  }
+
   private void initFilesCache() {
+    long scanStart = System.currentTimeMillis();
     for (String file : files) {
-      File f = new File(basePath, file);
-
-      filesCache.put(file, f.lastModified());
+      isModified(file, scanStart);
     }
   }
 
@@ -57,14 +102,11 @@ public class FileWatcher {
 
   public List<String> getAllFiles() {
     List<String> modifiedFiles = new ArrayList<String>();
+    long scanStart = System.currentTimeMillis();
 
     for (String file : files) {
-      File f = new File(basePath, file);
-      Long lastModification = filesCache.get(file);
-
-      if (lastModification == null || lastModification.compareTo(f.lastModified()) < 0) {
-        logger.info("{} changed, will be updated on the next command.", f.getPath());
-        filesCache.put(file, f.lastModified());
+      if (isModified(file, scanStart)) {
+        logger.info("{} changed, will be updated on the next command.", file);
         modifiedFiles.add(file);
       }
     }
@@ -73,4 +115,57 @@ public class FileWatcher {
     }
     return EMPTY_STRING_LIST;
   }
+
+  /** Compares the file to the previous scan, and records its current state. */
+  private boolean isModified(String file, long scanStart) {
+    File f = new File(basePath, file);
+    Stamp previous = filesCache.get(file);
+    long lastModified = f.lastModified();
+    long length = f.length();
+    boolean racy = lastModified > scanStart - TIMESTAMP_RESOLUTION;
+    boolean modified = previous == null || previous.lastModified != lastModified
+        || (previous.length != UNKNOWN_LENGTH && previous.length != length);
+    String digest = null;
+    if (racy || (!modified && previous.digest != null)) {
+      digest = digest(f);
+    }
+    if (!modified && previous.digest != null && digest != null) {
+      modified = !previous.digest.equals(digest);
+    }
+    filesCache.put(file, new Stamp(lastModified, length, racy ? digest : null));
+    return modified;
+  }
+
+  private String digest(File file) {
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream((int) file.length());
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          contents.write(buffer, 0, read);
+        }
+        return Digests.sha1Hex(contents.toByteArray());
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** The state of a file at a scan. */
+  private static class Stamp {
+    final long lastModified;
+    final long length;
+    /** The digest of a racily modified file, or null. */
+    final String digest;
+
+    Stamp(long lastModified, long length, String digest) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.digest = digest;
+    }
+  }
 }
@@ -87,5 +87,51 @@ public interface Flags {
   @GuiceBinding(name="raiseOnFailure")
   public boolean getRaiseOnFailure();
 
+  /** Whether to split the test run across captured browsers of the same type. */
+  @GuiceBinding(name="shardTests")
+  public boolean getShardTests();
+
+  /** Whether to re-run the tests affected by each change to the files. */
+  @GuiceBinding(name="watch")
+  public boolean getWatch();
+
+  /** The number of captured browsers of each type the server keeps warm. */
+  @GuiceBinding(name="browserPool")
+  public int getBrowserPool();
+
+  /** Whether to run only the tests affected by the files changed since the last impacted run. */
+  @GuiceBinding(name="impacted")
+  public boolean getImpacted();
+
+  /** The number of file upload chunks queued for a browser at once. */
+  @GuiceBinding(name="uploadWindow")
+  public int getUploadWindow();
+
+  /** Whether the server loads contiguous scripts of a test case as cached bundles. */
+  @GuiceBinding(name="bundleScripts")
+  public boolean getBundleScripts();
+
+  /** Whether the server suspends browser and client long polls on a non-blocking connector. */
+  @GuiceBinding(name="nio")
+  public boolean getNio();
+
+  // keepAlive selects the Server implementation, and is not bound into Guice.
+  public boolean getKeepAlive();
+
+  /** The size of the --keepAlive connection pool, or 0 to size it from the browsers started. */
+  @GuiceBinding(name="maxConnections")
+  public int getMaxConnections();
+
+  // profile selects the StopWatch implementation, and is not bound into Guice.
+  public String getProfile();
+
+  // blobStore selects how the JstdTestCaseStore holds contents, and is not bound into Guice.
+  public String getBlobStore();
+
+  // storeMaxBytes and storeTtl configure the JstdTestCaseStore, and are not bound into Guice.
+  public long getStoreMaxBytes();
+
+  public long getStoreTtl();
+
   public boolean getDisplayHelp();
 }
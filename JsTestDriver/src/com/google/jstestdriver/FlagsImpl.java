@@ -68,6 +68,19 @@ public class FlagsImpl implements Flags {
   private HashSet<String> requiredBrowsers;
   private HandlerPathPrefix serverHandlerPrefix = new NullPathPrefix();
   private boolean raiseOnFailure = false;
+  private boolean shardTests = false;
+  private int browserPool = 0;
+  private boolean watch = false;
+  private boolean impacted = false;
+  private int uploadWindow = FileUploader.UPLOAD_WINDOW;
+  private boolean bundleScripts = false;
+  private boolean nio = false;
+  private boolean keepAlive = false;
+  private int maxConnections = 0;
+  private String profile = null;
+  private String blobStore = null;
+  private long storeMaxBytes = -1;
+  private long storeTtl = -1;
 
   @Option(name="--port", usage="The port on which to start the JsTestDriver server")
   public void setPort(Integer port) {
@@ -279,6 +292,160 @@ public class FlagsImpl implements Flags {
     return raiseOnFailure;
   }
 
+  @Option(name="--shardTests",
+      usage="Splits the tests across all captured browsers of the same name and version.")
+  public void setShardTests(boolean shardTests) {
+    this.shardTests = shardTests;
+  }
+
+  @Override
+  public boolean getShardTests() {
+    return shardTests;
+  }
+
+  @Option(name="--watch",
+      usage="Keeps running after the tests, and re-runs the tests affected by each file change.")
+  public void setWatch(boolean watch) {
+    this.watch = watch;
+  }
+
+  @Override
+  public boolean getWatch() {
+    return watch;
+  }
+
+  @Option(name="--browserPool",
+      usage="The number of browsers of each type the server keeps captured for clients to lease.")
+  public void setBrowserPool(Integer browserPool) {
+    this.browserPool = browserPool;
+  }
+
+  @Override
+  public int getBrowserPool() {
+    return browserPool;
+  }
+
+  @Option(name="--impacted",
+      usage="With the coverage plugin, runs only the tests that cover the files changed since "
+          + "the last --impacted run.")
+  public void setImpacted(boolean impacted) {
+    this.impacted = impacted;
+  }
+
+  @Override
+  public boolean getImpacted() {
+    return impacted;
+  }
+
+  @Option(name="--uploadWindow",
+      usage="The number of chunks of files queued for a browser while it loads the previous "
+          + "ones. Use 1 to wait for each chunk to load before sending the next.")
+  public void setUploadWindow(Integer uploadWindow) {
+    this.uploadWindow = uploadWindow;
+  }
+
+  @Override
+  public int getUploadWindow() {
+    return uploadWindow;
+  }
+
+  @Option(name="--bundleScripts",
+      usage="Loads contiguous scripts into the browser as cached bundles with source maps, "
+          + "rather than one request per file. Function declarations are hoisted across the "
+          + "files of a bundle, and a syntax error fails the whole bundle, after which its "
+          + "files are loaded one by one.")
+  public void setBundleScripts(boolean bundleScripts) {
+    this.bundleScripts = bundleScripts;
+  }
+
+  @Override
+  public boolean getBundleScripts() {
+    return bundleScripts;
+  }
+
+  @Option(name="--nio",
+      usage="Serves http with a non-blocking connector, which suspends the long polls of "
+          + "captured browsers and clients rather than holding a thread for each.")
+  public void setNio(boolean nio) {
+    this.nio = nio;
+  }
+
+  @Override
+  public boolean getNio() {
+    return nio;
+  }
+
+  @Option(name="--keepAlive",
+      usage="Reuses persistent connections to the server instead of one per request.")
+  public void setKeepAlive(boolean keepAlive) {
+    this.keepAlive = keepAlive;
+  }
+
+  @Override
+  public boolean getKeepAlive() {
+    return keepAlive;
+  }
+
+  @Option(name="--maxConnections",
+      usage="The number of persistent connections --keepAlive keeps to the server. Each captured "
+          + "browser holds one while it waits for commands. Defaults to the browsers started "
+          + "plus 20.")
+  public void setMaxConnections(Integer maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  @Override
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  @Option(name="--profile",
+      usage="Records the timings of the run, logged with --runnerMode PROFILE, and writes them "
+          + "as a Chrome trace to the given file.")
+  public void setProfile(String profile) {
+    this.profile = profile;
+  }
+
+  @Override
+  public String getProfile() {
+    return profile;
+  }
+
+  @Option(name="--blobStore",
+      usage="Keeps the contents of uploaded files in memory-mapped files in the given "
+          + "directory, rather than on the server's heap.")
+  public void setBlobStore(String blobStore) {
+    this.blobStore = blobStore;
+  }
+
+  @Override
+  public String getBlobStore() {
+    return blobStore;
+  }
+
+  @Option(name="--storeMaxBytes",
+      usage="The bytes of uploaded files the server keeps. When a session ends, the least "
+          + "recently used test cases are removed until the files fit.")
+  public void setStoreMaxBytes(Long storeMaxBytes) {
+    this.storeMaxBytes = storeMaxBytes;
+  }
+
+  @Override
+  public long getStoreMaxBytes() {
+    return storeMaxBytes;
+  }
+
+  @Option(name="--storeTtl",
+      usage="The ms the server keeps a test case after it was last used.")
+  public void setStoreTtl(Long storeTtl) {
+    this.storeTtl = storeTtl;
+  }
+
+  @Override
+  public long getStoreTtl() {
+    return storeTtl;
+  }
+
   @Override
   public String toString() {
     return "FlagsImpl [port=" + port + ",\n sslPort=" + sslPort + ",\n server=" + server
@@ -287,6 +454,12 @@ public class FlagsImpl implements Flags {
         + ",\n displayHelp=" + displayHelp + ",\n verbose=" + verbose + ",\n captureConsole="
         + captureConsole + ",\n preloadFiles=" + preloadFiles + ",\n dryRunFor=" + dryRunFor
         + ",\n arguments=" + arguments + ",\n runnerMode=" + runnerMode + ",\n requiredBrowsers="
-        + requiredBrowsers + ",\n serverHandlerPrefix=" + serverHandlerPrefix + "\n raiseOnFailure=" + raiseOnFailure + "]";
+        + requiredBrowsers + ",\n serverHandlerPrefix=" + serverHandlerPrefix + "\n raiseOnFailure=" + raiseOnFailure
+        + ",\n shardTests=" + shardTests + ",\n watch=" + watch + ",\n browserPool=" + browserPool
+        + ",\n impacted=" + impacted + ",\n uploadWindow=" + uploadWindow
+        + ",\n bundleScripts=" + bundleScripts + ",\n nio=" + nio
+        + ",\n keepAlive=" + keepAlive + ",\n maxConnections=" + maxConnections
+        + ",\n profile=" + profile + ",\n blobStore=" + blobStore
+        + ",\n storeMaxBytes=" + storeMaxBytes + ",\n storeTtl=" + storeTtl + "]";
   }
 }
@@ -50,6 +50,11 @@ import com.google.jstestdriver.hooks.ServerListener;
 import com.google.jstestdriver.hooks.TestListener;
 import com.google.jstestdriver.model.BasePaths;
 import com.google.jstestdriver.output.MultiTestResultListener;
+import com.google.jstestdriver.server.BlobStore;
+import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.StoreRetention;
+import com.google.jstestdriver.util.StopWatch;
+import com.google.jstestdriver.util.TracingStopWatch;
 
 /**
  * Guice module for configuring JsTestDriver.
@@ -172,6 +177,22 @@ public class JsTestDriverModule extends AbstractModule {
 
     bind(Time.class).to(TimeImpl.class);
 
+    if (flags.getKeepAlive()) {
+      bind(Server.class).to(PooledHttpServer.class);
+    }
+
+    if (flags.getProfile() != null) {
+      bind(StopWatch.class).toInstance(new TracingStopWatch(new File(flags.getProfile())));
+    }
+
+    StoreRetention retention = new StoreRetention(flags.getStoreMaxBytes(), flags.getStoreTtl());
+    if (flags.getBlobStore() != null || retention.isBounded()) {
+      bind(JstdTestCaseStore.class).toInstance(new JstdTestCaseStore(
+          flags.getBlobStore() != null ? new BlobStore(new File(flags.getBlobStore())) : null,
+          retention,
+          new TimeImpl()));
+    }
+
     bind(new TypeLiteral<Set<FileInfo>>() {}).annotatedWith(Names.named("fileSet"))
        .toProvider(FileSetProvider.class).in(Singleton.class);
     bind(new TypeLiteral<List<FileInfo>>() {}).annotatedWith(Names.named("tests"))
@@ -71,6 +71,10 @@ public class JsTestDriverServerImpl implements JsTestDriverServer, Observer {
 
   private final Boolean debug;
 
+  private final boolean bundleScripts;
+
+  private final boolean nio;
+
   @Inject
   public JsTestDriverServerImpl(@Assisted("port") int port,
                                 @Assisted("sslPort") int sslPort,
@@ -81,7 +85,9 @@ public class JsTestDriverServerImpl implements JsTestDriverServer, Observer {
                                 Set<ServerListener> listeners,
                                 Set<FileInfoScheme> schemes,
                                 @Named("executionType") ExecutionType executionType,
-                                @Named("debug") Boolean debug) {
+                                @Named("debug") Boolean debug,
+                                @Named("bundleScripts") boolean bundleScripts,
+                                @Named("nio") boolean nio) {
     this.port = port;
     this.sslPort = sslPort;
     this.capturedBrowsers = capturedBrowsers;
@@ -92,6 +98,8 @@ public class JsTestDriverServerImpl implements JsTestDriverServer, Observer {
     this.schemes = schemes;
     this.executionType = executionType;
     this.debug = debug;
+    this.bundleScripts = bundleScripts;
+    this.nio = nio;
     initServer();
   }
 
@@ -103,14 +111,16 @@ public class JsTestDriverServerImpl implements JsTestDriverServer, Observer {
       capturedBrowsers.deleteObserver(this);
       capturedBrowsers.addObserver(this);
       server = Guice.createInjector(
-          new JettyModule(port, sslPort, handlerPrefix),
+          new JettyModule(port, sslPort, handlerPrefix, nio),
           new JstdHandlersModule(capturedBrowsers,
                                  testCaseStore,
                                  browserTimeout,
                                  handlerPrefix,
                                  schemes,
                                  executionType,
-                                 debug)).getInstance(Server.class);
+                                 debug,
+                                 bundleScripts,
+                                 nio)).getInstance(Server.class);
       server.addLifeCycleListener(new JettyLifeCycleLogger());
     }
   }
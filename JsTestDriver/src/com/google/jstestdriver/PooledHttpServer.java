@@ -0,0 +1,182 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver;
+
+import com.google.gson.JsonElement;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.jstestdriver.browser.BrowserRunner;
+import com.google.jstestdriver.util.StopWatch;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.cookie.CookiePolicy;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Server} that keeps persistent connections to the server in a pool,
+ * instead of opening a new connection for every call like {@link HttpServer}.
+ * Enabled with the --keepAlive flag. The latency of each call is recorded
+ * with the {@link StopWatch}, and so summarized with --profile.
+ */
+@Singleton
+public class PooledHttpServer extends HttpServer {
+  private static final Logger logger = LoggerFactory.getLogger(PooledHttpServer.class);
+  private static final int BUFFER_SIZE = 8192;
+  /** The connections kept beyond one per browser started, for other browsers and calls. */
+  static final int SPARE_CONNECTIONS = 20;
+  /** How long a call waits for a free connection, in ms: longer than a browser's long poll. */
+  static final long CONNECTION_TIMEOUT = 30000;
+
+  private final HttpClient client;
+  private final StopWatch stopWatch;
+
+  @Inject
+  public PooledHttpServer(StopWatch stopWatch,
+      Set<BrowserRunner> browsers,
+      @Named("browserPool") int browserPool,
+      @Named("maxConnections") int maxConnections) {
+    this(stopWatch, getMaxConnections(browsers.size(), browserPool, maxConnections));
+  }
+
+  /** @param maxConnections The number of connections to keep to the server. */
+  public PooledHttpServer(StopWatch stopWatch, int maxConnections) {
+    super(stopWatch);
+    this.stopWatch = stopWatch;
+    MultiThreadedHttpConnectionManager manager = new MultiThreadedHttpConnectionManager();
+    // the client polls from a thread per browser, each needs its own connection.
+    manager.getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+    manager.getParams().setMaxTotalConnections(maxConnections);
+    // the stale check costs a blocking read per request; failed requests on a
+    // connection the server has closed are retried instead.
+    manager.getParams().setStaleCheckingEnabled(false);
+    manager.getParams().setTcpNoDelay(true);
+    client = new HttpClient(manager);
+    client.getParams().setCookiePolicy(CookiePolicy.IGNORE_COOKIES);
+    client.getParams().setConnectionManagerTimeout(CONNECTION_TIMEOUT);
+  }
+
+  /**
+   * Returns the size of the connection pool: the --maxConnections flag, or one
+   * connection for each browser the runner starts, plus spare connections.
+   */
+  static int getMaxConnections(int browserRunners, int browserPool, int maxConnections) {
+    if (maxConnections > 0) {
+      return maxConnections;
+    }
+    return browserRunners * Math.max(1, browserPool) + SPARE_CONNECTIONS;
+  }
+
+  @Override
+  public String fetch(String url) {
+    stopWatch.start("fetch %s", url);
+    logger.trace("Fetching {}", url);
+    try {
+      String response = execute(new GetMethod(url));
+      logger.trace("Fetch response {}", response);
+      return response;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      stopWatch.stop("fetch %s", url);
+    }
+  }
+
+  @Override
+  public String post(String url, Map<String, String> params) {
+    stopWatch.start("post %s", url);
+    try {
+      logger.trace("Post url:{} \nParams:\n{} \n", url, params);
+      PostMethod method = new PostMethod(url);
+      method.setRequestEntity(new ByteArrayRequestEntity(
+          convertParamsToString(params).getBytes(), "application/x-www-form-urlencoded"));
+      String response = execute(method);
+      logger.trace("Post response:\n{}", response);
+      return response;
+    } catch (IOException e) {
+      throw new RuntimeException("Connection error", e);
+    } finally {
+      stopWatch.stop("post %s", url);
+    }
+  }
+
+  @Override
+  public String postJson(String url, JsonElement json) {
+    stopWatch.start("postJson %s", url);
+    try {
+      logger.trace("Post url:{}\nJSON:\n{}\n", url, json);
+      PostMethod method = new PostMethod(url);
+      method.setRequestEntity(
+          new ByteArrayRequestEntity(json.toString().getBytes(), "application/jsonrequest"));
+      String response = execute(method);
+      logger.trace("Post response:\n{}\n", response);
+      return response;
+    } catch (IOException e) {
+      throw new RuntimeException("Connection error on: " + url, e);
+    } finally {
+      stopWatch.stop("postJson %s", url);
+    }
+  }
+
+  /**
+   * Executes the method on a pooled connection, reading the body as it
+   * streams in. Releasing the method returns the connection to the pool.
+   */
+  private String execute(HttpMethodBase method) throws IOException {
+    try {
+      int status;
+      try {
+        status = client.executeMethod(method);
+      } catch (ConnectionPoolTimeoutException e) {
+        throw new IOException(String.format("No connection to the server was free within %sms;"
+            + " raise --maxConnections above the number of captured browsers.",
+            CONNECTION_TIMEOUT));
+      }
+      if (status >= 400) {
+        throw new IOException(String.format("Server returned HTTP response code: %s for URL: %s",
+            status, method.getURI()));
+      }
+      InputStream body = method.getResponseBodyAsStream();
+      if (body == null) {
+        return "";
+      }
+      Reader reader = new InputStreamReader(body, method.getResponseCharSet());
+      StringBuilder sb = new StringBuilder();
+      char[] buffer = new char[BUFFER_SIZE];
+      int read;
+      while ((read = reader.read(buffer)) != -1) {
+        sb.append(buffer, 0, read);
+      }
+      return sb.toString();
+    } finally {
+      method.releaseConnection();
+    }
+  }
+}
@@ -19,58 +19,151 @@ package com.google.jstestdriver;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.google.jstestdriver.hooks.FileLoadPostProcessor;
+import com.google.jstestdriver.hooks.OrderedFileLoadPostProcessor;
+import com.google.jstestdriver.util.Digests;
 import com.google.jstestdriver.util.StopWatch;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A simple loader for files.
+ * A simple loader for files. Files are read and post-processed in parallel
+ * on a bounded pool of threads, and returned in the order they were given.
  * @author corysmith@google.com (Cory Smith)
  */
 public class ProcessingFileLoader implements FileLoader {
   private final FileReader reader;
   private final Set<FileLoadPostProcessor> postprocessors;
   private final StopWatch stopWatch;
+  private final int threads;
 
   @Inject
   public ProcessingFileLoader(FileReader reader,
                               Set<FileLoadPostProcessor> postprocessors,
                               StopWatch stopWatch) {
+    this(reader, postprocessors, stopWatch, Runtime.getRuntime().availableProcessors());
+  }
+
+  ProcessingFileLoader(FileReader reader,
+                       Set<FileLoadPostProcessor> postprocessors,
+                       StopWatch stopWatch,
+                       int threads) {
     this.reader = reader;
     this.postprocessors = postprocessors;
     this.stopWatch = stopWatch;
+    this.threads = threads;
   }
 
   // TODO(corysmith): Remove shouldReset.
   @Override
   public List<FileInfo> loadFiles(
       Collection<FileInfo> filesToLoad, boolean shouldReset) {
-    List<FileInfo> processed = new LinkedList<FileInfo>();
-    List<FileInfo> loaded = new LinkedList<FileInfo>();
+    stopWatch.start("loadFiles");
     try {
-      stopWatch.start("preProcessFiles");
-      final List<FileInfo> preProcessedFiles = new LinkedList<FileInfo>(filesToLoad);
-      stopWatch.stop("preProcessFiles");
+      prepare(filesToLoad);
+      int poolSize = Math.min(threads, filesToLoad.size());
+      if (poolSize <= 1) {
+        List<FileInfo> processed = new ArrayList<FileInfo>(filesToLoad.size());
+        for (FileInfo file : filesToLoad) {
+          processed.add(loadAndProcess(file));
+        }
+        return processed;
+      }
+      return loadInParallel(filesToLoad, poolSize);
+    } finally {
+      stopWatch.stop("loadFiles");
+    }
+  }
 
-      stopWatch.start("loadFile");
-      for (FileInfo file : preProcessedFiles) {
-        loaded.add(file.loadFile(reader));
+  /** Lets the ordered post processors see the files in order, before they load in any order. */
+  private void prepare(Collection<FileInfo> filesToLoad) {
+    for (FileLoadPostProcessor hook : postprocessors) {
+      if (hook instanceof OrderedFileLoadPostProcessor) {
+        for (FileInfo file : filesToLoad) {
+          ((OrderedFileLoadPostProcessor) hook).prepare(file);
+        }
       }
-      stopWatch.stop("loadFile");
+    }
+  }
+
+  private List<FileInfo> loadInParallel(Collection<FileInfo> filesToLoad, int poolSize) {
+    ExecutorService executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
 
-      stopWatch.start("postProcessFile");
-      for (FileInfo file : loaded) {
-        processed.add(postProcessFile(file));
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "ProcessingFileLoader-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      List<Future<FileInfo>> futures = new ArrayList<Future<FileInfo>>(filesToLoad.size());
+      for (final FileInfo file : filesToLoad) {
+        futures.add(executor.submit(new Callable<FileInfo>() {
+          @Override
+          public FileInfo call() {
+            return loadAndProcess(file);
+          }
+        }));
+      }
+      List<FileInfo> processed = new ArrayList<FileInfo>(futures.size());
+      for (Future<FileInfo> future : futures) {
+        processed.add(future.get());
       }
-      stopWatch.stop("postProcessFile");
-    } catch (RuntimeException e) {
-      throw e;
+      return processed;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while loading files", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
     }
-    return processed;
+  }
+
+  private FileInfo loadAndProcess(FileInfo file) {
+    stopWatch.start("loadFile %s", file.getFilePath());
+    FileInfo loaded;
+    try {
+      loaded = file.loadFile(reader);
+    } finally {
+      stopWatch.stop("loadFile %s", file.getFilePath());
+    }
+    stopWatch.start("postProcessFile %s", file.getFilePath());
+    try {
+      return digest(postProcessFile(loaded));
+    } finally {
+      stopWatch.stop("postProcessFile %s", file.getFilePath());
+    }
+  }
+
+  /**
+   * Identifies the file by the digest of its contents as served, after post
+   * processing, so the server can recognise unchanged files regardless of
+   * their timestamp, and never mistakes an instrumented file for a plain one.
+   */
+  private FileInfo digest(FileInfo file) {
+    if (!file.canLoad() || !file.isLoaded()) {
+      return file;
+    }
+    return file.withDigest(Digests.sha1Hex(file.getData()));
   }
 
   private FileInfo postProcessFile(FileInfo processed) {
@@ -28,13 +28,18 @@ import com.google.jstestdriver.model.HandlerPathPrefix;
 import com.google.jstestdriver.runner.RunnerType;
 import com.google.jstestdriver.server.handlers.pages.PageType;
 import com.google.jstestdriver.server.handlers.pages.SlavePageRequest;
+import com.google.jstestdriver.util.LatencyHistogram;
 
 import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
@@ -81,11 +86,17 @@ public class SlaveBrowser {
   private final String id;
   private final BrowserInfo browserInfo;
   private final BlockingQueue<Command> commandsToRun = new LinkedBlockingQueue<Command>();
+  private final LatencyHistogram commandWait = new LatencyHistogram();
   private long dequeueTimeout = 10;
   private TimeUnit timeUnit = TimeUnit.SECONDS;
   private AtomicReference<Instant> lastHeartbeat;
-  private Set<FileInfo> fileSet = new LinkedHashSet<FileInfo>();
+  /** The loaded version of each file, by file path, in load order. */
+  private final Map<String, FileInfo> filesByPath = new LinkedHashMap<String, FileInfo>();
   private final BlockingQueue<StreamMessage> responses = new LinkedBlockingQueue<StreamMessage>();
+  /** Guards the listeners, and the queue checks that register them. */
+  private final Object listenerLock = new Object();
+  private final List<Runnable> commandListeners = new ArrayList<Runnable>();
+  private final List<Runnable> responseListeners = new ArrayList<Runnable>();
   private AtomicReference<Command> commandRunning = new AtomicReference<Command>(null);
   private AtomicReference<Command> lastCommandDequeued = new AtomicReference<Command>(null);
   private final long timeout;
@@ -148,24 +159,24 @@ public class SlaveBrowser {
   }
 
   public void createCommand(String data) {
-    try {
-      commandsToRun.put(new Command(data));
-    } catch (InterruptedException e) {
-      throw new RuntimeException(e);
+    List<Runnable> listeners;
+    synchronized (listenerLock) {
+      try {
+        commandsToRun.put(new Command(data));
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      listeners = takeListeners(commandListeners);
     }
+    notifyListeners(listeners);
   }
 
   public Command dequeueCommand() {
     try {
       Command command = commandsToRun.poll(dequeueTimeout, timeUnit);
       LOGGER.trace("dequeue {}", command);
-
-      synchronized (this) {
-        if (command != null) {
-          commandRunning.set(command);
-          lastCommandDequeued.set(command);
-          return command;
-        }
+      if (command != null) {
+        return startCommand(command);
       }
     } catch (InterruptedException e) {
       // The server was killed
@@ -173,6 +184,69 @@ public class SlaveBrowser {
     return new NoopCommand();
   }
 
+  /**
+   * Dequeues the next command without waiting. If there is none, the listener
+   * is run once when a command is created, and null is returned. The check and
+   * the registration are atomic with {@link #createCommand(String)}, so a
+   * command created in between still runs the listener.
+   */
+  public Command dequeueCommandOrListen(Runnable listener) {
+    Command command;
+    synchronized (listenerLock) {
+      command = commandsToRun.poll();
+      if (command == null) {
+        commandListeners.add(listener);
+        return null;
+      }
+    }
+    LOGGER.trace("dequeue {}", command);
+    return startCommand(command);
+  }
+
+  public void removeCommandListener(Runnable listener) {
+    synchronized (listenerLock) {
+      commandListeners.remove(listener);
+    }
+  }
+
+  /** @return how long a browser waits for a command before it is sent a noop. */
+  public long getDequeueTimeoutMillis() {
+    return timeUnit.toMillis(dequeueTimeout);
+  }
+
+  private synchronized Command startCommand(Command command) {
+    commandWait.record(System.nanoTime() - command.getCreated());
+    commandRunning.set(command);
+    lastCommandDequeued.set(command);
+    return command;
+  }
+
+  private List<Runnable> takeListeners(List<Runnable> listeners) {
+    List<Runnable> taken = new ArrayList<Runnable>(listeners);
+    listeners.clear();
+    return taken;
+  }
+
+  /** Runs the listeners outside of the lock, as they may take locks of their own. */
+  private void notifyListeners(List<Runnable> listeners) {
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  /** @return the time commands waited in the queue before the browser took them. */
+  public LatencyHistogram getCommandWait() {
+    return commandWait;
+  }
+
+  public int getCommandQueueSize() {
+    return commandsToRun.size();
+  }
+
+  public int getResponseQueueSize() {
+    return responses.size();
+  }
+
   public Command getLastDequeuedCommand() {
     return lastCommandDequeued.get();
   }
@@ -217,18 +291,28 @@ public class SlaveBrowser {
   }
 
   public synchronized void addFiles(Collection<FileInfo> fileSet, LoadedFiles loadedFiles) {
-    this.fileSet.removeAll(fileSet);
-    this.fileSet.addAll(fileSet);
+    for (FileInfo file : fileSet) {
+      filesByPath.remove(file.getFilePath());
+    }
+    for (FileInfo file : fileSet) {
+      addLoadedFile(file);
+    }
+  }
+
+  /** Returns a snapshot of the loaded files, in load order. */
+  public synchronized Set<FileInfo> getFileSet() {
+    return new LinkedHashSet<FileInfo>(filesByPath.values());
   }
 
-  public Set<FileInfo> getFileSet() {
-    return fileSet;
+  /** Returns a snapshot of the loaded version of each file, by file path. */
+  public synchronized Map<String, FileInfo> getLoadedFiles() {
+    return new LinkedHashMap<String, FileInfo>(filesByPath);
   }
 
   public void resetFileSet() {
     LOGGER.debug("Resetting fileSet for {}", this);
     synchronized (this) {
-      fileSet.clear();
+      filesByPath.clear();
       fileResults.clear();
     }
   }
@@ -249,12 +333,65 @@ public class SlaveBrowser {
     }
   }
 
+  /**
+   * Waits until a response is available, then returns it together with the
+   * responses already queued behind it, up to the last response of the
+   * running command. Returns an empty list if nothing arrived in time.
+   */
+  public List<StreamMessage> getResponses(long timeout, TimeUnit unit) {
+    List<StreamMessage> messages = new ArrayList<StreamMessage>();
+    try {
+      drainResponses(responses.poll(timeout, unit), messages);
+    } catch (InterruptedException e) {
+      LOGGER.error("Exception during poll {}", e);
+    }
+    return messages;
+  }
+
+  /**
+   * Returns the queued responses, as {@link #getResponses(long, TimeUnit)}
+   * does, without waiting. If there are none, the listener is run once when a
+   * response is added, and an empty list is returned.
+   */
+  public List<StreamMessage> getResponsesOrListen(Runnable listener) {
+    List<StreamMessage> messages = new ArrayList<StreamMessage>();
+    synchronized (listenerLock) {
+      drainResponses(responses.poll(), messages);
+      if (messages.isEmpty()) {
+        responseListeners.add(listener);
+      }
+    }
+    return messages;
+  }
+
+  public void removeResponseListener(Runnable listener) {
+    synchronized (listenerLock) {
+      responseListeners.remove(listener);
+    }
+  }
+
+  private void drainResponses(StreamMessage message, List<StreamMessage> messages) {
+    while (message != null) {
+      messages.add(message);
+      if (message.isLast()) {
+        break;
+      }
+      message = responses.poll();
+    }
+    LOGGER.trace("returning {} responses", messages.size());
+  }
+
   public void addResponse(Response response, boolean isLast) {
     if (isLast) {
       commandRunning.set(null);
     }
     LOGGER.debug("adding response type {} done: {}", response.getResponseType(), isLast);
-    responses.offer(new StreamMessage(isLast, response));
+    List<Runnable> listeners;
+    synchronized (listenerLock) {
+      responses.offer(new StreamMessage(isLast, response));
+      listeners = takeListeners(responseListeners);
+    }
+    notifyListeners(listeners);
   }
 
   public void clearResponseQueue() {
@@ -335,11 +472,20 @@ public class SlaveBrowser {
   public void addFileResults(Collection<FileResult> allLoadedFiles) {
     for (FileResult fileResult : allLoadedFiles) {
       FileSource fileSource = fileResult.getFileSource();
-      fileSet.add(fileSource.toFileInfo(null));
+      synchronized (this) {
+        addLoadedFile(fileSource.toFileInfo(null));
+      }
       fileResults.put(fileResult, true);
     }
   }
 
+  /** Keeps the version already loaded, as adding to a set would. */
+  private void addLoadedFile(FileInfo file) {
+    if (!filesByPath.containsKey(file.getFilePath())) {
+      filesByPath.put(file.getFilePath(), file);
+    }
+  }
+
   /**
    * Checks to see if any of the files loaded contain errors.
    */
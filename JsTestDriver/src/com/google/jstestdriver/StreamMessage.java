@@ -15,6 +15,12 @@
  */
 package com.google.jstestdriver;
 
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Represents a packet of streamed response.
  * @author jeremiele@google.com (Jeremie Lenfant-Engelmann)
@@ -43,6 +49,17 @@ public class StreamMessage {
     return response;
   }
 
+  /**
+   * Reads the body of a /cmd response. Batched requests are answered with a
+   * list of messages, older servers answer with a single message.
+   */
+  public static List<StreamMessage> fromJson(Gson gson, String json) {
+    if (json.trim().startsWith("[")) {
+      return gson.fromJson(json, new TypeToken<List<StreamMessage>>() {}.getType());
+    }
+    return Collections.singletonList(gson.fromJson(json, StreamMessage.class));
+  }
+
   @Override
   public String toString() {
     return "StreamMessage [\n\tlast=" + last + ",\n\tresponse=" + response + "]";
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.action;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.jstestdriver.Action;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.FileWatcher;
+import com.google.jstestdriver.browser.BrowserActionExecutorAction;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.RunData;
+import com.google.jstestdriver.util.Sleeper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the runner going after the first test run, and re-runs the test cases
+ * whose files change on the captured browsers. Only the changed files are
+ * uploaded to the server and reloaded in the browsers.
+ *
+ * Changes are collected until a poll finds no further changes, so that
+ * saving several files at once runs the tests once. Browsers started with
+ * --browser are kept captured between the runs, and stopped when watching
+ * ends.
+ */
+public class WatchAction implements Action {
+  private static final Logger logger = LoggerFactory.getLogger(WatchAction.class);
+
+  static final long POLL_INTERVAL = 250;
+
+  /** Changes are run after this many polls, even if files keep changing. */
+  static final int MAX_BATCH_POLLS = 4;
+
+  private final UploadAction uploadAction;
+  private final BrowserActionExecutorAction browserActionsRunner;
+  private final Sleeper sleeper;
+  private final PrintStream out;
+
+  @Inject
+  public WatchAction(UploadAction uploadAction,
+      BrowserActionExecutorAction browserActionsRunner,
+      Sleeper sleeper,
+      @Named("outputStream") PrintStream out) {
+    this.uploadAction = uploadAction;
+    this.browserActionsRunner = browserActionsRunner;
+    this.sleeper = sleeper;
+    this.out = out;
+  }
+
+  /**
+   * Watches until the thread is interrupted. The files are watched from the
+   * timestamps they were loaded with, so edits made during the first run
+   * are run too.
+   */
+  @Override
+  public RunData run(RunData runData) {
+    List<JstdTestCase> testCases = runData.getTestCases();
+    Map<String, Long> timestamps = Maps.newLinkedHashMap();
+    for (JstdTestCase testCase : testCases) {
+      for (FileInfo file : testCase) {
+        if (file.canLoad() && !timestamps.containsKey(file.getFilePath())) {
+          timestamps.put(file.getFilePath(), file.getTimestamp());
+        }
+      }
+    }
+    FileWatcher watcher = new FileWatcher(null, timestamps);
+    out.println(String.format("Watching %s files for changes.", timestamps.size()));
+    // the JVM usually exits on an interrupt from the terminal, rather than
+    // through the loop below.
+    Thread stopBrowsers = new Thread("watch shutdown") {
+      @Override
+      public void run() {
+        browserActionsRunner.stopBrowsers();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(stopBrowsers);
+    try {
+      while (true) {
+        Set<String> changed = nextChanges(watcher);
+        testCases = update(testCases, changed);
+        List<JstdTestCase> affected = affected(testCases, changed);
+        out.println(String.format("%s changed, running %s of %s test cases.",
+            changed, affected.size(), testCases.size()));
+        try {
+          browserActionsRunner.run(uploadAction.run(runData.updateTestCases(affected)));
+        } catch (RuntimeException e) {
+          logger.debug("Watch run failed", e);
+          out.println("Test run failed: " + e.getMessage());
+        }
+      }
+    } catch (InterruptedException e) {
+      logger.debug("Stopped watching.");
+    } finally {
+      Runtime.getRuntime().removeShutdownHook(stopBrowsers);
+      browserActionsRunner.stopBrowsers();
+    }
+    return runData.updateTestCases(testCases);
+  }
+
+  /** Waits for files to change, and returns the changes once they settle. */
+  Set<String> nextChanges(FileWatcher watcher) throws InterruptedException {
+    Set<String> changed = Sets.newLinkedHashSet();
+    int polls = 0;
+    while (true) {
+      sleeper.sleep(POLL_INTERVAL);
+      List<String> modified = watcher.getAllFiles();
+      if (!changed.isEmpty() && (modified.isEmpty() || ++polls >= MAX_BATCH_POLLS)) {
+        changed.addAll(modified);
+        return changed;
+      }
+      changed.addAll(modified);
+    }
+  }
+
+  /**
+   * Gives the changed files new timestamps, so the server and the browsers
+   * replace them. The timestamp always moves forward, as a file may change
+   * again within the resolution of its modification time.
+   */
+  List<JstdTestCase> update(List<JstdTestCase> testCases, Set<String> changed) {
+    List<JstdTestCase> updated = Lists.newArrayListWithCapacity(testCases.size());
+    for (JstdTestCase testCase : testCases) {
+      updated.add(new JstdTestCase(updateFiles(testCase.getDependencies(), changed),
+          updateFiles(testCase.getTests(), changed),
+          updateFiles(testCase.getPlugins(), changed),
+          testCase.getId()));
+    }
+    return updated;
+  }
+
+  private List<FileInfo> updateFiles(List<FileInfo> files, Set<String> changed) {
+    List<FileInfo> updated = Lists.newArrayListWithCapacity(files.size());
+    for (FileInfo file : files) {
+      if (changed.contains(file.getFilePath())) {
+        long modified = new File(file.getFilePath()).lastModified();
+        file = file.withTimestamp(Math.max(modified, file.getTimestamp() + 1));
+      }
+      updated.add(file);
+    }
+    return updated;
+  }
+
+  /** Returns the test cases that include any of the changed files. */
+  List<JstdTestCase> affected(List<JstdTestCase> testCases, Set<String> changed) {
+    List<JstdTestCase> affected = Lists.newArrayList();
+    for (JstdTestCase testCase : testCases) {
+      for (FileInfo file : testCase) {
+        if (changed.contains(file.getFilePath())) {
+          affected.add(testCase);
+          break;
+        }
+      }
+    }
+    return affected;
+  }
+}
@@ -25,6 +25,8 @@ import com.google.jstestdriver.util.Sleeper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 /**
  * Manages the client portion of session for a given captured browser.
  * @author corysmith@google.com (Cory Smith)
@@ -72,6 +74,44 @@ public class BaseBrowserSessionManager implements BrowserSessionManager {
     return sessionId;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * Browsers that can no longer be reached, such as pooled browsers that
+   * crashed, are skipped, and the lease fails when none of them can be.
+   */
+  @Override
+  public Lease leaseSession(List<String> browserIds) {
+    while (true) {
+      boolean reachable = false;
+      for (String browserId : browserIds) {
+        String sessionId;
+        try {
+          sessionId = server.startSession(baseUrl, browserId);
+        } catch (RuntimeException e) {
+          logger.debug("Could not start a session with " + browserId, e);
+          continue;
+        }
+        reachable = true;
+        if (!"FAILED".equals(sessionId)) {
+          logger.debug("Leased browser {} with session {}", browserId, sessionId);
+          heartBeatManager.startTimer();
+          heartBeatManager.startHeartBeat(baseUrl, browserId, sessionId);
+          return new Lease(browserId, sessionId);
+        }
+      }
+      if (!reachable) {
+        throw new RuntimeException("None of the browsers " + browserIds + " are available.");
+      }
+      try {
+        logger.info("Currently waiting for one of browsers: {}, which are all in use.", browserIds);
+        sleeper.sleep(WAIT_INTERVAL);
+      } catch (InterruptedException e) {
+        throw new RuntimeException("Can't lease a session on the server!" + browserIds);
+      }
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -16,6 +16,7 @@
 package com.google.jstestdriver.browser;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.google.jstestdriver.Action;
@@ -26,6 +27,7 @@ import com.google.jstestdriver.ResponseStream;
 import com.google.jstestdriver.RunTestsAction;
 import com.google.jstestdriver.TestErrors;
 import com.google.jstestdriver.browser.BrowserControl.BrowserControlFactory;
+import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.RunData;
 import com.google.jstestdriver.util.RetryingCallable;
 import com.google.jstestdriver.util.StopWatch;
@@ -34,7 +36,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
@@ -46,6 +51,10 @@ import java.util.concurrent.TimeUnit;
 /**
  * Executes each {@link BrowserAction} on each browser.
  *
+ * In watch mode, the browser started for each {@link BrowserRunner} is kept
+ * captured after a run, and the following runs use it again until
+ * {@link #stopBrowsers()} is called.
+ *
  * @author jeremiele@google.com (Jeremie Lenfant-Engelmann)
  */
 public class BrowserActionExecutorAction implements Action {
@@ -64,6 +73,16 @@ public class BrowserActionExecutorAction implements Action {
 
   private final BrowserControlFactory browserControlFactory;
 
+  private final TestCaseSharder sharder;
+
+  private final TestCaseTimings timings;
+
+  private final boolean watch;
+
+  /** In watch mode, the browsers started by the runners, kept between runs. */
+  private final Map<BrowserRunner, KeptBrowser> keptBrowsers =
+      Collections.synchronizedMap(new HashMap<BrowserRunner, KeptBrowser>());
+
   @Inject
   public BrowserActionExecutorAction(JsTestDriverClient client,
       List<BrowserAction> actions,
@@ -73,7 +92,10 @@ public class BrowserActionExecutorAction implements Action {
       @Named("testSuiteTimeout") long testTimeout,
       StopWatch stopWatch,
       BrowserSessionManager sessionManager,
-      BrowserControlFactory browserControlFactory) {
+      BrowserControlFactory browserControlFactory,
+      TestCaseSharder sharder,
+      TestCaseTimings timings,
+      @Named("watch") boolean watch) {
     this.client = client;
     this.actions = actions;
     this.executor = executor;
@@ -83,13 +105,25 @@ public class BrowserActionExecutorAction implements Action {
     this.stopWatch = stopWatch;
     this.sessionManager = sessionManager;
     this.browserControlFactory = browserControlFactory;
+    this.sharder = sharder;
+    this.timings = timings;
+    this.watch = watch;
   }
 
   @Override
   public RunData run(RunData runData) {
     stopWatch.start("run %s", actions);
     logger.trace("Starting BrowserActions {}.", actions);
-    Collection<BrowserInfo> browsers = client.listBrowsers();
+    Collection<BrowserInfo> browsers = Lists.newArrayList();
+    Set<String> capturedIds = Sets.newHashSet();
+    Set<String> keptIds = getKeptBrowserIds();
+    for (BrowserInfo browserInfo : client.listBrowsers()) {
+      capturedIds.add(browserInfo.getId().toString());
+      // a kept browser runs for its runner, below.
+      if (!keptIds.contains(browserInfo.getId().toString())) {
+        browsers.add(browserInfo);
+      }
+    }
     if (browsers.size() == 0 && browserRunners.size() == 0 && actions.size() > 0) {
       throw new RuntimeException("No browsers available, yet actions " + actions + " requested. " +
           "If running against a persistent server please capture browsers. "+
@@ -98,16 +132,56 @@ public class BrowserActionExecutorAction implements Action {
     // TODO(corysmith): Change the threaded action runner to
     // return useful information about a run.
     List<Callable<Collection<ResponseStream>>> runners = Lists.newLinkedList();
+    Map<BrowserInfo, Iterable<JstdTestCase>> assignments =
+        sharder.assign(browsers, runData.getTestCases());
+    List<BrowserInfo> pooled = Lists.newArrayList();
     for (BrowserInfo browserInfo : browsers) {
+      if (browserInfo.isPooled() && !sharder.isSharding()) {
+        pooled.add(browserInfo);
+        continue;
+      }
       runners.add(new BrowserActionRunner(browserInfo.getId().toString(),
           client,
           actions,
           stopWatch,
-          runData.getTestCases(),
-          sessionManager));
+          assignments.get(browserInfo),
+          sessionManager,
+          timings));
       logger.debug("Queueing BrowserActionRunner {} for {}.", actions, browserInfo);
     }
+    // Pooled browsers of a type are interchangeable, so the run leases one of each.
+    for (List<BrowserInfo> group : sharder.groupBrowsers(pooled)) {
+      List<String> pooledIds = Lists.newArrayListWithCapacity(group.size());
+      for (BrowserInfo browserInfo : group) {
+        pooledIds.add(browserInfo.getId().toString());
+      }
+      runners.add(BrowserActionRunner.leasing(pooledIds,
+          client,
+          actions,
+          stopWatch,
+          runData.getTestCases(),
+          sessionManager,
+          timings));
+      logger.debug("Queueing BrowserActionRunner {} for one of {}.", actions, pooledIds);
+    }
     for (BrowserRunner runner : browserRunners) {
+      KeptBrowser kept = keptBrowsers.get(runner);
+      if (kept != null && capturedIds.contains(kept.browserId)) {
+        runners.add(new BrowserActionRunner(kept.browserId,
+            client,
+            actions,
+            stopWatch,
+            runData.getTestCases(),
+            sessionManager,
+            timings));
+        logger.debug("Queueing BrowserActionRunner {} for kept {}.", actions, runner);
+        continue;
+      }
+      if (kept != null) {
+        logger.info("Restarting browser {} for {}", kept.browserId, runner);
+        keptBrowsers.remove(runner);
+        kept.control.stopBrowser();
+      }
       String browserId = client.getNextBrowserId();
       final BrowserActionRunner actionRunner =
           new BrowserActionRunner(
@@ -116,7 +190,8 @@ public class BrowserActionExecutorAction implements Action {
             actions,
             stopWatch,
             runData.getTestCases(),
-            sessionManager);
+            sessionManager,
+            timings);
       runners.add(createBrowserManagedRunner(runData, runner, browserId, actionRunner));
       logger.debug("Queueing BrowserActionRunner {} for {}.", actions, runner);
     }
@@ -144,8 +219,12 @@ public class BrowserActionExecutorAction implements Action {
       throw new RuntimeException(e);
     } finally {
       // something isn't working....
-      executor.shutdownNow();
+      // The watch mode runs again on the same executor when files change.
+      if (!watch) {
+        executor.shutdownNow();
+      }
     }
+    sharder.finish();
     logger.debug("Finished BrowserActions {}.", actions);
     // TODO(corysmith): Move this to the ActionRunner?
     runData.finish(); // finalizes the rundata collection.
@@ -158,11 +237,51 @@ public class BrowserActionExecutorAction implements Action {
   }
 
   // TODO(corysmith): Pull this into a factory.
-  private Callable<Collection<ResponseStream>> createBrowserManagedRunner(RunData runData, BrowserRunner runner,
-      String browserId, BrowserActionRunner actionRunner) {
+  private Callable<Collection<ResponseStream>> createBrowserManagedRunner(RunData runData,
+      final BrowserRunner runner, final String browserId, final BrowserActionRunner actionRunner) {
+    final BrowserControl control =
+        browserControlFactory.create(runner, captureAddress, runData.getTestCases());
+    if (!watch) {
+      return new RetryingCallable<Collection<ResponseStream>>(runner.getNumStartupTries(),
+          new BrowserCallable<Collection<ResponseStream>>(actionRunner, browserId, control));
+    }
     return new RetryingCallable<Collection<ResponseStream>>(runner.getNumStartupTries(),
-        new BrowserCallable<Collection<ResponseStream>>(actionRunner, browserId,
-            browserControlFactory.create(runner, captureAddress, runData.getTestCases())));
+        new Callable<Collection<ResponseStream>>() {
+          @Override
+          public Collection<ResponseStream> call() throws Exception {
+            try {
+              control.captureBrowser(browserId);
+            } catch (Exception e) {
+              control.stopBrowser();
+              throw e;
+            }
+            keptBrowsers.put(runner, new KeptBrowser(browserId, control));
+            return actionRunner.call();
+          }
+        });
+  }
+
+  /** Stops the browsers kept between the runs of the watch mode. */
+  public void stopBrowsers() {
+    List<KeptBrowser> stopped;
+    synchronized (keptBrowsers) {
+      stopped = Lists.newArrayList(keptBrowsers.values());
+      keptBrowsers.clear();
+    }
+    for (KeptBrowser kept : stopped) {
+      logger.debug("Stopping kept browser {}", kept.browserId);
+      kept.control.stopBrowser();
+    }
+  }
+
+  private Set<String> getKeptBrowserIds() {
+    Set<String> ids = Sets.newHashSet();
+    synchronized (keptBrowsers) {
+      for (KeptBrowser kept : keptBrowsers.values()) {
+        ids.add(kept.browserId);
+      }
+    }
+    return ids;
   }
 
   public List<BrowserAction> getActions() {
@@ -181,4 +300,15 @@ public class BrowserActionExecutorAction implements Action {
   public JsTestDriverClient getClient() {
     return client;
   }
+
+  /** A browser started by a runner, and the control to stop it with. */
+  private static class KeptBrowser {
+    final String browserId;
+    final BrowserControl control;
+
+    KeptBrowser(String browserId, BrowserControl control) {
+      this.browserId = browserId;
+      this.control = control;
+    }
+  }
 }
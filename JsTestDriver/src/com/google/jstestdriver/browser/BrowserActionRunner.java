@@ -18,6 +18,7 @@ package com.google.jstestdriver.browser;
 import com.google.common.collect.Lists;
 import com.google.jstestdriver.BrowserAction;
 import com.google.jstestdriver.JsTestDriverClient;
+import com.google.jstestdriver.Response;
 import com.google.jstestdriver.ResponseStream;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.util.StopWatch;
@@ -31,48 +32,120 @@ import java.util.concurrent.Callable;
 
 
 /**
- * Runs all actions on a specific browser.
+ * Runs all actions on a specific browser, or on a browser leased from a set of
+ * pooled browsers, which is reset before it is returned to the pool.
  * @author jeremiele@google.com (Jeremie Lenfant-Engelmann)
  */
 public class BrowserActionRunner implements Callable<Collection<ResponseStream>> {
   private static final Logger logger = LoggerFactory.getLogger(BrowserActionRunner.class);
 
   private final String id;
+  private final List<String> pooledIds;
   private final JsTestDriverClient client;
   private final List<BrowserAction> actions;
 
   private final StopWatch stopWatch;
 
-  private final List<JstdTestCase> testCases;
+  private final Iterable<JstdTestCase> testCases;
 
   // TODO(corysmith): enable session manager.
   private final BrowserSessionManager sessionManager;
 
+  private final TestCaseTimings timings;
+
   public BrowserActionRunner(String id, JsTestDriverClient client, List<BrowserAction> actions,
-      StopWatch stopWatch, List<JstdTestCase> testCases, BrowserSessionManager sessionManager) {
+      StopWatch stopWatch, Iterable<JstdTestCase> testCases, BrowserSessionManager sessionManager,
+      TestCaseTimings timings) {
+    this(id, null, client, actions, stopWatch, testCases, sessionManager, timings);
+  }
+
+  /** Returns a runner for whichever of the pooled browsers is leased first. */
+  public static BrowserActionRunner leasing(List<String> pooledIds, JsTestDriverClient client,
+      List<BrowserAction> actions, StopWatch stopWatch, Iterable<JstdTestCase> testCases,
+      BrowserSessionManager sessionManager, TestCaseTimings timings) {
+    return new BrowserActionRunner(
+        null, pooledIds, client, actions, stopWatch, testCases, sessionManager, timings);
+  }
+
+  private BrowserActionRunner(String id, List<String> pooledIds, JsTestDriverClient client,
+      List<BrowserAction> actions, StopWatch stopWatch, Iterable<JstdTestCase> testCases,
+      BrowserSessionManager sessionManager, TestCaseTimings timings) {
     this.id = id;
+    this.pooledIds = pooledIds;
     this.client = client;
     this.actions = actions;
     this.stopWatch = stopWatch;
     this.testCases = testCases;
     this.sessionManager = sessionManager;
+    this.timings = timings;
   }
 
   @Override
   public Collection<ResponseStream> call() {
+    if (pooledIds != null) {
+      BrowserSessionManager.Lease lease = sessionManager.leaseSession(pooledIds);
+      return call(lease.getBrowserId(), lease.getSessionId());
+    }
+    return call(id, null);
+  }
+
+  private Collection<ResponseStream> call(String browserId, String leasedSessionId) {
+    stopWatch.start("browser %s", browserId);
+    try {
+      return runActions(browserId, leasedSessionId);
+    } finally {
+      stopWatch.stop("browser %s", browserId);
+    }
+  }
+
+  private Collection<ResponseStream> runActions(final String browserId, String leasedSessionId) {
     Collection<ResponseStream> responses = Lists.newArrayList();
-    String sessionId = sessionManager.startSession(id);
-    logger.debug("start session on {} with id {}", id, sessionId);
-    for (JstdTestCase testCase : testCases) {
-      for (BrowserAction action : actions) {
-        stopWatch.start("run %s", action);
-        logger.info("Running BrowserAction {} with {}", action, testCase);
-        responses.add(action.run(id, client, null, testCase));
-        stopWatch.stop("run %s", action);
+    String sessionId = leasedSessionId != null
+        ? leasedSessionId : sessionManager.startSession(browserId);
+    logger.debug("start session on {} with id {}", browserId, sessionId);
+    JstdTestCase lastTestCase = null;
+    try {
+      for (JstdTestCase testCase : testCases) {
+        lastTestCase = testCase;
+        long start = System.currentTimeMillis();
+        for (BrowserAction action : actions) {
+          stopWatch.start("run %s", action);
+          logger.info("Running BrowserAction {} with {}", action, testCase);
+          responses.add(action.run(browserId, client, null, testCase));
+          stopWatch.stop("run %s", action);
+        }
+        timings.record(testCase.getId(), System.currentTimeMillis() - start);
+      }
+    } finally {
+      // a leased browser goes back to the pool even when an action fails, or
+      // the runner is cancelled.
+      if (pooledIds != null && lastTestCase != null) {
+        reset(browserId, lastTestCase);
       }
+      logger.debug("stopping session on {} with id {}", browserId, sessionId);
+      sessionManager.stopSession(sessionId, browserId);
     }
-    logger.debug("stopping session on {} with id {}", id, sessionId);
-    sessionManager.stopSession(sessionId, id);
     return responses;
   }
+
+  /** Resets a leased browser, logging a failure so it can't mask a failed action. */
+  private void reset(final String browserId, JstdTestCase testCase) {
+    stopWatch.start("reset %s", browserId);
+    try {
+      client.reset(browserId, new ResponseStream() {
+        @Override
+        public void stream(Response response) {
+          logger.debug("Reset pooled browser {}", browserId);
+        }
+
+        @Override
+        public void finish() {
+        }
+      }, testCase);
+    } catch (RuntimeException e) {
+      logger.warn("Unable to reset pooled browser " + browserId, e);
+    } finally {
+      stopWatch.stop("reset %s", browserId);
+    }
+  }
 }
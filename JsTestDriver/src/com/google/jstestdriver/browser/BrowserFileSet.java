@@ -31,6 +31,7 @@ public class BrowserFileSet {
   private List<FileInfo> fileToUpload;
   private List<FileInfo> extraFiles;
   private final boolean reset;
+  private boolean unknownTestCase;
 
 
   public BrowserFileSet() {
@@ -43,6 +44,16 @@ public class BrowserFileSet {
     this.reset = reset;
   }
 
+  /**
+   * Answers a check for a manifest test case the server does not have, which
+   * the client resends in full.
+   */
+  public static BrowserFileSet unknownTestCase() {
+    BrowserFileSet fileSet = new BrowserFileSet();
+    fileSet.unknownTestCase = true;
+    return fileSet;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -91,4 +102,8 @@ public class BrowserFileSet {
   public boolean shouldReset() {
     return reset;
   }
+
+  public boolean isUnknownTestCase() {
+    return unknownTestCase;
+  }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import com.google.common.collect.Lists;
+import com.google.jstestdriver.CapturedBrowsers;
+import com.google.jstestdriver.browser.BrowserControl.BrowserControlFactory;
+import com.google.jstestdriver.model.JstdTestCase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps a number of captured browsers of each {@link BrowserRunner} warm on
+ * the server. Pooled browsers are marked in the {@link CapturedBrowsers}, so
+ * that clients lease one of each type through the
+ * {@link BrowserSessionManager} rather than starting their own, and reset it
+ * when they are done.
+ *
+ * A browser that crashes is removed by the {@link BrowserReaper}, and the
+ * pool starts a replacement in the background.
+ */
+public class BrowserPool {
+  private static final Logger logger = LoggerFactory.getLogger(BrowserPool.class);
+
+  /** How often the pool checks for browsers that have gone away. */
+  static final long REFILL_INTERVAL = 5000;
+
+  private final CapturedBrowsers capturedBrowsers;
+  private final ExecutorService executor;
+  private final List<Slot> slots = Lists.newArrayList();
+  private Timer timer;
+  private volatile boolean stopped;
+
+  /**
+   * @param size The number of browsers to keep for each runner. Only
+   *     {@link CommandLineBrowserRunner}s can run more than one browser.
+   */
+  public BrowserPool(Set<BrowserRunner> runners, int size, String captureAddress,
+      CapturedBrowsers capturedBrowsers, BrowserControlFactory browserControlFactory,
+      ExecutorService executor) {
+    this.capturedBrowsers = capturedBrowsers;
+    this.executor = executor;
+    List<JstdTestCase> noTestCases = Collections.emptyList();
+    for (BrowserRunner runner : runners) {
+      for (int i = 0; i < size; i++) {
+        BrowserRunner slotRunner = runner;
+        if (i > 0) {
+          if (!(runner instanceof CommandLineBrowserRunner)) {
+            logger.warn("Pooling a single browser for {}", runner);
+            break;
+          }
+          slotRunner = ((CommandLineBrowserRunner) runner).copy();
+        }
+        slots.add(new Slot(
+            browserControlFactory.create(slotRunner, captureAddress, noTestCases)));
+      }
+    }
+  }
+
+  /** Captures every browser of the pool, then keeps the pool full. */
+  public synchronized void start() {
+    List<Throwable> failures = fill();
+    if (!failures.isEmpty()) {
+      throw new RuntimeException("Could not fill the browser pool", failures.get(0));
+    }
+    timer = new Timer("browser pool", true);
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        for (Throwable failure : fill()) {
+          logger.warn("Could not refill the browser pool", failure);
+        }
+      }
+    }, REFILL_INTERVAL, REFILL_INTERVAL);
+  }
+
+  /**
+   * Stops refilling the pool and stops the browsers of every slot, including
+   * the processes of the copied runners.
+   */
+  public synchronized void stop() {
+    stopped = true;
+    if (timer != null) {
+      timer.cancel();
+    }
+    for (Slot slot : slots) {
+      slot.release();
+    }
+  }
+
+  /**
+   * Captures a browser for every slot that has none, in parallel.
+   * @return The failures of the captures.
+   */
+  List<Throwable> fill() {
+    List<Future<String>> captures = Lists.newArrayList();
+    for (final Slot slot : slots) {
+      if (!stopped && !slot.isCaptured()) {
+        captures.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return slot.capture();
+          }
+        }));
+      }
+    }
+    List<Throwable> failures = Lists.newArrayList();
+    for (Future<String> capture : captures) {
+      try {
+        logger.debug("Pooled browser {}", capture.get());
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        failures.add(e.getCause());
+      }
+    }
+    return failures;
+  }
+
+  /** The ids of the pooled browsers, whether or not they are captured. */
+  public List<String> getBrowserIds() {
+    List<String> ids = Lists.newArrayList();
+    for (Slot slot : slots) {
+      if (slot.browserId != null) {
+        ids.add(slot.browserId);
+      }
+    }
+    return ids;
+  }
+
+  /** A browser process kept captured under an id of its own. */
+  private class Slot {
+    private final BrowserControl control;
+    private volatile String browserId;
+
+    Slot(BrowserControl control) {
+      this.control = control;
+    }
+
+    boolean isCaptured() {
+      return browserId != null && capturedBrowsers.getBrowser(browserId) != null;
+    }
+
+    synchronized String capture() throws InterruptedException {
+      if (stopped) {
+        throw new IllegalStateException("The browser pool is stopped");
+      }
+      if (browserId != null) {
+        logger.info("Restarting pooled browser {}", browserId);
+        release();
+      }
+      browserId = capturedBrowsers.getUniqueId();
+      capturedBrowsers.addPooledId(browserId);
+      return control.captureBrowser(browserId);
+    }
+
+    synchronized void release() {
+      if (browserId == null) {
+        return;
+      }
+      capturedBrowsers.removePooledId(browserId);
+      try {
+        control.stopBrowser();
+      } catch (RuntimeException e) {
+        logger.warn("Could not stop pooled browser " + browserId, e);
+      }
+    }
+  }
+}
@@ -18,6 +18,8 @@ package com.google.jstestdriver.browser;
 
 import com.google.inject.ImplementedBy;
 
+import java.util.List;
+
 
 
 /**
@@ -42,4 +44,32 @@ public interface BrowserSessionManager {
    */
   public void stopSession(String sessionId, String browserId);
 
+  /**
+   * Starts a session with the first of a set of interchangeable browsers that
+   * is not in use, waiting for one to become free.
+   * @param browserIds The browsers to lease from, such as the pooled browsers
+   *     of one type.
+   * @return The leased browser and the session with it.
+   */
+  public Lease leaseSession(List<String> browserIds);
+
+  /** A session with one of the browsers offered to {@link #leaseSession(List)}. */
+  public static class Lease {
+    private final String browserId;
+    private final String sessionId;
+
+    public Lease(String browserId, String sessionId) {
+      this.browserId = browserId;
+      this.sessionId = sessionId;
+    }
+
+    public String getBrowserId() {
+      return browserId;
+    }
+
+    public String getSessionId() {
+      return sessionId;
+    }
+  }
+
 }
@@ -54,6 +54,11 @@ public class CommandLineBrowserRunner implements BrowserRunner {
     this.os = os;
   }
 
+  /** Returns a runner for another process of the same browser. */
+  public CommandLineBrowserRunner copy() {
+    return new CommandLineBrowserRunner(browserPath, browserArgs, processFactory, os);
+  }
+
   @Override
   public void startBrowser(String serverAddress) {
     try {
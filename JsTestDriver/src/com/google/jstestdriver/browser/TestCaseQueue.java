@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import com.google.jstestdriver.model.JstdTestCase;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A queue of {@link JstdTestCase}s shared by a group of browsers. Every
+ * iterator consumes from the same queue, so a browser that finishes early
+ * takes over the test cases the slower browsers have not started yet.
+ */
+class TestCaseQueue implements Iterable<JstdTestCase> {
+  private final Queue<JstdTestCase> testCases;
+
+  public TestCaseQueue(Collection<JstdTestCase> testCases) {
+    this.testCases = new ConcurrentLinkedQueue<JstdTestCase>(testCases);
+  }
+
+  @Override
+  public Iterator<JstdTestCase> iterator() {
+    return new Iterator<JstdTestCase>() {
+      private JstdTestCase next;
+
+      @Override
+      public boolean hasNext() {
+        if (next == null) {
+          next = testCases.poll();
+        }
+        return next != null;
+      }
+
+      @Override
+      public JstdTestCase next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        JstdTestCase current = next;
+        next = null;
+        return current;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "TestCaseQueue [testCases=" + testCases + "]";
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.jstestdriver.BrowserInfo;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.model.JstdTestCase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns the {@link JstdTestCase}s of a run to the captured browsers. When
+ * sharding is enabled, browsers with the same name and version are treated as
+ * interchangeable and share a single queue of test cases, ordered longest
+ * first by the {@link TestCaseTimings} of previous runs.
+ */
+public class TestCaseSharder {
+  private static final Logger logger = LoggerFactory.getLogger(TestCaseSharder.class);
+
+  private final boolean shardTests;
+  private final TestCaseTimings timings;
+
+  @Inject
+  public TestCaseSharder(@Named("shardTests") boolean shardTests, TestCaseTimings timings) {
+    this.shardTests = shardTests;
+    this.timings = timings;
+  }
+
+  /**
+   * Returns the test cases each browser should execute. Without sharding,
+   * every browser executes all of the test cases.
+   */
+  public Map<BrowserInfo, Iterable<JstdTestCase>> assign(Collection<BrowserInfo> browsers,
+      List<JstdTestCase> testCases) {
+    Map<BrowserInfo, Iterable<JstdTestCase>> assignments = Maps.newLinkedHashMap();
+    if (!shardTests) {
+      for (BrowserInfo browser : browsers) {
+        assignments.put(browser, testCases);
+      }
+      return assignments;
+    }
+    timings.load();
+    for (List<BrowserInfo> group : groupBrowsers(browsers)) {
+      TestCaseQueue queue = new TestCaseQueue(schedule(split(testCases, group.size())));
+      logger.debug("Sharding {} across {}", queue, group);
+      for (BrowserInfo browser : group) {
+        assignments.put(browser, queue);
+      }
+    }
+    return assignments;
+  }
+
+  public boolean isSharding() {
+    return shardTests;
+  }
+
+  /** Persists the timings recorded during a sharded run. */
+  public void finish() {
+    if (shardTests) {
+      timings.save();
+    }
+  }
+
+  /**
+   * Groups the browsers by name and version, preserving the order in which
+   * they were captured.
+   */
+  Collection<List<BrowserInfo>> groupBrowsers(Collection<BrowserInfo> browsers) {
+    Map<String, List<BrowserInfo>> groups = Maps.newLinkedHashMap();
+    for (BrowserInfo browser : browsers) {
+      String key = browser.getName() + " " + browser.getVersion();
+      if (!groups.containsKey(key)) {
+        groups.put(key, Lists.<BrowserInfo>newArrayList());
+      }
+      groups.get(key).add(browser);
+    }
+    return groups.values();
+  }
+
+  /**
+   * Orders the test cases longest processing time first. Test cases without a
+   * recorded time are started first, as they may be the slowest of all.
+   */
+  List<JstdTestCase> schedule(List<JstdTestCase> testCases) {
+    List<JstdTestCase> scheduled = Lists.newArrayList(testCases);
+    Collections.sort(scheduled, new Comparator<JstdTestCase>() {
+      @Override
+      public int compare(JstdTestCase a, JstdTestCase b) {
+        long durationA = expectedDuration(a);
+        long durationB = expectedDuration(b);
+        return durationA > durationB ? -1 : (durationA == durationB ? 0 : 1);
+      }
+    });
+    return scheduled;
+  }
+
+  private long expectedDuration(JstdTestCase testCase) {
+    long duration = timings.getDuration(testCase.getId());
+    return duration == TestCaseTimings.UNKNOWN ? Long.MAX_VALUE : duration;
+  }
+
+  /**
+   * Returns the test cases unchanged when there are at least as many as
+   * shards. Otherwise the test files of each test case are split into one
+   * contiguous slice per shard, so that a single large test case still
+   * spreads across the browsers.
+   */
+  List<JstdTestCase> split(List<JstdTestCase> testCases, int shardCount) {
+    if (testCases.size() >= shardCount) {
+      return testCases;
+    }
+    List<JstdTestCase> slices = Lists.newArrayList();
+    for (JstdTestCase testCase : testCases) {
+      List<FileInfo> tests = testCase.getTests();
+      for (int i = 0; i < shardCount; i++) {
+        List<FileInfo> slice = tests.subList(
+            i * tests.size() / shardCount, (i + 1) * tests.size() / shardCount);
+        if (!slice.isEmpty()) {
+          slices.add(new JstdTestCase(testCase.getDependencies(),
+              Lists.newArrayList(slice),
+              testCase.getPlugins(),
+              testCase.getId() + "-shard" + i));
+        }
+      }
+    }
+    return slices;
+  }
+}
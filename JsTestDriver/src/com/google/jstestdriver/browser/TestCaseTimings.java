@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.browser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.jstestdriver.config.ConfigurationSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Execution times of {@link com.google.jstestdriver.model.JstdTestCase}s,
+ * persisted between runs in a file next to the configuration.
+ */
+@Singleton
+public class TestCaseTimings {
+  private static final Logger logger = LoggerFactory.getLogger(TestCaseTimings.class);
+
+  /** Returned for test cases that have not been timed yet. */
+  public static final long UNKNOWN = -1;
+
+  private final Gson gson = new Gson();
+  private final ConcurrentMap<String, Long> durations = new ConcurrentHashMap<String, Long>();
+  private final File store;
+
+  @Inject
+  public TestCaseTimings(@Named("config") ConfigurationSource config) {
+    this(new File(config.getParentFile(), String.format(".%s-timings", config.getName())));
+  }
+
+  public TestCaseTimings(File store) {
+    this.store = store;
+  }
+
+  /** Returns the last recorded duration in milliseconds, or {@link #UNKNOWN}. */
+  public long getDuration(String testCaseId) {
+    Long duration = durations.get(testCaseId);
+    return duration == null ? UNKNOWN : duration;
+  }
+
+  /** Called from the browser threads when a test case has finished. */
+  public void record(String testCaseId, long duration) {
+    durations.put(testCaseId, duration);
+  }
+
+  /** Reads the timings from previous runs. A missing or corrupt store is ignored. */
+  public synchronized void load() {
+    if (!store.exists()) {
+      return;
+    }
+    Reader reader = null;
+    try {
+      reader = new FileReader(store);
+      Map<String, Long> stored =
+          gson.fromJson(reader, new TypeToken<Map<String, Long>>() {}.getType());
+      if (stored != null) {
+        for (Map.Entry<String, Long> entry : stored.entrySet()) {
+          durations.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Unable to read test case timings from " + store, e);
+    } catch (JsonParseException e) {
+      logger.warn("Ignoring corrupt test case timings in " + store, e);
+    } finally {
+      close(reader);
+    }
+  }
+
+  /** Writes the timings out for the next run. */
+  public synchronized void save() {
+    Writer writer = null;
+    try {
+      writer = new FileWriter(store);
+      gson.toJson(durations, writer);
+    } catch (IOException e) {
+      logger.warn("Unable to write test case timings to " + store, e);
+    } catch (JsonIOException e) {
+      logger.warn("Unable to write test case timings to " + store, e);
+    } finally {
+      close(writer);
+    }
+  }
+
+  private void close(Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      logger.warn("Error closing " + store, e);
+    }
+  }
+}
@@ -44,6 +44,13 @@ public class CodeInstrumentor implements Instrumentor {
     }
   }
 
+  /**
+   * Identifies the instrumentation produced by this instrumentor. Changing the
+   * template or the ES3Instrument grammar must increase it, so instrumentation
+   * cached by earlier versions is not reused.
+   */
+  public static final int VERSION = 1;
+
   private static final char[] TEMPLATE =
     ("group TestRewrite;\n" +
      "init_instrument(stmt, hash, name, lines) ::= \"LCOV_<hash>=" +
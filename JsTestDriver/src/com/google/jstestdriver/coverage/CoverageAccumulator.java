@@ -17,58 +17,82 @@ package com.google.jstestdriver.coverage;
 
 import com.google.inject.Singleton;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Accumulates all the lines recorded during a test run.
+ * Accumulates all the lines recorded during a test run. Hits are added up as
+ * they arrive, per file id from the {@link CoverageNameMapper}, both in total
+ * and for each browser.
  * @author corysmith@google.com (Cory Smith)
  */
 @Singleton
 public class CoverageAccumulator {
-  private ConcurrentLinkedQueue<FileCoverage> fileCoverages =
-      new ConcurrentLinkedQueue<FileCoverage>();
+  private final LineHits total = new LineHits();
+  private final ConcurrentMap<String, LineHits> browsers =
+      new ConcurrentHashMap<String, LineHits>();
 
-  // TODO(corysmith): Track which browsers cover what.
   public void add(String browserId, Collection<FileCoverage> rawCoverage) {
+    LineHits browser = getBrowser(browserId);
     for (FileCoverage fileCoverage : rawCoverage) {
-      fileCoverages.offer(fileCoverage);
+      total.add(fileCoverage);
+      browser.add(fileCoverage);
     }
   }
 
-  @Override
-  public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((fileCoverages == null) ? 0 : fileCoverages.hashCode());
-    return result;
+  /** Adds the hits of a single line, as reported by a browser. */
+  public void add(String browserId, int fileId, int lineNumber, int executedNumber) {
+    total.add(fileId, lineNumber, executedNumber);
+    getBrowser(browserId).add(fileId, lineNumber, executedNumber);
+  }
+
+  /** Records the executable lines of a file, so lines that are never executed are reported. */
+  public void addExecutableLines(int fileId, List<Integer> lineNumbers) {
+    for (Integer lineNumber : lineNumbers) {
+      total.add(fileId, lineNumber, 0);
+    }
+  }
+
+  /** Returns the ids of the browsers that reported coverage. */
+  public Set<String> getBrowserIds() {
+    return Collections.unmodifiableSet(browsers.keySet());
   }
 
-  /** Writes all non-duplicate accumulated data to the coverage writer in the natural order. */
+  /** Writes the accumulated data to the coverage writer in the natural order. */
   public void write(CoverageWriter coverageWriter) {
-    if (!fileCoverages.isEmpty()) {
-      List<FileCoverage> rawCoverage = new LinkedList<FileCoverage>(fileCoverages);
-      Collections.sort(rawCoverage);
-      FileCoverage last = rawCoverage.get(0);
-      for (FileCoverage fileCoverage : rawCoverage.subList(1, rawCoverage.size())) {
-        FileCoverage aggregate = last.aggegrate(fileCoverage);
-        if (aggregate == null) {
-          last.write(coverageWriter);
-          last = fileCoverage;
-        } else {
-          last = aggregate;
-        }
-      }
-      last.write(coverageWriter);
-    } else {
+    if (!total.write(coverageWriter, total)) {
       System.out.println("No lines of coverage found.");
     }
   }
 
+  /**
+   * Writes the lines covered by a single browser. Every executable line is
+   * written, with the hits of that browser alone.
+   */
+  public void write(String browserId, CoverageWriter coverageWriter) {
+    LineHits browser = browsers.get(browserId);
+    total.write(coverageWriter, browser == null ? new LineHits() : browser);
+  }
+
+  private LineHits getBrowser(String browserId) {
+    LineHits browser = browsers.get(browserId);
+    if (browser == null) {
+      browsers.putIfAbsent(browserId, new LineHits());
+      browser = browsers.get(browserId);
+    }
+    return browser;
+  }
+
+  @Override
+  public int hashCode() {
+    return total.hashCode();
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj)
@@ -78,27 +102,121 @@ public class CoverageAccumulator {
     if (getClass() != obj.getClass())
       return false;
     CoverageAccumulator other = (CoverageAccumulator) obj;
-    if (fileCoverages == null) {
-      if (other.fileCoverages != null)
-        return false;
-    } else {
-      synchronized (CoverageAccumulator.class) {
-        Iterator<FileCoverage> ours = fileCoverages.iterator();
-        Iterator<FileCoverage> theirs = other.fileCoverages.iterator();
-        while(ours.hasNext() && theirs.hasNext()) {
-          if (!ours.next().equals(theirs.next())) {
-            return false;
+    return total.equals(other.total) && browsers.equals(other.browsers);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s(%s)", getClass().getSimpleName(), total);
+  }
+
+  /**
+   * Hit counts per line of each file, indexed by file id and line number.
+   * Lines that have not been reported are {@link #NOT_EXECUTABLE}.
+   */
+  private static class LineHits {
+    private static final long NOT_EXECUTABLE = -1;
+    private static final long[] NO_LINES = new long[0];
+
+    private long[][] files = new long[0][];
+
+    synchronized void add(FileCoverage fileCoverage) {
+      int fileId = fileCoverage.getFileId();
+      for (CoveredLine line : fileCoverage.getLines()) {
+        add(fileId, line.getLineNumber(), line.getExecutedNumber());
+      }
+    }
+
+    synchronized void add(int fileId, int lineNumber, long executedNumber) {
+      // ids are assigned from 0 by the CoverageNameMapper, anything else is not
+      // from instrumented code.
+      if (fileId < 0 || lineNumber < 0) {
+        return;
+      }
+      if (fileId >= files.length) {
+        files = Arrays.copyOf(files, Math.max(fileId + 1, files.length * 2));
+      }
+      long[] hits = files[fileId];
+      if (hits == null || lineNumber >= hits.length) {
+        int length = hits == null ? 0 : hits.length;
+        hits = Arrays.copyOf(hits == null ? NO_LINES : hits,
+            Math.max(lineNumber + 1, length * 2));
+        Arrays.fill(hits, length, hits.length, NOT_EXECUTABLE);
+        files[fileId] = hits;
+      }
+      hits[lineNumber] = hits[lineNumber] == NOT_EXECUTABLE
+          ? executedNumber : hits[lineNumber] + executedNumber;
+    }
+
+    synchronized long get(int fileId, int lineNumber) {
+      if (fileId >= files.length || files[fileId] == null
+          || lineNumber >= files[fileId].length) {
+        return NOT_EXECUTABLE;
+      }
+      return files[fileId][lineNumber];
+    }
+
+    /**
+     * Writes the lines reported here with the hits from counts. Returns false
+     * when there was nothing to write.
+     */
+    synchronized boolean write(CoverageWriter writer, LineHits counts) {
+      boolean written = false;
+      for (int fileId = 0; fileId < files.length; fileId++) {
+        long[] hits = files[fileId];
+        if (hits == null) {
+          continue;
+        }
+        writer.writeRecordStart(fileId);
+        for (int lineNumber = 0; lineNumber < hits.length; lineNumber++) {
+          if (hits[lineNumber] != NOT_EXECUTABLE) {
+            long count = Math.max(counts.get(fileId, lineNumber), 0);
+            writer.writeCoverage(lineNumber, (int) Math.min(count, Integer.MAX_VALUE));
           }
         }
-        if (ours.hasNext() || theirs.hasNext()) {
-          return false;
+        writer.writeRecordEnd();
+        written = true;
+      }
+      return written;
+    }
+
+    /** Returns the hits without the capacity reserved for growth. */
+    private synchronized long[][] trimmed() {
+      int fileCount = files.length;
+      while (fileCount > 0 && files[fileCount - 1] == null) {
+        fileCount--;
+      }
+      long[][] trimmed = new long[fileCount][];
+      for (int fileId = 0; fileId < fileCount; fileId++) {
+        long[] hits = files[fileId];
+        if (hits != null) {
+          int lineCount = hits.length;
+          while (lineCount > 0 && hits[lineCount - 1] == NOT_EXECUTABLE) {
+            lineCount--;
+          }
+          trimmed[fileId] = Arrays.copyOf(hits, lineCount);
         }
       }
+      return trimmed;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.deepHashCode(trimmed());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof LineHits))
+        return false;
+      return Arrays.deepEquals(trimmed(), ((LineHits) obj).trimmed());
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.deepToString(trimmed());
     }
-    return true;
-  }
-  @Override
-  public String toString() {
-    return String.format("%s(%s)", getClass().getSimpleName(), fileCoverages);
   }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.coverage;
+
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+/**
+ * Decodes the coverage encoded by coverage.js, adding each executed line to
+ * the {@link CoverageAccumulator} as it is read. The encoding is:
+ *
+ * <pre>
+ * coverage := '!' [file (';' file)*]
+ * file     := fileId ':' line (',' line)*
+ * line     := distance ['*' count] ['+' run]
+ * </pre>
+ *
+ * where all numbers are base 36. The distance is from the previous line of the
+ * file, the count defaults to 1, and the run is the number of consecutive
+ * lines that follow with the same count. Lines that were not executed since
+ * the previous report are left out.
+ */
+public class CoverageDeltaDecoder {
+
+  public static final char PREFIX = '!';
+
+  /** Returns true when the data is in the delta encoding. */
+  public boolean canDecode(CharSequence data) {
+    return data.length() > 0 && data.charAt(0) == PREFIX;
+  }
+
+  /** Returns the ids of the files with executed lines. */
+  public Set<Integer> decode(String browserId, CharSequence data,
+      CoverageAccumulator accumulator) {
+    Set<Integer> fileIds = Sets.newHashSet();
+    Cursor cursor = new Cursor(data);
+    cursor.expect(PREFIX);
+    if (cursor.atEnd()) {
+      return fileIds;
+    }
+    do {
+      int fileId = cursor.readNumber();
+      fileIds.add(fileId);
+      cursor.expect(':');
+      int lineNumber = 0;
+      do {
+        lineNumber += cursor.readNumber();
+        int count = cursor.consume('*') ? cursor.readNumber() : 1;
+        int run = cursor.consume('+') ? cursor.readNumber() : 0;
+        for (int last = lineNumber + run; lineNumber <= last; lineNumber++) {
+          accumulator.add(browserId, fileId, lineNumber, count);
+        }
+        lineNumber--;
+      } while (cursor.consume(','));
+    } while (cursor.consume(';'));
+    if (!cursor.atEnd()) {
+      throw cursor.unrecognized("end of coverage");
+    }
+    return fileIds;
+  }
+
+  /** A position in the encoded data. */
+  private static class Cursor {
+    private final CharSequence data;
+    private int position = 0;
+
+    Cursor(CharSequence data) {
+      this.data = data;
+    }
+
+    boolean atEnd() {
+      return position == data.length();
+    }
+
+    boolean consume(char expected) {
+      if (!atEnd() && data.charAt(position) == expected) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    void expect(char expected) {
+      if (!consume(expected)) {
+        throw unrecognized(String.valueOf(expected));
+      }
+    }
+
+    int readNumber() {
+      boolean negative = consume('-');
+      int start = position;
+      int number = 0;
+      while (!atEnd()) {
+        int digit = Character.digit(data.charAt(position), Character.MAX_RADIX);
+        if (digit < 0) {
+          break;
+        }
+        number = number * Character.MAX_RADIX + digit;
+        position++;
+      }
+      if (position == start) {
+        throw unrecognized("a number");
+      }
+      return negative ? -number : number;
+    }
+
+    RuntimeException unrecognized(String expected) {
+      return new RuntimeException(String.format(
+          "unrecognized format, expected %s at %s in %s", expected, position, data));
+    }
+  }
+}
@@ -18,7 +18,7 @@ package com.google.jstestdriver.coverage;
 import com.google.inject.Inject;
 import com.google.jstestdriver.FileInfo;
 import com.google.jstestdriver.Time;
-import com.google.jstestdriver.hooks.FileLoadPostProcessor;
+import com.google.jstestdriver.hooks.OrderedFileLoadPostProcessor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,41 +31,73 @@ import java.util.Set;
  * @author corysmith@google.com (Cory Smith)
  * 
  */
-public class CoverageInstrumentingProcessor implements FileLoadPostProcessor {
+public class CoverageInstrumentingProcessor implements OrderedFileLoadPostProcessor {
   private static final Logger LOGGER =
       LoggerFactory.getLogger(CoverageInstrumentingProcessor.class);
   private final Instrumentor decorator;
   private final Set<String> excludes;
   private final CoverageAccumulator accumulator;
   private final Time time;
+  private final InstrumentedCodeCache cache;
+  private final TestImpactIndex testImpactIndex;
+  private final CoverageNameMapper mapper;
 
   @Inject
   public CoverageInstrumentingProcessor(Instrumentor decorator,
                                         @Coverage("coverageExcludes") Set<String> excludes,
                                         CoverageAccumulator accumulator,
-                                        Time time) {
+                                        Time time,
+                                        InstrumentedCodeCache cache,
+                                        TestImpactIndex testImpactIndex,
+                                        CoverageNameMapper mapper) {
     this.decorator = decorator;
     this.excludes = excludes;
     this.accumulator = accumulator;
     this.time = time;
+    this.cache = cache;
+    this.testImpactIndex = testImpactIndex;
+    this.mapper = mapper;
+  }
+
+  /**
+   * Maps the file ids in the order of the files, as they are instrumented in
+   * whatever order they finish loading, so the ids are the same on every run.
+   */
+  public void prepare(FileInfo file) {
+    if (shouldInstrument(file) && !excludes.contains(file.getFilePath())) {
+      mapper.map(file.getFilePath());
+    }
   }
 
   public FileInfo process(FileInfo file) {
-    if (file.getFilePath().contains("LCOV.js") ||
-        !file.canLoad() ||
-        file.isServeOnly() ||
-        excludes.contains(file.getFilePath()) ||
+    if (!shouldInstrument(file)) {
+      return file;
+    }
+    testImpactIndex.observe(file);
+    if (excludes.contains(file.getFilePath()) ||
         file.getData().trim().isEmpty()) {
       return file;
     }
     long start = System.currentTimeMillis();
-    InstrumentedCode decorated = decorator.instrument(new Code(file.getFilePath(),
-                                                      file.getData()));
-    LOGGER.debug(String.format("Instrumented %s in %ss",
-        file.getFilePath(),
-        (System.currentTimeMillis() - start)/1000.0
-    ));
+    Code code = new Code(file.getFilePath(), file.getData());
+    InstrumentedCode decorated = cache.get(code);
+    if (decorated == null) {
+      decorated = decorator.instrument(code);
+      cache.put(code, decorated);
+      LOGGER.debug(String.format("Instrumented %s in %ss",
+          file.getFilePath(),
+          (System.currentTimeMillis() - start)/1000.0
+      ));
+    } else {
+      LOGGER.debug("Reused cached instrumentation of {}", file.getFilePath());
+    }
     decorated.writeInitialLines(accumulator);
     return file.load(decorated.getInstrumentedCode(), time.now().getMillis());
   }
+
+  private boolean shouldInstrument(FileInfo file) {
+    return !file.getFilePath().contains("LCOV.js")
+        && file.canLoad()
+        && !file.isServeOnly();
+  }
 }
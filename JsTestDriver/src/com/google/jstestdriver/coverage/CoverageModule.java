@@ -28,6 +28,7 @@ import com.google.jstestdriver.guice.BrowserActionProvider;
 import com.google.jstestdriver.hooks.ActionListProcessor;
 import com.google.jstestdriver.hooks.FileLoadPostProcessor;
 import com.google.jstestdriver.hooks.ResourcePreProcessor;
+import com.google.jstestdriver.hooks.TestsPreProcessor;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -60,6 +61,8 @@ public class CoverageModule extends AbstractModule {
         .addBinding().to(CoverageResponseStreamFactory.class);
     Multibinder.newSetBinder(binder(), ActionListProcessor.class)
         .addBinding().to(CoverageActionDecorator.class);
+    Multibinder.newSetBinder(binder(), TestsPreProcessor.class)
+        .addBinding().to(ImpactedTestsPreProcessor.class);
     bind(new TypeLiteral<Set<String>>(){})
       .annotatedWith(new CoverageImpl("coverageExcludes")).toInstance(Sets.newHashSet(excludes));
     // TODO(corysmith): Remove this when there is a correct separation of phases.
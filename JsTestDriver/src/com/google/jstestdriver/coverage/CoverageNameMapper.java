@@ -31,13 +31,21 @@ public class CoverageNameMapper {
     new ConcurrentHashMap<String, Integer>();
 
   public Integer map(String filePath) {
-    if (nameToIdMap.containsKey(filePath)) {
-      return nameToIdMap.get(filePath);
+    Integer existing = nameToIdMap.get(filePath);
+    if (existing != null) {
+      return existing;
+    }
+    // files are instrumented in parallel, so only the first mapping of a path wins.
+    synchronized (nameToIdMap) {
+      existing = nameToIdMap.get(filePath);
+      if (existing != null) {
+        return existing;
+      }
+      Integer pathId = id.getAndIncrement();
+      idToNameMap.put(pathId, filePath);
+      nameToIdMap.put(filePath, pathId);
+      return pathId;
     }
-    Integer pathId = id.getAndIncrement();
-    idToNameMap.put(pathId, filePath);
-    nameToIdMap.put(filePath, pathId);
-    return pathId;
   }
 
   public String unmap(Integer fileId) {
@@ -35,13 +35,17 @@ public class CoverageReporterAction implements Action {
 
   private final TestResultHolder holder;
 
+  private final TestImpactIndex testImpactIndex;
+
   @Inject
   public CoverageReporterAction(CoverageAccumulator accumulator,
       CoverageWriter writer,
-      TestResultHolder holder) {
+      TestResultHolder holder,
+      TestImpactIndex testImpactIndex) {
     this.accumulator = accumulator;
     this.writer = writer;
     this.holder = holder;
+    this.testImpactIndex = testImpactIndex;
   }
 
   public RunData run(RunData runData) {
@@ -49,6 +53,7 @@ public class CoverageReporterAction implements Action {
       logger.debug("Writing coverage to {}", writer);
       accumulator.write(writer);
       writer.flush();
+      testImpactIndex.save();
     }
     return runData;
   }
@@ -30,12 +30,15 @@ public class CoverageResponseStreamFactory implements ResponseStreamFactory {
   static final ResponseStream NULL_RESPONSE_STREAM = new NullResponseStream();
   private final CoverageAccumulator coverageAccumulator;
   private final TestResultGenerator testResultGenerator;
+  private final TestImpactIndex testImpactIndex;
 
   @Inject
   public CoverageResponseStreamFactory(CoverageAccumulator coverageAccumulator,
-                                       TestResultGenerator testResultGenerator) {
+                                       TestResultGenerator testResultGenerator,
+                                       TestImpactIndex testImpactIndex) {
     this.coverageAccumulator = coverageAccumulator;
     this.testResultGenerator = testResultGenerator;
+    this.testImpactIndex = testImpactIndex;
   }
 
   public ResponseStream getDryRunActionResponseStream() {
@@ -52,7 +55,7 @@ public class CoverageResponseStreamFactory implements ResponseStreamFactory {
 
   public ResponseStream getRunTestsActionResponseStream(String browserId) {
     return new CoverageTestResponseStream(browserId, coverageAccumulator,
-        testResultGenerator);
+        testResultGenerator, testImpactIndex);
   }
 
   /**
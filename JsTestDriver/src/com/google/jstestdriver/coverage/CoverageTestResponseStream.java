@@ -15,6 +15,7 @@
  */
 package com.google.jstestdriver.coverage;
 
+import com.google.common.collect.Sets;
 import com.google.jstestdriver.Response;
 import com.google.jstestdriver.Response.ResponseType;
 import com.google.jstestdriver.ResponseStream;
@@ -25,6 +26,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Set;
 
 /**
  * @author corysmith
@@ -36,13 +38,16 @@ public class CoverageTestResponseStream implements ResponseStream {
   private final String browserId;
   private final CoverageAccumulator accumulator;
   private final TestResultGenerator generator;
+  private final TestImpactIndex index;
   private final FileCoverageDeserializer deserializer = new FileCoverageDeserializer();
+  private final CoverageDeltaDecoder decoder = new CoverageDeltaDecoder();
 
   public CoverageTestResponseStream(String browserId, CoverageAccumulator coverageReporter,
-      TestResultGenerator generator) {
+      TestResultGenerator generator, TestImpactIndex index) {
     this.browserId = browserId;
     this.accumulator = coverageReporter;
     this.generator = generator;
+    this.index = index;
   }
 
   public void finish() {
@@ -57,10 +62,18 @@ public class CoverageTestResponseStream implements ResponseStream {
       for (TestResult testResult : testResults) {
         final String coveredLines =
             testResult.getData().get(COVERAGE_DATA_KEY);
-        if (coveredLines != null) {
+        if (coveredLines != null && decoder.canDecode(coveredLines)) {
+          Set<Integer> fileIds = decoder.decode(browserId, coveredLines, accumulator);
+          index.record(testResult.getTestCaseName(), fileIds);
+        } else if (coveredLines != null) {
           InputStream inputStream = new ByteArrayInputStream(coveredLines.getBytes("UTF-8"));
           Collection<FileCoverage> lines = deserializer.deserializeCoverages(inputStream);
           accumulator.add(browserId, lines);
+          Set<Integer> fileIds = Sets.newHashSet();
+          for (FileCoverage fileCoverage : lines) {
+            fileIds.add(fileCoverage.getFileId());
+          }
+          index.record(testResult.getTestCaseName(), fileIds);
         }
       }
     } catch (RuntimeException e) {
@@ -36,6 +36,14 @@ public class FileCoverage implements Comparable<FileCoverage>{
     this.fileId = fileId;
     this.lines = lines;
   }
+
+  public Integer getFileId() {
+    return fileId;
+  }
+
+  public List<CoveredLine> getLines() {
+    return lines;
+  }
   
   public FileCoverage aggegrate(FileCoverage other) {
     if (fileId.equals(other.fileId)) {
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.coverage;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.jstestdriver.hooks.TestsPreProcessor;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Leaves out the test cases the {@link TestImpactIndex} finds unaffected by
+ * the changed files, by adding an expression that excludes them. The tests
+ * that were asked for are otherwise kept, and test cases the index has not
+ * seen still run.
+ */
+public class ImpactedTestsPreProcessor implements TestsPreProcessor {
+
+  private final TestImpactIndex index;
+
+  @Inject
+  public ImpactedTestsPreProcessor(TestImpactIndex index) {
+    this.index = index;
+  }
+
+  @Override
+  public List<String> process(String browserId, Iterator<String> tests) {
+    List<String> processed = Lists.newArrayList(tests);
+    if (!index.isEnabled() || processed.isEmpty()) {
+      return processed;
+    }
+    Set<String> unaffected = index.getUnaffectedTestCases();
+    if (!unaffected.isEmpty()) {
+      processed.add(exclude(unaffected));
+    }
+    return processed;
+  }
+
+  /** Returns a negative expression matching the ids, TestCase#testMethod, of the test cases. */
+  static String exclude(Set<String> testCases) {
+    StringBuilder expression = new StringBuilder("-^(?:");
+    String separator = "";
+    for (String testCase : testCases) {
+      expression.append(separator);
+      for (int i = 0; i < testCase.length(); i++) {
+        char c = testCase.charAt(i);
+        if ("\\^$.|?*+()[]{}".indexOf(c) != -1) {
+          expression.append('\\');
+        }
+        expression.append(c);
+      }
+      separator = "|";
+    }
+    return expression.append(")#").toString();
+  }
+}
@@ -15,8 +15,6 @@
  */
 package com.google.jstestdriver.coverage;
 
-import com.google.common.collect.Lists;
-
 import java.util.List;
 
 public class InstrumentedCode {
@@ -44,12 +42,38 @@ public class InstrumentedCode {
     return path;
   }
 
-  public void writeInitialLines(CoverageAccumulator accumulator) {
-    List<CoveredLine> initialLines = Lists.newLinkedList();
-    for (Integer lineNumber : executableLines) {
-      initialLines.add(new CoveredLine(lineNumber, 0));
+  public Integer getFileId() {
+    return fileId;
+  }
+
+  public List<Integer> getExecutableLines() {
+    return executableLines;
+  }
+
+  /**
+   * Returns the same instrumentation for a file mapped to a different id.
+   * The id is part of the coverage variable emitted by the ES3Instrument
+   * grammar, so the references to it are rewritten.
+   */
+  public InstrumentedCode withFileId(Integer newFileId, String newPath) {
+    if (fileId.equals(newFileId)) {
+      return new InstrumentedCode(fileId, newPath, executableLines, instrumentedCode);
     }
-    accumulator.add("<initial lines>",
-        Lists.newArrayList(new FileCoverage(fileId, initialLines)));
+    String oldVariable = "LCOV_" + variableHash(fileId);
+    String newVariable = "LCOV_" + variableHash(newFileId);
+    String code = instrumentedCode
+        .replace(oldVariable + "=LCOV.initNoop(" + fileId + ",",
+            newVariable + "=LCOV.initNoop(" + newFileId + ",")
+        .replace(oldVariable + "[", newVariable + "[");
+    return new InstrumentedCode(newFileId, newPath, executableLines, code);
+  }
+
+  /** Mirrors the hash of the source name computed by the ES3Instrument grammar. */
+  private static String variableHash(Integer fileId) {
+    return Integer.toString(Math.abs(String.valueOf(fileId).hashCode()), Character.MAX_RADIX);
+  }
+
+  public void writeInitialLines(CoverageAccumulator accumulator) {
+    accumulator.addExecutableLines(fileId, executableLines);
   }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.coverage;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.jstestdriver.config.ConfigurationSource;
+import com.google.jstestdriver.util.Digests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A cache of {@link InstrumentedCode}, addressed by a digest of the source and
+ * the {@link CodeInstrumentor#VERSION}, persisted between runs in a directory
+ * next to the configuration. When the directory grows beyond its limit, the
+ * least recently used entries are removed.
+ */
+@Singleton
+public class InstrumentedCodeCache {
+  private static final Logger logger = LoggerFactory.getLogger(InstrumentedCodeCache.class);
+
+  /** Default limit of the total size of the cached entries. */
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+  private static final String SUFFIX = ".json";
+
+  private final Gson gson = new Gson();
+  private final File directory;
+  private final long maxBytes;
+  private final CoverageNameMapper mapper;
+  private long size = -1;
+
+  @Inject
+  public InstrumentedCodeCache(@Named("config") ConfigurationSource config,
+      CoverageNameMapper mapper) {
+    this(new File(config.getParentFile(), String.format(".%s-instrumented", config.getName())),
+        DEFAULT_MAX_BYTES, mapper);
+  }
+
+  public InstrumentedCodeCache(File directory, long maxBytes, CoverageNameMapper mapper) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.mapper = mapper;
+  }
+
+  /** Returns the cached instrumentation of the code, or null when there is none. */
+  public InstrumentedCode get(Code code) {
+    File entry = entryFor(code);
+    if (!entry.exists()) {
+      return null;
+    }
+    Reader reader = null;
+    try {
+      reader = new InputStreamReader(new FileInputStream(entry), "UTF-8");
+      Entry cached = gson.fromJson(reader, Entry.class);
+      if (cached == null || cached.code == null || cached.lines == null) {
+        return null;
+      }
+      entry.setLastModified(System.currentTimeMillis());
+      return new InstrumentedCode(cached.fileId, code.getFilePath(), cached.lines, cached.code)
+          .withFileId(mapper.map(code.getFilePath()), code.getFilePath());
+    } catch (IOException e) {
+      logger.warn("Unable to read instrumented code from " + entry, e);
+    } catch (JsonParseException e) {
+      logger.warn("Ignoring corrupt instrumented code in " + entry, e);
+    } finally {
+      close(reader, entry);
+    }
+    return null;
+  }
+
+  /** Stores the instrumentation of the code for later runs. */
+  public void put(Code code, InstrumentedCode instrumented) {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      logger.warn("Unable to create the instrumented code cache {}", directory);
+      return;
+    }
+    File entry = entryFor(code);
+    // written aside and renamed, so a concurrent run never reads a partial entry.
+    File temp = new File(directory, entry.getName() + "." + Thread.currentThread().getId());
+    Writer writer = null;
+    try {
+      writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+      gson.toJson(new Entry(instrumented), writer);
+      writer.close();
+      writer = null;
+      if (!temp.renameTo(entry)) {
+        entry.delete();
+        if (!temp.renameTo(entry)) {
+          temp.delete();
+          return;
+        }
+      }
+      added(entry.length());
+    } catch (IOException e) {
+      logger.warn("Unable to write instrumented code to " + entry, e);
+      temp.delete();
+    } finally {
+      close(writer, temp);
+    }
+  }
+
+  private synchronized void added(long bytes) {
+    if (size < 0) {
+      size = 0;
+      for (File file : entries()) {
+        size += file.length();
+      }
+    } else {
+      size += bytes;
+    }
+    if (size > maxBytes) {
+      evict();
+    }
+  }
+
+  /**
+   * Removes the least recently used entries until the cache is down to three
+   * quarters of its limit, so the directory is not scanned on every put.
+   */
+  private void evict() {
+    File[] files = entries();
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long modifiedA = a.lastModified();
+        long modifiedB = b.lastModified();
+        return modifiedA < modifiedB ? -1 : (modifiedA == modifiedB ? 0 : 1);
+      }
+    });
+    size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    for (int i = 0; i < files.length && size > maxBytes * 3 / 4; i++) {
+      long length = files[i].length();
+      if (files[i].delete()) {
+        size -= length;
+      }
+    }
+  }
+
+  private File[] entries() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return new File[0];
+    }
+    int count = 0;
+    for (File file : files) {
+      if (file.getName().endsWith(SUFFIX)) {
+        files[count++] = file;
+      }
+    }
+    return Arrays.copyOf(files, count);
+  }
+
+  private File entryFor(Code code) {
+    return new File(directory,
+        Digests.sha1Hex(CodeInstrumentor.VERSION + "\0" + code.getSourceCode()) + SUFFIX);
+  }
+
+
+  private void close(Closeable closeable, File file) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      logger.warn("Error closing " + file, e);
+    }
+  }
+
+  /** The serialized form of a cache entry. */
+  private static class Entry {
+    private Integer fileId;
+    private List<Integer> lines;
+    private String code;
+
+    @SuppressWarnings("unused")
+    Entry() {
+    }
+
+    Entry(InstrumentedCode instrumented) {
+      fileId = instrumented.getFileId();
+      lines = instrumented.getExecutableLines();
+      code = instrumented.getInstrumentedCode();
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.coverage;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.config.ConfigurationSource;
+import com.google.jstestdriver.util.Digests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The files covered by each test case, kept as a reverse index from each file
+ * to the digest of its contents and the test cases that executed it. The index
+ * is persisted between --impacted runs in a file next to the configuration,
+ * so a run can leave out the test cases that cover none of the changed files.
+ *
+ * A file counts as changed when it is loaded with contents that differ from
+ * the recorded digest. Lines executed while the files load are reported with
+ * the first test case to run, so that test case covers every file.
+ *
+ * A changed file that no recorded test case covers, such as a test file left
+ * out of the coverage, affects the recorded test cases it declares: those
+ * whose names it contains as a string literal. When it declares none, every
+ * test case runs.
+ */
+@Singleton
+public class TestImpactIndex {
+  private static final Logger logger = LoggerFactory.getLogger(TestImpactIndex.class);
+
+  private final Gson gson = new Gson();
+  private final File store;
+  private final boolean enabled;
+  private final CoverageNameMapper mapper;
+  private final ConcurrentMap<String, String> loaded = new ConcurrentHashMap<String, String>();
+  private final ConcurrentMap<String, Set<String>> declared =
+      new ConcurrentHashMap<String, Set<String>>();
+  private final ConcurrentMap<String, Set<Integer>> covered =
+      new ConcurrentHashMap<String, Set<Integer>>();
+  private Map<String, Entry> files;
+
+  @Inject
+  public TestImpactIndex(@Named("config") ConfigurationSource config,
+      @Named("impacted") boolean enabled,
+      CoverageNameMapper mapper) {
+    this(new File(config.getParentFile(), String.format(".%s-impact", config.getName())),
+        enabled, mapper);
+  }
+
+  public TestImpactIndex(File store, boolean enabled, CoverageNameMapper mapper) {
+    this.store = store;
+    this.enabled = enabled;
+    this.mapper = mapper;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Called as each file is loaded, before it is instrumented. */
+  public void observe(FileInfo file) {
+    if (!enabled) {
+      return;
+    }
+    String data = file.getData();
+    String digest = Digests.sha1Hex(data);
+    loaded.put(file.getFilePath(), digest);
+    Set<String> testCases = getDeclaredTestCases(file.getFilePath(), digest, data);
+    if (!testCases.isEmpty()) {
+      declared.put(file.getFilePath(), testCases);
+    }
+  }
+
+  /**
+   * Returns the recorded test cases named in a changed file that no recorded
+   * test case covers, or an empty set for any other file.
+   */
+  private synchronized Set<String> getDeclaredTestCases(String path, String digest, String data) {
+    Map<String, Entry> recorded = getFiles();
+    Entry entry = recorded.get(path);
+    if (entry != null && (entry.digest.equals(digest) || !entry.testCases.isEmpty())) {
+      return Collections.emptySet();
+    }
+    Set<String> testCases = Sets.newTreeSet();
+    for (Entry other : recorded.values()) {
+      for (String testCase : other.testCases) {
+        if (data.contains('"' + testCase + '"') || data.contains('\'' + testCase + '\'')) {
+          testCases.add(testCase);
+        }
+      }
+    }
+    return testCases;
+  }
+
+  /** Called from the browser threads with the files a test case executed. */
+  public void record(String testCaseName, Collection<Integer> fileIds) {
+    if (!enabled) {
+      return;
+    }
+    Set<Integer> ids = covered.get(testCaseName);
+    if (ids == null) {
+      covered.putIfAbsent(testCaseName,
+          Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>()));
+      ids = covered.get(testCaseName);
+    }
+    ids.addAll(fileIds);
+  }
+
+  /**
+   * Returns the recorded test cases that cover none of the files changed so
+   * far. Returns an empty set when every test case has to run: nothing has
+   * been recorded yet, or a changed file is neither covered by nor declares
+   * any recorded test case.
+   */
+  public synchronized Set<String> getUnaffectedTestCases() {
+    Map<String, Entry> recorded = getFiles();
+    Set<String> affected = Sets.newHashSet();
+    for (Map.Entry<String, String> file : loaded.entrySet()) {
+      Entry entry = recorded.get(file.getKey());
+      if (entry != null && entry.digest.equals(file.getValue())) {
+        continue;
+      }
+      if (entry == null || entry.testCases.isEmpty()) {
+        Set<String> testCases = declared.get(file.getKey());
+        if (testCases == null) {
+          logger.debug("{} changed, and is not covered by a recorded test case.", file.getKey());
+          return Collections.emptySet();
+        }
+        affected.addAll(testCases);
+      } else {
+        affected.addAll(entry.testCases);
+      }
+    }
+    Set<String> unaffected = Sets.newTreeSet();
+    for (Entry entry : recorded.values()) {
+      unaffected.addAll(entry.testCases);
+    }
+    unaffected.removeAll(affected);
+    return unaffected;
+  }
+
+  /**
+   * Replaces the coverage of the test cases that ran, and writes the index
+   * out for the next run. A changed file keeps its old digest until all the
+   * test cases that covered it have run again.
+   */
+  public synchronized void save() {
+    if (!enabled) {
+      return;
+    }
+    if (covered.isEmpty() && !loaded.isEmpty()) {
+      logger.warn("No coverage was recorded for --impacted, so every test will keep running."
+          + " Check that the coverage plugin instruments the loaded files.");
+    }
+    Map<String, Entry> recorded = getFiles();
+    Map<String, Entry> updated = Maps.newHashMap();
+    for (Map.Entry<String, Entry> file : recorded.entrySet()) {
+      Entry entry = new Entry(file.getValue().digest);
+      for (String testCase : file.getValue().testCases) {
+        if (!covered.containsKey(testCase)) {
+          entry.testCases.add(testCase);
+        }
+      }
+      updated.put(file.getKey(), entry);
+    }
+    for (Map.Entry<String, String> file : loaded.entrySet()) {
+      Entry previous = recorded.get(file.getKey());
+      if (previous == null) {
+        updated.put(file.getKey(), new Entry(file.getValue()));
+      } else if (covered.keySet().containsAll(previous.testCases)) {
+        updated.get(file.getKey()).digest = file.getValue();
+      }
+    }
+    for (Map.Entry<String, Set<Integer>> testCase : covered.entrySet()) {
+      for (Integer fileId : testCase.getValue()) {
+        Entry entry = updated.get(mapper.unmap(fileId));
+        if (entry != null) {
+          entry.testCases.add(testCase.getKey());
+        }
+      }
+    }
+    files = updated;
+    Writer writer = null;
+    try {
+      writer = new FileWriter(store);
+      gson.toJson(files, writer);
+    } catch (IOException e) {
+      logger.warn("Unable to write the test impact index to " + store, e);
+    } catch (JsonIOException e) {
+      logger.warn("Unable to write the test impact index to " + store, e);
+    } finally {
+      close(writer);
+    }
+  }
+
+  /** Reads the index of previous runs. A missing or corrupt store is ignored. */
+  private Map<String, Entry> getFiles() {
+    if (files != null) {
+      return files;
+    }
+    files = Maps.newHashMap();
+    if (!store.exists()) {
+      return files;
+    }
+    Reader reader = null;
+    try {
+      reader = new FileReader(store);
+      Map<String, Entry> stored =
+          gson.fromJson(reader, new TypeToken<Map<String, Entry>>() {}.getType());
+      if (stored != null) {
+        for (Map.Entry<String, Entry> file : stored.entrySet()) {
+          if (file.getValue().digest != null && file.getValue().testCases != null) {
+            files.put(file.getKey(), file.getValue());
+          }
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Unable to read the test impact index from " + store, e);
+    } catch (JsonParseException e) {
+      logger.warn("Ignoring the corrupt test impact index in " + store, e);
+    } finally {
+      close(reader);
+    }
+    return files;
+  }
+
+  private void close(Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      logger.warn("Error closing " + store, e);
+    }
+  }
+
+  /** The digest of a file and the test cases that cover it. */
+  private static class Entry {
+    private String digest;
+    private Set<String> testCases = Sets.newTreeSet();
+
+    @SuppressWarnings("unused")
+    Entry() {}
+
+    Entry(String digest) {
+      this.digest = digest;
+    }
+  }
+}
@@ -19,6 +19,7 @@
  */
 var coverage = (function() {
   var COVERAGE_DATA_KEY = 'linesCovered';
+  var DELTA_PREFIX = '!';
 
   /**
    * Represents a collection object for recording the executed lines in a given file.
@@ -48,6 +49,47 @@ var coverage = (function() {
   };
 
 
+  /**
+   * Encodes the lines executed since the last call and resets their counts.
+   * Each line is written as the base 36 distance from the previous line,
+   * followed by '*' and the count when it is not 1, followed by '+' and the
+   * number of consecutive lines that follow with the same count.
+   * @return {String} The encoded lines, or '' when no line was executed.
+   */
+  FileCoverageReport.prototype.encodeDelta = function() {
+    var buffer = [];
+    var previous = 0;
+    var runCount = 0;
+    var run = 0;
+    for (var i = 0; i < this.length; i++) {
+      var count = this[i];
+      if (!count) {
+        continue;
+      }
+      this[i] = 0;
+      if (buffer.length && i == previous + 1 && count == runCount) {
+        run++;
+        previous = i;
+        continue;
+      }
+      if (run) {
+        buffer.push('+', run.toString(36));
+        run = 0;
+      }
+      buffer.push(buffer.length ? ',' : '', (i - previous).toString(36));
+      if (count != 1) {
+        buffer.push('*', count.toString(36));
+      }
+      previous = i;
+      runCount = count;
+    }
+    if (run) {
+      buffer.push('+', run.toString(36));
+    }
+    return buffer.length ? this.fileId_.toString(36) + ':' + buffer.join('') : '';
+  };
+
+
   /**
    * Represents a reporter for the executed lines.
    * @class
@@ -99,6 +141,23 @@ var coverage = (function() {
     return new Summary(summary);
   }
 
+  /**
+   * Encodes the lines executed since the last call in every file, prefixed by
+   * DELTA_PREFIX. Lines that were not executed are left out, as the server
+   * already knows the executable lines of every file it instrumented.
+   * @return {String} The encoded coverage.
+   */
+  Reporter.prototype.encodeCoverage = function() {
+    var files = [];
+    for (var i = 0; i < this.coverages.length; i++) {
+      var encoded = this.coverages[i].encodeDelta();
+      if (encoded) {
+        files.push(encoded);
+      }
+    }
+    return DELTA_PREFIX + files.join(';');
+  };
+
   function Summary(coveredLines) {
     this.coveredLines = coveredLines;
   }
@@ -207,15 +266,15 @@ var coverage = (function() {
                                           runTest);
     
     var reporter = this.coverageReporter;
-    function summarizeCoverage() {
-      return reporter.summarizeCoverage();
+    function encodeCoverage() {
+      return reporter.encodeCoverage();
     }
 
     var testCaseRunner =
         new InstrumentedTestCaseRunner(iterator,
                                        onTestDone,
                                        onTestRunConfigurationComplete,
-                                       summarizeCoverage,
+                                       encodeCoverage,
                                        this.setTimeout);
     // replace this with a series of generic TestRunSteps: each Step just call done, which runs the next step.
     testCaseRunner.run();
@@ -263,9 +322,9 @@ var coverage = (function() {
       }, 1);
     } else {
       this.setTimeout(function(){
-        var summary = self.processCoverage();
+        var encoded = self.processCoverage();
         self.setTimeout(function() {
-          result.data[COVERAGE_DATA_KEY] = summary.toProtoBuffer();
+          result.data[COVERAGE_DATA_KEY] = encoded;
           self.setTimeout(function() {
             self.onTestDone(result);
             self.setTimeout(self.boundRun, 1);
@@ -301,6 +360,7 @@ var coverage = (function() {
     Reporter : Reporter,
     FileCoverageReport : FileCoverageReport,
     CoveredLine : CoveredLine,
-    COVERAGE_DATA_KEY : COVERAGE_DATA_KEY
+    COVERAGE_DATA_KEY : COVERAGE_DATA_KEY,
+    DELTA_PREFIX : DELTA_PREFIX
   };
 })();
@@ -33,8 +33,7 @@
   var resultsPlugin = {name : 'coverage'};
   resultsPlugin[jstestdriver.PluginRegistrar.PROCESS_TEST_RESULT] = function(testResult) {
     if (!testResult.data[coverage.COVERAGE_DATA_KEY]) {
-      testResult.data[coverage.COVERAGE_DATA_KEY] =
-          reporter.summarizeCoverage().toProtoBuffer();
+      testResult.data[coverage.COVERAGE_DATA_KEY] = reporter.encodeCoverage();
     }
   }
   jstestdriver.pluginRegistrar.register(resultsPlugin);
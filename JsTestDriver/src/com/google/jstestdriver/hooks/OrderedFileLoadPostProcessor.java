@@ -0,0 +1,32 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.hooks;
+
+import com.google.jstestdriver.FileInfo;
+
+/**
+ * A {@link FileLoadPostProcessor} that assigns something to each file, such
+ * as an id, that must not depend on the order in which files finish loading.
+ * Files are loaded and processed in parallel, so the assignment happens in
+ * {@link #prepare(FileInfo)} instead.
+ */
+public interface OrderedFileLoadPostProcessor extends FileLoadPostProcessor {
+  /**
+   * Called for every file, one at a time and in the order the files were
+   * given, before any of them is read from disk.
+   */
+  void prepare(FileInfo file);
+}
@@ -30,25 +30,76 @@ jstestdriver.StreamingService = function(url, now, post, synchPost) {
   this.activeResponses_ = {};
   this.completeFinalResponse = null;
   this.synchPost_ = synchPost;
+  this.pendingResponses_ = [];
+  this.awaitingAcknowledge_ = false;
+  this.callback_ = null;
 };
 
 
 jstestdriver.StreamingService.prototype.synchClose = function(response) {
   var data = new jstestdriver.CommandResponse(true, response);
+  var pending = this.takePendingResponses_();
+  if (pending.length) {
+    data.responses = pending;
+  }
   this.synchPost_(this.url_, data);
 };
 
 
+/**
+ * Streams a response to the server. Responses streamed while the server has
+ * not acknowledged the previous post are sent together in the next one.
+ */
 jstestdriver.StreamingService.prototype.stream = function(response, callback) {
-  this.streamResponse(response, false, callback);
+  this.pendingResponses_.push(response);
+  this.callback_ = callback;
+  if (!this.awaitingAcknowledge_) {
+    this.flush_();
+  }
+};
+
+
+/**
+ * Posts the pending responses in a single request. The last one is sent as
+ * the response, the ones before it as a list of responses.
+ * @private
+ */
+jstestdriver.StreamingService.prototype.flush_ = function() {
+  var responses = this.takePendingResponses_();
+  var last = responses.pop();
+  this.awaitingAcknowledge_ = true;
+  this.streamResponse(last, false, this.callback_, responses);
 };
 
 
+/**
+ * @return {Array.<jstestdriver.Response>} The responses that have not been
+ *     posted yet.
+ * @private
+ */
+jstestdriver.StreamingService.prototype.takePendingResponses_ = function() {
+  var pending = this.pendingResponses_;
+  this.pendingResponses_ = [];
+  return pending;
+};
+
+
+/**
+ * @param {jstestdriver.Response} response The response to post.
+ * @param {Boolean} done Indicates if this is the final response.
+ * @param {Function} callback The callback when the post is finished.
+ * @param {Array.<jstestdriver.Response>} opt_responses Responses to post
+ *     ahead of the response.
+ */
 jstestdriver.StreamingService.prototype.streamResponse = function(response,
                                                                   done,
-                                                                  callback) {
+                                                                  callback,
+                                                                  opt_responses) {
   var data = new jstestdriver.CommandResponse(done, response);
-  if (!done && response != null) {
+  if (opt_responses && opt_responses.length) {
+    data.responses = opt_responses;
+  }
+  if (!done && (response != null || data.responses)) {
     data.responseId = this.now_();
     // no ack expected after the final response, and no ack expected on no response
     this.activeResponses_[data.responseId] = data;
@@ -62,6 +113,7 @@ jstestdriver.StreamingService.prototype.streamResponse = function(response,
  * @param {Array.<string>} received A list of received ids for the currently open stream.
  */
 jstestdriver.StreamingService.prototype.streamAcknowledged = function(received) {
+  this.awaitingAcknowledge_ = false;
   for (var i = 0; received && received[i]; i++) {
     if (this.activeResponses_[received[i]]) {
       // cut down on memory goof ups....
@@ -75,13 +127,16 @@ jstestdriver.StreamingService.prototype.streamAcknowledged = function(received)
   // the server.
   if (this.completeFinalResponse) {
     this.completeFinalResponse()
+  } else if (this.pendingResponses_.length) {
+    this.flush_();
   }
 };
 
 
 /**
  * Closes the current streaming session, sending the final response after all
- * other Responses are finished.
+ * other Responses are finished. Responses that are still pending are sent
+ * along with the final response.
  * @param {!jstestdriver.Response} finalResponse The final response to send.
  * @param {!Function} callback The callback when the post is finished.
  */
@@ -95,7 +150,8 @@ jstestdriver.StreamingService.prototype.close =
     } else {
       context.completeFinalResponse = null;
       context.activeResponses_ = {};
-      context.streamResponse(finalResponse, true, callback);
+      context.awaitingAcknowledge_ = false;
+      context.streamResponse(finalResponse, true, callback, context.takePendingResponses_());
     }
   };
 
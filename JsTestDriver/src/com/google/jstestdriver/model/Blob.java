@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.model;
+
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The UTF-8 contents of a file, held in a read-only buffer that the server's
+ * BlobStore has mapped from disk, outside of the heap.
+ */
+public class Blob {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final String digest;
+  private final ByteBuffer contents;
+  private volatile SoftReference<String> decoded = new SoftReference<String>(null);
+
+  public Blob(String digest, ByteBuffer contents) {
+    this.digest = digest;
+    this.contents = contents;
+  }
+
+  /** The hex SHA-1 of the contents, which also names the blob in its store. */
+  public String getDigest() {
+    return digest;
+  }
+
+  public int getLength() {
+    return contents.capacity();
+  }
+
+  /** Returns a view of the contents, with its own position for the caller to read. */
+  public ByteBuffer getContents() {
+    return contents.duplicate();
+  }
+
+  /**
+   * Copies the contents onto the heap as a String. The String is kept until
+   * the heap runs short, so that repeated reads of a file decode it once.
+   */
+  public String decode() {
+    String data = decoded.get();
+    if (data == null) {
+      data = UTF_8.decode(getContents()).toString();
+      decoded = new SoftReference<String>(data);
+    }
+    return data;
+  }
+
+  @Override
+  public String toString() {
+    return "Blob[" + digest + ", " + getLength() + " bytes]";
+  }
+}
@@ -55,6 +55,14 @@ public class JstdTestCaseDelta {
     return plugins;
   }
 
+  /** Returns all the changed files. */
+  public List<FileInfo> getFiles() {
+    List<FileInfo> files = Lists.newArrayList(dependencies);
+    files.addAll(tests);
+    files.addAll(plugins);
+    return files;
+  }
+
   public JstdTestCaseDelta loadFiles(FileLoader fileLoader) {
     return new JstdTestCaseDelta(
         fileLoader.loadFiles(dependencies, false),
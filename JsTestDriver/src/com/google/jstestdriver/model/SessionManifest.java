@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.model;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.util.Digests;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The test cases of a session, with every distinct file listed once and the
+ * test cases referring to the files by index. Isolated test cases share most
+ * of their files, so this is far smaller than the test cases themselves.
+ *
+ * Each test case is identified by the digest of its json, which the browser
+ * file check sends in place of the test case once the manifest is uploaded.
+ */
+public class SessionManifest {
+
+  private List<FileInfo> files;
+  private List<Entry> testCases;
+
+  public SessionManifest() {}
+
+  public SessionManifest(Collection<JstdTestCase> testCases) {
+    Gson gson = new Gson();
+    Map<String, Integer> indexes = Maps.newHashMap();
+    this.files = Lists.newArrayList();
+    this.testCases = Lists.newArrayListWithCapacity(testCases.size());
+    for (JstdTestCase testCase : testCases) {
+      this.testCases.add(new Entry(testCase.getId(), digest(gson, testCase),
+          index(gson, testCase.getDependencies(), indexes),
+          index(gson, testCase.getTests(), indexes),
+          index(gson, testCase.getPlugins(), indexes)));
+    }
+  }
+
+  private int[] index(Gson gson, List<FileInfo> testCaseFiles, Map<String, Integer> indexes) {
+    int[] indices = new int[testCaseFiles.size()];
+    for (int i = 0; i < indices.length; i++) {
+      FileInfo file = testCaseFiles.get(i);
+      // FileInfo equality only covers the path, so files are keyed by their json.
+      String key = gson.toJson(file);
+      Integer index = indexes.get(key);
+      if (index == null) {
+        index = files.size();
+        indexes.put(key, index);
+        files.add(file);
+      }
+      indices[i] = index;
+    }
+    return indices;
+  }
+
+  /** Returns the test cases, by digest. */
+  public Map<String, JstdTestCase> getTestCases() {
+    Map<String, JstdTestCase> resolved = Maps.newLinkedHashMap();
+    for (Entry entry : testCases) {
+      resolved.put(entry.digest, new JstdTestCase(resolve(entry.dependencies),
+          resolve(entry.tests), resolve(entry.plugins), entry.id));
+    }
+    return resolved;
+  }
+
+  private List<FileInfo> resolve(int[] indices) {
+    List<FileInfo> resolved = Lists.newArrayListWithCapacity(indices.length);
+    for (int index : indices) {
+      resolved.add(files.get(index));
+    }
+    return resolved;
+  }
+
+  /** Returns the SHA-1 of the json of the test case. */
+  public static String digest(Gson gson, JstdTestCase testCase) {
+    return Digests.sha1Hex(gson.toJson(testCase));
+  }
+
+  /** Identifies a test case of an uploaded manifest. */
+  public static class Reference {
+    private String id;
+    private String digest;
+
+    public Reference() {}
+
+    public Reference(String id, String digest) {
+      this.id = id;
+      this.digest = digest;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getDigest() {
+      return digest;
+    }
+  }
+
+  /** A test case, with its files as indices into the manifest files. */
+  private static class Entry {
+    private String id;
+    private String digest;
+    private int[] dependencies;
+    private int[] tests;
+    private int[] plugins;
+
+    @SuppressWarnings("unused")
+    Entry() {}
+
+    Entry(String id, String digest, int[] dependencies, int[] tests, int[] plugins) {
+      this.id = id;
+      this.digest = digest;
+      this.dependencies = dependencies;
+      this.tests = tests;
+      this.plugins = plugins;
+    }
+  }
+}
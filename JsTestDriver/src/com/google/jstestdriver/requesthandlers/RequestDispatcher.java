@@ -17,7 +17,9 @@ package com.google.jstestdriver.requesthandlers;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.jstestdriver.server.ServerMetrics;
 
+import org.mortbay.jetty.RetryRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,12 +40,19 @@ class RequestDispatcher {
   private static final Logger logger =
       LoggerFactory.getLogger(RequestDispatcher.class);
 
+  /**
+   * The request attribute holding the {@link System#nanoTime()} of the first
+   * dispatch, so a resumed request is measured from when it arrived.
+   */
+  static final String DISPATCHED_AT = RequestDispatcher.class.getName() + ".dispatchedAt";
+
   private final HttpServletRequest request;
   private final HttpServletResponse response;
   private final List<RequestMatcher> matchers;
   private final Map<RequestMatcher, Provider<RequestHandler>> handlerProviders;
   private GatewayConfiguration gatewayConfiguration;
   private final UnsupportedMethodErrorSender errorSender;
+  private final ServerMetrics metrics;
 
   @Inject
   public RequestDispatcher(
@@ -52,13 +61,15 @@ class RequestDispatcher {
       List<RequestMatcher> matchers,
       Map<RequestMatcher, Provider<RequestHandler>> handlerProviders,
       GatewayConfiguration gatewayConfiguration,
-      UnsupportedMethodErrorSender errorSender) {
+      UnsupportedMethodErrorSender errorSender,
+      ServerMetrics metrics) {
     this.request = request;
     this.response = response;
     this.matchers = matchers;
     this.handlerProviders = handlerProviders;
     this.gatewayConfiguration = gatewayConfiguration;
     this.errorSender = errorSender;
+    this.metrics = metrics;
   }
 
   /**
@@ -69,6 +80,9 @@ class RequestDispatcher {
    * @throws IOException
    */
   public void dispatch() throws IOException {
+    long start = getFirstDispatch();
+    String route = ServerMetrics.UNMATCHED;
+    boolean suspended = false;
     try {
       HttpMethod method = HttpMethod.valueOf(request.getMethod());
       String uri = request.getRequestURI();
@@ -79,6 +93,7 @@ class RequestDispatcher {
           pathMatched = true;
           if (matcher.methodMatches(method)) {
             logger.trace("handling {} {}", uri, request);
+            route = matcher.getRoute();
             handlerProviders.get(matcher).get().handleIt();
             return;
           }
@@ -89,6 +104,7 @@ class RequestDispatcher {
           pathMatched = true;
           if (matcher.methodMatches(method)) {
             logger.trace("gatewaying {} {}", uri, request);
+            route = matcher.getRoute();
             gatewayConfiguration.getRequestHandler(matcher).handleIt();
             return;
           }
@@ -99,11 +115,29 @@ class RequestDispatcher {
       } else {
         response.sendError(HttpServletResponse.SC_NOT_FOUND, "Not found.");
       }
+    } catch (RetryRequest e) {
+      // a suspended long poll, which Jetty dispatches again when it resumes.
+      suspended = true;
+      throw e;
     } catch (IllegalArgumentException e) {
       logger.error("Error in request {}", e);
       errorSender.methodNotAllowed();
     } catch (Exception e) {
       logger.error("Error in request {}", e);
+    } finally {
+      if (!suspended) {
+        metrics.recordRequest(route, System.nanoTime() - start);
+      }
+    }
+  }
+
+  private long getFirstDispatch() {
+    Object dispatchedAt = request.getAttribute(DISPATCHED_AT);
+    if (dispatchedAt instanceof Long) {
+      return (Long) dispatchedAt;
     }
+    long now = System.nanoTime();
+    request.setAttribute(DISPATCHED_AT, now);
+    return now;
   }
 }
@@ -33,11 +33,13 @@ class RequestMatcher {
   private final HttpMethod method;
   private final String pattern;
   private final Kind kind;
+  private final String route;
 
   private enum Kind { PREFIX, SUFFIX, LITERAL }
 
   public RequestMatcher(HttpMethod method, String pattern) {
     this.method = method;
+    this.route = method + " " + pattern;
     if (pattern.startsWith("*")) {
       this.pattern = pattern.substring(1);
       this.kind = Kind.PREFIX;
@@ -77,6 +79,11 @@ class RequestMatcher {
     }
   }
 
+  /** @return the method and pattern this matcher was created with, e.g. "GET /cmd" */
+  public String getRoute() {
+    return route;
+  }
+
   public String getPrefix() {
     return kind == Kind.PREFIX ? "" : pattern;
   }
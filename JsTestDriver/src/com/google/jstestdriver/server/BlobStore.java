@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.jstestdriver.model.Blob;
+import com.google.jstestdriver.util.Digests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps file contents in a directory on local disk, one file per distinct
+ * contents named by its digest, and maps them into memory read-only. The
+ * mapped pages belong to the operating system's page cache rather than the
+ * heap, so large uploads neither grow the heap nor lengthen collections.
+ *
+ * Blobs are never rewritten: contents already on disk, including those left
+ * by an earlier server in the same directory, are mapped again as they are.
+ */
+public class BlobStore {
+  private static final Logger logger = LoggerFactory.getLogger(BlobStore.class);
+
+  private final File directory;
+  private final ConcurrentMap<String, Blob> blobs = new ConcurrentHashMap<String, Blob>();
+
+  public BlobStore(File directory) {
+    this.directory = directory;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /** Stores the contents as UTF-8, returning the blob for them. */
+  public Blob put(String contents) throws IOException {
+    try {
+      return put(contents.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Stores the bytes, unless a blob with the same digest exists, and returns the blob. */
+  public Blob put(byte[] bytes) throws IOException {
+    String digest = Digests.sha1Hex(bytes);
+    Blob blob = blobs.get(digest);
+    if (blob != null) {
+      return blob;
+    }
+    File file = new File(directory, digest);
+    if (!file.isFile() || file.length() != bytes.length) {
+      write(file, bytes);
+    }
+    blob = map(file, digest);
+    Blob existing = blobs.putIfAbsent(digest, blob);
+    return existing != null ? existing : blob;
+  }
+
+  /** Returns the blob with the given digest, or null if it has not been stored. */
+  public Blob get(String digest) {
+    return blobs.get(digest);
+  }
+
+  /**
+   * Forgets the blob and deletes its file. Buffers already handed out stay
+   * readable until they are collected.
+   */
+  public void remove(String digest) {
+    if (blobs.remove(digest) != null) {
+      File file = new File(directory, digest);
+      if (!file.delete()) {
+        logger.debug("unable to delete {}", file);
+      }
+    }
+  }
+
+  /**
+   * Writes to a temporary file first, so a blob is never mapped while it is
+   * partly written.
+   */
+  private void write(File file, byte[] bytes) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+    File temp = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      FileOutputStream out = new FileOutputStream(temp);
+      try {
+        out.write(bytes);
+      } finally {
+        out.close();
+      }
+      if (!temp.renameTo(file) && !(file.isFile() && file.length() == bytes.length)) {
+        throw new IOException("Unable to move " + temp + " to " + file);
+      }
+      logger.debug("stored {} bytes in {}", bytes.length, file);
+    } finally {
+      temp.delete();
+    }
+  }
+
+  /** The mapping remains valid after the file is closed. */
+  private Blob map(File file, String digest) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      return new Blob(digest, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      raf.close();
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.model.Blob;
+import com.google.jstestdriver.util.Digests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The contents of the files in a {@link JstdTestCaseStore}, kept once per
+ * distinct contents however many paths they are stored under. Projects that
+ * include the same library from different paths share one copy of it.
+ *
+ * Each entry counts the paths holding it, and is dropped, with its blobs,
+ * when the last of them is removed or replaced. Updates must be serialized by
+ * the caller; lookups may run alongside them.
+ */
+class ContentPool {
+  private static final Logger logger = LoggerFactory.getLogger(ContentPool.class);
+
+  private final BlobStore blobStore;
+  private final ConcurrentMap<String, Entry> byDigest = new ConcurrentHashMap<String, Entry>();
+  private final ConcurrentMap<String, Entry> byPath = new ConcurrentHashMap<String, Entry>();
+  private volatile long storedBytes;
+  private volatile long referencedBytes;
+
+  /** @param blobStore The store to hold the contents, or null to keep them on the heap. */
+  ContentPool(BlobStore blobStore) {
+    this.blobStore = blobStore;
+  }
+
+  /**
+   * Stores the file under the path, releasing whatever the path held before.
+   * Returns the file with its contents replaced by the shared copy, or the
+   * file itself when it has no contents.
+   */
+  FileInfo put(String path, FileInfo file) {
+    if (!file.isLoaded()) {
+      remove(path);
+      return file;
+    }
+    Entry entry = byPath.get(path);
+    if (entry == null || !entry.holds(file)) {
+      byte[] bytes = null;
+      String digest;
+      if (file.getBlob() != null) {
+        digest = file.getBlob().getDigest();
+      } else {
+        bytes = encode(file.getData());
+        digest = Digests.sha1Hex(bytes);
+      }
+      entry = byDigest.get(digest);
+      if (entry == null) {
+        entry = new Entry(digest, spill(file, bytes));
+        byDigest.put(digest, entry);
+        storedBytes += entry.bytes;
+      } else {
+        logger.debug("sharing the contents of {} with {}", path, entry.digest);
+      }
+    }
+    entry.references++;
+    referencedBytes += entry.bytes;
+    // the new contents are referenced first, so storing the same contents again keeps them.
+    release(byPath.put(path, entry));
+    return entry.share(file);
+  }
+
+  /** Releases the contents held under the path, dropping them if no other path holds them. */
+  void remove(String path) {
+    release(byPath.remove(path));
+  }
+
+  private void release(Entry entry) {
+    if (entry == null) {
+      return;
+    }
+    referencedBytes -= entry.bytes;
+    if (--entry.references == 0) {
+      byDigest.remove(entry.digest);
+      storedBytes -= entry.bytes;
+      if (blobStore != null) {
+        if (entry.blob != null) {
+          blobStore.remove(entry.digest);
+        }
+        EncodedFile encoded = entry.encoded;
+        if (encoded != null && encoded.getGzippedBlob() != null) {
+          blobStore.remove(encoded.getGzippedBlob().getDigest());
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the encoding of a stored file, sharing the encoded bytes with the
+   * other paths holding the same contents.
+   */
+  EncodedFile encode(String path, FileInfo file) {
+    Entry entry = byPath.get(path);
+    if (entry == null || !entry.holds(file)) {
+      // unloaded, or replaced since the file was read.
+      return new EncodedFile(file, blobStore);
+    }
+    EncodedFile encoded = entry.encoded;
+    if (encoded == null) {
+      encoded = new EncodedFile(file, blobStore);
+      entry.encoded = encoded;
+      return encoded;
+    }
+    return encoded.withSource(file);
+  }
+
+  /** The number of distinct contents. */
+  int size() {
+    return byDigest.size();
+  }
+
+  /** The bytes of the distinct contents. */
+  long getStoredBytes() {
+    return storedBytes;
+  }
+
+  /** The bytes the contents would take if every path held its own copy. */
+  long getReferencedBytes() {
+    return referencedBytes;
+  }
+
+  private FileInfo spill(FileInfo file, byte[] bytes) {
+    if (blobStore == null || bytes == null) {
+      return file;
+    }
+    try {
+      return file.withBlob(blobStore.put(bytes));
+    } catch (IOException e) {
+      logger.warn("Keeping " + file.getDisplayPath() + " on the heap", e);
+      return file;
+    }
+  }
+
+  private static byte[] encode(String data) {
+    try {
+      return data.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** One distinct contents, held either as a String or as a blob. */
+  private static class Entry {
+    final String digest;
+    final String data;
+    final Blob blob;
+    /**
+     * Heap contents are counted as two bytes a char, as they are held; blobs
+     * by their length.
+     */
+    final long bytes;
+    int references;
+    volatile EncodedFile encoded;
+
+    Entry(String digest, FileInfo contents) {
+      this.digest = digest;
+      this.blob = contents.getBlob();
+      this.data = blob == null ? contents.getData() : null;
+      this.bytes = blob == null ? 2L * data.length() : blob.getLength();
+    }
+
+    FileInfo share(FileInfo file) {
+      if (blob != null) {
+        return file.getBlob() == blob ? file : file.withBlob(blob);
+      }
+      return file.getData() == data ? file : file.load(data, file.getTimestamp());
+    }
+
+    boolean holds(FileInfo file) {
+      return blob != null ? file.getBlob() == blob : file.getBlob() == null
+          && file.isLoaded() && file.getData() == data;
+    }
+  }
+}
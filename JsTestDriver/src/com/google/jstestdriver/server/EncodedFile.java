@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.model.Blob;
+import com.google.jstestdriver.util.Digests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The contents of a stored file encoded as UTF-8 once, rather than on every
+ * request, with an ETag of the digest of the encoded contents. The gzipped
+ * contents are computed on the first request that accepts them, and have an
+ * ETag of their own.
+ *
+ * When the file is held in a {@link Blob} the contents are the mapped blob
+ * itself, and the gzipped contents are stored as a blob too.
+ */
+public class EncodedFile {
+  private static final Logger logger = LoggerFactory.getLogger(EncodedFile.class);
+
+  /** Files smaller than this are not worth compressing. */
+  static final int MIN_GZIP_LENGTH = 1024;
+
+  private final FileInfo source;
+  private final Contents contents;
+
+  public EncodedFile(FileInfo source) {
+    this(source, (BlobStore) null);
+  }
+
+  /**
+   * @param blobStore The store for the gzipped contents, or null to keep them
+   *     on the heap.
+   */
+  public EncodedFile(FileInfo source, BlobStore blobStore) {
+    this(source, new Contents(source, blobStore));
+  }
+
+  private EncodedFile(FileInfo source, Contents contents) {
+    this.source = source;
+    this.contents = contents;
+  }
+
+  /**
+   * Returns the encoding for another file with the same contents, sharing the
+   * encoded and gzipped bytes.
+   */
+  public EncodedFile withSource(FileInfo source) {
+    return new EncodedFile(source, contents);
+  }
+
+  /** The stored file these contents were encoded from. */
+  public FileInfo getSource() {
+    return source;
+  }
+
+  /**
+   * A strong validator, quoted for use as an ETag header. The gzipped
+   * contents are a different representation, so their tag differs.
+   */
+  public String getETag(boolean gzip) {
+    return gzip ? contents.gzippedETag : contents.eTag;
+  }
+
+  /** The modification time of the source file, or -1 when unknown. */
+  public long getLastModified() {
+    return source.getTimestamp() > 0 ? source.getTimestamp() : -1;
+  }
+
+  public boolean canGzip() {
+    return contents.bytes.capacity() >= MIN_GZIP_LENGTH;
+  }
+
+  public int getLength(boolean gzip) {
+    return getContents(gzip).remaining();
+  }
+
+  /**
+   * Returns a view of the contents, or of the gzipped contents, for the caller
+   * to read. The view is direct when the contents are mapped from a blob.
+   */
+  public ByteBuffer getContents(boolean gzip) {
+    return (gzip ? contents.getGzipped() : contents.bytes).duplicate();
+  }
+
+  public void writeTo(OutputStream out, boolean gzip) throws IOException {
+    write(getContents(gzip), out);
+  }
+
+  /** The blob holding the gzipped contents, or null if they are not in a blob. */
+  Blob getGzippedBlob() {
+    return contents.gzippedBlob;
+  }
+
+  private static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+    if (buffer.hasArray()) {
+      out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    } else {
+      Channels.newChannel(out).write(buffer);
+    }
+  }
+
+  /** The encoded bytes, shared by the files with the same contents. */
+  private static class Contents {
+    private final String displayPath;
+    private final BlobStore blobStore;
+    private final ByteBuffer bytes;
+    private final String eTag;
+    private final String gzippedETag;
+    private volatile ByteBuffer gzipped;
+    private volatile Blob gzippedBlob;
+
+    Contents(FileInfo source, BlobStore blobStore) {
+      this.displayPath = source.getDisplayPath();
+      Blob blob = source.getBlob();
+      String digest;
+      if (blob != null) {
+        this.blobStore = blobStore;
+        this.bytes = blob.getContents();
+        digest = blob.getDigest();
+      } else {
+        this.blobStore = null;
+        byte[] encoded;
+        try {
+          encoded = source.getData().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+          throw new RuntimeException(e);
+        }
+        this.bytes = ByteBuffer.wrap(encoded);
+        digest = Digests.sha1Hex(encoded);
+      }
+      this.eTag = "\"" + digest + "\"";
+      this.gzippedETag = "\"" + digest + "-gz\"";
+    }
+
+    ByteBuffer getGzipped() {
+      ByteBuffer compressed = gzipped;
+      if (compressed == null) {
+        try {
+          ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.capacity() / 3);
+          GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+          write(bytes.duplicate(), gzip);
+          gzip.close();
+          compressed = spill(buffer.toByteArray());
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        gzipped = compressed;
+      }
+      return compressed;
+    }
+
+    private ByteBuffer spill(byte[] compressed) {
+      if (blobStore != null) {
+        try {
+          Blob blob = blobStore.put(compressed);
+          gzippedBlob = blob;
+          return blob.getContents();
+        } catch (IOException e) {
+          logger.warn("Keeping the gzipped " + displayPath + " on the heap", e);
+        }
+      }
+      return ByteBuffer.wrap(compressed);
+    }
+  }
+}
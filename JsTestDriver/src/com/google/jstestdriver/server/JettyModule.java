@@ -20,8 +20,11 @@ import java.util.Random;
 
 import javax.servlet.Servlet;
 
+import org.mortbay.jetty.AbstractConnector;
+import org.mortbay.jetty.Connector;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.bio.SocketConnector;
+import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.mortbay.jetty.security.SslSocketConnector;
 import org.mortbay.jetty.servlet.Context;
 import org.mortbay.jetty.servlet.HashSessionIdManager;
@@ -49,11 +52,17 @@ public class JettyModule extends AbstractModule {
   private final int port;
   private final int sslPort;
   private final HandlerPathPrefix handlerPrefix;
+  private final boolean nio;
 
-  public JettyModule(int port, int sslPort, HandlerPathPrefix handlerPrefix) {
+  /**
+   * @param nio Whether to serve http with a non-blocking connector, which
+   *     suspends long polls instead of holding a thread for each.
+   */
+  public JettyModule(int port, int sslPort, HandlerPathPrefix handlerPrefix, boolean nio) {
     this.port = port;
     this.sslPort = sslPort;
     this.handlerPrefix = handlerPrefix;
+    this.nio = nio;
   }
 
   @Override
@@ -76,8 +85,8 @@ public class JettyModule extends AbstractModule {
 
   @Provides
   @Singleton
-  SocketConnector provideSocketConnector(@Port Integer port) {
-    SocketConnector connector = new SocketConnector();
+  Connector provideConnector(@Port Integer port) {
+    AbstractConnector connector = nio ? new SelectChannelConnector() : new SocketConnector();
     connector.setPort(port);
     return connector;
   }
@@ -90,7 +99,7 @@ public class JettyModule extends AbstractModule {
 
   @Provides
   @Singleton
-  Server provideJettyServer(SocketConnector connector, SslSocketConnector sslConnector,
+  Server provideJettyServer(Connector connector, SslSocketConnector sslConnector,
       @MaxFormContentSize Integer maxFormContentSize, ServletHolder servletHolder) {
     Server server = new Server();
     server.setGracefulShutdown(1);
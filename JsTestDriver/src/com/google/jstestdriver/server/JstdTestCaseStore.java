@@ -18,9 +18,12 @@ package com.google.jstestdriver.server;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Singleton;
 import com.google.jstestdriver.FileInfo;
 import com.google.jstestdriver.FilesCache;
+import com.google.jstestdriver.Time;
+import com.google.jstestdriver.TimeImpl;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.model.JstdTestCaseDelta;
 
@@ -28,8 +31,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -44,9 +50,61 @@ public class JstdTestCaseStore {
   private static final Logger logger = LoggerFactory.getLogger(JstdTestCaseStore.class);
   private final ConcurrentMap<String, JstdTestCase> cases =
       new ConcurrentHashMap<String, JstdTestCase>();
-  private final FilesCache files = new FilesCache(Maps.<String, FileInfo>newHashMap());
+  /**
+   * Test cases as the client sent them in a manifest, by digest. Only the
+   * latest version of each test case is kept, and writers hold updateLock.
+   */
+  private final ConcurrentMap<String, JstdTestCase> manifestCases =
+      new ConcurrentHashMap<String, JstdTestCase>();
+  /** The digest of the latest manifest version of each test case, guarded by updateLock. */
+  private final Map<String, String> manifestDigests = Maps.newHashMap();
+  /**
+   * The current version of each file, by display path. FileInfos are not
+   * modified once stored, so reads go straight to the map without locking,
+   * and only the writers, which compare before replacing, hold updateLock.
+   */
+  private final ConcurrentMap<String, FileInfo> files = new ConcurrentHashMap<String, FileInfo>();
+  /** The last stored file without a display path, which the map can't key. */
+  private volatile FileInfo fileWithoutDisplayPath;
+  private final Object updateLock = new Object();
+  /** The encoded contents of files that have been served, by display path. */
+  private final ConcurrentMap<String, EncodedFile> encodedFiles =
+      new ConcurrentHashMap<String, EncodedFile>();
+  /** The contents of the stored files, shared by the paths with the same contents. */
+  private final ContentPool contents;
+  /** The display paths of each test case, guarded by updateLock. */
+  private final Map<String, Set<String>> casePaths = Maps.newHashMap();
+  /** The number of test cases referring to each display path, guarded by updateLock. */
+  private final Map<String, Integer> pathReferences = Maps.newHashMap();
+  /** When each test case was last added or used by a browser, in ms. */
+  private final ConcurrentMap<String, Long> lastUsed = new ConcurrentHashMap<String, Long>();
+  /** The test cases used by each browser's current session, guarded by updateLock. */
+  private final Map<String, Set<String>> sessionCases = Maps.newHashMap();
+  private final StoreRetention retention;
+  private final Time time;
 
+  public JstdTestCaseStore() {
+    this(null);
+  }
 
+  /**
+   * @param blobStore The store for the contents of loaded files, or null to
+   *     keep them on the heap. The stored files and test cases then only keep
+   *     handles to the contents.
+   */
+  public JstdTestCaseStore(BlobStore blobStore) {
+    this(blobStore, StoreRetention.UNBOUNDED, new TimeImpl());
+  }
+
+  /**
+   * @param retention How long to keep test cases once no session uses them.
+   *     Test cases are only removed when a session ends.
+   */
+  public JstdTestCaseStore(BlobStore blobStore, StoreRetention retention, Time time) {
+    this.contents = new ContentPool(blobStore);
+    this.retention = retention;
+    this.time = time;
+  }
 
   /**
    * Adds a testcase to the store, returning a delta of files that need to be
@@ -54,17 +112,200 @@ public class JstdTestCaseStore {
    */
   public JstdTestCaseDelta addCase(JstdTestCase testCase) {
     JstdTestCase updatedTestCase;
-    synchronized (files) {
+    synchronized (updateLock) {
       updatedTestCase = testCase.applyDelta(new JstdTestCaseDelta(
           updateCache(testCase.getDependencies()),
           updateCache(testCase.getTests()),
           updateCache(testCase.getPlugins())));
+      updatedTestCase = updatedTestCase.applyDelta(new JstdTestCaseDelta(
+          stored(updatedTestCase.getDependencies()),
+          stored(updatedTestCase.getTests()),
+          stored(updatedTestCase.getPlugins())));
+      logger.info("adding TestCase {} to {}", testCase.getId(), this);
+      cases.put(testCase.getId(), updatedTestCase);
+      lastUsed.put(testCase.getId(), time.now().getMillis());
+      reference(testCase.getId(), updatedTestCase);
     }
-    logger.info("adding TestCase {} to {}", testCase.getId(), this);
-    cases.put(testCase.getId(), updatedTestCase);
     return updatedTestCase.createUnloadedDelta();
   }
 
+  /**
+   * Removes a test case, along with the files no other test case refers to.
+   * Returns false if there was no such test case.
+   */
+  public boolean removeCase(String testCaseId) {
+    if (testCaseId == null) {
+      return false;
+    }
+    synchronized (updateLock) {
+      JstdTestCase removed = cases.remove(testCaseId);
+      String manifestDigest = manifestDigests.remove(testCaseId);
+      if (manifestDigest != null) {
+        manifestCases.remove(manifestDigest);
+      }
+      release(casePaths.remove(testCaseId));
+      lastUsed.remove(testCaseId);
+      if (removed != null) {
+        logger.info("removed TestCase {} from {}", testCaseId, this);
+      }
+      return removed != null;
+    }
+  }
+
+  /**
+   * Records that a browser is using a test case. The test case is kept at
+   * least until the browser's session ends.
+   */
+  public void useCase(String testCaseId, String browserId) {
+    if (testCaseId == null || browserId == null) {
+      return;
+    }
+    synchronized (updateLock) {
+      Set<String> used = sessionCases.get(browserId);
+      if (used == null) {
+        used = Sets.newHashSet();
+        sessionCases.put(browserId, used);
+      }
+      used.add(testCaseId);
+      if (cases.containsKey(testCaseId)) {
+        lastUsed.put(testCaseId, time.now().getMillis());
+      }
+    }
+  }
+
+  /**
+   * Ends the session of a browser, releasing the test cases it used, and
+   * removes the test cases the retention no longer allows. Returns the ids of
+   * the removed test cases.
+   */
+  public List<String> endSession(String browserId) {
+    synchronized (updateLock) {
+      sessionCases.remove(browserId);
+      return evict();
+    }
+  }
+
+  /**
+   * Removes test cases unused for longer than the ttl, including those of
+   * sessions that never ended, then the least recently used test cases that
+   * no session is using while the contents exceed the maximum bytes.
+   */
+  private List<String> evict() {
+    List<String> evicted = Lists.newArrayList();
+    if (!retention.isBounded()) {
+      return evicted;
+    }
+    long now = time.now().getMillis();
+    List<Map.Entry<String, Long>> byLastUse = Lists.newArrayList(lastUsed.entrySet());
+    Collections.sort(byLastUse, new Comparator<Map.Entry<String, Long>>() {
+      @Override
+      public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+        return a.getValue().compareTo(b.getValue());
+      }
+    });
+    for (Map.Entry<String, Long> used : byLastUse) {
+      String testCaseId = used.getKey();
+      boolean expired = retention.getTtl() > 0 && now - used.getValue() > retention.getTtl();
+      boolean overBudget = retention.getMaxBytes() > 0
+          && getContentBytes() > retention.getMaxBytes() && !isInSession(testCaseId);
+      if (!expired && !overBudget) {
+        continue;
+      }
+      if (removeCase(testCaseId)) {
+        evicted.add(testCaseId);
+      }
+    }
+    if (!evicted.isEmpty()) {
+      logger.info("evicted {} test cases, keeping {} bytes in {}",
+          new Object[] {evicted.size(), getContentBytes(), this});
+    }
+    return evicted;
+  }
+
+  /** Whether a browser's current session has used the test case. */
+  public boolean isInSession(String testCaseId) {
+    synchronized (updateLock) {
+      for (Set<String> used : sessionCases.values()) {
+        if (used.contains(testCaseId)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** Returns when the test case was last added or used, or -1 if it is unknown. */
+  public long getLastUsed(String testCaseId) {
+    Long used = testCaseId == null ? null : lastUsed.get(testCaseId);
+    return used == null ? -1 : used;
+  }
+
+  public StoreRetention getRetention() {
+    return retention;
+  }
+
+  /** Counts the paths of the test case, replacing those of a test case with the same id. */
+  private void reference(String testCaseId, JstdTestCase testCase) {
+    Set<String> paths = Sets.newHashSet();
+    for (FileInfo file : testCase.toFileSet()) {
+      if (file.getDisplayPath() != null) {
+        paths.add(file.getDisplayPath());
+      }
+    }
+    for (String path : paths) {
+      Integer references = pathReferences.get(path);
+      pathReferences.put(path, references == null ? 1 : references + 1);
+    }
+    release(casePaths.put(testCaseId, paths));
+  }
+
+  /** Drops the files of paths that are no longer referred to by any test case. */
+  private void release(Set<String> paths) {
+    if (paths == null) {
+      return;
+    }
+    for (String path : paths) {
+      Integer references = pathReferences.get(path);
+      if (references != null && references > 1) {
+        pathReferences.put(path, references - 1);
+      } else {
+        pathReferences.remove(path);
+        files.remove(path);
+        encodedFiles.remove(path);
+        contents.remove(path);
+        logger.debug("evicted {}", path);
+      }
+    }
+  }
+
+  /**
+   * Adds a test case of a {@link com.google.jstestdriver.model.SessionManifest},
+   * returning a delta of files that need to be loaded. The test case is kept
+   * as it was sent, so the browser file check can compare it by digest. It
+   * replaces the earlier versions of the test case.
+   */
+  public JstdTestCaseDelta addManifestCase(String digest, JstdTestCase testCase) {
+    synchronized (updateLock) {
+      String previous = manifestDigests.put(testCase.getId(), digest);
+      if (previous != null && !previous.equals(digest)) {
+        manifestCases.remove(previous);
+      }
+      manifestCases.put(digest, testCase);
+      return addCase(testCase);
+    }
+  }
+
+  /**
+   * Returns the test case of a manifest with the given digest, or null if no
+   * manifest contained it.
+   */
+  public JstdTestCase getManifestCase(String digest) {
+    if (digest == null) {
+      return null;
+    }
+    return manifestCases.get(digest);
+  }
+
   /**
    * Updates the files cache with files and returns ones that are already to
    * update the testcase with.
@@ -72,16 +313,21 @@ public class JstdTestCaseStore {
   private List<FileInfo> updateCache(List<FileInfo> newFiles) {
     List<FileInfo> replace = Lists.newArrayList();
     for (FileInfo file : newFiles) {
-      FileInfo oldFile = files.getFile(file.getDisplayPath());
+      FileInfo oldFile = getFile(file.getDisplayPath());
       if (oldFile == null) {
-        files.addFile(file);
+        store(file);
         logger.debug("adding {}", file.getDisplayPath());
       } else if (oldFile.shouldReplaceWith(file)) {
-        logger.debug("replacing {}", oldFile.getDisplayPath());
-        files.addFile(file);
+        if (oldFile.isLoaded() && !file.isLoaded()) {
+          // keep the contents until the client has checked whether they changed.
+          logger.debug("pending {}", oldFile.getDisplayPath());
+        } else {
+          logger.debug("replacing {}", oldFile.getDisplayPath());
+          store(file);
+        }
       } else if (file.isLoaded()) {
         logger.debug("updating {} (loaded)", file.getDisplayPath());
-        files.addFile(file);
+        store(file);
       } else if (oldFile.isLoaded() && !file.isLoaded()){
         logger.debug("not replacing {}", file.getDisplayPath());
         // the old file the same as the new, except the old is loaded.
@@ -93,6 +339,38 @@ public class JstdTestCaseStore {
     return replace;
   }
 
+  /** Stores the file, returning the stored version. */
+  private FileInfo store(FileInfo file) {
+    if (file.getDisplayPath() == null) {
+      logger.warn("Storing {} without a display path, replacing any other such file",
+          file.getFilePath());
+      fileWithoutDisplayPath = file;
+      return file;
+    }
+    FileInfo stored = contents.put(file.getDisplayPath(), file);
+    files.put(file.getDisplayPath(), stored);
+    return stored;
+  }
+
+  /**
+   * Swaps loaded files for their stored versions, so test cases share the
+   * contents held by the store rather than keeping copies of them. Must be
+   * called with updateLock held, after the files have been stored.
+   */
+  private List<FileInfo> stored(List<FileInfo> testCaseFiles) {
+    List<FileInfo> stored = Lists.newArrayListWithCapacity(testCaseFiles.size());
+    for (FileInfo file : testCaseFiles) {
+      FileInfo cached = getFile(file.getDisplayPath());
+      if (file.isLoaded() && cached != null && cached.isLoaded()
+          && cached.getFilePath().equals(file.getFilePath())) {
+        stored.add(cached);
+      } else {
+        stored.add(file);
+      }
+    }
+    return stored;
+  }
+
   /**
    * Returns a collection of all the test cases.
    */
@@ -110,30 +388,116 @@ public class JstdTestCaseStore {
     return cases.get(testCaseId);
   }
 
+  /**
+   * Returns the cached file for a display path, or null if it is unknown.
+   */
+  public FileInfo getFile(String displayPath) {
+    if (displayPath == null) {
+      return fileWithoutDisplayPath;
+    }
+    return files.get(displayPath);
+  }
+
   /**
    * Returns the contents of a given filename.
    */
   // TODO(corysmith): Workaround until the semantics of loading files are worked
   // out. Ideally, there should be some way of associating a file with a slaved browser.
   public String getFileContent(String path) {
-    return files.getFileContent(path);
+    FileInfo file = getFile(path);
+    if (file == null) {
+      throw new FilesCache.MissingFileException();
+    }
+    return file.getData();
+  }
+
+  /**
+   * Returns the encoded contents of a file, or null if the file is unknown.
+   * The encoding is kept until the file is replaced.
+   */
+  public EncodedFile getEncodedFile(String path) {
+    FileInfo file = path == null ? null : getFile(path);
+    if (file == null) {
+      return null;
+    }
+    EncodedFile encoded = encodedFiles.get(path);
+    if (encoded == null || encoded.getSource() != file) {
+      encoded = contents.encode(path, file);
+      encodedFiles.put(path, encoded);
+    }
+    return encoded;
+  }
+
+  /**
+   * Compares the digests of files about to be uploaded with the cached
+   * contents. Cached files with the same digest are taken as the current
+   * version, and the rest are returned as still needing to be uploaded.
+   */
+  public List<FileInfo> checkDigests(Collection<FileInfo> digests) {
+    List<FileInfo> missing = Lists.newArrayList();
+    List<FileInfo> current = Lists.newArrayList();
+    synchronized (updateLock) {
+      for (FileInfo file : digests) {
+        FileInfo cached = getFile(file.getDisplayPath());
+        if (cached != null && cached.isLoaded() && file.getDigest() != null
+            && file.getDigest().equals(cached.getDigest())) {
+          logger.debug("unchanged {}", file.getDisplayPath());
+          FileInfo refreshed = cached.getBlob() != null
+              ? file.withBlob(cached.getBlob())
+              : file.load(cached.getData(), file.getTimestamp());
+          current.add(store(refreshed));
+        } else {
+          missing.add(file);
+        }
+      }
+    }
+    if (!current.isEmpty()) {
+      updateCases(new JstdTestCaseDelta(current, current, current));
+    }
+    return missing;
   }
 
   /**
    * Applies a JstdTestCaseDelta to the file cache and all test cases.
    */
   public void applyDelta(JstdTestCaseDelta delta) {
-    synchronized (files) {
+    synchronized (updateLock) {
       updateCache(delta.getDependencies());
       updateCache(delta.getTests());
       updateCache(delta.getPlugins());
+      delta = new JstdTestCaseDelta(
+          stored(delta.getDependencies()),
+          stored(delta.getTests()),
+          stored(delta.getPlugins()));
     }
+    updateCases(delta);
+  }
+
+  /** The number of stored files. */
+  public int getFileCount() {
+    return files.size();
+  }
+
+  /** The bytes of the distinct contents of the stored files. */
+  public long getContentBytes() {
+    return contents.getStoredBytes();
+  }
+
+  /** The bytes saved by storing files with the same contents once. */
+  public long getDeduplicatedBytes() {
+    return contents.getReferencedBytes() - contents.getStoredBytes();
+  }
+
+  private void updateCases(JstdTestCaseDelta delta) {
     synchronized (cases) {
       Map<String, JstdTestCase> applied = Maps.newHashMap();
       for (Entry<String, JstdTestCase> entry : cases.entrySet()) {
         applied.put(entry.getKey(), entry.getValue().applyDelta(delta));
       }
-      cases.putAll(applied);
+      // replace, rather than put, so cases removed meanwhile stay removed.
+      for (Entry<String, JstdTestCase> entry : applied.entrySet()) {
+        cases.replace(entry.getKey(), entry.getValue());
+      }
     }
   }
 }
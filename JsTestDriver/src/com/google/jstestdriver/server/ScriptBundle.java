@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.FileSource;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Contiguous scripts of a test case concatenated into one script, with a
+ * version 3 source map from the lines of the bundle to the lines of the
+ * scripts. Every script starts on a line of its own at column 0, so only the
+ * lines need mapping.
+ *
+ * Between the scripts the bundle tells the browser's test case manager which
+ * script defined the test cases, as loading each script on its own would.
+ */
+public class ScriptBundle {
+
+  private static final String BASE64 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+  private final String key;
+  private final List<FileSource> members;
+  /** The line of the bundle each member starts on, counting from 1. */
+  private final int[] firstLines;
+  private final int[] lineCounts;
+  private final String contents;
+  private volatile EncodedFile encoded;
+  private volatile EncodedFile encodedMap;
+
+  /**
+   * @param key The digest identifying the bundle.
+   * @param members The sources of the scripts, in load order.
+   * @param scripts The contents of each member.
+   */
+  public ScriptBundle(String key, List<FileSource> members, List<String> scripts) {
+    this.key = key;
+    this.members = members;
+    this.firstLines = new int[members.size()];
+    this.lineCounts = new int[members.size()];
+    Gson gson = new Gson();
+    StringBuilder bundle = new StringBuilder();
+    int line = 1;
+    for (int i = 0; i < members.size(); i++) {
+      String fileSrc = gson.toJson(members.get(i).getFileSrc());
+      bundle.append("jstestdriver.testCaseManager.removeTestCaseForFilename(")
+          .append(fileSrc).append(");\n");
+      line++;
+      String script = scripts.get(i);
+      firstLines[i] = line;
+      lineCounts[i] = countLines(script);
+      bundle.append(script);
+      if (script.length() > 0 && !isLineTerminator(script.charAt(script.length() - 1))) {
+        bundle.append('\n');
+      }
+      line += lineCounts[i];
+      // the semicolon ends a last statement that relies on semicolon insertion.
+      bundle.append(";jstestdriver.testCaseManager.updateLatestTestCase(")
+          .append(fileSrc).append(");\n");
+      line++;
+    }
+    bundle.append("//# sourceMappingURL=").append(getMapName()).append('\n');
+    this.contents = bundle.toString();
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  /** The file name of the bundle, as served under /bundle. */
+  public String getName() {
+    return key + ".js";
+  }
+
+  public String getMapName() {
+    return key + ".js.map";
+  }
+
+  public List<FileSource> getMembers() {
+    return members;
+  }
+
+  public String getContents() {
+    return contents;
+  }
+
+  /** Returns the member at a line of the bundle, or -1 between members. */
+  public int getMemberAt(int line) {
+    int index = Arrays.binarySearch(firstLines, line);
+    if (index < 0) {
+      index = -index - 2;
+    }
+    if (index < 0 || line >= firstLines[index] + lineCounts[index]) {
+      return -1;
+    }
+    return index;
+  }
+
+  /** Returns the line of its member a line of the bundle came from. */
+  public int getOriginalLine(int line) {
+    int member = getMemberAt(line);
+    return member == -1 ? -1 : line - firstLines[member] + 1;
+  }
+
+  /** Returns the source map, with the bundled scripts as its sources. */
+  public String getSourceMap() {
+    JsonArray sources = new JsonArray();
+    for (FileSource member : members) {
+      sources.add(new JsonPrimitive(member.getFileSrc()));
+    }
+    StringBuilder mappings = new StringBuilder();
+    int lastMember = 0;
+    int lastLine = 0;
+    int lines = firstLines.length == 0
+        ? 0 : firstLines[firstLines.length - 1] + lineCounts[lineCounts.length - 1];
+    for (int line = 1; line < lines; line++) {
+      if (line > 1) {
+        mappings.append(';');
+      }
+      int member = getMemberAt(line);
+      if (member != -1) {
+        int originalLine = line - firstLines[member];
+        // generated column, source, original line and original column.
+        appendVlq(mappings, 0);
+        appendVlq(mappings, member - lastMember);
+        appendVlq(mappings, originalLine - lastLine);
+        appendVlq(mappings, 0);
+        lastMember = member;
+        lastLine = originalLine;
+      }
+    }
+    JsonObject map = new JsonObject();
+    map.addProperty("version", 3);
+    map.addProperty("file", getName());
+    map.add("sources", sources);
+    map.add("names", new JsonArray());
+    map.addProperty("mappings", mappings.toString());
+    return map.toString();
+  }
+
+  /** The bundle encoded for serving. */
+  public EncodedFile getEncoded() {
+    EncodedFile file = encoded;
+    if (file == null) {
+      file = new EncodedFile(new FileInfo(getName(), 0, contents.length(), false, true,
+          contents, getName()));
+      encoded = file;
+    }
+    return file;
+  }
+
+  /** The source map encoded for serving. */
+  public EncodedFile getEncodedMap() {
+    EncodedFile file = encodedMap;
+    if (file == null) {
+      String map = getSourceMap();
+      file = new EncodedFile(new FileInfo(getMapName(), 0, map.length(), false, true,
+          map, getMapName()));
+      encodedMap = file;
+    }
+    return file;
+  }
+
+  /** Counts the lines as a browser does, including a last unterminated line. */
+  static int countLines(String script) {
+    int lines = 0;
+    int length = script.length();
+    for (int i = 0; i < length; i++) {
+      char c = script.charAt(i);
+      if (c == '\r' && i + 1 < length && script.charAt(i + 1) == '\n') {
+        continue;
+      }
+      if (isLineTerminator(c)) {
+        lines++;
+      }
+    }
+    if (length > 0 && !isLineTerminator(script.charAt(length - 1))) {
+      lines++;
+    }
+    return lines;
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029';
+  }
+
+  /** Appends a base64 variable length quantity, as source maps encode numbers. */
+  static void appendVlq(StringBuilder out, int value) {
+    int vlq = value < 0 ? ((-value) << 1) | 1 : value << 1;
+    do {
+      int digit = vlq & 31;
+      vlq >>>= 5;
+      if (vlq > 0) {
+        digit |= 32;
+      }
+      out.append(BASE64.charAt(digit));
+    } while (vlq > 0);
+  }
+}
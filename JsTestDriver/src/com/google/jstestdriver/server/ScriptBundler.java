@@ -0,0 +1,327 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.FileResult;
+import com.google.jstestdriver.FileSource;
+import com.google.jstestdriver.LoadedFiles;
+import com.google.jstestdriver.Response;
+import com.google.jstestdriver.model.HandlerPathPrefix;
+import com.google.jstestdriver.util.Digests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces contiguous scripts served from /test with {@link ScriptBundle}s
+ * served from /bundle, so the browser loads a test case in a few requests
+ * rather than one per file. Bundles are keyed by the sources and stored
+ * digests of their members, so a bundle is reused until one of its files
+ * changes.
+ *
+ * Bundling joins the scripts into one, which is not quite the same as loading
+ * them one by one: top level function declarations are hoisted across the
+ * files, and a syntax error fails every file of the bundle. When a bundle
+ * fails to load, its files are loaded on their own from then on, so the
+ * failure is reported against the file that caused it.
+ *
+ * The browser reports loading the bundle, and the bundle's lines in stack
+ * traces. {@link #unbundle(Response)} reports the members instead, so the rest
+ * of the server and the client never see the bundles.
+ */
+public class ScriptBundler {
+  private static final Logger logger = LoggerFactory.getLogger(ScriptBundler.class);
+
+  /** The most scripts put in one bundle. */
+  static final int MAX_BUNDLE_FILES = 100;
+
+  /** The most bundles kept, least recently used first out. */
+  static final int MAX_BUNDLES = 64;
+
+  /** The most digests of scripts known to be strict or not. */
+  static final int MAX_STRICT_DIGESTS = 4096;
+
+  private final Gson gson = new Gson();
+  private final JstdTestCaseStore store;
+  private final boolean enabled;
+  private final String testPath;
+  private final String bundlePath;
+  private final Pattern bundleLine;
+  private final Map<String, ScriptBundle> bundles =
+      new LinkedHashMap<String, ScriptBundle>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ScriptBundle> eldest) {
+          return size() > MAX_BUNDLES;
+        }
+      };
+  /** Bundles that failed to load in a browser, by key. Guarded by bundles. */
+  private final Set<String> failedBundles = new HashSet<String>();
+  private final Map<String, Boolean> strictDigests =
+      new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+          return size() > MAX_STRICT_DIGESTS;
+        }
+      };
+
+  public ScriptBundler(JstdTestCaseStore store, HandlerPathPrefix prefix, boolean enabled) {
+    this.store = store;
+    this.enabled = enabled;
+    this.testPath = prefix.prefixPath("/test/");
+    this.bundlePath = prefix.prefixPath("/bundle/");
+    this.bundleLine = Pattern.compile(Pattern.quote(bundlePath) + "([0-9a-f]{40})\\.js:(\\d+)");
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the sources with each run of two or more scripts from the store
+   * replaced by the source of their bundle. Stylesheets, urls and scripts with
+   * a "use strict" directive, which would apply to the whole bundle, are
+   * loaded on their own.
+   */
+  public List<FileSource> bundle(List<FileSource> sources) {
+    if (!enabled) {
+      return sources;
+    }
+    List<FileSource> bundled = Lists.newArrayListWithCapacity(sources.size());
+    List<FileSource> run = Lists.newArrayList();
+    List<FileInfo> runFiles = Lists.newArrayList();
+    for (FileSource source : sources) {
+      FileInfo file = getBundleable(source);
+      if (file == null || run.size() == MAX_BUNDLE_FILES) {
+        addRun(bundled, run, runFiles);
+      }
+      if (file == null) {
+        bundled.add(source);
+      } else {
+        run.add(source);
+        runFiles.add(file);
+      }
+    }
+    addRun(bundled, run, runFiles);
+    return bundled;
+  }
+
+  private FileInfo getBundleable(FileSource source) {
+    String fileSrc = source.getFileSrc();
+    if (fileSrc == null || !fileSrc.startsWith(testPath) || !fileSrc.endsWith(".js")) {
+      return null;
+    }
+    FileInfo file = store.getFile(fileSrc.substring(testPath.length()));
+    if (file == null || isStrict(file)) {
+      return null;
+    }
+    return file;
+  }
+
+  /** Whether the file is strict, read once for each digest. */
+  private boolean isStrict(FileInfo file) {
+    String digest = file.getDigest();
+    if (digest == null) {
+      return isStrict(file.getData());
+    }
+    synchronized (strictDigests) {
+      Boolean strict = strictDigests.get(digest);
+      if (strict == null) {
+        strict = isStrict(file.getData());
+        strictDigests.put(digest, strict);
+      }
+      return strict;
+    }
+  }
+
+  /** Whether the script starts with a "use strict" directive, after any comments. */
+  static boolean isStrict(String script) {
+    int i = 0;
+    while (i < script.length()) {
+      if (Character.isWhitespace(script.charAt(i))) {
+        i++;
+      } else if (script.startsWith("//", i)) {
+        int end = script.indexOf('\n', i);
+        i = end == -1 ? script.length() : end + 1;
+      } else if (script.startsWith("/*", i)) {
+        int end = script.indexOf("*/", i + 2);
+        i = end == -1 ? script.length() : end + 2;
+      } else {
+        break;
+      }
+    }
+    return script.startsWith("\"use strict\"", i) || script.startsWith("'use strict'", i);
+  }
+
+  private void addRun(List<FileSource> bundled, List<FileSource> run, List<FileInfo> runFiles) {
+    if (run.size() == 1) {
+      bundled.add(run.get(0));
+    } else if (run.size() > 1) {
+      ScriptBundle bundle = getOrCreateBundle(Lists.newArrayList(run), runFiles);
+      if (bundle == null) {
+        bundled.addAll(run);
+      } else {
+        bundled.add(new FileSource(bundlePath + bundle.getName(), bundlePath + bundle.getName(),
+            0, bundle.getContents().length(), bundle.getKey()));
+      }
+    }
+    run.clear();
+    runFiles.clear();
+  }
+
+  /**
+   * Returns the bundle of the files, or null if that bundle failed to load.
+   * The contents of the files are only read to make a new bundle.
+   */
+  private ScriptBundle getOrCreateBundle(List<FileSource> members, List<FileInfo> files) {
+    StringBuilder identity = new StringBuilder();
+    for (int i = 0; i < members.size(); i++) {
+      FileInfo file = files.get(i);
+      String digest = file.getDigest() != null
+          ? file.getDigest() : Digests.sha1Hex(file.getData());
+      identity.append(gson.toJson(members.get(i))).append(digest).append('\n');
+    }
+    String key = Digests.sha1Hex(identity.toString());
+    synchronized (bundles) {
+      if (failedBundles.contains(key)) {
+        return null;
+      }
+      ScriptBundle bundle = bundles.get(key);
+      if (bundle == null) {
+        List<String> scripts = Lists.newArrayListWithCapacity(files.size());
+        for (FileInfo file : files) {
+          scripts.add(file.getData());
+        }
+        bundle = new ScriptBundle(key, members, scripts);
+        bundles.put(key, bundle);
+        logger.debug("bundled {} files as {}", members.size(), bundle.getName());
+      }
+      return bundle;
+    }
+  }
+
+  /** Returns a bundle by key, or null if it was never made or evicted. */
+  public ScriptBundle getBundle(String key) {
+    synchronized (bundles) {
+      return bundles.get(key);
+    }
+  }
+
+  /**
+   * Rewrites a response from the browser in terms of the bundled files:
+   * bundle lines become the lines of their members, and the results of loading
+   * a bundle become the results of loading each member.
+   */
+  public void unbundle(Response response) {
+    String text = response.getResponse();
+    if (text == null || !text.contains(bundlePath)) {
+      return;
+    }
+    text = unmapLines(text);
+    switch (response.getResponseType()) {
+      case BROWSER_READY:
+      case FILE_LOAD_RESULT:
+      case RESET_RESULT:
+        text = expandLoadedFiles(text);
+        break;
+      default:
+        break;
+    }
+    response.setResponse(text);
+  }
+
+  /** Replaces bundle:line with the member and its line, in json text. */
+  String unmapLines(String text) {
+    Matcher matcher = bundleLine.matcher(text);
+    StringBuffer unmapped = new StringBuffer(text.length());
+    while (matcher.find()) {
+      ScriptBundle bundle = getBundle(matcher.group(1));
+      int line = Integer.parseInt(matcher.group(2));
+      int member = bundle == null ? -1 : bundle.getMemberAt(line);
+      if (member == -1) {
+        matcher.appendReplacement(unmapped, "$0");
+      } else {
+        String fileSrc = gson.toJson(bundle.getMembers().get(member).getFileSrc());
+        // drops the quotes, keeping the escaping for the enclosing json string.
+        matcher.appendReplacement(unmapped, Matcher.quoteReplacement(
+            fileSrc.substring(1, fileSrc.length() - 1) + ":" + bundle.getOriginalLine(line)));
+      }
+    }
+    matcher.appendTail(unmapped);
+    return unmapped.toString();
+  }
+
+  private String expandLoadedFiles(String text) {
+    LoadedFiles loadedFiles;
+    try {
+      loadedFiles = gson.fromJson(text, LoadedFiles.class);
+    } catch (JsonParseException e) {
+      logger.warn("Unable to read the loaded files {}", text);
+      return text;
+    }
+    if (loadedFiles == null || loadedFiles.getLoadedFiles() == null) {
+      return text;
+    }
+    Collection<FileResult> expanded = Lists.newArrayList();
+    for (FileResult result : loadedFiles.getLoadedFiles()) {
+      ScriptBundle bundle = getBundle(result.getFileSource());
+      if (bundle == null) {
+        expanded.add(result);
+      } else {
+        if (!result.isSuccess()) {
+          logger.info("{} failed to load, its files are loaded on their own from now on",
+              result.getFileSource().getFileSrc());
+          synchronized (bundles) {
+            failedBundles.add(bundle.getKey());
+          }
+        }
+        for (FileSource member : bundle.getMembers()) {
+          expanded.add(new FileResult(member, result.isSuccess(), result.getMessage()));
+        }
+      }
+    }
+    return gson.toJson(new LoadedFiles(expanded));
+  }
+
+  private ScriptBundle getBundle(FileSource source) {
+    String fileSrc = source == null ? null : source.getFileSrc();
+    if (fileSrc == null || !fileSrc.startsWith(bundlePath) || !fileSrc.endsWith(".js")) {
+      return null;
+    }
+    ScriptBundle bundle = getBundle(
+        fileSrc.substring(bundlePath.length(), fileSrc.length() - ".js".length()));
+    if (bundle == null) {
+      logger.warn("{} was evicted before the browser loaded it", fileSrc);
+    }
+    return bundle;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+import com.google.inject.Singleton;
+import com.google.jstestdriver.util.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the requests handled by the server. The state of the captured
+ * browsers is read from the browsers themselves when the metrics are served.
+ */
+@Singleton
+public class ServerMetrics {
+
+  /** The route of requests that did not match any handler. */
+  public static final String UNMATCHED = "unmatched";
+
+  private final ConcurrentMap<String, LatencyHistogram> requests =
+      new ConcurrentHashMap<String, LatencyHistogram>();
+  private final AtomicLong testResourceBytes = new AtomicLong();
+
+  /** Records a request handled for the route, e.g. "GET /cmd". */
+  public void recordRequest(String route, long nanos) {
+    LatencyHistogram histogram = requests.get(route);
+    if (histogram == null) {
+      requests.putIfAbsent(route, new LatencyHistogram());
+      histogram = requests.get(route);
+    }
+    histogram.record(nanos);
+  }
+
+  /** Counts the bytes of content sent from /test, after compression. */
+  public void addTestResource(long bytes) {
+    testResourceBytes.addAndGet(bytes);
+  }
+
+  /** Returns the request latencies by route, in route order. */
+  public SortedMap<String, LatencyHistogram> getRequests() {
+    return Collections.unmodifiableSortedMap(new TreeMap<String, LatencyHistogram>(requests));
+  }
+
+  public long getTestResourceBytes() {
+    return testResourceBytes.get();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("ServerMetrics [");
+    for (Map.Entry<String, LatencyHistogram> entry : getRequests().entrySet()) {
+      sb.append(entry.getKey()).append('=').append(entry.getValue().getCount()).append(", ");
+    }
+    return sb.append("testResourceBytes=").append(testResourceBytes).append(']').toString();
+  }
+}
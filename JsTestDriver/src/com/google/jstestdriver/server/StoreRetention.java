@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server;
+
+/**
+ * How long a {@link JstdTestCaseStore} keeps test cases no session is using.
+ * Cases unused for longer than the ttl are removed, and the least recently
+ * used are removed while the contents exceed the maximum bytes.
+ */
+public class StoreRetention {
+  /** Keeps every test case until the server stops. */
+  public static final StoreRetention UNBOUNDED = new StoreRetention(-1, -1);
+
+  private final long maxBytes;
+  private final long ttl;
+
+  /**
+   * @param maxBytes The bytes of contents to keep at most, or -1 for no limit.
+   * @param ttl The ms a test case is kept after its last use, or -1 for no limit.
+   */
+  public StoreRetention(long maxBytes, long ttl) {
+    this.maxBytes = maxBytes;
+    this.ttl = ttl;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getTtl() {
+    return ttl;
+  }
+
+  public boolean isBounded() {
+    return maxBytes > 0 || ttl > 0;
+  }
+
+  @Override
+  public String toString() {
+    return "StoreRetention[maxBytes=" + maxBytes + ", ttl=" + ttl + "ms]";
+  }
+}
@@ -29,9 +29,11 @@ import com.google.jstestdriver.LoadedFiles;
 import com.google.jstestdriver.Response;
 import com.google.jstestdriver.Response.ResponseType;
 import com.google.jstestdriver.SlaveBrowser;
+import com.google.jstestdriver.commands.NoopCommand;
 import com.google.jstestdriver.protocol.BrowserLog;
 import com.google.jstestdriver.protocol.BrowserStreamAcknowledged;
 import com.google.jstestdriver.requesthandlers.RequestHandler;
+import com.google.jstestdriver.server.ScriptBundler;
 
 import org.mortbay.jetty.MimeTypes;
 import org.slf4j.Logger;
@@ -63,17 +65,23 @@ class BrowserQueryResponseHandler implements RequestHandler {
   private final CapturedBrowsers browsers;
   // TODO(corysmith): factor out a streaming session class.
   private final ConcurrentMap<SlaveBrowser, List<String>> streamedResponses;
+  private final ScriptBundler bundler;
+  private final LongPoll longPoll;
 
   @Inject
   public BrowserQueryResponseHandler(
       HttpServletRequest request,
       HttpServletResponse response,
       CapturedBrowsers browsers,
-      ConcurrentMap<SlaveBrowser, List<String>> streamedResponses) {
+      ConcurrentMap<SlaveBrowser, List<String>> streamedResponses,
+      ScriptBundler bundler,
+      LongPoll longPoll) {
     this.request = request;
     this.response = response;
     this.browsers = browsers;
     this.streamedResponses = streamedResponses;
+    this.bundler = bundler;
+    this.longPoll = longPoll;
   }
 
   @Override
@@ -87,7 +95,16 @@ class BrowserQueryResponseHandler implements RequestHandler {
         });
 
     response.setContentType(MimeTypes.TEXT_JSON_UTF_8);
+    SlaveBrowser browser = browsers.getBrowser(request.getPathInfo().substring(1));
+    if (browser != null && longPoll.isSuspended()) {
+      // the responses were handled before the wait for a command was suspended.
+      PrintWriter writer = response.getWriter();
+      writer.print(nextCommand(browser).getCommand());
+      writer.flush();
+      return;
+    }
     service(request.getPathInfo().substring(1),
+            request.getParameter("responses"),
             request.getParameter("response"),
             request.getParameter("done"),
             request.getParameter("responseId"),
@@ -99,16 +116,30 @@ class BrowserQueryResponseHandler implements RequestHandler {
                       String done,
                       String responseId,
                       PrintWriter writer) {
+    service(id, null, response, done, responseId, writer);
+  }
+
+  /**
+   * Services a post from the browser. Runner pages that batch their streamed
+   * responses send the earlier ones as a json list in responses, ahead of the
+   * single response that older runner pages send on their own.
+   */
+  public void service(String id,
+                      String responses,
+                      String response,
+                      String done,
+                      String responseId,
+                      PrintWriter writer) {
     SlaveBrowser browser = browsers.getBrowser(id);
 
     if (browser != null) {
       boolean isLast = Boolean.parseBoolean(done);
       try {
-        serviceBrowser(response, isLast, responseId, writer, browser);
+        serviceBrowser(responses, response, isLast, responseId, writer, browser);
       } catch (JsonParseException e) {
         writer.print(gson.toJson(new JsonCommand(JsonCommand.CommandType.STOP, null)));
         writer.flush();
-        throw new RuntimeException("Unable to parse: " + response, e);
+        throw new RuntimeException("Unable to parse: " + responses + " " + response, e);
       }
     } else {
       // TODO(corysmith): handle this better.
@@ -123,63 +154,20 @@ class BrowserQueryResponseHandler implements RequestHandler {
     writer.flush();
   }
 
-  private void serviceBrowser(String response, Boolean done, String responseId, PrintWriter writer,
-      SlaveBrowser browser) throws JsonParseException {
+  private void serviceBrowser(String responses, String response, Boolean done, String responseId,
+      PrintWriter writer, SlaveBrowser browser) throws JsonParseException {
     addResponseId(responseId, browser);
     browser.heartBeat();
     Command command = null;
-    if (isResponseValid(response)) {
-      Response res = gson.fromJson(response, Response.class);
-      logger.trace("response type: " +  res.getResponseType());
-      // TODO (corysmith): Replace this with polymorphism,
-      // using the response type to create disposable actions.
-      switch (res.getResponseType()) {
-        case BROWSER_READY:
-          handleFileLoadResult(browser, res);
-          // TODO(corysmith): Move the loading of files to a browser into the
-          // server
-          browser.addResponse(
-              new Response(ResponseType.FILE_LOAD_RESULT.toString(), res.getResponse(), browser
-                  .getBrowserInfo(), "", res.getExecutionTime()), false);
-          browser.ready();
-          break;
-        case FILE_LOAD_RESULT:
-          handleFileLoadResult(browser, res);
-          browser.addResponse(res, done);
-          break;
-        case NOOP:
-          break;
-        case LOG:
-          BrowserLog log = gson.fromJson(res.getResponse(), res.getGsonType());
-          if (log.getLevel() == 1000) {
-            logger.info("Error in browser: " + res.toString());
-          } else {
-            logger.info("Message from the browser: " + res.toString());
-          }
-          browser.addResponse(res, done);
-          break;
-        // reset the browsers fileset.
-        case RESET_RESULT:
-          browser.resetFileSet();
-          logger.debug("Clearing fileset for {}", browser);
-          handleFileLoadResult(browser, res);
-          // queue the load results for the next command to be run.
-          browser.addResponse(
-              new Response(ResponseType.FILE_LOAD_RESULT.toString(), res.getResponse(), browser
-                  .getBrowserInfo(), "", res.getExecutionTime()), false);
-          browser.addResponse(res, done);
-          break;
-        case UNKNOWN:
-          logger.error("Recieved Unknown: " + response);
-          browser.addResponse(res, done);
-          break;
-        case BROWSER_PANIC:
-          logger.debug("Browser panic for {}", res.toString());
-        default:
-          browser.addResponse(res, done);
-          break;
+    if (isResponseValid(responses)) {
+      Response[] batch = gson.fromJson(responses, Response[].class);
+      logger.trace("Received batch of {} responses", batch.length);
+      for (Response res : batch) {
+        handleResponse(browser, res, false);
       }
-      logger.trace("Received:\n done: {} \n res:\n {}\n", new Object[] {done, res});
+    }
+    if (isResponseValid(response)) {
+      handleResponse(browser, gson.fromJson(response, Response.class), done);
     }
     if (isResponseIdValid(responseId) && !done && !isResponseValid(response)) {
       logger.trace("Streaming query for ids {} from {}", streamedResponses.get(browser), browser);
@@ -203,14 +191,96 @@ class BrowserQueryResponseHandler implements RequestHandler {
       streamedResponses.clear();
     }
     if(command == null) {
-     command = browser.dequeueCommand();
-     browser.heartBeat();
+     command = nextCommand(browser);
     }
 
     logger.trace("sending command {}", command == null ? "null" : command.getCommand());
     writer.print(command.getCommand());
   }
 
+  /**
+   * Waits for the next command for the browser. With the non-blocking
+   * connector the request is suspended rather than holding a thread, and
+   * resumed when a command is created.
+   */
+  private Command nextCommand(final SlaveBrowser browser) {
+    Command command;
+    if (longPoll.isEnabled()) {
+      command = longPoll.await(new LongPoll.Poll<Command>() {
+        public Command pollOrListen(Runnable listener) {
+          return browser.dequeueCommandOrListen(listener);
+        }
+
+        public void removeListener(Runnable listener) {
+          browser.removeCommandListener(listener);
+        }
+      }, browser.getDequeueTimeoutMillis());
+      if (command == null) {
+        command = new NoopCommand();
+      }
+    } else {
+      command = browser.dequeueCommand();
+    }
+    browser.heartBeat();
+    return command;
+  }
+
+  private void handleResponse(SlaveBrowser browser, Response res, boolean done) {
+    logger.trace("response type: " +  res.getResponseType());
+    if (bundler.isEnabled()) {
+      bundler.unbundle(res);
+    }
+    // TODO (corysmith): Replace this with polymorphism,
+    // using the response type to create disposable actions.
+    switch (res.getResponseType()) {
+      case BROWSER_READY:
+        handleFileLoadResult(browser, res);
+        // TODO(corysmith): Move the loading of files to a browser into the
+        // server
+        browser.addResponse(
+            new Response(ResponseType.FILE_LOAD_RESULT.toString(), res.getResponse(), browser
+                .getBrowserInfo(), "", res.getExecutionTime()), false);
+        browser.ready();
+        break;
+      case FILE_LOAD_RESULT:
+        handleFileLoadResult(browser, res);
+        browser.addResponse(res, done);
+        break;
+      case NOOP:
+        break;
+      case LOG:
+        BrowserLog log = gson.fromJson(res.getResponse(), res.getGsonType());
+        if (log.getLevel() == 1000) {
+          logger.info("Error in browser: " + res.toString());
+        } else {
+          logger.info("Message from the browser: " + res.toString());
+        }
+        browser.addResponse(res, done);
+        break;
+      // reset the browsers fileset.
+      case RESET_RESULT:
+        browser.resetFileSet();
+        logger.debug("Clearing fileset for {}", browser);
+        handleFileLoadResult(browser, res);
+        // queue the load results for the next command to be run.
+        browser.addResponse(
+            new Response(ResponseType.FILE_LOAD_RESULT.toString(), res.getResponse(), browser
+                .getBrowserInfo(), "", res.getExecutionTime()), false);
+        browser.addResponse(res, done);
+        break;
+      case UNKNOWN:
+        logger.error("Recieved Unknown: " + res);
+        browser.addResponse(res, done);
+        break;
+      case BROWSER_PANIC:
+        logger.debug("Browser panic for {}", res.toString());
+      default:
+        browser.addResponse(res, done);
+        break;
+    }
+    logger.trace("Received:\n done: {} \n res:\n {}\n", new Object[] {done, res});
+  }
+
   /**
    * @param browser
    * @param res
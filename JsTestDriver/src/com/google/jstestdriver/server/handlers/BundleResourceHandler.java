@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server.handlers;
+
+import com.google.inject.Inject;
+import com.google.jstestdriver.requesthandlers.RequestHandler;
+import com.google.jstestdriver.server.EncodedFile;
+import com.google.jstestdriver.server.ScriptBundle;
+import com.google.jstestdriver.server.ScriptBundler;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the {@link ScriptBundle}s and their source maps. A bundle is named by
+ * the digest of its contents, so the browser may keep it for as long as it
+ * likes.
+ */
+class BundleResourceHandler implements RequestHandler {
+
+  private final TestResourceHandler handler;
+  private final ScriptBundler bundler;
+  private final HttpServletRequest request;
+  private final HttpServletResponse response;
+
+  @Inject
+  public BundleResourceHandler(TestResourceHandler handler,
+      ScriptBundler bundler,
+      HttpServletRequest request,
+      HttpServletResponse response) {
+    this.handler = handler;
+    this.bundler = bundler;
+    this.request = request;
+    this.response = response;
+  }
+
+  @Override
+  public void handleIt() throws IOException {
+    String fileName = request.getPathInfo().substring(1); /* remove the first / */
+    EncodedFile file = null;
+    if (fileName.endsWith(".js.map")) {
+      ScriptBundle bundle = bundler.getBundle(fileName.substring(0, fileName.length() - 7));
+      file = bundle == null ? null : bundle.getEncodedMap();
+    } else if (fileName.endsWith(".js")) {
+      ScriptBundle bundle = bundler.getBundle(fileName.substring(0, fileName.length() - 3));
+      file = bundle == null ? null : bundle.getEncoded();
+    }
+    if (file == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    response.setHeader("Cache-Control", "max-age=31536000");
+    handler.serve(fileName, file);
+  }
+}
@@ -15,7 +15,9 @@
  */
 package com.google.jstestdriver.server.handlers;
 
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
 import com.google.jstestdriver.BrowserInfo;
 import com.google.jstestdriver.BrowserPanic;
@@ -30,6 +32,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -40,21 +44,29 @@ import javax.servlet.http.HttpServletResponse;
 class CommandGetHandler implements RequestHandler {
   private static Logger logger = LoggerFactory.getLogger(CommandGetHandler.class);
 
+  /** How long a batched request waits for a response before checking the browser. */
+  private static final long LONG_POLL_INTERVAL = 2;
+  /** How many intervals a batched request is held before answering with no responses. */
+  private static final int LONG_POLL_INTERVALS = 10;
+
   private final HttpServletRequest request;
   private final HttpServletResponse response;
   private final Gson gson;
   private final CapturedBrowsers capturedBrowsers;
+  private final LongPoll longPoll;
 
   @Inject
   public CommandGetHandler(
       HttpServletRequest request,
       HttpServletResponse response,
       Gson gson,
-      CapturedBrowsers capturedBrowsers) {
+      CapturedBrowsers capturedBrowsers,
+      LongPoll longPoll) {
     this.request = request;
     this.response = response;
     this.gson = gson;
     this.capturedBrowsers = capturedBrowsers;
+    this.longPoll = longPoll;
   }
 
   public void handleIt() throws IOException {
@@ -63,6 +75,8 @@ class CommandGetHandler implements RequestHandler {
       response.getWriter().write(listBrowsers());
     } else if (request.getParameter("nextBrowserId") != null) {
       response.getWriter().write(capturedBrowsers.getUniqueId());
+    } else if (request.getParameter("batch") != null) {
+      streamResponses(request.getParameter("id"), response.getWriter());
     } else {
       streamResponse(request.getParameter("id"), response.getWriter());
     }
@@ -78,31 +92,86 @@ class CommandGetHandler implements RequestHandler {
     writer.write(gson.toJson(getResponse(browser)));
   }
 
+  /**
+   * Holds the request until the browser has responded, and writes every
+   * response queued so far as a single list. Answers with an empty list if the
+   * browser stays quiet, so that the request does not outlive the connection.
+   */
+  private void streamResponses(String id, PrintWriter writer) {
+    SlaveBrowser browser = capturedBrowsers.getBrowser(id);
+    writer.write(gson.toJson(getResponses(browser),
+        new TypeToken<List<StreamMessage>>() {}.getType()));
+  }
+
+  List<StreamMessage> getResponses(final SlaveBrowser browser) {
+    List<StreamMessage> messages = Lists.newArrayList();
+    if (longPoll.isEnabled()) {
+      // each interval suspends the request, and it is dispatched again to
+      // check the browser before the next.
+      while (messages.isEmpty() && longPoll.getSuspensions() < LONG_POLL_INTERVALS) {
+        if (!browser.isAlive()) {
+          messages.add(browserPanic(browser));
+          return messages;
+        }
+        List<StreamMessage> received = longPoll.await(new LongPoll.Poll<List<StreamMessage>>() {
+          public List<StreamMessage> pollOrListen(Runnable listener) {
+            List<StreamMessage> queued = browser.getResponsesOrListen(listener);
+            return queued.isEmpty() ? null : queued;
+          }
+
+          public void removeListener(Runnable listener) {
+            browser.removeResponseListener(listener);
+          }
+        }, TimeUnit.SECONDS.toMillis(LONG_POLL_INTERVAL));
+        if (received != null) {
+          for (StreamMessage message : received) {
+            messages.add(substituteBrowserInfo(message));
+          }
+        }
+      }
+      return messages;
+    }
+    for (int i = 0; i < LONG_POLL_INTERVALS && messages.isEmpty(); i++) {
+      if (!browser.isAlive()) {
+        messages.add(browserPanic(browser));
+        return messages;
+      }
+      for (StreamMessage message : browser.getResponses(LONG_POLL_INTERVAL, TimeUnit.SECONDS)) {
+        messages.add(substituteBrowserInfo(message));
+      }
+    }
+    return messages;
+  }
+
   private StreamMessage getResponse(SlaveBrowser browser) {
     StreamMessage cmdResponse = null;
 
     while (cmdResponse == null) {
       if (!browser.isAlive()) {
-        SlaveBrowser deadBrowser = capturedBrowsers.getBrowser(browser.getId());
-        capturedBrowsers.removeSlave(browser.getId());
-        Response response = new Response();
-
-        BrowserInfo browserInfo = deadBrowser.getBrowserInfo();
-        response.setBrowser(browserInfo);
-        response.setResponse(
-            gson.toJson(
-                new BrowserPanic(browserInfo,
-                    String.format("Browser unresponsive since %s during %s",
-                        browser.getLastHeartbeat(),
-                        browser.getCommandRunning()))));
-        response.setType(BrowserPanic.TYPE_NAME);
-        return new StreamMessage(true, response);
+        return browserPanic(browser);
       }
       cmdResponse = substituteBrowserInfo(browser.getResponse());
     }
     return cmdResponse;
   }
 
+  private StreamMessage browserPanic(SlaveBrowser browser) {
+    SlaveBrowser deadBrowser = capturedBrowsers.getBrowser(browser.getId());
+    capturedBrowsers.removeSlave(browser.getId());
+    Response response = new Response();
+
+    BrowserInfo browserInfo = deadBrowser.getBrowserInfo();
+    response.setBrowser(browserInfo);
+    response.setResponse(
+        gson.toJson(
+            new BrowserPanic(browserInfo,
+                String.format("Browser unresponsive since %s during %s",
+                    browser.getLastHeartbeat(),
+                    browser.getCommandRunning()))));
+    response.setType(BrowserPanic.TYPE_NAME);
+    return new StreamMessage(true, response);
+  }
+
   private StreamMessage substituteBrowserInfo(StreamMessage cmdResponse) {
     Response response = cmdResponse.getResponse();
 
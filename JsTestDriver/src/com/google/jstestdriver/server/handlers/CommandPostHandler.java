@@ -23,6 +23,7 @@ import com.google.jstestdriver.FileSource;
 import com.google.jstestdriver.JsonCommand;
 import com.google.jstestdriver.SlaveBrowser;
 import com.google.jstestdriver.requesthandlers.RequestHandler;
+import com.google.jstestdriver.server.ScriptBundler;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,13 +44,15 @@ class CommandPostHandler implements RequestHandler {
   private final HttpServletRequest request;
   private final Gson gson;
   private final CapturedBrowsers capturedBrowsers;
+  private final ScriptBundler bundler;
 
   @Inject
   public CommandPostHandler(HttpServletRequest request, Gson gson,
-      CapturedBrowsers capturedBrowsers) {
+      CapturedBrowsers capturedBrowsers, ScriptBundler bundler) {
     this.request = request;
     this.gson = gson;
     this.capturedBrowsers = capturedBrowsers;
+    this.bundler = bundler;
   }
 
   public void handleIt() throws IOException {
@@ -76,7 +79,7 @@ class CommandPostHandler implements RequestHandler {
           new TypeToken<List<FileSource>>() {
           }.getType());
       parameters.remove(0);
-      parameters.add(0, gson.toJson(fileSources));
+      parameters.add(0, gson.toJson(bundler.bundle(fileSources)));
       return gson.toJson(command);
     }
     return data;
@@ -22,6 +22,7 @@ import com.google.jstestdriver.SlaveBrowser;
 import com.google.jstestdriver.Time;
 import com.google.jstestdriver.annotations.ResponseWriter;
 import com.google.jstestdriver.requesthandlers.RequestHandler;
+import com.google.jstestdriver.server.JstdTestCaseStore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,16 +49,20 @@ class FileSetGetHandler implements RequestHandler {
 
   private final Time time;
 
+  private final JstdTestCaseStore store;
+
   @Inject
   public FileSetGetHandler(
       HttpServletRequest request,
       @ResponseWriter PrintWriter writer,
       CapturedBrowsers capturedBrowsers,
-      Time time) {
+      Time time,
+      JstdTestCaseStore store) {
     this.request = request;
     this.writer = writer;
     this.capturedBrowsers = capturedBrowsers;
     this.time = time;
+    this.store = store;
   }
 
   @SuppressWarnings("unused")
@@ -93,6 +98,7 @@ class FileSetGetHandler implements RequestHandler {
     try {
       browser.unlock(sessionId);
       browser.clearCommandRunning();
+      store.endSession(id);
     } finally {
       writer.flush();
     }
@@ -116,6 +122,8 @@ class FileSetGetHandler implements RequestHandler {
       if (!browser.inUse()) {
         logger.debug("forcing unlock for {}", id);
         browser.forceUnlock();
+        // the stalled session will never be stopped.
+        store.endSession(id);
 
         slaveBrowser.resetCommandQueue();
         slaveBrowser.clearResponseQueue();
@@ -69,6 +69,7 @@ import com.google.jstestdriver.requesthandlers.HttpMethod;
 import com.google.jstestdriver.requesthandlers.RequestHandler;
 import com.google.jstestdriver.requesthandlers.RequestHandlersModule;
 import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ScriptBundler;
 import com.google.jstestdriver.server.gateway.SimpleServletConfig;
 import com.google.jstestdriver.server.handlers.pages.BrowserControlledRunnerPage;
 import com.google.jstestdriver.server.handlers.pages.ConsolePage;
@@ -80,8 +81,10 @@ import com.google.jstestdriver.server.handlers.pages.SlavePageRequest;
 import com.google.jstestdriver.server.handlers.pages.StandaloneRunnerPage;
 import com.google.jstestdriver.servlet.fileset.BrowserFileCheck;
 import com.google.jstestdriver.servlet.fileset.DeltaUpload;
+import com.google.jstestdriver.servlet.fileset.DigestCheck;
 import com.google.jstestdriver.servlet.fileset.FileSetRequestHandler;
 import com.google.jstestdriver.servlet.fileset.ListTestCases;
+import com.google.jstestdriver.servlet.fileset.ManifestUpload;
 import com.google.jstestdriver.servlet.fileset.TestCaseUpload;
 import com.google.jstestdriver.util.ParameterParser;
 
@@ -113,12 +116,18 @@ public class JstdHandlersModule extends RequestHandlersModule {
 
   private final Boolean debug;
 
+  private final boolean bundleScripts;
+
+  private final boolean nio;
+
   /**
    * TODO(rdionne): Refactor so we don't depend upon manually instantiated
    * classes from other object graphs. 
    * @param handlerPrefix TODO
    * @param schemes 
    * @param debug 
+   * @param bundleScripts Whether to load contiguous scripts as bundles.
+   * @param nio Whether long polls are suspended rather than holding a thread.
    */
   public JstdHandlersModule(
       CapturedBrowsers capturedBrowsers,
@@ -127,7 +136,9 @@ public class JstdHandlersModule extends RequestHandlersModule {
       HandlerPathPrefix handlerPrefix,
       Set<FileInfoScheme> schemes,
       ExecutionType executionType,
-      Boolean debug) {
+      Boolean debug,
+      boolean bundleScripts,
+      boolean nio) {
     super();
     this.capturedBrowsers = capturedBrowsers;
     this.testCaseStore = testCaseStore;
@@ -136,12 +147,15 @@ public class JstdHandlersModule extends RequestHandlersModule {
     this.schemes = schemes;
     this.executionType = executionType;
     this.debug = debug;
+    this.bundleScripts = bundleScripts;
+    this.nio = nio;
   }
   
   @Override
   protected void configureHandlers() {
     // Handler bindings in alphabetical order
     serve( GET, handlerPrefix.prefixPath("/"), HomeHandler.class);
+    serve( GET, handlerPrefix.prefixPath("/bundle/*"), BundleResourceHandler.class);
     serve(POST, handlerPrefix.prefixPath("/cache"), FileCacheHandler.class);
     serve( GET, handlerPrefix.prefixPath("/capture"), CaptureHandler.class);
     serve( GET, handlerPrefix.prefixPath("/capture/*"), CaptureHandler.class);
@@ -163,6 +177,7 @@ public class JstdHandlersModule extends RequestHandlersModule {
     serve(POST, handlerPrefix.prefixPath("/gateway", JSTD), GatewayConfigurationHandler.class);
 
     serve( GET, handlerPrefix.prefixPath("/hello"), HelloHandler.class);
+    serve( GET, handlerPrefix.prefixPath("/metrics"), MetricsHandler.class);
     serve(POST, handlerPrefix.prefixPath("/log"), BrowserLoggingHandler.class);
     serve(POST, handlerPrefix.prefixPath("/query/*"), BrowserQueryResponseHandler.class);
     serve( GET, handlerPrefix.prefixPath("/runner/*"), StandaloneRunnerHandler.class);
@@ -177,6 +192,7 @@ public class JstdHandlersModule extends RequestHandlersModule {
     serve( GET, handlerPrefix.prefixPath("/quit"), QuitHandler.class);
     serve( GET, handlerPrefix.prefixPath("/quit/*"), QuitHandler.class);
     serve( GET, handlerPrefix.prefixPath("/static/*"), StaticResourceHandler.class);
+    serve( GET, handlerPrefix.prefixPath("/store"), StoreStatusHandler.class);
     serve( GET, handlerPrefix.prefixPath("/bcr"), BrowserControlledRunnerHandler.class);
     serve( GET, handlerPrefix.prefixPath("/bcr/*"), BrowserControlledRunnerHandler.class);
 
@@ -195,8 +211,11 @@ public class JstdHandlersModule extends RequestHandlersModule {
     bind(new Key<Set<FileInfo>>() {}).toInstance(new HashSet<FileInfo>());
     bind(StandaloneRunnerFilesFilter.class).to(StandaloneRunnerFilesFilterImpl.class);
     bind(HandlerPathPrefix.class).toInstance(handlerPrefix);
+    bind(ScriptBundler.class).toInstance(
+        new ScriptBundler(testCaseStore, handlerPrefix, bundleScripts));
     bind(Time.class).to(TimeImpl.class);
     bind(Boolean.class).annotatedWith(Names.named("debug")).toInstance(debug);
+    bind(Boolean.class).annotatedWith(Names.named("nio")).toInstance(nio);
     bind(new TypeLiteral<Set<FileInfoScheme>>(){}).toInstance(schemes);
     
     bind(ExecutionType.class).toInstance(executionType);
@@ -238,8 +257,9 @@ public class JstdHandlersModule extends RequestHandlersModule {
 
   @Provides @Singleton List<FileSetRequestHandler<?>> provideFileSetRequestHandlers(
       BrowserFileCheck browserFileCheck, TestCaseUpload serverFileUpload, DeltaUpload deltaUpload,
-      ListTestCases listTestCases) {
-    return ImmutableList.of(browserFileCheck, serverFileUpload, deltaUpload, listTestCases);
+      DigestCheck digestCheck, ListTestCases listTestCases, ManifestUpload manifestUpload) {
+    return ImmutableList.of(browserFileCheck, serverFileUpload, deltaUpload, digestCheck,
+        listTestCases, manifestUpload);
   }
 
   @Provides @Singleton
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server.handlers;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Waits for a long poll by suspending the request rather than holding its
+ * thread. On the non-blocking connector, suspending throws Jetty's
+ * RetryRequest to release the thread, and the request is dispatched again
+ * from the start when it is resumed or times out. Handlers use
+ * {@link #isSuspended()} to skip the work they did before suspending. On a
+ * blocking connector the thread waits in the suspension instead.
+ */
+class LongPoll {
+
+  private static final String SUSPENSIONS = LongPoll.class.getName() + ".suspensions";
+
+  /** A queue that can be polled without waiting. */
+  interface Poll<T> {
+    /**
+     * Returns the next result, or null after registering the listener to be
+     * run once when a result is ready.
+     */
+    T pollOrListen(Runnable listener);
+
+    void removeListener(Runnable listener);
+  }
+
+  private final HttpServletRequest request;
+  private final boolean enabled;
+
+  @Inject
+  public LongPoll(HttpServletRequest request, @Named("nio") boolean enabled) {
+    this.request = request;
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Whether the request is dispatched again after a suspension. */
+  public boolean isSuspended() {
+    return enabled && ContinuationSupport.getContinuation(request, null).isPending();
+  }
+
+  /** The suspensions of this request that have ended. */
+  public int getSuspensions() {
+    Integer suspensions = (Integer) request.getAttribute(SUSPENSIONS);
+    return suspensions == null ? 0 : suspensions;
+  }
+
+  /**
+   * Returns the next result of the poll, suspending the request until there
+   * is one. Returns null if the suspension timed out.
+   */
+  public <T> T await(Poll<T> poll, long timeoutMillis) {
+    final Continuation continuation = ContinuationSupport.getContinuation(request, null);
+    // resume() takes the same lock, so a result that arrives while the request
+    // is being suspended resumes it once it is suspended.
+    synchronized (continuation) {
+      if (!continuation.isPending()) {
+        Runnable listener = new Runnable() {
+          public void run() {
+            continuation.resume();
+          }
+        };
+        T result = poll.pollOrListen(listener);
+        if (result != null) {
+          return result;
+        }
+        continuation.setObject(listener);
+        continuation.suspend(timeoutMillis);
+      } else {
+        continuation.reset();
+      }
+      request.setAttribute(SUSPENSIONS, getSuspensions() + 1);
+      Runnable listener = (Runnable) continuation.getObject();
+      continuation.setObject(null);
+      T result = poll.pollOrListen(listener);
+      if (result == null) {
+        poll.removeListener(listener);
+      }
+      return result;
+    }
+  }
+}
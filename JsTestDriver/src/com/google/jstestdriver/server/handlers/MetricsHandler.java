@@ -0,0 +1,186 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server.handlers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.inject.Inject;
+import com.google.inject.servlet.RequestParameters;
+import com.google.jstestdriver.CapturedBrowsers;
+import com.google.jstestdriver.SlaveBrowser;
+import com.google.jstestdriver.requesthandlers.RequestHandler;
+import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ServerMetrics;
+import com.google.jstestdriver.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the {@link ServerMetrics}, the size of the {@link JstdTestCaseStore}
+ * and the queues of the captured browsers in the Prometheus text format, or
+ * as JSON with ?format=json.
+ */
+class MetricsHandler implements RequestHandler {
+
+  private final ServerMetrics metrics;
+  private final CapturedBrowsers capturedBrowsers;
+  private final JstdTestCaseStore store;
+  private final Map<String, String[]> parameters;
+  private final HttpServletResponse response;
+
+  @Inject
+  public MetricsHandler(
+      ServerMetrics metrics,
+      CapturedBrowsers capturedBrowsers,
+      JstdTestCaseStore store,
+      @RequestParameters Map<String, String[]> parameters,
+      HttpServletResponse response) {
+    this.metrics = metrics;
+    this.capturedBrowsers = capturedBrowsers;
+    this.store = store;
+    this.parameters = parameters;
+    this.response = response;
+  }
+
+  @Override
+  public void handleIt() throws IOException {
+    response.setHeader("Cache-Control", "no-cache");
+    String[] format = parameters.get("format");
+    if (format != null && "json".equals(format[0])) {
+      response.setContentType("application/json");
+      writeJson(response.getWriter());
+    } else {
+      response.setContentType("text/plain; version=0.0.4");
+      writePrometheus(response.getWriter());
+    }
+  }
+
+  void writePrometheus(PrintWriter writer) {
+    writer.println("# HELP jstd_request_seconds Time spent handling requests, by route.");
+    writer.println("# TYPE jstd_request_seconds histogram");
+    for (Map.Entry<String, LatencyHistogram> request : metrics.getRequests().entrySet()) {
+      writeHistogram(writer, "jstd_request_seconds",
+          "route=\"" + escape(request.getKey()) + "\"", request.getValue());
+    }
+    writer.println("# HELP jstd_test_resource_bytes_total Bytes of files served from /test.");
+    writer.println("# TYPE jstd_test_resource_bytes_total counter");
+    writer.println("jstd_test_resource_bytes_total " + metrics.getTestResourceBytes());
+    writer.println("# HELP jstd_store_content_bytes Bytes of distinct file contents stored.");
+    writer.println("# TYPE jstd_store_content_bytes gauge");
+    writer.println("jstd_store_content_bytes " + store.getContentBytes());
+    writer.println("# HELP jstd_store_deduplicated_bytes Bytes saved by storing equal contents once.");
+    writer.println("# TYPE jstd_store_deduplicated_bytes gauge");
+    writer.println("jstd_store_deduplicated_bytes " + store.getDeduplicatedBytes());
+    writer.println("# HELP jstd_captured_browsers Browsers currently captured.");
+    writer.println("# TYPE jstd_captured_browsers gauge");
+    writer.println("jstd_captured_browsers " + capturedBrowsers.getSlaveBrowsers().size());
+
+    writer.println("# HELP jstd_command_queue_depth Commands waiting for the browser.");
+    writer.println("# TYPE jstd_command_queue_depth gauge");
+    for (SlaveBrowser browser : capturedBrowsers.getSlaveBrowsers()) {
+      writer.println("jstd_command_queue_depth{" + labels(browser) + "} "
+          + browser.getCommandQueueSize());
+    }
+    writer.println("# HELP jstd_response_queue_depth Responses waiting for the client.");
+    writer.println("# TYPE jstd_response_queue_depth gauge");
+    for (SlaveBrowser browser : capturedBrowsers.getSlaveBrowsers()) {
+      writer.println("jstd_response_queue_depth{" + labels(browser) + "} "
+          + browser.getResponseQueueSize());
+    }
+    writer.println("# HELP jstd_heartbeat_lag_seconds Time since the last heartbeat.");
+    writer.println("# TYPE jstd_heartbeat_lag_seconds gauge");
+    for (SlaveBrowser browser : capturedBrowsers.getSlaveBrowsers()) {
+      writer.println("jstd_heartbeat_lag_seconds{" + labels(browser) + "} "
+          + browser.getSecondsSinceLastHeartbeat());
+    }
+    writer.println("# HELP jstd_command_wait_seconds Time commands waited to be dequeued.");
+    writer.println("# TYPE jstd_command_wait_seconds histogram");
+    for (SlaveBrowser browser : capturedBrowsers.getSlaveBrowsers()) {
+      writeHistogram(writer, "jstd_command_wait_seconds", labels(browser),
+          browser.getCommandWait());
+    }
+    writer.flush();
+  }
+
+  private void writeHistogram(PrintWriter writer, String name, String labels,
+      LatencyHistogram histogram) {
+    long cumulative = 0;
+    for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+      cumulative += histogram.getBucket(bucket);
+      double bound = histogram.getUpperBoundSeconds(bucket);
+      writer.println(name + "_bucket{" + labels + ",le=\""
+          + (Double.isInfinite(bound) ? "+Inf" : String.valueOf(bound)) + "\"} " + cumulative);
+    }
+    writer.println(name + "_sum{" + labels + "} " + histogram.getTotalSeconds());
+    writer.println(name + "_count{" + labels + "} " + histogram.getCount());
+  }
+
+  private String labels(SlaveBrowser browser) {
+    return "browser=\"" + escape(browser.getId()) + "\",name=\""
+        + escape(browser.getBrowserInfo().getName()) + "\"";
+  }
+
+  private String escape(String value) {
+    if (value == null) {
+      return "";
+    }
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  void writeJson(PrintWriter writer) {
+    JsonObject json = new JsonObject();
+    JsonObject requests = new JsonObject();
+    for (Map.Entry<String, LatencyHistogram> request : metrics.getRequests().entrySet()) {
+      requests.add(request.getKey(), toJson(request.getValue()));
+    }
+    json.add("requests", requests);
+    json.addProperty("testResourceBytes", metrics.getTestResourceBytes());
+    json.addProperty("storeContentBytes", store.getContentBytes());
+    json.addProperty("storeDeduplicatedBytes", store.getDeduplicatedBytes());
+    JsonArray browsers = new JsonArray();
+    for (SlaveBrowser browser : capturedBrowsers.getSlaveBrowsers()) {
+      JsonObject entry = new JsonObject();
+      entry.addProperty("id", browser.getId());
+      entry.addProperty("name", browser.getBrowserInfo().getName());
+      entry.addProperty("commandQueueDepth", browser.getCommandQueueSize());
+      entry.addProperty("responseQueueDepth", browser.getResponseQueueSize());
+      entry.addProperty("heartbeatLagSeconds", browser.getSecondsSinceLastHeartbeat());
+      entry.add("commandWait", toJson(browser.getCommandWait()));
+      browsers.add(entry);
+    }
+    json.add("browsers", browsers);
+    writer.write(json.toString());
+    writer.flush();
+  }
+
+  private JsonObject toJson(LatencyHistogram histogram) {
+    JsonObject json = new JsonObject();
+    json.addProperty("count", histogram.getCount());
+    json.addProperty("totalSeconds", histogram.getTotalSeconds());
+    JsonObject buckets = new JsonObject();
+    for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+      double bound = histogram.getUpperBoundSeconds(bucket);
+      buckets.addProperty(Double.isInfinite(bound) ? "+Inf" : String.valueOf(bound),
+          histogram.getBucket(bucket));
+    }
+    json.add("buckets", buckets);
+    return json;
+  }
+}
@@ -19,8 +19,8 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.jstestdriver.requesthandlers.RequestHandler;
 
+import org.mortbay.jetty.Connector;
 import org.mortbay.jetty.Server;
-import org.mortbay.jetty.bio.SocketConnector;
 import org.mortbay.jetty.servlet.ServletHolder;
 
 import java.io.IOException;
@@ -30,13 +30,13 @@ import javax.servlet.http.HttpServletResponse;
 
 public class QuitHandler implements RequestHandler {
   private final HttpServletResponse response;
-  private final SocketConnector connector;
+  private final Connector connector;
   private final Provider<Server> cyclicalReferenceProvider;
   private final ServletHolder holder;
 
   @Inject
   public QuitHandler(HttpServletResponse response,
-      SocketConnector connector,
+      Connector connector,
       Provider<Server> cyclicalReferenceProvider,
       ServletHolder holder) {
     this.response = response;
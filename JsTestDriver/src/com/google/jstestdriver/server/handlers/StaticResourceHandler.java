@@ -38,6 +38,7 @@ public class StaticResourceHandler implements RequestHandler {
     .put("xml", "text/xml")
     .put("html", "text/html")
     .put("rdf", "application/rdf+xml")
+    .put("map", "application/json")
     .build();
 
   private final SlaveResourceService service;
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.server.handlers;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.jstestdriver.annotations.ResponseWriter;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.requesthandlers.RequestHandler;
+import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.StoreRetention;
+
+import org.joda.time.Instant;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Shows the size of the {@link JstdTestCaseStore}, its retention, and the
+ * test cases it holds, most recently used first.
+ */
+class StoreStatusHandler implements RequestHandler {
+
+  private final JstdTestCaseStore store;
+  private final HttpServletResponse response;
+  private final PrintWriter writer;
+
+  @Inject
+  public StoreStatusHandler(
+      JstdTestCaseStore store,
+      HttpServletResponse response,
+      @ResponseWriter PrintWriter writer) {
+    this.store = store;
+    this.response = response;
+    this.writer = writer;
+  }
+
+  @Override
+  public void handleIt() throws IOException {
+    response.setContentType("text/html");
+    response.setHeader("Cache-Control", "no-cache");
+    List<JstdTestCase> testCases = Lists.newArrayList(store.getCases());
+    Collections.sort(testCases, new Comparator<JstdTestCase>() {
+      @Override
+      public int compare(JstdTestCase a, JstdTestCase b) {
+        long lastUsedA = store.getLastUsed(a.getId());
+        long lastUsedB = store.getLastUsed(b.getId());
+        return lastUsedA > lastUsedB ? -1 : (lastUsedA == lastUsedB ? 0 : 1);
+      }
+    });
+    StoreRetention retention = store.getRetention();
+
+    writer.write("<html><head><title>JsTestDriver Store</title></head><body>");
+    writer.write("<p><strong>Test Cases: (" + testCases.size() + ")</strong></p>");
+    writer.write("Files: " + store.getFileCount() + "<br/>");
+    writer.write("Contents: " + store.getContentBytes() + " bytes<br/>");
+    writer.write("Saved by sharing equal contents: " + store.getDeduplicatedBytes()
+        + " bytes<br/>");
+    writer.write("Maximum contents: "
+        + (retention.getMaxBytes() > 0 ? retention.getMaxBytes() + " bytes" : "unbounded")
+        + "<br/>");
+    writer.write("Kept after last use: "
+        + (retention.getTtl() > 0 ? retention.getTtl() + " ms" : "until the server stops")
+        + "<br/>");
+    writer.write("<table><tr><th>Id</th><th>Files</th><th>Last used</th>"
+        + "<th>In session</th></tr>");
+    for (JstdTestCase testCase : testCases) {
+      long lastUsed = store.getLastUsed(testCase.getId());
+      writer.write("<tr><td>" + escape(testCase.getId()) + "</td><td>"
+          + testCase.toFileSet().size() + "</td><td>"
+          + (lastUsed > 0 ? new Instant(lastUsed).toString() : "") + "</td><td>"
+          + (store.isInSession(testCase.getId()) ? "yes" : "no") + "</td></tr>");
+    }
+    writer.write("</table></body></html>");
+    writer.flush();
+  }
+
+  private String escape(String text) {
+    if (text == null) {
+      return "";
+    }
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+}
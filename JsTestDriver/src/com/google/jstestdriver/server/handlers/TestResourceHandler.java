@@ -16,15 +16,19 @@
 package com.google.jstestdriver.server.handlers;
 
 import com.google.inject.Inject;
-import com.google.jstestdriver.FilesCache;
 import com.google.jstestdriver.requesthandlers.RequestHandler;
+import com.google.jstestdriver.server.EncodedFile;
 import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ServerMetrics;
 
+import org.mortbay.io.nio.DirectNIOBuffer;
+import org.mortbay.jetty.HttpConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -38,37 +42,97 @@ class TestResourceHandler implements RequestHandler {
   private final HttpServletRequest request;
   private final HttpServletResponse response;
   private final JstdTestCaseStore store;
+  private final ServerMetrics metrics;
 
   @Inject
   public TestResourceHandler(
       HttpServletRequest request,
       HttpServletResponse response,
-      JstdTestCaseStore store) {
+      JstdTestCaseStore store,
+      ServerMetrics metrics) {
     this.request = request;
     this.response = response;
     this.store = store;
+    this.metrics = metrics;
   }
 
   @Override
   public void handleIt() throws IOException {
     String fileName = request.getPathInfo().substring(1); /* remove the first / */
-    service(fileName, response.getWriter());
+    service(fileName);
   }
 
-  public void service(String fileName, PrintWriter writer) throws IOException {
-    try {
-      String fileContent = store.getFileContent(fileName);
-      String mimeType = parseMimeType(fileName);
-      if (mimeType != null) {
-        response.setContentType(mimeType);
-      } else {
-        response.setHeader("Content-Type", "text/plain");
-      }
-      writer.write(fileContent);
-      writer.flush();
-    } catch (FilesCache.MissingFileException e) {
+  /**
+   * Serves the encoded contents of the file, gzipped when the browser accepts
+   * it. Answers with 304 when the browser already has the same contents.
+   */
+  public void service(String fileName) throws IOException {
+    EncodedFile file = store.getEncodedFile(fileName);
+    if (file == null) {
+      logger.debug("no contents for {}", fileName);
       response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    serve(fileName, file);
+  }
+
+  /** Serves encoded contents, with the mime type of the file name. */
+  void serve(String fileName, EncodedFile file) throws IOException {
+    boolean gzip = file.canGzip() && acceptsGzip();
+    if (file.canGzip()) {
+      response.setHeader("Vary", "Accept-Encoding");
+    }
+    response.setHeader("ETag", file.getETag(gzip));
+    if (file.getLastModified() > 0) {
+      response.setDateHeader("Last-Modified", file.getLastModified());
+    }
+    if (isNotModified(file, gzip)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    String mimeType = parseMimeType(fileName);
+    response.setContentType(mimeType != null ? mimeType : "text/plain");
+    response.setCharacterEncoding("UTF-8");
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
     }
+    response.setContentLength(file.getLength(gzip));
+    OutputStream out = response.getOutputStream();
+    ByteBuffer contents = file.getContents(gzip);
+    if (contents.isDirect() && out instanceof HttpConnection.Output) {
+      // hands the mapped blob to jetty, which writes it without a heap copy.
+      ((HttpConnection.Output) out).sendContent(new DirectNIOBuffer(contents, true));
+    } else {
+      file.writeTo(out, gzip);
+      out.flush();
+    }
+    metrics.addTestResource(file.getLength(gzip));
+  }
+
+  /**
+   * If-None-Match takes precedence over If-Modified-Since, as in RFC 2616. It
+   * is matched against the tag of the representation being served.
+   */
+  private boolean isNotModified(EncodedFile file, boolean gzip) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String eTag : ifNoneMatch.split(",")) {
+        eTag = eTag.trim();
+        if (eTag.equals("*") || eTag.equals(file.getETag(gzip))) {
+          return true;
+        }
+      }
+      return false;
+    }
+    long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    // the header has a resolution of seconds.
+    return ifModifiedSince > 0 && file.getLastModified() > 0
+        && file.getLastModified() / 1000 <= ifModifiedSince / 1000;
+  }
+
+  private boolean acceptsGzip() {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
   }
 
   private String parseMimeType(String fileName) {
@@ -17,6 +17,7 @@ package com.google.jstestdriver.server.handlers.pages;
 
 import static java.lang.String.format;
 
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
 import com.google.jstestdriver.FileInfo;
@@ -25,11 +26,13 @@ import com.google.jstestdriver.hooks.FileInfoScheme;
 import com.google.jstestdriver.model.HandlerPathPrefix;
 import com.google.jstestdriver.model.JstdTestCase;
 import com.google.jstestdriver.server.JstdTestCaseStore;
+import com.google.jstestdriver.server.ScriptBundler;
 import com.google.jstestdriver.util.HtmlWriter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -45,17 +48,19 @@ public class TestFileUtil {
   private final Set<FileInfoScheme> schemes;
   private final Gson gson;
   private final JstdTestCaseStore store;
+  private final ScriptBundler bundler;
 
   /**
    * Creates a new TestFileUtil from the dependencies.
    */
   @Inject
    TestFileUtil(JstdTestCaseStore store, HandlerPathPrefix prefix, Set<FileInfoScheme> schemes,
-      Gson gson) {
+      Gson gson, ScriptBundler bundler) {
     this.store = store;
     this.prefix = prefix;
     this.schemes = schemes;
     this.gson = gson;
+    this.bundler = bundler;
   }
 
   /**
@@ -81,6 +86,7 @@ public class TestFileUtil {
     }
 
     logger.info("preloading {}", testCase.getId());
+    List<FileSource> fileSources = Lists.newArrayList();
     for (FileInfo file : testCase) {
       if (file.isServeOnly()) {
         continue;
@@ -95,6 +101,9 @@ public class TestFileUtil {
         // better safe than sorry.
         break;
       }
+      fileSources.add(fileSource);
+    }
+    for (FileSource fileSource : bundler.bundle(fileSources)) {
       logger.trace("Writing " + fileSource.getFileSrc());
       String fileJson = gson.toJson(fileSource).replace("\\", "\\\\");
       writer.writeScript(format("jstestdriver.manualResourceTracker.startResourceLoad('%s')",
@@ -2,17 +2,23 @@ package com.google.jstestdriver.servlet.fileset;
 
 import com.google.common.collect.Lists;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.inject.Inject;
 import com.google.jstestdriver.FileInfo;
 import com.google.jstestdriver.SlaveBrowser;
 import com.google.jstestdriver.browser.BrowserFileSet;
 import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.SessionManifest;
+import com.google.jstestdriver.server.JstdTestCaseStore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author corbinrsmith@gmail.com (Cory Smith)
@@ -24,21 +30,36 @@ public class BrowserFileCheck implements FileSetRequestHandler<BrowserFileSet> {
   public static final String ACTION = "browserFileCheck";
 
   private final Gson gson;
+  private final JstdTestCaseStore store;
 
   @Inject
-  public BrowserFileCheck(Gson gson) {
+  public BrowserFileCheck(Gson gson, JstdTestCaseStore store) {
     this.gson = gson;
+    this.store = store;
   }
 
   @Override
   public BrowserFileSet handle(SlaveBrowser browser, String data) {
-    JstdTestCase testCase = gson.fromJson(data, JstdTestCase.class);
+    JsonObject json = new JsonParser().parse(data).getAsJsonObject();
+    JstdTestCase testCase;
+    if (json.has("digest")) {
+      SessionManifest.Reference reference = gson.fromJson(json, SessionManifest.Reference.class);
+      testCase = store.getManifestCase(reference.getDigest());
+      if (testCase == null) {
+        logger.debug("unknown test case {}, requesting it in full.", reference.getId());
+        return BrowserFileSet.unknownTestCase();
+      }
+    } else {
+      testCase = gson.fromJson(json, JstdTestCase.class);
+    }
     if (browser == null) {
       logger.debug("no browser, returning empty set.");
       return new BrowserFileSet(Collections.<FileInfo>emptyList(),
           Collections.<FileInfo>emptyList(), false);
     }
 
+    store.useCase(testCase.getId(), browser.getId());
+
     if (browser.hasFileLoadErrors()) {
       logger.debug("errors in the previous load, requesting refresh.");
       return new BrowserFileSet(Lists.<FileInfo>newLinkedList(),
@@ -48,20 +69,21 @@ public class BrowserFileCheck implements FileSetRequestHandler<BrowserFileSet> {
     final List<FileInfo> filesToUpdate = Lists.newLinkedList();
     final List<FileInfo> extraFiles = Lists.newLinkedList();
     boolean reset = false;
-    logger.debug("Determing files to update {}, {}", testCase.toFileSet(), browser.getFileSet());
-    for (FileInfo newFile : testCase.getServable()) {
-      if (browser.getFileSet().contains(newFile)) {
-        for (FileInfo oldFile : browser.getFileSet()) {
-          if (oldFile.shouldReplaceWith(newFile)) {
-            filesToUpdate.add(newFile);
-          }
-        }
-      } else {
+    Map<String, FileInfo> loadedFiles = browser.getLoadedFiles();
+    logger.debug("Determing files to update {}, {}", testCase.toFileSet(), loadedFiles.values());
+    for (FileInfo file : testCase.getServable()) {
+      FileInfo newFile = withStoredDigest(file);
+      FileInfo oldFile = loadedFiles.get(newFile.getFilePath());
+      if (oldFile == null || oldFile.shouldReplaceWith(newFile)) {
         filesToUpdate.add(newFile);
       }
     }
-    extraFiles.addAll(browser.getFileSet());
-    extraFiles.removeAll(testCase.toFileSet());
+    Set<FileInfo> fileSet = testCase.toFileSet();
+    for (FileInfo oldFile : loadedFiles.values()) {
+      if (!fileSet.contains(oldFile)) {
+        extraFiles.add(oldFile);
+      }
+    }
 
     if (!(filesToUpdate.isEmpty() && extraFiles.isEmpty())
         && (browser.getBrowserInfo().getName().contains("Safari")
@@ -71,7 +93,7 @@ public class BrowserFileCheck implements FileSetRequestHandler<BrowserFileSet> {
       // overwrite properly.
       // TODO(corysmith): Replace this with polymorphic browser classes.
       logger.info("Resetting browser fileset to ensure proper overwriting. {} {}", filesToUpdate.isEmpty(), extraFiles);
-      filesToUpdate.addAll(testCase.toFileSet());
+      filesToUpdate.addAll(fileSet);
       // TODO(corysmith): Change the browser to handle it's own resets.
       browser.resetFileSet();
       reset = true;
@@ -81,6 +103,22 @@ public class BrowserFileCheck implements FileSetRequestHandler<BrowserFileSet> {
   }
   
 
+  /**
+   * The client only sends paths and timestamps. When the store holds the same
+   * version of a file, its digest is compared with the one the browser loaded.
+   */
+  private FileInfo withStoredDigest(FileInfo file) {
+    if (file.getDigest() != null) {
+      return file;
+    }
+    FileInfo stored = store.getFile(file.getDisplayPath());
+    if (stored == null || stored.getDigest() == null
+        || stored.getTimestamp() != file.getTimestamp()) {
+      return file;
+    }
+    return file.withDigest(stored.getDigest());
+  }
+
   @Override
   public boolean canHandle(String action) {
     return ACTION.equalsIgnoreCase(action);
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.servlet.fileset;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Inject;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.SlaveBrowser;
+import com.google.jstestdriver.server.JstdTestCaseStore;
+
+import java.util.Collection;
+
+/**
+ * Receives the digests of loaded files before they are uploaded, and answers
+ * with the files whose contents the server does not already have.
+ */
+public class DigestCheck implements FileSetRequestHandler<Collection<FileInfo>> {
+
+  public static final String ACTION = "digestCheck";
+  private final JstdTestCaseStore store;
+  private final Gson gson;
+
+  @Inject
+  public DigestCheck(JstdTestCaseStore store, Gson gson) {
+    this.store = store;
+    this.gson = gson;
+  }
+
+  @Override
+  public Collection<FileInfo> handle(SlaveBrowser browser, String data) {
+    Collection<FileInfo> files =
+        gson.fromJson(data, new TypeToken<Collection<FileInfo>>() {}.getType());
+    return store.checkDigests(files);
+  }
+
+  @Override
+  public boolean canHandle(String action) {
+    return ACTION.equals(action);
+  }
+}
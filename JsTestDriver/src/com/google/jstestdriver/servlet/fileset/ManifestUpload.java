@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.servlet.fileset;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.jstestdriver.FileInfo;
+import com.google.jstestdriver.SlaveBrowser;
+import com.google.jstestdriver.model.JstdTestCase;
+import com.google.jstestdriver.model.JstdTestCaseDelta;
+import com.google.jstestdriver.model.SessionManifest;
+import com.google.jstestdriver.server.JstdTestCaseStore;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds the test cases of a {@link SessionManifest} to the store. As the test
+ * cases share most of their files, their deltas are merged into one.
+ */
+public class ManifestUpload implements FileSetRequestHandler<Collection<JstdTestCaseDelta>> {
+  public static final String ACTION = "manifestUpload";
+  private final JstdTestCaseStore store;
+  private final Gson gson;
+
+  @Inject
+  public ManifestUpload(JstdTestCaseStore store, Gson gson) {
+    this.store = store;
+    this.gson = gson;
+  }
+
+  @Override
+  public Collection<JstdTestCaseDelta> handle(SlaveBrowser browser, String data) {
+    SessionManifest manifest = gson.fromJson(data, SessionManifest.class);
+    Set<FileInfo> dependencies = Sets.newLinkedHashSet();
+    Set<FileInfo> tests = Sets.newLinkedHashSet();
+    Set<FileInfo> plugins = Sets.newLinkedHashSet();
+    for (Map.Entry<String, JstdTestCase> testCase : manifest.getTestCases().entrySet()) {
+      JstdTestCaseDelta delta = store.addManifestCase(testCase.getKey(), testCase.getValue());
+      dependencies.addAll(delta.getDependencies());
+      tests.addAll(delta.getTests());
+      plugins.addAll(delta.getPlugins());
+    }
+    if (dependencies.isEmpty() && tests.isEmpty() && plugins.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return Collections.singletonList(new JstdTestCaseDelta(Lists.newArrayList(dependencies),
+        Lists.newArrayList(tests), Lists.newArrayList(plugins)));
+  }
+
+  @Override
+  public boolean canHandle(String action) {
+    return ACTION.equals(action);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations into fixed buckets, from a millisecond to thirty seconds,
+ * without locking. Bucket counts are not cumulative.
+ */
+public class LatencyHistogram {
+
+  /** The upper bounds of the buckets in milliseconds. A last bucket holds the rest. */
+  private static final long[] BOUNDS_MILLIS =
+      {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    int bucket = 0;
+    while (bucket < BOUNDS_MILLIS.length && nanos > BOUNDS_MILLIS[bucket] * 1000000) {
+      bucket++;
+    }
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+  }
+
+  /** Returns the number of buckets, including the last unbounded bucket. */
+  public int getBucketCount() {
+    return buckets.length();
+  }
+
+  /** Returns the upper bound of the bucket in seconds, or infinity for the last bucket. */
+  public double getUpperBoundSeconds(int bucket) {
+    return bucket < BOUNDS_MILLIS.length
+        ? BOUNDS_MILLIS[bucket] / 1000.0 : Double.POSITIVE_INFINITY;
+  }
+
+  public long getBucket(int bucket) {
+    return buckets.get(bucket);
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public double getTotalSeconds() {
+    return totalNanos.get() / 1e9;
+  }
+}
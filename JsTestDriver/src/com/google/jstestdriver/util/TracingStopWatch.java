@@ -0,0 +1,255 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.jstestdriver.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.stream.JsonWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link StopWatch} that records the nested operations of every thread.
+ * Operation names are only formatted when the timings are printed, so
+ * recording costs a clock read and a list operation.
+ *
+ * {@link #print(Writer)} writes a summary of the time spent in each operation,
+ * grouped by the outermost operation of the thread, such as the browser a
+ * thread runs. When a trace file is given, it also writes every recorded
+ * operation to that file in the Chrome trace event format, which can be
+ * loaded in chrome://tracing.
+ */
+public class TracingStopWatch implements StopWatch {
+  private static final Logger logger = LoggerFactory.getLogger(TracingStopWatch.class);
+
+  /** Operations beyond this many are dropped, to bound the memory of long runs. */
+  static final int MAX_EVENTS = 1000000;
+
+  private final File traceFile;
+  private final long origin = System.nanoTime();
+  private final Queue<Event> events = new ConcurrentLinkedQueue<Event>();
+  private final AtomicInteger eventCount = new AtomicInteger();
+  private final ThreadLocal<List<Frame>> stacks = new ThreadLocal<List<Frame>>() {
+    @Override
+    protected List<Frame> initialValue() {
+      return new ArrayList<Frame>();
+    }
+  };
+
+  /** @param traceFile The file to write the trace to, or null for a summary only. */
+  public TracingStopWatch(File traceFile) {
+    this.traceFile = traceFile;
+  }
+
+  @Override
+  public void start(String operation, Object... args) {
+    stacks.get().add(new Frame(operation, args, System.nanoTime()));
+  }
+
+  /**
+   * Stops the innermost operation with the same name and arguments. Operations
+   * started within it that were never stopped are discarded.
+   */
+  @Override
+  public void stop(String operation, Object... args) {
+    long now = System.nanoTime();
+    List<Frame> stack = stacks.get();
+    for (int depth = stack.size() - 1; depth >= 0; depth--) {
+      Frame frame = stack.get(depth);
+      if (frame.matches(operation, args)) {
+        if (eventCount.incrementAndGet() <= MAX_EVENTS) {
+          events.add(new Event(frame, stack.get(0), depth, now - frame.start));
+        }
+        stack.subList(depth, stack.size()).clear();
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void print(Writer writer) {
+    List<Event> recorded = Lists.newArrayList(events);
+    printSummary(recorded, new PrintWriter(writer));
+    if (traceFile != null) {
+      try {
+        Writer traceWriter = new FileWriter(traceFile);
+        try {
+          writeTrace(recorded, traceWriter);
+        } finally {
+          traceWriter.close();
+        }
+      } catch (IOException e) {
+        logger.warn("Unable to write the trace to " + traceFile, e);
+      }
+    }
+  }
+
+  /** Writes the total, count and maximum of each operation, largest total first. */
+  void printSummary(List<Event> recorded, PrintWriter writer) {
+    Map<String, Summary> summaries = Maps.newHashMap();
+    for (Event event : recorded) {
+      String key = event.depth == 0
+          ? event.frame.operation
+          : event.root.getName() + " > " + event.frame.operation;
+      Summary summary = summaries.get(key);
+      if (summary == null) {
+        summary = new Summary(key);
+        summaries.put(key, summary);
+      }
+      summary.add(event.duration);
+    }
+    List<Summary> sorted = Lists.newArrayList(summaries.values());
+    Collections.sort(sorted, new Comparator<Summary>() {
+      @Override
+      public int compare(Summary a, Summary b) {
+        return a.total > b.total ? -1 : (a.total == b.total ? 0 : 1);
+      }
+    });
+    writer.println("Operation timings:");
+    for (Summary summary : sorted) {
+      writer.printf("%12.2fms %8d calls %10.2fms max  %s%n",
+          summary.total / 1e6, summary.count, summary.max / 1e6, summary.key);
+    }
+    if (eventCount.get() > MAX_EVENTS) {
+      writer.printf("%d operations were not recorded.%n", eventCount.get() - MAX_EVENTS);
+    }
+    writer.flush();
+  }
+
+  /** Writes the operations as complete ("X") trace events, one track per thread. */
+  void writeTrace(List<Event> recorded, Writer out) throws IOException {
+    JsonWriter writer = new JsonWriter(out);
+    writer.beginObject();
+    writer.name("traceEvents").beginArray();
+    Map<Long, String> threads = Maps.newLinkedHashMap();
+    for (Event event : recorded) {
+      threads.put(event.threadId, event.threadName);
+      writer.beginObject();
+      writer.name("name").value(event.frame.getName());
+      writer.name("cat").value(event.root.getName());
+      writer.name("ph").value("X");
+      writer.name("ts").value((event.frame.start - origin) / 1000);
+      writer.name("dur").value(event.duration / 1000);
+      writer.name("pid").value(1);
+      writer.name("tid").value(event.threadId);
+      writer.endObject();
+    }
+    for (Map.Entry<Long, String> thread : threads.entrySet()) {
+      writer.beginObject();
+      writer.name("name").value("thread_name");
+      writer.name("ph").value("M");
+      writer.name("pid").value(1);
+      writer.name("tid").value(thread.getKey());
+      writer.name("args").beginObject().name("name").value(thread.getValue()).endObject();
+      writer.endObject();
+    }
+    writer.endArray();
+    writer.endObject();
+    writer.flush();
+  }
+
+  List<Event> getEvents() {
+    return Lists.newArrayList(events);
+  }
+
+  /** An operation that has been started. */
+  static class Frame {
+    final String operation;
+    final Object[] args;
+    final long start;
+
+    Frame(String operation, Object[] args, long start) {
+      this.operation = operation;
+      this.args = args;
+      this.start = start;
+    }
+
+    boolean matches(String otherOperation, Object[] otherArgs) {
+      return operation.equals(otherOperation) && Arrays.equals(args, otherArgs);
+    }
+
+    String getName() {
+      if (args == null || args.length == 0) {
+        return operation;
+      }
+      try {
+        return String.format(operation, args);
+      } catch (IllegalFormatException e) {
+        return operation + " " + Arrays.toString(args);
+      }
+    }
+  }
+
+  /** An operation that has been stopped. */
+  static class Event {
+    final Frame frame;
+    final Frame root;
+    final int depth;
+    final long duration;
+    final long threadId;
+    final String threadName;
+
+    Event(Frame frame, Frame root, int depth, long duration) {
+      this.frame = frame;
+      this.root = root;
+      this.depth = depth;
+      this.duration = duration;
+      Thread thread = Thread.currentThread();
+      this.threadId = thread.getId();
+      this.threadName = thread.getName();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s(%s, depth %s, %sns)",
+          getClass().getSimpleName(), frame.getName(), depth, duration);
+    }
+  }
+
+  private static class Summary {
+    final String key;
+    long total;
+    long max;
+    int count;
+
+    Summary(String key) {
+      this.key = key;
+    }
+
+    void add(long duration) {
+      total += duration;
+      max = Math.max(max, duration);
+      count++;
+    }
+  }
+}